@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the Template with the init script of a service like it is used for the Debian package. The placeholders
+ * are replaced in place, so every invocation of the replacement must load its own template. The cost of the replacement
+ * alone is the difference between {@link #loadAndSetPlaceholder()} and {@link #load()}.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TemplateBenchmark {
+
+    private static final String FILE = "deb/template/init-service.sh";
+
+    /**
+     * Load the template from the classpath.
+     *
+     * @return the template
+     * @throws IOException should never occur
+     */
+    @Benchmark
+    public Template load() throws IOException {
+        return new Template( FILE );
+    }
+
+    /**
+     * Load the template and replace all its placeholders.
+     *
+     * @return the result
+     * @throws IOException should never occur
+     */
+    @Benchmark
+    public String loadAndSetPlaceholder() throws IOException {
+        Template template = new Template( FILE );
+        template.setPlaceholder( "name", "my-application-service" );
+        template.setPlaceholder( "displayName", "My Application Service" );
+        template.setPlaceholder( "description", "The server component of my application with a longer description." );
+        template.setPlaceholder( "wait", "2" );
+        template.setPlaceholder( "workdir", "/usr/share/my-application" );
+        template.setPlaceholder( "mainJar", "'/usr/share/my-application/lib/my-application-server.jar'" );
+        template.setPlaceholder( "startArguments", "-Xmx1g -Dfile.encoding=UTF-8 --port 8080" );
+        return template.toString();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.image;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Synthetic images for the benchmarks that look like a typical application icon: a transparent background, a round
+ * shape with a gradient, a border and a symbol. They have runs of equal pixels and also regions with many colors.
+ */
+public class BenchmarkImages {
+
+    /**
+     * Create an icon image.
+     *
+     * @param size the width and height
+     * @return the image
+     */
+    public static BufferedImage createIcon( int size ) {
+        BufferedImage img = new BufferedImage( size, size, BufferedImage.TYPE_INT_ARGB );
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+            int border = Math.max( 1, size / 16 );
+            g.setPaint( new GradientPaint( 0, 0, new Color( 0x2060C0 ), size, size, new Color( 0x80C0FF ) ) );
+            g.fillOval( border, border, size - 2 * border, size - 2 * border );
+            g.setStroke( new BasicStroke( border ) );
+            g.setColor( new Color( 0x103060 ) );
+            g.drawOval( border, border, size - 2 * border, size - 2 * border );
+            g.setColor( Color.WHITE );
+            g.fillRect( size * 3 / 8, size / 4, size / 4, size / 2 );
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    /**
+     * Create a single color channel of an icon like it is used in the ICNS format.
+     *
+     * @param size the width and height
+     * @return the channel data with one byte per pixel
+     */
+    public static byte[] createChannel( int size ) {
+        BufferedImage img = createIcon( size );
+        byte[] data = new byte[size * size];
+        for( int y = 0; y < size; y++ ) {
+            for( int x = 0; x < size; x++ ) {
+                data[y * size + x] = (byte)(img.getRGB( x, y ) >> 8);
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.image.icns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.inet.gradle.setup.image.BenchmarkImages;
+
+/**
+ * Benchmark of the ICNS codec with a suite of all 4 supported icon sizes.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class IcnsCodecBenchmark {
+
+    private IconSuite suite;
+
+    private byte[]    encoded;
+
+    /**
+     * Create the test data.
+     *
+     * @throws IOException should never occur
+     */
+    @Setup
+    public void setup() throws IOException {
+        suite = new IconSuite();
+        suite.setSmallIcon( BenchmarkImages.createIcon( IcnsCodec.SMALL_SIZE ) );
+        suite.setLargeIcon( BenchmarkImages.createIcon( IcnsCodec.LARGE_SIZE ) );
+        suite.setHugeIcon( BenchmarkImages.createIcon( IcnsCodec.HUGE_SIZE ) );
+        suite.setThumbnailIcon( BenchmarkImages.createIcon( IcnsCodec.THUMBNAIL_SIZE ) );
+        encoded = encode();
+    }
+
+    /**
+     * Encode the suite.
+     *
+     * @return the ICNS data
+     * @throws IOException should never occur
+     */
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new IcnsCodec().encode( suite, output );
+        return output.toByteArray();
+    }
+
+    /**
+     * Decode the suite.
+     *
+     * @return the suite
+     * @throws IOException should never occur
+     */
+    @Benchmark
+    public IconSuite decode() throws IOException {
+        return new IcnsCodec().decode( new ByteArrayInputStream( encoded ) );
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.image.icns;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.inet.gradle.setup.image.BenchmarkImages;
+
+/**
+ * Benchmark of the run length encoding of the ICNS format for a single color channel.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RunLengthEncodingBenchmark {
+
+    @Param( { "16", "32", "48", "128" } )
+    public int     size;
+
+    private byte[] unpacked;
+
+    private byte[] packed;
+
+    /**
+     * Create the test data.
+     */
+    @Setup
+    public void setup() {
+        unpacked = BenchmarkImages.createChannel( size );
+        packed = RunLengthEncoding.packIconData( unpacked );
+    }
+
+    /**
+     * Pack a channel.
+     *
+     * @return the packed data
+     */
+    @Benchmark
+    public byte[] pack() {
+        return RunLengthEncoding.packIconData( unpacked );
+    }
+
+    /**
+     * Unpack a channel.
+     *
+     * @return the unpacked data
+     */
+    @Benchmark
+    public byte[] unpack() {
+        byte[] result = new byte[unpacked.length];
+        RunLengthEncoding.unpackIconData( packed, result );
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.image.image4j.codec.ico;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.inet.gradle.setup.image.BenchmarkImages;
+
+/**
+ * Benchmark of the ICO encoder and decoder with the sizes of a typical Windows application icon.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class IcoCodecBenchmark {
+
+    private List<BufferedImage> images;
+
+    private byte[]              encoded;
+
+    /**
+     * Create the test data.
+     *
+     * @throws IOException should never occur
+     */
+    @Setup
+    public void setup() throws IOException {
+        images = new ArrayList<>();
+        for( int size : new int[] { 16, 24, 32, 48, 64, 128, 256 } ) {
+            images.add( BenchmarkImages.createIcon( size ) );
+        }
+        encoded = write();
+    }
+
+    /**
+     * Encode all images.
+     *
+     * @return the ICO data
+     * @throws IOException should never occur
+     */
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ICOEncoder.write( images, output );
+        return output.toByteArray();
+    }
+
+    /**
+     * Decode all images.
+     *
+     * @return the images
+     * @throws IOException should never occur
+     */
+    @Benchmark
+    public List<BufferedImage> read() throws IOException {
+        return ICODecoder.read( new ByteArrayInputStream( encoded ) );
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.msi;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+import com.inet.gradle.setup.SetupBuilder;
+import com.inet.gradle.setup.SetupBuilderPlugin;
+
+/**
+ * Benchmark of the id generation and the DOM building of the *.wxs file for setups with many files. The paths are
+ * synthetic but have a typical structure with nested directories of different depth. The private methods id() and
+ * addFile() are called with method handles that are looked up once in the setup.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class WxsFileBuilderBenchmark {
+
+    @Param( { "10000", "100000" } )
+    public int           files;
+
+    private Msi          msi;
+
+    private SetupBuilder setup;
+
+    private URL          template;
+
+    private File         wxsFile;
+
+    private String[][]   segments;
+
+    private File[]       sources;
+
+    private MethodHandle id;
+
+    private MethodHandle addFile;
+
+    /**
+     * Create a Gradle project with the plugin and the synthetic file list.
+     *
+     * @throws Exception should never occur
+     */
+    @Setup
+    public void setup() throws Exception {
+        Method idMethod = WxsFileBuilder.class.getDeclaredMethod( "id", String[].class, int.class );
+        idMethod.setAccessible( true );
+        id = MethodHandles.lookup().unreflect( idMethod );
+        Method addFileMethod = WxsFileBuilder.class.getDeclaredMethod( "addFile", Element.class, File.class, String[].class );
+        addFileMethod.setAccessible( true );
+        addFile = MethodHandles.lookup().unreflect( addFileMethod );
+
+        Project project = ProjectBuilder.builder().build();
+        HashMap<String, Object> plugin = new HashMap<>();
+        plugin.put( "plugin", SetupBuilderPlugin.class );
+        project.apply( plugin );
+        msi = (Msi)project.getTasks().getByName( "msi" );
+        setup = project.getExtensions().getByType( SetupBuilder.class );
+        setup.setVendor( "i-net software" );
+        setup.setApplication( "Benchmark Application" );
+        template = WxsFileBuilder.class.getResource( "template.wxs" );
+        wxsFile = new File( msi.getTemporaryDir(), "benchmark.wxs" );
+
+        segments = new String[files][];
+        sources = new File[files];
+        for( int i = 0; i < files; i++ ) {
+            String path;
+            switch( i % 4 ) {
+                case 0:
+                    path = "lib/module" + (i % 97) + "/app-module-" + i + "-1.0.0.jar";
+                    break;
+                case 1:
+                    path = "plugins/plugin" + (i % 53) + "/resources/images/icon_" + i + ".png";
+                    break;
+                case 2:
+                    path = "jre/lib/locale/" + (i % 31) + "/LC_MESSAGES/messages-" + i + ".properties";
+                    break;
+                default:
+                    path = "doc/" + (i % 13) + "/html/chapter " + (i % 7) + "/page-" + i + ".html";
+            }
+            segments[i] = path.split( "/" );
+            sources[i] = new File( "/build/setup/" + path );
+        }
+    }
+
+    /**
+     * Generate the IDs of all files and their directories.
+     *
+     * @return the last ID
+     * @throws Throwable should never occur
+     */
+    @Benchmark
+    public String id() throws Throwable {
+        WxsFileBuilder builder = new WxsFileBuilder( msi, setup, wxsFile, msi.getTemporaryDir(), template, true );
+        String id = null;
+        for( String[] segs : segments ) {
+            for( int i = 1; i <= segs.length; i++ ) {
+                id = (String)this.id.invokeExact( builder, segs, i );
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Add all files to the DOM of the *.wxs file.
+     *
+     * @return the install directory element
+     * @throws Throwable should never occur
+     */
+    @Benchmark
+    public Element addFiles() throws Throwable {
+        WxsFileBuilder builder = new WxsFileBuilder( msi, setup, wxsFile, msi.getTemporaryDir(), template, true );
+        Element wix = (Element)builder.doc.getFirstChild();
+        Element product = builder.getOrCreateChildById( wix, "Product", "*" );
+        Element installDir = builder.getOrCreateChildById( product, "DirectoryRef", "INSTALLDIR" );
+        for( int i = 0; i < files; i++ ) {
+            addFile.invokeExact( builder, installDir, sources[i], segments[i] );
+        }
+        return installDir;
+    }
+}
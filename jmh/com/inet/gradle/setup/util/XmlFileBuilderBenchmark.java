@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+import com.inet.gradle.setup.AbstractSetupTask;
+
+/**
+ * Benchmark of the lookup of child elements by ID like it is used for the directories and components of a MSI setup.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class XmlFileBuilderBenchmark {
+
+    @Param( { "100", "1000", "10000" } )
+    public int                                 children;
+
+    private XmlFileBuilder<AbstractSetupTask> builder;
+
+    private Element                            parent;
+
+    private String[]                           ids;
+
+    private int                                next;
+
+    /**
+     * Create a parent element with the children.
+     *
+     * @throws Exception should never occur
+     */
+    @Setup
+    public void setup() throws Exception {
+        builder = new XmlFileBuilder<>( null, null, new File( System.getProperty( "java.io.tmpdir" ), "benchmark.xml" ), null, null );
+        parent = builder.doc.createElement( "DirectoryRef" );
+        builder.doc.appendChild( parent );
+        ids = new String[children];
+        for( int i = 0; i < children; i++ ) {
+            ids[i] = "lib_module" + i + "_Comp";
+            builder.getOrCreateChildById( parent, "Component", ids[i] );
+        }
+        // shuffle the lookup order
+        Random random = new Random( 42 );
+        for( int i = ids.length - 1; i > 0; i-- ) {
+            int j = random.nextInt( i + 1 );
+            String id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+    }
+
+    /**
+     * Lookup an existing child.
+     *
+     * @return the child
+     */
+    @Benchmark
+    public Element getOrCreateChildById() {
+        String id = ids[next];
+        next = (next + 1) % ids.length;
+        return builder.getOrCreateChildById( parent, "Component", id );
+    }
+}
@@ -16,6 +16,7 @@
 package com.inet.gradle.setup;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -23,7 +24,8 @@ import java.util.ArrayList;
 import org.gradle.api.internal.file.FileResolver;
 import org.gradle.process.internal.DefaultExecAction;
 
-import com.inet.gradle.setup.util.IndentationOutputStream;
+import com.inet.gradle.setup.util.ProcessLog;
+import com.inet.gradle.setup.util.ProcessMonitor;
 
 /**
  * Some basic builder functionally.
@@ -42,6 +44,11 @@ public abstract class AbstractBuilder<T extends AbstractSetupTask> {
 
     protected File         buildDir;
 
+    /**
+     * The count of the last lines of a process output that are written to the console.
+     */
+    private static final int CONSOLE_TAIL_LINES = 10;
+
     protected AbstractBuilder( T task, SetupBuilder setup, FileResolver fileResolver ) {
         this.task = task;
         this.setup = setup;
@@ -49,6 +56,16 @@ public abstract class AbstractBuilder<T extends AbstractSetupTask> {
         this.buildDir = task.getTemporaryDir();
     }
 
+    /**
+     * Start a named phase for the metrics report of the task.
+     * 
+     * @param name the name of the phase
+     * @return the phase, must be closed at the end
+     */
+    protected BuildMetrics.Phase phase( String name ) {
+        return task.getMetrics().start( name );
+    }
+
     /**
      * Call a program from the WIX installation.
      * 
@@ -95,15 +112,68 @@ public abstract class AbstractBuilder<T extends AbstractSetupTask> {
         if( input != null ) {
             action.setStandardInput( input );
         }
+        ProcessLog processLog = null;
         if( output == null ) {
-            output = new IndentationOutputStream( System.out );
+            processLog = createProcessLog( parameters.get( 0 ) );
+            output = processLog;
+            action.setErrorOutput( processLog );
         }
         action.setStandardOutput( output );
-        try {
-            action.execute();
+        ProcessMonitor monitor = null;
+        if( setup.isMetrics() && ProcessMonitor.isSupported() ) {
+            try {
+                monitor = new ProcessMonitor();
+            } catch( IOException | RuntimeException ex ) {
+                // the metrics are optional, for example /proc can be restricted in containers
+                task.getProject().getLogger().warn( "Can't monitor the resources of the process, continue without resource metrics: " + ex );
+            }
+        }
+        try( BuildMetrics.Phase phase = phase( "exec " + new File( parameters.get( 0 ) ).getName() ) ) {
+            try {
+                action.execute();
+            } finally {
+                if( monitor != null ) {
+                    try {
+                        monitor.stop();
+                        phase.addBytesRead( monitor.getBytesRead() );
+                        phase.addBytesWritten( monitor.getBytesWritten() );
+                        phase.setProcessResources( monitor.getCpuMillis(), monitor.getPeakRss() );
+                    } catch( RuntimeException ex ) {
+                        task.getProject().getLogger().warn( "Can't read the resources of the process, continue without resource metrics: " + ex );
+                    }
+                }
+            }
             output.flush();
         } catch( Throwable th ) {
+            if( processLog != null ) {
+                throw new RuntimeException( "Process failed, full log: " + processLog.getFile(), th );
+            }
             throw new RuntimeException( th );
+        } finally {
+            if( processLog != null ) {
+                try {
+                    processLog.close();
+                } catch( IOException ex ) {
+                    task.getProject().getLogger().warn( "Can't write the log: " + processLog.getFile(), ex );
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the log for the output of an external process. The complete output is written to a file, the console get
+     * only the last lines, with the log level info all lines.
+     * 
+     * @param program the program
+     * @return the log
+     */
+    private ProcessLog createProcessLog( String program ) {
+        File file = task.nextProcessLogFile( program );
+        int tailLines = task.getProject().getLogger().isInfoEnabled() ? -1 : CONSOLE_TAIL_LINES;
+        try {
+            return new ProcessLog( file, System.out, tailLines );
+        } catch( IOException ex ) {
+            throw new RuntimeException( "Can't create the log: " + file, ex );
         }
     }
 }
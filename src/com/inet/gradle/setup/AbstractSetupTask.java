@@ -19,10 +19,12 @@ import groovy.lang.Closure;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
@@ -30,15 +32,20 @@ import org.gradle.api.DefaultTask;
 import org.gradle.api.GradleException;
 import org.gradle.api.file.CopySpec;
 import org.gradle.api.file.FileTree;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
 import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
 import org.gradle.api.internal.file.FileLookup;
 import org.gradle.api.internal.file.FileResolver;
 import org.gradle.api.internal.file.copy.CopyAction;
-import org.gradle.api.internal.file.copy.CopyActionExecuter;
 import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.CopyFileVisitorImpl;
 import org.gradle.api.internal.file.copy.CopySpecInternal;
+import org.gradle.api.internal.file.copy.CopySpecResolver;
 import org.gradle.api.internal.file.copy.DefaultCopySpec;
+import org.gradle.api.internal.file.copy.DuplicateHandlingCopyActionDecorator;
 import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.internal.file.copy.NormalizingCopyActionDecorator;
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.internal.tasks.SimpleWorkResult;
 import org.gradle.api.tasks.InputFiles;
@@ -61,6 +68,14 @@ public abstract class AbstractSetupTask extends DefaultTask implements SetupSour
 
     private String                 extension;
 
+    private FileManifest           manifest;
+
+    private Map<String, String>    stagingDigests = Collections.emptyMap();
+
+    private final AtomicInteger    processCount   = new AtomicInteger();
+
+    private BuildMetrics           metrics        = new BuildMetrics();
+
     public AbstractSetupTask( String extension ) {
         this.extension = extension;
         this.rootSpec = (CopySpecInternal)getProject().copySpec( (Closure<CopySpec>)null );
@@ -71,7 +86,22 @@ public abstract class AbstractSetupTask extends DefaultTask implements SetupSour
      */
     @TaskAction
     public void action() {
-        build();
+        manifest = null; // resolve the files new on every execution
+        processCount.set( 0 );
+        stagingDigests = Collections.emptyMap();
+        File[] logs = getProcessLogDir().listFiles();
+        if( logs != null ) {
+            for( File log : logs ) {
+                log.delete();
+            }
+        }
+        metrics = new BuildMetrics();
+        try( BuildMetrics.Phase phase = metrics.start( "total" ) ) {
+            build();
+        } finally {
+            manifest = null;
+            writeMetrics();
+        }
         File setupFile = getSetupFile();
         if( !setupFile.exists() ) {
             throw new GradleException( "Setup file was not created: " + setupFile );
@@ -80,53 +110,194 @@ public abstract class AbstractSetupTask extends DefaultTask implements SetupSour
     }
 
     /**
-     * Copy all files of this task to the given target.
+     * Write the metrics of the last execution next to the setup file if enabled.
+     */
+    private void writeMetrics() {
+        if( !getSetupBuilder().isMetrics() ) {
+            return;
+        }
+        File setupFile = getSetupFile();
+        File json = new File( setupFile.getPath() + ".metrics.json" );
+        try {
+            setupFile.getAbsoluteFile().getParentFile().mkdirs();
+            metrics.write( json, new File( setupFile.getPath() + ".metrics.csv" ) );
+        } catch( IOException ex ) {
+            getLogger().warn( "Can't write the metrics: " + json, ex );
+        }
+    }
+
+    /**
+     * Get the metrics of the current execution.
+     * @return the metrics
+     */
+    public BuildMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Copy all files of this task to the given target. The files are copied parallel with the count of threads that is
+     * set in the SetupBuilder. In the staging mode "link" the files are hard linked if possible.
      * @param target the target directory
      */
     protected void copyTo( File target ) {
-        processFiles( new CopyActionProcessingStreamAction() {
-            @Override
-            public void processFile( FileCopyDetailsInternal details ) {
-//                details.copyTo( details.getRelativePath().getFile( target ) ); // didn't work with mounted smb devises under Unix
-                if( !details.isDirectory() ) {
-                    try {
-                    	File f = details.getRelativePath().getFile( target );
-                    	if(!f.getParentFile().exists()) {
-                    		f.getParentFile().mkdirs(); // the parent directory must be created, else the copy fails
-                    	}
-                        try( InputStream input = details.open() ) {
-                            Files.copy( input, f.toPath(), StandardCopyOption.REPLACE_EXISTING );
-                        }
-					} catch (IOException ex) {
-						throw new RuntimeException(ex);
-					}
-                }
-            }
-        } );
+        copyTo( target, SetupBuilder.STAGING_LINK.equals( getSetupBuilder().getStagingMode() ) );
+    }
+
+    /**
+     * Copy all files of this task to the given target.
+     * @param target the target directory
+     * @param link true, files without filter are hard linked if possible. The builder must not change the content or
+     *            attributes of the staged files else the source files are also changed.
+     */
+    protected void copyTo( File target, boolean link ) {
+        stage( new FileStager( target, getSetupBuilder().getStagingThreads(), link, new StagingCache( getStagingManifest(), target ) ) );
     }
 
     /**
-     * Handle all files of this task.
+     * Copy all files of this task to the given target. The files of the setupBuilder extension are staged only once
+     * per build for all tasks with this method and are hard linked from there. The builder must not change the content
+     * or attributes of these files. Files and directories get the permissions of {@link SetupBuilder#getPermissions()}.
+     * @param target the target directory
+     */
+    protected void copySharedTo( File target ) {
+        copySharedTo( target, false );
+    }
+
+    /**
+     * Copy all files of this task to the given target like {@link #copySharedTo(File)}.
+     * @param target the target directory
+     * @param digests true, the MD5 digest of every file is available with {@link #getStagingDigests()} after the
+     *            copy. Digests are calculated while copying or on the copying threads for linked files. Files that are
+     *            unchanged since the last build are not read.
+     */
+    protected void copySharedTo( File target, boolean digests ) {
+        SharedStaging shared = getSharedStaging();
+        File payload = shared.getPayload( this );
+        SetupBuilder setup = getSetupBuilder();
+        FileStager stager = new FileStager( target, setup.getStagingThreads(), SetupBuilder.STAGING_LINK.equals( setup.getStagingMode() ), new StagingCache( getStagingManifest(), target ) );
+        stager.setShared( payload, shared.getManifest( this ), shared.getPayloadDigests( this ) );
+        stager.setDigestAll( digests );
+        stager.setPermissions( setup.getPermissions() );
+        stage( stager );
+    }
+
+    /**
+     * Stage all files of this task.
+     * @param stager the stager
+     */
+    private void stage( FileStager stager ) {
+        try( BuildMetrics.Phase phase = metrics.start( "copy" ) ) {
+            stager.stage( getManifest() );
+            stagingDigests = stager.getDigests();
+            phase.addBytesRead( stager.getBytesRead() );
+            phase.addBytesWritten( stager.getBytesWritten() );
+        } catch( IOException ex ) {
+            throw new GradleException( "Can't save the staging manifest: " + getStagingManifest(), ex );
+        }
+    }
+
+    /**
+     * Get the MD5 digests of the files of the last copy in this task execution.
+     * @return map from the relative path to the hex digest, empty if nothing was copied
+     */
+    public Map<String, String> getStagingDigests() {
+        return stagingDigests;
+    }
+
+    /**
+     * Get the file in which the staged files of the last build are saved. The file is not inside of the temporary
+     * directory because for some setup formats every file in the temporary directory is part of the setup.
+     * @return the manifest file
+     */
+    protected File getStagingManifest() {
+        return new File( getTemporaryDir().getParentFile(), getName() + ".staging" );
+    }
+
+    /**
+     * Get the directory for the logs of the external processes. It is not inside of the temporary directory because
+     * for some setup formats every file in the temporary directory is part of the setup.
+     * @return the directory build/logs/&lt;task name&gt;
+     */
+    public File getProcessLogDir() {
+        return new File( getProject().getBuildDir(), "logs/" + getName() );
+    }
+
+    /**
+     * Get a new file for the log of an external process. The files are numbered in the order of the calls.
+     * @param program the called program
+     * @return the log file
+     */
+    File nextProcessLogFile( String program ) {
+        String name = new File( program ).getName().replaceAll( "[^\\w.-]", "_" );
+        return new File( getProcessLogDir(), String.format( "%03d-%s.log", processCount.incrementAndGet(), name ) );
+    }
+
+    /**
+     * Handle all files of this task. The action is called after the copy walk, the content of filtered files should
+     * be read from the entries of {@link #getManifest()}.
      * @param action the action that should be process for every file
      */
     protected void processFiles( CopyActionProcessingStreamAction action ) {
-        processFiles( action, getSetupBuilder().getRootSpec() );
-        processFiles( action, rootSpec );
+        for( FileManifest.Entry entry : getManifest().getEntries() ) {
+            action.processFile( entry.getDetails() );
+        }
     }
 
     /**
-     * Handle all files of the CopySpec.
-     * @param action the action that should be process for every file
+     * Get the files of this task. The source trees are walked only on the first call in a task execution.
+     * @return the manifest of all files
      */
-    private void processFiles( CopyActionProcessingStreamAction action, CopySpecInternal copySpec ) {
+    public FileManifest getManifest() {
+        if( manifest == null ) {
+            FileManifest files = new FileManifest();
+            files.addAll( getSharedStaging().getManifest( this ) );
+            resolve( rootSpec, files );
+            manifest = files;
+        }
+        return manifest;
+    }
+
+    /**
+     * Add all files of the CopySpec to the manifest. The source trees are walked only once. The source files of every
+     * child spec are recorded in this walk for the check of an empty 'from'.
+     * @param copySpec the CopySpec
+     * @param files the target manifest
+     */
+    void resolve( CopySpecInternal copySpec, FileManifest files ) {
+        // the source files of every child spec, only for this call and never registered on the specs of the user
+        Map<CopySpecInternal, List<String>> selected = new LinkedHashMap<>();
+        CopyActionProcessingStream stream = new CopyActionProcessingStream() {
+            @Override
+            public void process( CopyActionProcessingStreamAction action ) {
+                // the same walk order like the CopySpecBackedCopyActionProcessingStream, but the child spec is known
+                CopySpecResolver root = copySpec.buildRootResolver();
+                visit( root, action, null );
+                for( CopySpecInternal cs : copySpec.getChildren() ) {
+                    List<String> sources = new ArrayList<>();
+                    selected.put( cs, sources );
+                    cs.buildResolverRelativeToParent( root ).walk( resolver -> visit( resolver, action, sources ) );
+                }
+            }
+        };
+        CopyAction copyAction = new CopyAction() {
+            @Override
+            public WorkResult execute( CopyActionProcessingStream stream ) {
+                stream.process( files::add );
+                return new SimpleWorkResult( true );
+            }
+        };
+        // the decorators of the CopyActionExecuter for the directories and the duplicates strategy
+        new DuplicateHandlingCopyActionDecorator( new NormalizingCopyActionDecorator( copyAction, getFileSystem() ) ).execute( stream );
+
         if( getSetupBuilder().isFailOnEmptyFrom() ) {
-            for( CopySpecInternal cs : copySpec.getChildren() ) {
-                Set<File> files = cs.buildRootResolver().getAllSource().getFiles();
-                if( files.size() == 0 ) {
+            for( Map.Entry<CopySpecInternal, List<String>> entry : selected.entrySet() ) {
+                CopySpecInternal cs = entry.getKey();
+                List<String> sources = entry.getValue();
+                if( sources.size() == 0 ) {
                     throw new IllegalArgumentException( "No files selected by: " + ((DefaultCopySpec)cs).getSourcePaths()  + ". This means that there are files missing or your 'from' method in your gradle script is wrong. If an empty 'from' is valid then disable the check with 'setupBuilder.failOnEmptyFrom = false'" );
                 }
                 int includeCount = cs.getIncludes().size();
-                if( files.size() < includeCount ) {
+                if( sources.size() < includeCount ) {
                     StringBuilder msg = new StringBuilder( "Not every 'include' match a file by: " );
                     msg.append( ((DefaultCopySpec)cs).getSourcePaths() );
                     msg.append( "\n\tDeclared includes:");
@@ -134,23 +305,37 @@ public abstract class AbstractSetupTask extends DefaultTask implements SetupSour
                         msg.append( "\n\t\t" ).append( include );
                     }
                     msg.append( "\n\tMatching files:" );
-                    for( File file : files ) {
+                    for( String file : sources ) {
                         msg.append( "\n\t\t" ).append( file );
                     }
                     throw new IllegalArgumentException( msg.toString()  );
                 }
             }
         }
+    }
 
-        CopyActionExecuter copyActionExecuter = new CopyActionExecuter( getInstantiator(), getFileSystem() );
-        CopyAction copyAction = new CopyAction() {
+    /**
+     * Visit the own source files of a spec resolver and pass them to the copy stream.
+     * @param resolver the resolver of a spec
+     * @param action the action of the copy stream
+     * @param sources the list for the relative source paths of the visited files or null
+     */
+    private void visit( CopySpecResolver resolver, CopyActionProcessingStreamAction action, List<String> sources ) {
+        FileVisitor copy = new CopyFileVisitorImpl( resolver, action, getInstantiator(), getFileSystem() );
+        resolver.getSource().visit( new FileVisitor() {
             @Override
-            public WorkResult execute( CopyActionProcessingStream stream ) {
-                stream.process( action );
-                return new SimpleWorkResult( true );
+            public void visitDir( FileVisitDetails dirDetails ) {
+                copy.visitDir( dirDetails );
             }
-        };
-        copyActionExecuter.execute( copySpec, copyAction );
+
+            @Override
+            public void visitFile( FileVisitDetails fileDetails ) {
+                if( sources != null ) {
+                    sources.add( fileDetails.getRelativePath().getPathString() );
+                }
+                copy.visitFile( fileDetails );
+            }
+        } );
     }
 
     @Inject
@@ -186,6 +371,22 @@ public abstract class AbstractSetupTask extends DefaultTask implements SetupSour
         return setupBuilder;
     }
 
+    /**
+     * Get the staging service that is shared between all setup tasks of this build.
+     * @return the service
+     */
+    public SharedStaging getSharedStaging() {
+        return getProject().getExtensions().getByType( SharedStaging.class );
+    }
+
+    /**
+     * Get the thread pool for independent work items that is shared between all setup tasks of this build.
+     * @return the workers
+     */
+    public SetupWorkers getWorkers() {
+        return getProject().getExtensions().getByType( SetupWorkers.class );
+    }
+
     @Override
     public CopySpecInternal getRootSpec() {
         return rootSpec;
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The timing and resource metrics of the phases of a setup task. The report is written as JSON and CSV file next to
+ * the setup file if enabled with <code>setupBuilder.metrics = true</code>.
+ */
+public class BuildMetrics {
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * A single named phase. It is finished with close(), typical with a try-with-resources statement.
+     */
+    public static class Phase implements AutoCloseable {
+
+        private final String     name;
+
+        private final long       start        = System.nanoTime();
+
+        private long             wallMillis   = -1;
+
+        private final AtomicLong bytesRead    = new AtomicLong();
+
+        private final AtomicLong bytesWritten = new AtomicLong();
+
+        private long             cpuMillis    = -1;
+
+        private long             peakRss      = -1;
+
+        /**
+         * Create a new phase and start the time.
+         *
+         * @param name the name
+         */
+        Phase( String name ) {
+            this.name = name;
+        }
+
+        /**
+         * Add a count of read bytes.
+         *
+         * @param count the bytes
+         */
+        public void addBytesRead( long count ) {
+            bytesRead.addAndGet( count );
+        }
+
+        /**
+         * Add a count of written bytes.
+         *
+         * @param count the bytes
+         */
+        public void addBytesWritten( long count ) {
+            bytesWritten.addAndGet( count );
+        }
+
+        /**
+         * Set the resources of an external process.
+         *
+         * @param cpuMillis the user and system CPU time or -1 if unknown
+         * @param peakRss the peak resident set size in bytes or -1 if unknown
+         */
+        public void setProcessResources( long cpuMillis, long peakRss ) {
+            this.cpuMillis = cpuMillis;
+            this.peakRss = peakRss;
+        }
+
+        /**
+         * Stop the time of this phase.
+         */
+        @Override
+        public void close() {
+            if( wallMillis < 0 ) {
+                wallMillis = (System.nanoTime() - start) / 1000000;
+            }
+        }
+    }
+
+    /**
+     * Start a new phase.
+     *
+     * @param name the name of the phase
+     * @return the phase
+     */
+    public Phase start( String name ) {
+        Phase phase = new Phase( name );
+        synchronized( phases ) {
+            phases.add( phase );
+        }
+        return phase;
+    }
+
+    /**
+     * Write the report as JSON and CSV.
+     *
+     * @param json the JSON file
+     * @param csv the CSV file
+     * @throws IOException if any I/O error occur
+     */
+    public void write( File json, File csv ) throws IOException {
+        List<Phase> list;
+        synchronized( phases ) {
+            list = new ArrayList<>( phases );
+        }
+        try( Writer writer = Files.newBufferedWriter( json.toPath(), StandardCharsets.UTF_8 ) ) {
+            writer.write( "{\n  \"phases\": [" );
+            for( int i = 0; i < list.size(); i++ ) {
+                Phase phase = list.get( i );
+                writer.write( i == 0 ? "\n" : ",\n" );
+                writer.write( "    { \"name\": \"" );
+                writer.write( phase.name.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ) );
+                writer.write( "\", \"wallMillis\": " + phase.wallMillis );
+                writer.write( ", \"bytesRead\": " + phase.bytesRead.get() );
+                writer.write( ", \"bytesWritten\": " + phase.bytesWritten.get() );
+                writer.write( ", \"cpuMillis\": " + phase.cpuMillis );
+                writer.write( ", \"peakRssBytes\": " + phase.peakRss + " }" );
+            }
+            writer.write( "\n  ]\n}\n" );
+        }
+        try( Writer writer = Files.newBufferedWriter( csv.toPath(), StandardCharsets.UTF_8 ) ) {
+            writer.write( "name,wallMillis,bytesRead,bytesWritten,cpuMillis,peakRssBytes\n" );
+            for( Phase phase : list ) {
+                writer.write( '"' + phase.name.replace( "\"", "\"\"" ) + '"' );
+                writer.write( "," + phase.wallMillis + "," + phase.bytesRead.get() + "," + phase.bytesWritten.get() + "," + phase.cpuMillis + "," + phase.peakRss + "\n" );
+            }
+        }
+    }
+}
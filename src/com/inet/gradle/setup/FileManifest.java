@@ -0,0 +1,245 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+
+/**
+ * The resolved files of a setup task. The source trees are walked only once per task execution and the result is
+ * shared for the validation, the staging, the size calculation and the archiving.
+ */
+public class FileManifest {
+
+    private final List<Entry>                  entries = new ArrayList<>();
+
+    private final LinkedHashMap<String, Entry> files   = new LinkedHashMap<>();
+
+    /**
+     * A single file or directory of the setup.
+     */
+    public static class Entry {
+
+        private final FileCopyDetailsInternal details;
+
+        private final String                  path;
+
+        private final File                    source;
+
+        private final byte[]                  content;
+
+        private long                          size = -1;
+
+        /**
+         * Create an entry for the details of the copy stream. The content of a filtered file is read here, during the
+         * copy walk, because the source of a tree like zipTree or tarTree is closed after the walk. Filters are used for
+         * small text files like scripts and configurations, large files should not be filtered.
+         *
+         * @param details the details
+         */
+        Entry( FileCopyDetailsInternal details ) {
+            this.details = details;
+            this.path = details.getRelativePath().getPathString();
+            File file;
+            try {
+                file = details.isDirectory() ? null : details.getFile();
+            } catch( UnsupportedOperationException ex ) {
+                file = null; // there is set an filter
+            }
+            this.source = file;
+            this.content = file == null && !details.isDirectory() ? readContent( details ) : null;
+        }
+
+        /**
+         * Read the filtered content of a file.
+         *
+         * @param details the details
+         * @return the content
+         */
+        private static byte[] readContent( FileCopyDetailsInternal details ) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try( InputStream input = details.open() ) {
+                byte[] buffer = new byte[8192];
+                int count;
+                while( (count = input.read( buffer )) > 0 ) {
+                    out.write( buffer, 0, count );
+                }
+            } catch( IOException ex ) {
+                throw new GradleException( "Can't read file: " + details, ex );
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Get the relative path in the setup.
+         *
+         * @return the path with slash as separator
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * If this is a directory.
+         *
+         * @return true, if a directory
+         */
+        public boolean isDirectory() {
+            return details.isDirectory();
+        }
+
+        /**
+         * Get the source file if the content is used unchanged.
+         *
+         * @return the file or null if it is a directory or the content is changed with a filter or expand
+         */
+        public File getSource() {
+            return source;
+        }
+
+        /**
+         * If the content is changed with a filter or expand.
+         *
+         * @return true, if filtered
+         */
+        public boolean isFiltered() {
+            return source == null && !details.isDirectory();
+        }
+
+        /**
+         * Get the size of the content.
+         *
+         * @return the size in bytes
+         */
+        public long getSize() {
+            if( size < 0 ) {
+                size = content != null ? content.length : details.isDirectory() ? 0 : details.getSize();
+            }
+            return size;
+        }
+
+        /**
+         * Get the Unix permissions of the source or the value that was set in the CopySpec.
+         *
+         * @return the mode
+         */
+        public int getMode() {
+            return details.getMode();
+        }
+
+        /**
+         * Get the modification time of the source.
+         *
+         * @return the time in milliseconds
+         */
+        public long getLastModified() {
+            return details.getLastModified();
+        }
+
+        /**
+         * Open the (filtered) content. The filtered content is served from memory.
+         *
+         * @return the stream
+         */
+        public InputStream open() {
+            return content != null ? new ByteArrayInputStream( content ) : details.open();
+        }
+
+        /**
+         * Get the details of the copy stream. The content of filtered files must be read with {@link #open()}, the
+         * details can't be opened after the copy walk for sources like zipTree.
+         *
+         * @return the details
+         */
+        public FileCopyDetailsInternal getDetails() {
+            return details;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    /**
+     * Add a file from the copy stream.
+     *
+     * @param details the file details
+     */
+    void add( FileCopyDetailsInternal details ) {
+        Entry entry = new Entry( details );
+        entries.add( entry );
+        if( !entry.isDirectory() ) {
+            files.put( entry.getPath(), entry );
+        }
+    }
+
+    /**
+     * Add all entries of another manifest. The entries are shared and not copied.
+     *
+     * @param manifest the other manifest
+     */
+    void addAll( FileManifest manifest ) {
+        entries.addAll( manifest.entries );
+        files.putAll( manifest.files );
+    }
+
+    /**
+     * Get all entries in the order of the copy stream. This include directories and files that are declared multiple
+     * times.
+     *
+     * @return the entries
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList( entries );
+    }
+
+    /**
+     * Get all files without directories. If a path is declared multiple times then the last declaration wins.
+     *
+     * @return the files
+     */
+    public Collection<Entry> getFiles() {
+        return Collections.unmodifiableCollection( files.values() );
+    }
+
+    /**
+     * Get the sum of the size of all files.
+     *
+     * @return the size in bytes
+     */
+    public long getTotalSize() {
+        long size = 0;
+        for( Entry entry : files.values() ) {
+            size += entry.getSize();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup;
+
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.gradle.api.GradleException;
+
+/**
+ * The Unix permissions of the files of a setup. The permissions are not read from the file system but calculated from
+ * rules on the relative path. The archive writers, the spec file and the staging apply them, so that no walk over the
+ * staged files is needed. Directories have always the mode 755. Files have the mode 644, *.sh files 755. If multiple
+ * rules match a file then the last declared rule wins.
+ */
+public class FilePermissions {
+
+    /**
+     * The mode of directories and executable files.
+     */
+    public static final int   EXEC_MODE = 0755;
+
+    /**
+     * The default mode of files.
+     */
+    public static final int   FILE_MODE = 0644;
+
+    private final List<Rule>  rules     = new ArrayList<>();
+
+    /**
+     * A single rule.
+     */
+    private static class Rule {
+
+        private final String  pattern;
+
+        private final Pattern regex;
+
+        private final int     mode;
+
+        /**
+         * Create a rule.
+         *
+         * @param pattern the Ant style pattern
+         * @param mode the mode
+         */
+        private Rule( String pattern, int mode ) {
+            this.pattern = pattern;
+            this.regex = toRegex( pattern );
+            this.mode = mode;
+        }
+    }
+
+    /**
+     * Create the permissions with the default rules.
+     */
+    public FilePermissions() {
+        add( "**/*.sh", EXEC_MODE );
+    }
+
+    /**
+     * Add a rule.
+     *
+     * @param pattern an Ant style pattern for the relative path like "bin/*" or "**&#47;*.so"
+     * @param mode the Unix permissions, for example 0755
+     */
+    public void add( String pattern, int mode ) {
+        if( mode < 0 || mode > 07777 ) {
+            throw new GradleException( "Invalid mode " + Integer.toOctalString( mode ) + " for permission pattern: " + pattern );
+        }
+        rules.add( new Rule( pattern, mode ) );
+    }
+
+    /**
+     * Get the mode of a file.
+     *
+     * @param path the path relative to the root of the setup with slash as separator
+     * @return the mode
+     */
+    public int getMode( String path ) {
+        for( int i = rules.size() - 1; i >= 0; i-- ) {
+            Rule rule = rules.get( i );
+            if( rule.regex.matcher( path ).matches() ) {
+                return rule.mode;
+            }
+        }
+        return FILE_MODE;
+    }
+
+    /**
+     * If the mode of the file is executable for the owner.
+     *
+     * @param path the path relative to the root of the setup with slash as separator
+     * @return true, if executable
+     */
+    public boolean isExecutable( String path ) {
+        return (getMode( path ) & 0100) != 0;
+    }
+
+    /**
+     * Get a description of all rules.
+     *
+     * @return the rules
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for( Rule rule : rules ) {
+            str.append( rule.pattern ).append( '=' ).append( Integer.toOctalString( rule.mode ) ).append( ' ' );
+        }
+        return str.toString().trim();
+    }
+
+    /**
+     * Convert a mode to the permissions of the Java file API.
+     *
+     * @param mode the Unix mode
+     * @return the permissions
+     */
+    public static Set<PosixFilePermission> toPosix( int mode ) {
+        Set<PosixFilePermission> perms = EnumSet.noneOf( PosixFilePermission.class );
+        PosixFilePermission[] values = PosixFilePermission.values(); // in the order of the bits from owner read to others execute
+        for( int i = 0; i < values.length; i++ ) {
+            if( (mode & (0400 >> i)) != 0 ) {
+                perms.add( values[i] );
+            }
+        }
+        return perms;
+    }
+
+    /**
+     * Convert the permissions of the Java file API to a mode.
+     *
+     * @param perms the permissions
+     * @return the Unix mode
+     */
+    public static int fromPosix( Set<PosixFilePermission> perms ) {
+        int mode = 0;
+        PosixFilePermission[] values = PosixFilePermission.values();
+        for( int i = 0; i < values.length; i++ ) {
+            if( perms.contains( values[i] ) ) {
+                mode |= 0400 >> i;
+            }
+        }
+        return mode;
+    }
+
+    /**
+     * Convert an Ant style pattern to a regular expression. "**&#47;" match any count of directories, "*" any
+     * characters in a name and "?" a single character.
+     *
+     * @param pattern the pattern
+     * @return the expression
+     */
+    private static Pattern toRegex( String pattern ) {
+        StringBuilder regex = new StringBuilder();
+        for( int i = 0; i < pattern.length(); i++ ) {
+            char ch = pattern.charAt( i );
+            if( pattern.startsWith( "**/", i ) ) {
+                regex.append( "(?:.*/)?" );
+                i += 2;
+            } else if( pattern.startsWith( "**", i ) ) {
+                regex.append( ".*" );
+                i++;
+            } else if( ch == '*' ) {
+                regex.append( "[^/]*" );
+            } else if( ch == '?' ) {
+                regex.append( "[^/]" );
+            } else {
+                regex.append( Pattern.quote( String.valueOf( ch ) ) );
+            }
+        }
+        return Pattern.compile( regex.toString() );
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gradle.api.GradleException;
+
+import com.inet.gradle.setup.StagingCache.Entry;
+import com.inet.gradle.setup.util.DigestUtils;
+import com.inet.gradle.setup.util.FileUtils;
+import com.inet.gradle.setup.util.ResourceUtils;
+
+/**
+ * Copy the files of a task into a target directory. The files are collected first, then all needed directories are
+ * created once and then the files are copied on a bounded thread pool. In the link mode files without filters are hard
+ * linked instead of copied. If a link is not possible then the file is copied.
+ * <p>
+ * With a {@link StagingCache} only the files that has changed since the last build are written and files that are not
+ * part of the setup anymore are removed.
+ * <p>
+ * Files that are already staged in a shared directory are linked from there.
+ */
+class FileStager {
+
+    private final File                target;
+
+    private final int                 threads;
+
+    private final boolean             link;
+
+    private final StagingCache        cache;
+
+    private File                      sharedDir;
+
+    private Set<FileManifest.Entry>   sharedFiles   = Collections.emptySet();
+
+    private final AtomicLong          bytesRead     = new AtomicLong();
+
+    private final AtomicLong          bytesWritten  = new AtomicLong();
+
+    private final Map<String, String> digests       = new ConcurrentHashMap<>();
+
+    private Map<String, String>       sharedDigests = Collections.emptyMap();
+
+    private boolean                   digestAll;
+
+    private FilePermissions           permissions;
+
+    /**
+     * Create a new instance.
+     *
+     * @param target the target directory
+     * @param threads the maximum count of threads for copying
+     * @param link true, if the files should be hard linked if possible
+     * @param cache the cache of the previous build
+     */
+    FileStager( File target, int threads, boolean link, StagingCache cache ) {
+        this.target = target;
+        this.threads = Math.max( 1, threads );
+        this.link = link;
+        this.cache = cache;
+    }
+
+    /**
+     * Set the files that are already staged in a shared directory. These files are hard linked from the shared
+     * directory or copied if a link is not possible.
+     *
+     * @param dir the shared directory
+     * @param manifest the files in the shared directory
+     */
+    void setShared( File dir, FileManifest manifest, Map<String, String> digests ) {
+        sharedDir = dir;
+        sharedFiles = Collections.newSetFromMap( new IdentityHashMap<>() );
+        sharedFiles.addAll( manifest.getFiles() );
+        sharedDigests = digests;
+    }
+
+    /**
+     * Set if the MD5 digest should be available for every file. Without this only the digests that are calculated
+     * anyway while copying are available. With it linked files are read once on the copying threads.
+     *
+     * @param digestAll true, calculate missing digests
+     */
+    void setDigestAll( boolean digestAll ) {
+        this.digestAll = digestAll;
+    }
+
+    /**
+     * Set the permissions that are applied to every staged file and directory while staging. Without permissions the
+     * staged files get the default of the file system.
+     *
+     * @param permissions the permissions or null
+     */
+    void setPermissions( FilePermissions permissions ) {
+        this.permissions = permissions;
+    }
+
+    /**
+     * Get the MD5 digests of the staged files.
+     *
+     * @return map from the relative path to the hex digest
+     */
+    Map<String, String> getDigests() {
+        return digests;
+    }
+
+    /**
+     * Copy all files of the manifest to the target. If the same path is declared multiple times then the last
+     * declaration wins.
+     * @param manifest the files
+     * @throws IOException if the cache can not be saved
+     */
+    void stage( FileManifest manifest ) throws IOException {
+        Collection<FileManifest.Entry> files = manifest.getFiles();
+
+        // the parent directories must be created, else the copy fails
+        TreeSet<File> directories = new TreeSet<>();
+        for( FileManifest.Entry entry : files ) {
+            File dir = new File( target, entry.getPath() ).getParentFile();
+            if( permissions == null ) {
+                directories.add( dir );
+            } else {
+                // all directories up to the target are needed for the permissions
+                for( ; directories.add( dir ) && !dir.equals( target ); dir = dir.getParentFile() ) {
+                    // nothing
+                }
+            }
+        }
+        for( File dir : directories ) {
+            dir.mkdirs();
+            if( permissions != null ) {
+                FileUtils.setPosixFilePermissions( dir, FilePermissions.toPosix( FilePermissions.EXEC_MODE ) );
+            }
+        }
+
+        int count = Math.min( threads, files.size() );
+        if( count <= 1 ) {
+            for( FileManifest.Entry entry : files ) {
+                stageFile( entry );
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool( count );
+            try {
+                List<Future<?>> futures = new ArrayList<>( files.size() );
+                for( FileManifest.Entry entry : files ) {
+                    futures.add( executor.submit( () -> stageFile( entry ) ) );
+                }
+                for( Future<?> future : futures ) {
+                    future.get();
+                }
+            } catch( ExecutionException ex ) {
+                Throwable cause = ex.getCause();
+                if( cause instanceof RuntimeException ) {
+                    throw (RuntimeException)cause;
+                }
+                throw new GradleException( cause.toString(), cause );
+            } catch( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                throw new GradleException( "Copying of files was interrupted", ex );
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        cache.save();
+    }
+
+    /**
+     * Get the count of bytes that was read from the sources in the last staging.
+     *
+     * @return the bytes
+     */
+    long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Get the count of bytes that was written to the target in the last staging.
+     *
+     * @return the bytes
+     */
+    long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Copy a single file and set its permissions.
+     *
+     * @param entry the file
+     */
+    private void stageFile( FileManifest.Entry entry ) {
+        copy( entry );
+        if( permissions != null && !sharedFiles.contains( entry ) ) { // shared files are links with the permissions of the shared staging
+            String path = entry.getPath();
+            try {
+                FileUtils.setPosixFilePermissions( new File( target, path ), FilePermissions.toPosix( permissions.getMode( path ) ) );
+            } catch( IOException ex ) {
+                throw new GradleException( "Can't set the permissions of file: " + path, ex );
+            }
+        }
+    }
+
+    /**
+     * Copy a single file if it has changed since the last build.
+     *
+     * @param entry the file
+     */
+    private void copy( FileManifest.Entry entry ) {
+        // details.copyTo( file ) didn't work with mounted smb devises under Unix
+        String path = entry.getPath();
+        File file = new File( target, path );
+        Entry previous = cache.getPrevious( path );
+        try {
+            if( sharedFiles.contains( entry ) ) {
+                File source = new File( sharedDir, path );
+                if( !file.exists() || !Files.isSameFile( source.toPath(), file.toPath() ) ) {
+                    if( !FileUtils.createLink( source, file ) ) {
+                        Files.copy( source.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES );
+                        bytesRead.addAndGet( source.length() );
+                        bytesWritten.addAndGet( source.length() );
+                    }
+                }
+                cache.put( path, new Entry( null, source.length(), source.lastModified(), file ) );
+                putDigest( path, sharedDigests.get( path ), source );
+                return;
+            }
+
+            File source = entry.getSource();
+            if( source == null ) {
+                // the content is changed with a filter, we can only compare the result
+                byte[] content;
+                try( InputStream input = entry.open() ) {
+                    content = readAll( input );
+                }
+                bytesRead.addAndGet( content.length );
+                MessageDigest md = DigestUtils.newDigest( "MD5" );
+                md.update( content );
+                String digest = DigestUtils.toHex( md );
+                if( previous == null || !previous.isStagedValid( file ) || !digest.equals( previous.digest ) ) {
+                    Files.deleteIfExists( file.toPath() ); // it can be a hard link of a previous build
+                    Files.write( file.toPath(), content );
+                    bytesWritten.addAndGet( content.length );
+                }
+                cache.put( path, new Entry( digest, content.length, entry.getLastModified(), file ) );
+                putDigest( path, digest, null );
+                return;
+            }
+
+            long size = source.length();
+            long lastModified = source.lastModified();
+            if( link && FileUtils.createLink( source, file ) ) {
+                cache.put( path, new Entry( null, size, lastModified, file ) );
+                boolean unchanged = previous != null && previous.size == size && previous.lastModified == lastModified;
+                putDigest( path, unchanged ? previous.digest : null, source );
+                return;
+            }
+            if( previous != null && previous.isStagedValid( file ) && previous.size == size ) {
+                if( previous.lastModified == lastModified ) {
+                    cache.put( path, previous );
+                    putDigest( path, previous.digest, file );
+                    return;
+                }
+                // only touched, for example a jar file that was build again
+                String digest;
+                try( InputStream input = entry.open() ) {
+                    digest = DigestUtils.digest( input, "MD5" );
+                }
+                bytesRead.addAndGet( size );
+                if( digest.equals( previous.digest ) ) {
+                    cache.put( path, new Entry( digest, size, lastModified, file ) );
+                    putDigest( path, digest, null );
+                    return;
+                }
+            }
+
+            MessageDigest md = DigestUtils.newDigest( "MD5" );
+            try( InputStream input = new DigestInputStream( entry.open(), md ) ) {
+                Files.copy( input, file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+            bytesRead.addAndGet( size );
+            bytesWritten.addAndGet( size );
+            String digest = DigestUtils.toHex( md );
+            cache.put( path, new Entry( digest, size, lastModified, file ) );
+            putDigest( path, digest, null );
+        } catch( IOException ex ) {
+            throw new GradleException( "Can't copy file: " + entry.getDetails(), ex );
+        }
+    }
+
+    /**
+     * Register the digest of a staged file. If the digest is unknown and all digests are requested then the file is
+     * read.
+     *
+     * @param path the relative path
+     * @param digest the hex digest or null if unknown
+     * @param file the file with the same content
+     * @throws IOException if any I/O error occur
+     */
+    private void putDigest( String path, String digest, File file ) throws IOException {
+        if( digest == null ) {
+            if( !digestAll ) {
+                return;
+            }
+            try( InputStream input = new FileInputStream( file ) ) {
+                digest = DigestUtils.digest( input, "MD5" );
+            }
+            bytesRead.addAndGet( file.length() );
+        }
+        digests.put( path, digest );
+    }
+
+    /**
+     * Read the complete data of a stream.
+     *
+     * @param input the stream
+     * @return the data
+     * @throws IOException if any I/O error occur
+     */
+    private static byte[] readAll( InputStream input ) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ResourceUtils.copyData( input, output );
+        return output.toByteArray();
+    }
+}
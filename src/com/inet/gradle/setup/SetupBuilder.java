@@ -35,6 +35,16 @@ import org.gradle.util.ConfigureUtil;
  */
 public class SetupBuilder implements SetupSources {
 
+    /**
+     * Staging mode that copy all files.
+     */
+    public static final String     STAGING_COPY    = "copy";
+
+    /**
+     * Staging mode that hard link the files if possible.
+     */
+    public static final String     STAGING_LINK    = "link";
+
     private final Project          project;
 
     private final CopySpecInternal rootSpec;
@@ -79,6 +89,16 @@ public class SetupBuilder implements SetupSources {
 
     private boolean                failOnEmptyFrom = true;
 
+    private int                    stagingThreads  = Runtime.getRuntime().availableProcessors();
+
+    private String                 stagingMode     = STAGING_COPY;
+
+    private int                    workerThreads   = Runtime.getRuntime().availableProcessors();
+
+    private boolean                metrics;
+
+    private final FilePermissions  permissions     = new FilePermissions();
+
     /**
      * Create a new instance.
      * @param project current project
@@ -475,6 +495,25 @@ public class SetupBuilder implements SetupSources {
         deleteFiles.add( pattern );
     }
 
+    /**
+     * Set the Unix permissions of the files that match a pattern in the Linux packages. Files have the permissions 644
+     * and *.sh files 755 if there is no other rule. Directories have always 755. If multiple patterns match then the
+     * last declared wins. For example: <code>permission 'bin/*', 0755</code>
+     * @param pattern an Ant style pattern of the path relative to the root of the setup
+     * @param mode the permissions as octal number
+     */
+    public void permission( String pattern, int mode ) {
+        permissions.add( pattern, mode );
+    }
+
+    /**
+     * Get the rules for the Unix permissions of the files.
+     * @return the permissions
+     */
+    public FilePermissions getPermissions() {
+        return permissions;
+    }
+
     /**
      * Get the list of folders to delete.
      * @return the list
@@ -508,4 +547,94 @@ public class SetupBuilder implements SetupSources {
     public void setFailOnEmptyFrom( boolean failOnEmptyFrom ) {
         this.failOnEmptyFrom = failOnEmptyFrom;
     }
+
+    /**
+     * Get the count of threads that are used to copy the files of the setup into the temporary build directory.
+     * 
+     * @return the thread count, the default is the count of available processors
+     */
+    public int getStagingThreads() {
+        return stagingThreads;
+    }
+
+    /**
+     * Set the count of threads that are used to copy the files of the setup. A value of 1 copies the files sequential.
+     * 
+     * @param stagingThreads the thread count
+     */
+    public void setStagingThreads( int stagingThreads ) {
+        if( stagingThreads < 1 ) {
+            throw new GradleException( "stagingThreads must be at least 1: " + stagingThreads );
+        }
+        this.stagingThreads = stagingThreads;
+    }
+
+    /**
+     * Get the mode how the files are staged into the temporary build directory.
+     * 
+     * @return "copy" or "link"
+     */
+    public String getStagingMode() {
+        return stagingMode;
+    }
+
+    /**
+     * Set the mode how the files are staged into the temporary build directory. Possible values are:
+     * <ul>
+     * <li>"copy": every file is copied. This is the default.
+     * <li>"link": files without filter, expand or similar are hard linked to the source file. If this is not possible,
+     * for example because the temporary directory is on another volume, then the file is copied.
+     * </ul>
+     * 
+     * @param stagingMode the mode
+     */
+    public void setStagingMode( String stagingMode ) {
+        if( !STAGING_COPY.equals( stagingMode ) && !STAGING_LINK.equals( stagingMode ) ) {
+            throw new GradleException( "Unknown stagingMode '" + stagingMode + "'. Possible values are '" + STAGING_COPY + "' and '" + STAGING_LINK + "'." );
+        }
+        this.stagingMode = stagingMode;
+    }
+
+    /**
+     * Get the count of threads that are used for independent work items of the setup tasks like the calls of external
+     * tools for the single languages or the rendering of the icons in the different sizes.
+     * 
+     * @return the thread count, the default is the count of available processors
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Set the count of threads that are used for independent work items. A value of 1 runs all work sequential.
+     * 
+     * @param workerThreads the thread count
+     */
+    public void setWorkerThreads( int workerThreads ) {
+        if( workerThreads < 1 ) {
+            throw new GradleException( "workerThreads must be at least 1: " + workerThreads );
+        }
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * If a report with the timing and resource metrics of the phases of every setup task should be written.
+     * 
+     * @return true, if enabled
+     */
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enable a report with the timing and resource metrics of the phases of every setup task. The report is written as
+     * &lt;setup file&gt;.metrics.json and &lt;setup file&gt;.metrics.csv next to the setup file. Phases are for example
+     * the copy of the files, the control files, the icons, every external process and the signing.
+     * For external processes the CPU time and the peak RSS are measured on Linux.
+     * 
+     * @param metrics true, enable the report; the default is false
+     */
+    public void setMetrics( boolean metrics ) {
+        this.metrics = metrics;
+    }
 }
@@ -17,14 +17,18 @@ package com.inet.gradle.setup;
 
 import java.util.HashMap;
 
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.plugins.BasePlugin;
 
 import com.inet.gradle.setup.deb.Deb;
+import com.inet.gradle.setup.deb.DebRepository;
 import com.inet.gradle.setup.dmg.Dmg;
 import com.inet.gradle.setup.msi.Msi;
 import com.inet.gradle.setup.rpm.Rpm;
+import com.inet.gradle.setup.rpm.RpmRepository;
 
 /**
  * The central plugin class of this Gradle plugin.
@@ -42,10 +46,20 @@ public class SetupBuilderPlugin implements Plugin<Project> {
         //        project.getPluginManager().apply( BasePlugin.class ); // API since Gradle 2.3
 
         project.getExtensions().create( "setupBuilder", SetupBuilder.class, project );
+        project.getExtensions().create( SharedStaging.NAME, SharedStaging.class, project );
+        SetupWorkers workers = project.getExtensions().create( SetupWorkers.NAME, SetupWorkers.class, project );
+        project.getGradle().addBuildListener( new BuildAdapter() {
+            @Override
+            public void buildFinished( BuildResult result ) {
+                workers.shutdown();
+            }
+        } );
         project.getTasks().create( "deb", Deb.class );
+        project.getTasks().create( "debRepository", DebRepository.class );
         project.getTasks().create( "dmg", Dmg.class );
         project.getTasks().create( "msi", Msi.class );
         project.getTasks().create( "rpm", Rpm.class );
+        project.getTasks().create( "rpmRepository", RpmRepository.class );
     }
 
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+
+/**
+ * A bounded thread pool that is shared by all setup tasks of a build for independent work items like the calls of
+ * external tools or the rendering of images. The pool is created on the first use and shutdown at the end of the build.
+ */
+public class SetupWorkers {
+
+    /**
+     * The name under which the service is registered in the project.
+     */
+    public static final String NAME = "setupBuilderWorkers";
+
+    private final Project      project;
+
+    private ExecutorService    executor;
+
+    /**
+     * Create a new instance. Gradle create a new instance for every build.
+     *
+     * @param project the current project
+     */
+    public SetupWorkers( Project project ) {
+        this.project = project;
+    }
+
+    /**
+     * Run all work items parallel and wait until all are finished. This must not be called from a work item itself.
+     *
+     * @param works the work items
+     * @param <V> the result type
+     * @return the results in the order of the work items
+     */
+    public <V> List<V> invokeAll( List<? extends Callable<V>> works ) {
+        List<V> results = new ArrayList<>( works.size() );
+        if( works.size() <= 1 ) {
+            for( Callable<V> work : works ) {
+                try {
+                    results.add( work.call() );
+                } catch( RuntimeException ex ) {
+                    throw ex;
+                } catch( Exception ex ) {
+                    throw new GradleException( ex.toString(), ex );
+                }
+            }
+            return results;
+        }
+
+        List<Future<V>> futures = new ArrayList<>( works.size() );
+        try {
+            ExecutorService executor = getExecutor();
+            for( Callable<V> work : works ) {
+                futures.add( executor.submit( work ) );
+            }
+            for( Future<V> future : futures ) {
+                results.add( future.get() );
+            }
+            return results;
+        } catch( ExecutionException ex ) {
+            Throwable cause = ex.getCause();
+            if( cause instanceof RuntimeException ) {
+                throw (RuntimeException)cause;
+            }
+            throw new GradleException( cause.toString(), cause );
+        } catch( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new GradleException( "Work was interrupted", ex );
+        } finally {
+            // the other work items are not needed anymore if one has failed
+            for( Future<V> future : futures ) {
+                future.cancel( true );
+            }
+        }
+    }
+
+    /**
+     * Get the thread pool, create it on the first call.
+     *
+     * @return the pool
+     */
+    private synchronized ExecutorService getExecutor() {
+        if( executor == null ) {
+            int threads = project.getExtensions().getByType( SetupBuilder.class ).getWorkerThreads();
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool( threads, runnable -> {
+                Thread thread = new Thread( runnable, "SetupBuilder worker " + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        }
+        return executor;
+    }
+
+    /**
+     * Stop all threads. Called at the end of the build.
+     */
+    synchronized void shutdown() {
+        if( executor != null ) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+
+import com.inet.gradle.setup.image.ImageFactory;
+
+/**
+ * Staging service that is shared between all setup tasks of a build. The files of the setupBuilder extension are
+ * resolved and staged only once. The setup tasks use the staged files read-only and add only their own files.
+ */
+public class SharedStaging {
+
+    /**
+     * The name under which the service is registered in the project.
+     */
+    public static final String          NAME            = "setupBuilderStaging";
+
+    private final Project               project;
+
+    private FileManifest                manifest;
+
+    private File                        payload;
+
+    private Map<String, String>         payloadDigests;
+
+    private final HashMap<String, File> icons           = new HashMap<>();
+
+    /**
+     * Create a new instance. Gradle create a new instance for every build.
+     *
+     * @param project the current project
+     */
+    public SharedStaging( Project project ) {
+        this.project = project;
+    }
+
+    /**
+     * Get the working directory of this service.
+     *
+     * @return the directory
+     */
+    private File getDir() {
+        return new File( project.getBuildDir(), "tmp/" + NAME );
+    }
+
+    /**
+     * Get the files of the setupBuilder extension. The source trees are walked only on the first call.
+     *
+     * @param task the calling task that is used for resolving
+     * @return the manifest
+     */
+    synchronized FileManifest getManifest( AbstractSetupTask task ) {
+        if( manifest == null ) {
+            FileManifest files = new FileManifest();
+            task.resolve( task.getSetupBuilder().getRootSpec(), files );
+            manifest = files;
+        }
+        return manifest;
+    }
+
+    /**
+     * Get the directory with the staged files of the setupBuilder extension. On the first call the files are staged.
+     * Files and directories get the permissions of {@link SetupBuilder#getPermissions()}. The content of this directory
+     * must not be changed.
+     *
+     * @param task the calling task
+     * @return the directory
+     */
+    synchronized File getPayload( AbstractSetupTask task ) {
+        if( payload == null ) {
+            File dir = new File( getDir(), "payload" );
+            SetupBuilder setup = task.getSetupBuilder();
+            StagingCache cache = new StagingCache( new File( getDir(), "payload.staging" ), dir );
+            FileStager stager = new FileStager( dir, setup.getStagingThreads(), SetupBuilder.STAGING_LINK.equals( setup.getStagingMode() ), cache );
+            stager.setPermissions( setup.getPermissions() );
+            try( BuildMetrics.Phase phase = task.getMetrics().start( "copy shared" ) ) {
+                stager.stage( getManifest( task ) );
+                phase.addBytesRead( stager.getBytesRead() );
+                phase.addBytesWritten( stager.getBytesWritten() );
+            } catch( IOException ex ) {
+                throw new GradleException( "Can't stage the shared files: " + dir, ex );
+            }
+            payloadDigests = stager.getDigests();
+            payload = dir;
+        }
+        return payload;
+    }
+
+    /**
+     * Get the MD5 digests of the staged files of the setupBuilder extension that was calculated while staging. Linked
+     * files have no digest.
+     *
+     * @param task the calling task
+     * @return map from the relative path to the hex digest
+     */
+    synchronized Map<String, String> getPayloadDigests( AbstractSetupTask task ) {
+        getPayload( task );
+        return payloadDigests;
+    }
+
+    /**
+     * Get the icons of the setup in the PNG format. Every size is rendered only once per build. Missing sizes are
+     * rendered parallel.
+     *
+     * @param task the calling task
+     * @param sizes the widths and heights
+     * @return the files in the order of the sizes, an item is null if there is no icon. The files must not be changed
+     *         or moved.
+     */
+    public synchronized File[] getIcons( AbstractSetupTask task, int[] sizes ) {
+        List<Integer> missing = new ArrayList<>();
+        List<Callable<File>> works = new ArrayList<>();
+        for( int size : sizes ) {
+            if( !icons.containsKey( "png" + size ) && !missing.contains( size ) ) {
+                missing.add( size );
+                works.add( () -> renderIcon( task, size ) );
+            }
+        }
+        List<File> rendered;
+        try( BuildMetrics.Phase phase = task.getMetrics().start( "icons" ) ) {
+            rendered = task.getWorkers().invokeAll( works );
+        }
+        for( int i = 0; i < missing.size(); i++ ) {
+            icons.put( "png" + missing.get( i ), rendered.get( i ) );
+        }
+
+        File[] files = new File[sizes.length];
+        for( int i = 0; i < sizes.length; i++ ) {
+            files[i] = icons.get( "png" + sizes[i] );
+        }
+        return files;
+    }
+
+    /**
+     * Render the icon of the setup for a single size.
+     *
+     * @param task the calling task
+     * @param size the width and height
+     * @return the file or null if there is no icon
+     * @throws IOException if an error occur on reading the image files
+     */
+    private File renderIcon( AbstractSetupTask task, int size ) throws IOException {
+        String format = "png" + size;
+        File dir = new File( getDir(), "icons/" + size );
+        dir.mkdirs();
+        File file = ImageFactory.getImageFile( project, task.getSetupBuilder().getIcons(), dir, format );
+        if( file != null && !file.isFile() ) {
+            file = null;
+        }
+        return file;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.inet.gradle.setup.util.FileUtils;
+
+/**
+ * A persistent manifest of the staged files of a task. For every relative path it saves the size and modification
+ * time of the source, the size and modification time of the staged file and the MD5 digest of the staged content. With
+ * this information a following build must only rewrite the files that has changed.
+ * <p>
+ * The manifest is a text file with one tab separated line per file:<br>
+ * <code>digest size lastModified stagedSize stagedLastModified path</code>
+ */
+class StagingCache {
+
+    private static final String      HEADER    = "SetupBuilder staging cache 1";
+
+    private static final String      NO_DIGEST = "-";
+
+    private final File               manifest;
+
+    private final File               target;
+
+    private final Map<String, Entry> previous  = new HashMap<>();
+
+    private final Map<String, Entry> current   = new ConcurrentHashMap<>();
+
+    /**
+     * The cached data of a single staged file.
+     */
+    static class Entry {
+
+        final String digest;
+
+        final long   size, lastModified, stagedSize, stagedLastModified;
+
+        /**
+         * Create a new entry.
+         *
+         * @param digest the hex MD5 digest of the staged content or null if unknown
+         * @param size the size of the source
+         * @param lastModified the modification time of the source
+         * @param staged the staged file
+         */
+        Entry( String digest, long size, long lastModified, File staged ) {
+            this( digest, size, lastModified, staged.length(), staged.lastModified() );
+        }
+
+        private Entry( String digest, long size, long lastModified, long stagedSize, long stagedLastModified ) {
+            this.digest = digest;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.stagedSize = stagedSize;
+            this.stagedLastModified = stagedLastModified;
+        }
+
+        /**
+         * Check if the staged file was not changed since it was written.
+         *
+         * @param staged the staged file
+         * @return true, if the staged file is unchanged
+         */
+        boolean isStagedValid( File staged ) {
+            return digest != null && staged.length() == stagedSize && staged.lastModified() == stagedLastModified;
+        }
+    }
+
+    /**
+     * Load the manifest of the previous build. If the manifest does not exists or was written for another target
+     * directory then all files are staged new.
+     *
+     * @param manifest the manifest file
+     * @param target the target directory of the staging
+     */
+    StagingCache( File manifest, File target ) {
+        this.manifest = manifest;
+        this.target = target;
+        if( !manifest.isFile() ) {
+            return;
+        }
+        try( BufferedReader reader = Files.newBufferedReader( manifest.toPath(), StandardCharsets.UTF_8 ) ) {
+            if( !HEADER.equals( reader.readLine() ) || !target.getAbsolutePath().equals( reader.readLine() ) ) {
+                return;
+            }
+            String line;
+            while( (line = reader.readLine()) != null ) {
+                String[] parts = line.split( "\t", 6 );
+                String digest = NO_DIGEST.equals( parts[0] ) ? null : parts[0];
+                previous.put( parts[5], new Entry( digest, Long.parseLong( parts[1] ), Long.parseLong( parts[2] ), Long.parseLong( parts[3] ), Long.parseLong( parts[4] ) ) );
+            }
+        } catch( IOException | RuntimeException ex ) {
+            previous.clear(); // a broken manifest, stage all files new
+        }
+    }
+
+    /**
+     * Get the entry of the previous build.
+     *
+     * @param path the relative path
+     * @return the entry or null
+     */
+    Entry getPrevious( String path ) {
+        return previous.get( path );
+    }
+
+    /**
+     * Register the data of a file that was staged in this build.
+     *
+     * @param path the relative path
+     * @param entry the data
+     */
+    void put( String path, Entry entry ) {
+        current.put( path, entry );
+    }
+
+    /**
+     * Delete all files that was staged in the previous build but not in this build and save the new manifest.
+     *
+     * @throws IOException if any I/O error occur
+     */
+    void save() throws IOException {
+        for( String path : previous.keySet() ) {
+            if( !current.containsKey( path ) ) {
+                File file = new File( target, path );
+                Files.deleteIfExists( file.toPath() );
+                // remove the directories that are empty now
+                for( File dir = file.getParentFile(); !dir.equals( target ) && dir.delete(); dir = dir.getParentFile() ) {
+                    // nothing
+                }
+            }
+        }
+
+        manifest.getAbsoluteFile().getParentFile().mkdirs();
+        FileUtils.writeAtomic( manifest, out -> {
+            BufferedWriter writer = new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ) );
+            writer.write( HEADER );
+            writer.write( '\n' );
+            writer.write( target.getAbsolutePath() );
+            writer.write( '\n' );
+            for( Map.Entry<String, Entry> item : current.entrySet() ) {
+                Entry entry = item.getValue();
+                writer.write( entry.digest == null ? NO_DIGEST : entry.digest );
+                writer.write( '\t' );
+                writer.write( Long.toString( entry.size ) );
+                writer.write( '\t' );
+                writer.write( Long.toString( entry.lastModified ) );
+                writer.write( '\t' );
+                writer.write( Long.toString( entry.stagedSize ) );
+                writer.write( '\t' );
+                writer.write( Long.toString( entry.stagedLastModified ) );
+                writer.write( '\t' );
+                writer.write( item.getKey() );
+                writer.write( '\n' );
+            }
+            writer.flush();
+        } );
+    }
+}
@@ -18,6 +18,7 @@ package com.inet.gradle.setup.deb;
 import java.io.File;
 import java.util.ArrayList;
 
+import org.gradle.api.GradleException;
 import org.gradle.api.internal.project.ProjectInternal;
 
 import com.inet.gradle.setup.AbstractSetupTask;
@@ -29,6 +30,38 @@ import com.inet.gradle.setup.AbstractSetupTask;
  */
 public class Deb extends AbstractSetupTask {	
 
+    /**
+     * Packager that write the package in Java without any external tool.
+     */
+    public static final String     PACKAGER_JAVA = "java";
+
+    /**
+     * Packager that stage all files and call fakeroot dpkg-deb.
+     */
+    public static final String     PACKAGER_DPKG = "dpkg";
+
+    /**
+     * The payload is not compressed.
+     */
+    public static final String     COMPRESSION_NONE = "none";
+
+    /**
+     * The payload is compressed with gzip. This is the default because the typical payload of Java applications are
+     * jar files that are already compressed. The stronger codecs save less than 1% of the size for jar files but need
+     * the multiple time.
+     */
+    public static final String     COMPRESSION_GZIP = "gzip";
+
+    /**
+     * The payload is compressed with the external program xz.
+     */
+    public static final String     COMPRESSION_XZ   = "xz";
+
+    /**
+     * The payload is compressed with the external program zstd.
+     */
+    public static final String     COMPRESSION_ZSTD = "zstd";
+
     private String                 section;
 
     private String                 priority;
@@ -50,6 +83,16 @@ public class Deb extends AbstractSetupTask {
     private String				   changes;
     
     private String				   installationRoot;
+
+    private String                 packager = PACKAGER_JAVA;
+
+    private String                 compression = COMPRESSION_GZIP;
+
+    private Integer                compressionLevel;
+
+    private int                    compressionThreads = Runtime.getRuntime().availableProcessors();
+
+    private Object                 previousPackage;
     
     private ArrayList<String> 		preinst = new ArrayList<String>();
 	
@@ -79,7 +122,7 @@ public class Deb extends AbstractSetupTask {
      */
     @Override
     protected void copyTo(File target) {
-    	super.copyTo(target);
+    	copySharedTo( target, true ); // with the digests for DEBIAN/md5sums
     }
 
 	public String getSection() {
@@ -152,11 +195,21 @@ public class Deb extends AbstractSetupTask {
 	}
 
 
+	/**
+	 * Returns how the package should be checked after it was built.
+	 * @return the check mode or null for the default
+	 */
 	public String getCheckPackage() {
 		return checkPackage;
 	}
 
 
+	/**
+	 * Set how the package should be checked after it was built. With 'true', the default, the control files, md5sums,
+	 * conffiles, maintainer scripts, permissions and the directory layout are checked in process. With 'lintian' the
+	 * lintian tool is executed additionally, it must be installed. With 'false' the package is not checked.
+	 * @param checkPackage 'true', 'lintian' or 'false'
+	 */
 	public void setCheckPackage(String checkPackage) {
 		this.checkPackage = checkPackage;
 	}
@@ -265,5 +318,136 @@ public class Deb extends AbstractSetupTask {
 	public void setPostrm(String postrm) {
 		this.postrm.add( postrm );
 	}
+
+    /**
+     * Get the tool that create the package file.
+     * 
+     * @return the packager
+     */
+    public String getPackager() {
+        return packager;
+    }
+
+    /**
+     * Set the tool that create the package file. Possible values are:
+     * <ul>
+     * <li>"java": the package is written directly from the files of the setup without staging. This is the default.
+     * <li>"dpkg": all files are staged into the temporary directory and packed with fakeroot dpkg-deb.
+     * </ul>
+     * 
+     * @param packager the packager
+     */
+    public void setPackager( String packager ) {
+        if( !PACKAGER_JAVA.equals( packager ) && !PACKAGER_DPKG.equals( packager ) ) {
+            throw new GradleException( "Unknown packager '" + packager + "'. Possible values are '" + PACKAGER_JAVA + "' and '" + PACKAGER_DPKG + "'." );
+        }
+        this.packager = packager;
+    }
+
+    /**
+     * Get the codec for the compression of the payload.
+     * 
+     * @return the codec
+     */
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the codec for the compression of the payload. Possible values are:
+     * <ul>
+     * <li>"none": no compression, for fast snapshot builds
+     * <li>"gzip": the default, compressed parallel with the Java packager
+     * <li>"xz": the smallest package, needs the program xz with the Java packager
+     * <li>"zstd": needs the program zstd with the Java packager and dpkg 1.21.18 or higher on the target system
+     * </ul>
+     * 
+     * @param compression the codec
+     */
+    public void setCompression( String compression ) {
+        if( !COMPRESSION_NONE.equals( compression ) && !COMPRESSION_GZIP.equals( compression ) && !COMPRESSION_XZ.equals( compression ) && !COMPRESSION_ZSTD.equals( compression ) ) {
+            throw new GradleException( "Unknown compression '" + compression + "'. Possible values are '" + COMPRESSION_NONE + "', '" + COMPRESSION_GZIP + "', '" + COMPRESSION_XZ + "' and '" + COMPRESSION_ZSTD + "'." );
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * Get the compression level of the payload. If not set then it is the default level of the codec: 6 for gzip and
+     * xz, 3 for zstd.
+     * 
+     * @return the level
+     */
+    public int getCompressionLevel() {
+        if( compressionLevel != null ) {
+            return compressionLevel;
+        }
+        switch( compression ) {
+            case COMPRESSION_NONE:
+                return 0;
+            case COMPRESSION_ZSTD:
+                return 3;
+            default:
+                return 6;
+        }
+    }
+
+    /**
+     * Set the compression level of the payload. Possible values are 0 to 9 for gzip and xz and 1 to 19 for zstd.
+     * Higher values create smaller packages but need more time.
+     * 
+     * @param compressionLevel the level
+     */
+    public void setCompressionLevel( int compressionLevel ) {
+        if( compressionLevel < 0 || compressionLevel > 19 ) {
+            throw new GradleException( "compressionLevel must be between 0 and 19: " + compressionLevel );
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Get the count of threads that compress the payload.
+     * 
+     * @return the thread count
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * Set the count of threads that compress the payload with the Java packager. The payload is compressed in blocks
+     * parallel. The result is a standard gzip stream. The default is the count of processors.
+     * 
+     * @param compressionThreads the thread count
+     */
+    public void setCompressionThreads( int compressionThreads ) {
+        if( compressionThreads < 1 ) {
+            throw new GradleException( "compressionThreads must be at least 1: " + compressionThreads );
+        }
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * Get the package of the previous release for the delta.
+     * 
+     * @return the package file or null
+     */
+    public File getPreviousPackage() {
+        if( previousPackage != null ) {
+            return getProject().file( previousPackage );
+        }
+        return null;
+    }
+
+    /**
+     * Set the package of the previous release. If set then additionally a delta file with the extension ".delta" is
+     * created that contains only the changed files. It can be applied on the target system with
+     * <tt>java -cp SetupBuilder.jar com.inet.gradle.setup.deb.DebDelta apply old.deb new.deb.delta new.deb</tt>. The
+     * target system must keep the file of the previous package, the installed files are not used.
+     * 
+     * @param previousPackage the package file
+     */
+    public void setPreviousPackage( Object previousPackage ) {
+        this.previousPackage = previousPackage;
+    }
 	
 }
@@ -20,18 +20,29 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
+import org.gradle.api.GradleException;
 import org.gradle.api.internal.file.FileResolver;
 
 import com.inet.gradle.setup.AbstractBuilder;
+import com.inet.gradle.setup.BuildMetrics;
 import com.inet.gradle.setup.DesktopStarter;
+import com.inet.gradle.setup.FileManifest;
+import com.inet.gradle.setup.FilePermissions;
 import com.inet.gradle.setup.Service;
 import com.inet.gradle.setup.SetupBuilder;
 import com.inet.gradle.setup.Template;
 import com.inet.gradle.setup.deb.DebControlFileBuilder.Script;
-import com.inet.gradle.setup.image.ImageFactory;
+import com.inet.gradle.setup.util.DigestUtils;
 
 public class DebBuilder extends AbstractBuilder<Deb> {
 
@@ -53,9 +64,21 @@ public class DebBuilder extends AbstractBuilder<Deb> {
      */
     public void build() {
         try {
-            File filesPath = new File( buildDir, task.getInstallationRoot() );
-            task.copyTo( filesPath );
-            changeFilePermissionsTo644( filesPath );
+            if( task.getCompressionLevel() > 9 && !Deb.COMPRESSION_ZSTD.equals( task.getCompression() ) ) {
+                throw new GradleException( "compressionLevel " + task.getCompressionLevel() + " is not supported by " + task.getCompression() + ". Possible values are 0 to 9." );
+            }
+            boolean javaPackager = Deb.PACKAGER_JAVA.equals( task.getPackager() );
+            if( javaPackager ) {
+                // the files of the setup are read directly from the sources, only generated files are in the build directory
+                task.getProject().delete( buildDir );
+                buildDir.mkdirs();
+            } else {
+                // the staging set the permissions of the setup files, dpkg-deb take the permissions from the file system
+                DebUtils.setPermissions( buildDir, true );
+                File filesPath = new File( buildDir, task.getInstallationRoot() );
+                DebUtils.createDirectories( filesPath.getParentFile() );
+                task.copyTo( filesPath );
+            }
 
             // 	create the package config files in the DEBIAN subfolder
 
@@ -107,16 +130,32 @@ public class DebBuilder extends AbstractBuilder<Deb> {
             
     		
     		
-            controlBuilder.build();
+            try( BuildMetrics.Phase phase = phase( "control files" ) ) {
+                controlBuilder.build();
 
-            documentBuilder = new DebDocumentFileBuilder( super.task, setup, new File( buildDir, "/usr/share/doc/" + setup.getAppIdentifier() ) );
-            documentBuilder.build();
+                documentBuilder = new DebDocumentFileBuilder( super.task, setup, new File( buildDir, "/usr/share/doc/" + setup.getAppIdentifier() ) );
+                documentBuilder.build();
+            }
 
-            changeDirectoryPermissionsTo755( buildDir );
+            Map<String, Integer> files;
+            if( javaPackager ) {
+                files = writeDebianPackage();
+            } else {
+                List<String> generated = new ArrayList<>();
+                collectGeneratedFiles( buildDir, "", generated );
+                try( BuildMetrics.Phase phase = phase( "md5sums" ) ) {
+                    createMd5sums( generated );
+                }
+                files = listFiles( generated );
+                createDebianPackage();
+            }
 
-            createDebianPackage();
+            checkDebianPackage( files );
 
-            checkDebianPackage();
+            File previous = task.getPreviousPackage();
+            if( previous != null ) {
+                createDelta( previous );
+            }
 
         } catch( RuntimeException ex ) {
             throw ex;
@@ -266,14 +305,16 @@ public class DebBuilder extends AbstractBuilder<Deb> {
                 + starter.getStartArguments() + " \"$@\"" );
         }
         int[] iconSizes = { 16, 32, 48, 64, 128 };
+        File[] icons = task.getSharedStaging().getIcons( task, iconSizes ); // rendered only once for all tasks
 
-        for( int size : iconSizes ) {
+        for( int i = 0; i < iconSizes.length; i++ ) {
+            int size = iconSizes[i];
             File iconDir = new File( buildDir, "usr/share/icons/hicolor/" + size + "x" + size + "/apps/" );
-            iconDir.mkdirs();
-            File scaledFile = ImageFactory.getImageFile( task.getProject(), setup.getIcons(), iconDir, "png" + size );
+            DebUtils.createDirectories( iconDir );
+            File scaledFile = icons[i];
             if( scaledFile != null ) {
                 File iconFile = new File( iconDir, unixName + ".png" );
-                scaledFile.renameTo( iconFile );
+                Files.copy( scaledFile.toPath(), iconFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
                 DebUtils.setPermissions( iconFile, false );
             }
         }
@@ -304,9 +345,7 @@ public class DebBuilder extends AbstractBuilder<Deb> {
      */
     private File createFile( String path, boolean executable ) throws IOException {
         File file = new File( buildDir, path );
-        if( !file.getParentFile().exists() ) {
-            file.getParentFile().mkdirs();
-        }
+        DebUtils.createDirectories( file.getParentFile() );
         file.createNewFile();
 
         DebUtils.setPermissions( file, executable );
@@ -314,11 +353,34 @@ public class DebBuilder extends AbstractBuilder<Deb> {
     }
 
     /**
-     * execute the lintian tool to check the Debian package This will only be executed if the task 'checkPackage'
-     * property is set to true
+     * Check the Debian package. Without a value or with 'true' for the task property 'checkPackage' the package is
+     * checked in process. With 'lintian' the lintian tool is executed additionally. Warnings are logged, errors break
+     * the build.
+     * @param files the regular files of the package with its modes
+     * @throws IOException on errors during reading the control files
      */
-    private void checkDebianPackage() {
-        if( task.getCheckPackage() == null || task.getCheckPackage().equalsIgnoreCase( "true" ) ) {
+    private void checkDebianPackage( Map<String, Integer> files ) throws IOException {
+        String checkPackage = task.getCheckPackage();
+        boolean lintian = "lintian".equalsIgnoreCase( checkPackage );
+        if( checkPackage != null && !checkPackage.equalsIgnoreCase( "true" ) && !lintian ) {
+            return;
+        }
+        try( BuildMetrics.Phase phase = phase( "check" ) ) {
+            DebPackageValidator validator = new DebPackageValidator( new File( buildDir, "DEBIAN" ), files );
+            validator.validate();
+            for( String warning : validator.getWarnings() ) {
+                task.getProject().getLogger().warn( "\tW: " + warning );
+            }
+            List<String> errors = validator.getErrors();
+            if( !errors.isEmpty() ) {
+                StringBuilder msg = new StringBuilder( "The Debian package has " + errors.size() + " error(s):" );
+                for( String error : errors ) {
+                    msg.append( "\n\tE: " ).append( error );
+                }
+                throw new GradleException( msg.toString() );
+            }
+        }
+        if( lintian ) {
             ArrayList<String> command = new ArrayList<>();
             command.add( "lintian" );
             //    		command.add( "-d" );
@@ -328,49 +390,126 @@ public class DebBuilder extends AbstractBuilder<Deb> {
     }
 
     /**
-     * execute the command to generate the Debian package
+     * Creates the control file md5sums. The digests of the setup files are calculated while staging. Only the
+     * generated files are read here, parallel on the worker pool.
+     * @param generated all files in the build directory without the control files
+     * @throws IOException on errors during reading the files or writing the md5sums
      */
-    private void createDebianPackage() {
-        ArrayList<String> command = new ArrayList<>();
-        command.add( "fakeroot" );
-        command.add( "dpkg-deb" );
-        command.add( "--build" );
-        command.add( buildDir.getAbsolutePath() );
-        command.add( setup.getDestinationDir().getAbsolutePath() + "/" + setup.getArchiveName() + "." + task.getExtension() );
-        exec( command );
+    private void createMd5sums( List<String> generated ) throws IOException {
+        String root = task.getInstallationRoot().substring( 1 );
+        HashMap<String, String> digests = new HashMap<>();
+        for( Map.Entry<String, String> entry : task.getStagingDigests().entrySet() ) {
+            digests.put( root + '/' + entry.getKey(), entry.getValue() );
+        }
+
+        List<String> paths = new ArrayList<>( generated );
+        paths.removeAll( digests.keySet() );
+        List<Callable<String>> works = new ArrayList<>();
+        for( String path : paths ) {
+            works.add( () -> DigestUtils.digest( new File( buildDir, path ), "MD5" ) );
+        }
+        List<String> results = task.getWorkers().invokeAll( works );
+        for( int i = 0; i < paths.size(); i++ ) {
+            digests.put( paths.get( i ), results.get( i ) );
+        }
+
+        File md5sums = createFile( "DEBIAN/md5sums", false );
+        Files.write( md5sums.toPath(), DebUtils.createMd5sums( digests ).getBytes( StandardCharsets.UTF_8 ) );
     }
 
     /**
-     * Changes the permissions of all directories recursively inside the specified path to 755.
-     * @param path the path
-     * @throws IOException on I/O failures
+     * List the regular files of the package with its modes. The modes of the setup files are calculated from the
+     * permission rules, only the modes of the generated files are read from the file system.
+     * @param generated all files in the build directory without the control files
+     * @return map from the path relative to the root without leading slash to the mode
+     * @throws IOException on errors during reading the permissions
      */
-    private void changeDirectoryPermissionsTo755( File path ) throws IOException {
-     	DebUtils.setPermissions( path, true );
-        for( File file : path.listFiles() ) {
-            if( file.isDirectory() ) {
-                changeDirectoryPermissionsTo755( file );
+    private Map<String, Integer> listFiles( List<String> generated ) throws IOException {
+        TreeMap<String, Integer> files = new TreeMap<>();
+        String root = task.getInstallationRoot().substring( 1 );
+        FilePermissions permissions = setup.getPermissions();
+        for( FileManifest.Entry entry : task.getManifest().getFiles() ) {
+            files.put( root + '/' + entry.getPath(), permissions.getMode( entry.getPath() ) );
+        }
+        for( String path : generated ) {
+            if( !files.containsKey( path ) ) {
+                files.put( path, FilePermissions.fromPosix( Files.getPosixFilePermissions( new File( buildDir, path ).toPath() ) ) );
             }
         }
+        return files;
     }
 
     /**
-     * Changes the permissions of all files recursively inside the specified path to 644.
-     * @param path the path
-     * @throws IOException on I/O failures
+     * Collect all files in the build directory without the control files.
+     * @param dir the current directory
+     * @param prefix the relative path of the directory with a trailing slash or an empty string
+     * @param paths the found relative paths
      */
-    private void changeFilePermissionsTo644( File path ) throws IOException {
-        for( File file : path.listFiles() ) {
+    private static void collectGeneratedFiles( File dir, String prefix, List<String> paths ) {
+        for( File file : dir.listFiles() ) {
+            String path = prefix + file.getName();
             if( file.isDirectory() ) {
-                changeFilePermissionsTo644( file );
+                if( !path.equals( "DEBIAN" ) ) {
+                    collectGeneratedFiles( file, path + '/', paths );
+                }
             } else {
-            	if( file.getName().endsWith(".sh")  ) {
-            		DebUtils.setPermissions( file, true );
-            	} else {
-            		DebUtils.setPermissions( file, false );
-            	}
+                paths.add( path );
             }
         }
     }
 
+    /**
+     * Write the Debian package in Java without staging of the files.
+     * @return the regular files of the package with its modes
+     * @throws IOException on errors during reading the files or writing the package
+     */
+    private Map<String, Integer> writeDebianPackage() throws IOException {
+        File target = new File( setup.getDestinationDir(), setup.getArchiveName() + "." + task.getExtension() );
+        try( BuildMetrics.Phase phase = phase( "package" ) ) {
+            DebPackageWriter writer = new DebPackageWriter( task, buildDir );
+            writer.write( target );
+            phase.addBytesRead( writer.getBytesRead() );
+            phase.addBytesWritten( target.length() );
+            return writer.getFiles();
+        }
+    }
+
+    /**
+     * Create the delta from the previous release to the new package.
+     * @param previous the package of the previous release
+     * @throws IOException on errors during reading the packages or writing the delta
+     */
+    private void createDelta( File previous ) throws IOException {
+        File target = task.getSetupFile();
+        File deltaFile = new File( target.getPath() + ".delta" );
+        try( BuildMetrics.Phase phase = phase( "delta" ) ) {
+            DebDelta delta = new DebDelta();
+            delta.create( previous, target, deltaFile, task.getCompressionLevel() );
+            phase.addBytesRead( previous.length() + target.length() );
+            phase.addBytesWritten( deltaFile.length() );
+            int count = delta.getChangedFiles() + delta.getUnchangedFiles();
+            task.getProject().getLogger().lifecycle( String.format( "\tDelta to %s: %,d of %,d files changed, %,d bytes (%.1f%% of the package)", previous.getName(), delta.getChangedFiles(), count, deltaFile.length(), 100.0 * deltaFile.length() / Math.max( 1, target.length() ) ) );
+        }
+    }
+
+    /**
+     * execute the command to generate the Debian package
+     */
+    private void createDebianPackage() {
+        ArrayList<String> command = new ArrayList<>();
+        command.add( "fakeroot" );
+        command.add( "dpkg-deb" );
+        command.add( "-Z" + task.getCompression() );
+        command.add( "-z" + task.getCompressionLevel() );
+        command.add( "--build" );
+        command.add( buildDir.getAbsolutePath() );
+        command.add( setup.getDestinationDir().getAbsolutePath() + "/" + setup.getArchiveName() + "." + task.getExtension() );
+        long start = System.currentTimeMillis();
+        exec( command );
+        long millis = System.currentTimeMillis() - start;
+        long size = task.getManifest().getTotalSize();
+        long packageSize = new File( command.get( command.size() - 1 ) ).length();
+        task.getProject().getLogger().lifecycle( String.format( "\tPayload %s -%d: %,d bytes of files to a package of %,d bytes (%.1f%%) in %,d ms", task.getCompression(), task.getCompressionLevel(), size, packageSize, 100.0 * packageSize / Math.max( 1, size ), millis ) );
+    }
+
 }
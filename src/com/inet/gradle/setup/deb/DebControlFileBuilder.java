@@ -95,7 +95,7 @@ class DebControlFileBuilder {
      */
 	private void createControlFile() throws IOException {
 		if(!buildDir.exists()) {
-			buildDir.mkdirs();
+			DebUtils.createDirectories( buildDir );
 		} else if(!buildDir.isDirectory()) {
 			throw new IllegalArgumentException("The buildDir parameter must be a directory!");
 		} 
@@ -214,17 +214,7 @@ class DebControlFileBuilder {
 		
 		String installSize = deb.getInstallSize();
 		if(installSize == null || installSize.length() == 0) {
-			long fileSize = 0;
-			for (File file : deb.getSetupSource().getFiles()) {
-				if(file.isFile()) {
-					fileSize = fileSize + file.length();
-				}
-			}
-			for (File file : deb.getSource().getFiles()) {
-				if(file.isFile()) {
-					fileSize = fileSize + file.length();
-				}
-			}	
+			long fileSize = deb.getManifest().getTotalSize();
 			
 			installSize = String.valueOf(fileSize/1024); // Size wird in KB angegeben und nicht in Bytes
 			
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.deb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.inet.gradle.setup.util.ArReader;
+import com.inet.gradle.setup.util.ArWriter;
+import com.inet.gradle.setup.util.CompressionUtils;
+import com.inet.gradle.setup.util.DigestUtils;
+import com.inet.gradle.setup.util.TarReader;
+import com.inet.gradle.setup.util.TarWriter;
+
+/**
+ * Create and apply binary deltas between two releases of a Debian package. The delta is computed from the md5sums of
+ * both packages. Files that are contained in the old package, also with another path, are not saved in the delta.
+ * The delta is applied to the old package file and not to the installed files, the target hosts must keep the file of
+ * the previous release. The tool requires only Java and can be executed on the target hosts with:
+ *
+ * <pre>
+ * java -cp SetupBuilder.jar com.inet.gradle.setup.deb.DebDelta apply old.deb new.deb.delta new.deb
+ * java -cp SetupBuilder.jar com.inet.gradle.setup.deb.DebDelta create old.deb new.deb new.deb.delta [compressionLevel]
+ * </pre>
+ *
+ * The delta is an ar archive with the members:
+ * <ol>
+ * <li><tt>delta-info</tt>: the lines "Format: 1", "Old-Size", "Old-MD5", "New-Size", "New-MD5" and
+ * "Compression-Level".</li>
+ * <li>all members of the new package in its order with the same name, time and mode. The members are saved
+ * unchanged, only the content of the data archive member (data.tar.*) is replaced with the index of the data archive.
+ * </li>
+ * <li><tt>delta-data.gz</tt>: the gzip compressed content of all new files in the order of the index.</li>
+ * </ol>
+ * The index has a line for every entry of the data archive in its order. The mode is octal, the time in seconds:
+ * <ul>
+ * <li><tt>D mode time path</tt>: a directory</li>
+ * <li><tt>O mode time size md5 path</tt>: a file that is contained in the old package with this MD5</li>
+ * <li><tt>N mode time size md5 path</tt>: a file with the next size bytes of delta-data.gz</li>
+ * </ul>
+ * The data archive is written again with the compression of its member name. The content of every file is verified.
+ * The result is byte identical to the new package if it was compressed with gzip by the Java packager.
+ */
+public class DebDelta {
+
+    private static final String FORMAT  = "1";
+
+    private static final String INFO    = "delta-info";
+
+    private static final String DATA    = "delta-data.gz";
+
+    private static final int    AR_MODE = 0100644;
+
+    private int                 unchangedFiles;
+
+    private int                 changedFiles;
+
+    /**
+     * Entry point for the command line.
+     *
+     * @param args "create old.deb new.deb delta [compressionLevel]" or "apply old.deb delta new.deb"
+     * @throws IOException if any I/O error occur
+     */
+    public static void main( String[] args ) throws IOException {
+        if( (args.length == 4 || args.length == 5) && args[0].equals( "create" ) ) {
+            DebDelta delta = new DebDelta();
+            delta.create( new File( args[1] ), new File( args[2] ), new File( args[3] ), args.length == 5 ? Integer.parseInt( args[4] ) : 6 );
+            System.out.println( delta.getChangedFiles() + " changed files, " + delta.getUnchangedFiles() + " unchanged files" );
+        } else if( args.length == 4 && args[0].equals( "apply" ) ) {
+            boolean identical = new DebDelta().apply( new File( args[1] ), new File( args[2] ), new File( args[3] ) );
+            if( !identical ) {
+                System.out.println( "The content was verified. The package is not byte identical to the original because the original was written with another tar or compressor." );
+            }
+        } else {
+            System.err.println( "Usage: DebDelta create <old.deb> <new.deb> <delta> [compressionLevel]" );
+            System.err.println( "       DebDelta apply <old.deb> <delta> <new.deb>" );
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * Create a delta.
+     *
+     * @param oldDeb the previous release
+     * @param newDeb the new release
+     * @param delta the delta file that should be created
+     * @param compressionLevel the compression level of the data archive of the new package
+     * @throws IOException if any I/O error occur
+     */
+    public void create( File oldDeb, File newDeb, File delta, int compressionLevel ) throws IOException {
+        Set<String> oldDigests = new HashSet<>( new DebReader( oldDeb ).readMd5sums().values() );
+        Map<String, String> newDigests = new DebReader( newDeb ).readMd5sums();
+        unchangedFiles = changedFiles = 0;
+
+        List<Member> members = new ArrayList<>();
+        File dataFile = new File( delta.getPath() + ".tmp" );
+        try {
+            OutputStream data = new GZIPOutputStream( new BufferedOutputStream( new FileOutputStream( dataFile ) ), 65536 );
+            try( ArReader ar = new ArReader( newDeb ) ) {
+                for( String name = ar.next(); name != null; name = ar.next() ) {
+                    byte[] content;
+                    if( name.startsWith( "data.tar" ) ) {
+                        try( TarReader tar = new TarReader( DebUtils.decompress( name, ar.getInputStream() ) ) ) {
+                            content = createIndex( tar, oldDigests, newDigests, data );
+                        }
+                    } else {
+                        content = ar.readContent();
+                    }
+                    members.add( new Member( name, ar.getLastModified(), ar.getMode(), content ) );
+                }
+            } finally {
+                data.close();
+            }
+
+            StringBuilder info = new StringBuilder();
+            info.append( "Format: " ).append( FORMAT ).append( '\n' );
+            info.append( "Old-Size: " ).append( oldDeb.length() ).append( '\n' );
+            info.append( "Old-MD5: " ).append( DigestUtils.digest( oldDeb, "MD5" ) ).append( '\n' );
+            info.append( "New-Size: " ).append( newDeb.length() ).append( '\n' );
+            info.append( "New-MD5: " ).append( DigestUtils.digest( newDeb, "MD5" ) ).append( '\n' );
+            info.append( "Compression-Level: " ).append( compressionLevel ).append( '\n' );
+
+            long time = newDeb.lastModified();
+            try( ArWriter ar = new ArWriter( delta ) ) {
+                ar.addMember( INFO, time, AR_MODE, info.toString().getBytes( StandardCharsets.UTF_8 ) );
+                for( Member member : members ) {
+                    ar.addMember( member.name, member.lastModified, member.mode, member.content );
+                }
+                try( OutputStream member = ar.addMember( DATA, time, AR_MODE ) ) {
+                    Files.copy( dataFile.toPath(), member );
+                }
+            }
+        } finally {
+            Files.deleteIfExists( dataFile.toPath() );
+        }
+    }
+
+    /**
+     * Create the index of the data archive and write the content of all new files.
+     *
+     * @param tar the data archive of the new package
+     * @param oldDigests the digests of all files of the old package
+     * @param newDigests the digests of the new package from its md5sums
+     * @param data the stream for the content of the new files
+     * @return the index
+     * @throws IOException if any I/O error occur
+     */
+    private byte[] createIndex( TarReader tar, Set<String> oldDigests, Map<String, String> newDigests, OutputStream data ) throws IOException {
+        StringBuilder index = new StringBuilder();
+        byte[] buffer = new byte[65536];
+        while( tar.next() ) {
+            String path = tar.getPath();
+            String mode = Integer.toOctalString( tar.getMode() );
+            long time = tar.getLastModified() / 1000;
+            if( tar.isDirectory() ) {
+                index.append( "D " ).append( mode ).append( ' ' ).append( time ).append( ' ' ).append( path ).append( '\n' );
+            } else if( tar.isFile() ) {
+                String md5 = newDigests.get( DebReader.toRelative( path ) );
+                char type;
+                if( md5 != null && oldDigests.contains( md5 ) ) {
+                    type = 'O';
+                    unchangedFiles++;
+                } else {
+                    MessageDigest digest = DigestUtils.newDigest( "MD5" );
+                    try( InputStream input = new DigestInputStream( tar.getInputStream(), digest ) ) {
+                        int count;
+                        while( (count = input.read( buffer )) > 0 ) {
+                            data.write( buffer, 0, count );
+                        }
+                    }
+                    md5 = DigestUtils.toHex( digest );
+                    type = 'N';
+                    changedFiles++;
+                }
+                index.append( type ).append( ' ' ).append( mode ).append( ' ' ).append( time ).append( ' ' ).append( tar.getSize() ).append( ' ' ).append( md5 ).append( ' ' ).append( path ).append( '\n' );
+            } else {
+                throw new IOException( "Unsupported entry type '" + tar.getType() + "' in the data archive: " + path );
+            }
+        }
+        return index.toString().getBytes( StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Apply a delta and create the new package.
+     *
+     * @param oldDeb the previous release
+     * @param delta the delta file
+     * @param newDeb the package file that should be created
+     * @return true, if the result is byte identical to the original package. Else only the content is identical.
+     * @throws IOException if any I/O error occur or if the delta does not match the old package
+     */
+    public boolean apply( File oldDeb, File delta, File newDeb ) throws IOException {
+        Map<String, String> info = new HashMap<>();
+        List<Member> members = new ArrayList<>();
+        try( ArReader ar = new ArReader( delta ) ) {
+            for( String name = ar.next(); name != null; name = ar.next() ) {
+                if( name.equals( INFO ) ) {
+                    for( String line : new String( ar.readContent(), StandardCharsets.UTF_8 ).split( "\n" ) ) {
+                        int idx = line.indexOf( ": " );
+                        if( idx > 0 ) {
+                            info.put( line.substring( 0, idx ), line.substring( idx + 2 ) );
+                        }
+                    }
+                } else if( !name.equals( DATA ) ) {
+                    members.add( new Member( name, ar.getLastModified(), ar.getMode(), ar.readContent() ) );
+                }
+            }
+        }
+        if( !FORMAT.equals( info.get( "Format" ) ) ) {
+            throw new IOException( "Unsupported delta format: " + info.get( "Format" ) );
+        }
+        if( !Long.toString( oldDeb.length() ).equals( info.get( "Old-Size" ) ) || !DigestUtils.digest( oldDeb, "MD5" ).equals( info.get( "Old-MD5" ) ) ) {
+            throw new IOException( "The delta was not created for the package: " + oldDeb );
+        }
+        int level = Integer.parseInt( info.get( "Compression-Level" ) );
+
+        File tempDir = new File( newDeb.getPath() + ".tmp" );
+        try {
+            List<String[]> index = null;
+            for( Member member : members ) {
+                if( member.name.startsWith( "data.tar" ) ) {
+                    index = parseIndex( member.content );
+                }
+            }
+            if( index == null ) {
+                throw new IOException( "No data archive in the delta: " + delta );
+            }
+            extractOldFiles( oldDeb, index, tempDir );
+
+            try( ArReader deltaData = new ArReader( delta ) ) {
+                while( !DATA.equals( deltaData.next() ) ) {
+                    if( deltaData.getName() == null ) {
+                        throw new IOException( "No " + DATA + " in the delta: " + delta );
+                    }
+                }
+                InputStream data = new GZIPInputStream( deltaData.getInputStream(), 65536 );
+                try( ArWriter ar = new ArWriter( newDeb ) ) {
+                    for( Member member : members ) {
+                        if( member.name.startsWith( "data.tar" ) ) {
+                            String compression = DebUtils.getCompression( member.name );
+                            OutputStream out = CompressionUtils.compress( ar.addMember( member.name, member.lastModified, member.mode ), compression, level, Runtime.getRuntime().availableProcessors(), new File( tempDir, compression + ".log" ) );
+                            try( TarWriter tar = new TarWriter( out ) ) {
+                                writeData( tar, index, tempDir, data );
+                            }
+                        } else {
+                            ar.addMember( member.name, member.lastModified, member.mode, member.content );
+                        }
+                    }
+                }
+            }
+        } finally {
+            File[] files = tempDir.listFiles();
+            if( files != null ) {
+                for( File file : files ) {
+                    Files.delete( file.toPath() );
+                }
+            }
+            Files.deleteIfExists( tempDir.toPath() );
+        }
+        return Long.toString( newDeb.length() ).equals( info.get( "New-Size" ) ) && DigestUtils.digest( newDeb, "MD5" ).equals( info.get( "New-MD5" ) );
+    }
+
+    /**
+     * Parse the index of the data archive.
+     *
+     * @param content the content of the index
+     * @return the lines split into the fields
+     * @throws IOException if the index is invalid
+     */
+    private static List<String[]> parseIndex( byte[] content ) throws IOException {
+        List<String[]> index = new ArrayList<>();
+        for( String line : new String( content, StandardCharsets.UTF_8 ).split( "\n" ) ) {
+            if( line.isEmpty() ) {
+                continue;
+            }
+            String[] fields = line.split( " ", line.charAt( 0 ) == 'D' ? 4 : 6 );
+            if( fields.length != (line.charAt( 0 ) == 'D' ? 4 : 6) ) {
+                throw new IOException( "Invalid line in the delta index: " + line );
+            }
+            index.add( fields );
+        }
+        return index;
+    }
+
+    /**
+     * Extract the files of the old package that are referenced in the index. Every file is saved once with its MD5 as
+     * name.
+     *
+     * @param oldDeb the previous release
+     * @param index the index
+     * @param tempDir the directory for the files
+     * @throws IOException if any I/O error occur or a file is missing in the old package
+     */
+    private static void extractOldFiles( File oldDeb, List<String[]> index, File tempDir ) throws IOException {
+        Set<String> required = new HashSet<>();
+        for( String[] fields : index ) {
+            if( fields[0].equals( "O" ) ) {
+                required.add( fields[4] );
+            }
+        }
+        tempDir.mkdirs();
+        DebReader reader = new DebReader( oldDeb );
+        Map<String, String> oldDigests = reader.readMd5sums();
+        try( TarReader tar = reader.openData() ) {
+            while( !required.isEmpty() && tar.next() ) {
+                String md5 = oldDigests.get( DebReader.toRelative( tar.getPath() ) );
+                if( tar.isFile() && md5 != null && required.remove( md5 ) ) {
+                    MessageDigest digest = DigestUtils.newDigest( "MD5" );
+                    try( InputStream input = new DigestInputStream( tar.getInputStream(), digest ) ) {
+                        Files.copy( input, new File( tempDir, md5 ).toPath() );
+                    }
+                    if( !md5.equals( DigestUtils.toHex( digest ) ) ) {
+                        throw new IOException( "The MD5 of the file in the old package does not match its md5sums: " + tar.getPath() );
+                    }
+                }
+            }
+        }
+        if( !required.isEmpty() ) {
+            throw new IOException( required.size() + " files are missing in the old package: " + oldDeb );
+        }
+    }
+
+    /**
+     * Write the entries of the data archive.
+     *
+     * @param tar the new data archive
+     * @param index the index
+     * @param tempDir the directory with the files of the old package
+     * @param data the content of the new files
+     * @throws IOException if any I/O error occur or the content does not match
+     */
+    private static void writeData( TarWriter tar, List<String[]> index, File tempDir, InputStream data ) throws IOException {
+        for( String[] fields : index ) {
+            int mode = Integer.parseInt( fields[1], 8 );
+            long lastModified = Long.parseLong( fields[2] ) * 1000;
+            if( fields[0].equals( "D" ) ) {
+                tar.addDirectory( fields[3], mode, lastModified );
+                continue;
+            }
+            long size = Long.parseLong( fields[3] );
+            String md5 = fields[4];
+            String path = fields[5];
+            MessageDigest digest = DigestUtils.newDigest( "MD5" );
+            if( fields[0].equals( "O" ) ) {
+                try( InputStream input = new DigestInputStream( new FileInputStream( new File( tempDir, md5 ) ), digest ) ) {
+                    tar.addFile( path, mode, lastModified, size, input );
+                }
+            } else {
+                tar.addFile( path, mode, lastModified, size, new DigestInputStream( limit( data, size ), digest ) );
+            }
+            if( !md5.equals( DigestUtils.toHex( digest ) ) ) {
+                throw new IOException( "The MD5 of the file does not match the delta: " + path );
+            }
+        }
+    }
+
+    /**
+     * Limit a stream to the next bytes.
+     *
+     * @param input the stream
+     * @param size the count of bytes
+     * @return the limited stream, closing it does not close the original stream
+     */
+    private static InputStream limit( InputStream input, long size ) {
+        return new InputStream() {
+            private long remaining = size;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                if( remaining <= 0 ) {
+                    return -1;
+                }
+                int count = input.read( b, off, (int)Math.min( len, remaining ) );
+                if( count > 0 ) {
+                    remaining -= count;
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Get the count of files of the last created delta that are taken from the old package.
+     *
+     * @return the count
+     */
+    public int getUnchangedFiles() {
+        return unchangedFiles;
+    }
+
+    /**
+     * Get the count of files of the last created delta that are saved in the delta.
+     *
+     * @return the count
+     */
+    public int getChangedFiles() {
+        return changedFiles;
+    }
+
+    /**
+     * A member of the package that is saved in the delta.
+     */
+    private static class Member {
+
+        private final String name;
+
+        private final long   lastModified;
+
+        private final int    mode;
+
+        private final byte[] content;
+
+        /**
+         * Create a member.
+         *
+         * @param name the name
+         * @param lastModified the time in milliseconds
+         * @param mode the mode
+         * @param content the content
+         */
+        private Member( String name, long lastModified, int mode, byte[] content ) {
+            this.name = name;
+            this.lastModified = lastModified;
+            this.mode = mode;
+            this.content = content;
+        }
+    }
+}
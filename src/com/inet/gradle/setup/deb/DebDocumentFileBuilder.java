@@ -79,9 +79,7 @@ class DebDocumentFileBuilder {
     void copyCopyrightFile() throws FileNotFoundException, IOException {
     	File copyright = new File(buildDir, "copyright");
 		
-		if(!copyright.getParentFile().exists()) {
-			copyright.getParentFile().mkdirs();
-		}
+		DebUtils.createDirectories( copyright.getParentFile() );
 		FileOutputStream fileoutput = null;
 		OutputStreamWriter controlWriter = null;
 		fileoutput = new FileOutputStream(copyright);
@@ -117,9 +115,7 @@ class DebDocumentFileBuilder {
 		try {
 			File changelog = new File(buildDir, "changelog.gz");
 			
-			if(!changelog.getParentFile().exists()) {
-				changelog.getParentFile().mkdirs();
-			}
+			DebUtils.createDirectories( changelog.getParentFile() );
 			
 			fileoutput = new FileOutputStream(changelog);
 			GZIPOutputStream gzipstream = new GZIPOutputStream(fileoutput);
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.deb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Check a Debian package before or after it was written, without lintian. The check works on the control files in the
+ * DEBIAN directory and on the list of the files in the package with its modes. No file of the payload is read, the
+ * digests in the md5sums are calculated from the same read that write the package.
+ */
+class DebPackageValidator {
+
+    private static final Pattern       FIELD_NAME      = Pattern.compile( "[A-Za-z0-9][A-Za-z0-9-]*" );
+
+    private static final Pattern       PACKAGE_NAME    = Pattern.compile( "[a-z0-9][a-z0-9+.-]+" );
+
+    private static final Pattern       VERSION         = Pattern.compile( "(?:[0-9]+:)?[0-9][A-Za-z0-9.+~-]*" );
+
+    private static final Pattern       ARCHITECTURE    = Pattern.compile( "[a-z0-9][a-z0-9-]*" );
+
+    private static final Pattern       MAINTAINER      = Pattern.compile( "[^<>]*[^<>\\s] <[^<>@\\s]+@[^<>\\s]+>" );
+
+    private static final Pattern       MD5SUMS_LINE    = Pattern.compile( "([0-9a-f]{32})  (.+)" );
+
+    private static final List<String>  REQUIRED_FIELDS = Arrays.asList( "Package", "Version", "Architecture", "Maintainer", "Description" );
+
+    private static final List<String>  SCRIPTS         = Arrays.asList( "preinst", "postinst", "prerm", "postrm", "config" );
+
+    private static final List<String>  CONTROL_FILES   = Arrays.asList( "control", "md5sums", "conffiles", "templates", "triggers", "shlibs", "symbols" );
+
+    private static final List<String>  TOP_LEVEL_DIRS  = Arrays.asList( "bin", "boot", "etc", "lib", "lib32", "lib64", "opt", "sbin", "srv", "usr", "var" );
+
+    private static final List<String>  EXEC_DIRS       = Arrays.asList( "bin/", "sbin/", "usr/bin/", "usr/sbin/", "usr/games/", "etc/init.d/" );
+
+    private static final List<String>  NON_EXEC_DIRS   = Arrays.asList( "usr/share/doc/", "usr/share/man/", "usr/share/applications/", "usr/share/icons/" );
+
+    private final File                 controlDir;
+
+    private final Map<String, Integer> files;
+
+    private final List<String>         errors          = new ArrayList<>();
+
+    private final List<String>         warnings        = new ArrayList<>();
+
+    /**
+     * Create a new validator.
+     *
+     * @param controlDir the DEBIAN directory with the control files
+     * @param files the regular files of the package with the path relative to the root without leading slash and its
+     *            mode
+     */
+    DebPackageValidator( File controlDir, Map<String, Integer> files ) {
+        this.controlDir = controlDir;
+        this.files = files;
+    }
+
+    /**
+     * Run all checks. The results can be requested with {@link #getErrors()} and {@link #getWarnings()}.
+     *
+     * @throws IOException if a control file can't be read
+     */
+    void validate() throws IOException {
+        String packageName = checkControl();
+        checkMd5sums();
+        checkConffiles();
+        checkScripts();
+        checkFiles( packageName );
+    }
+
+    /**
+     * Get the found errors. A package with errors should not be published.
+     *
+     * @return the errors
+     */
+    List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Get the found warnings.
+     *
+     * @return the warnings
+     */
+    List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Check the syntax and the required fields of the control file.
+     *
+     * @return the package name or null
+     * @throws IOException if the control file can't be read
+     */
+    private String checkControl() throws IOException {
+        String content = read( "control" );
+        if( content == null ) {
+            errors.add( "control: the control file is missing" );
+            return null;
+        }
+        if( !content.endsWith( "\n" ) ) {
+            errors.add( "control: the last line has no line break" );
+        }
+        Map<String, String> fields = new LinkedHashMap<>();
+        String field = null;
+        int lineNumber = 0;
+        for( String line : content.split( "\n" ) ) {
+            lineNumber++;
+            if( line.isEmpty() ) {
+                errors.add( "control: empty line " + lineNumber );
+            } else if( line.charAt( 0 ) == ' ' || line.charAt( 0 ) == '\t' ) {
+                if( field == null ) {
+                    errors.add( "control: continuation line " + lineNumber + " without field" );
+                } else if( line.trim().isEmpty() ) {
+                    errors.add( "control: blank continuation line " + lineNumber + " in field " + field + ", use ' .' for an empty line" );
+                } else {
+                    fields.put( field, fields.get( field ) + '\n' + line );
+                }
+            } else {
+                int idx = line.indexOf( ':' );
+                if( idx <= 0 || !FIELD_NAME.matcher( line.substring( 0, idx ) ).matches() ) {
+                    errors.add( "control: invalid line " + lineNumber + ": " + line );
+                    field = null;
+                    continue;
+                }
+                field = line.substring( 0, idx );
+                if( fields.containsKey( field ) ) {
+                    errors.add( "control: duplicate field " + field );
+                }
+                fields.put( field, line.substring( idx + 1 ).trim() );
+            }
+        }
+
+        for( String name : REQUIRED_FIELDS ) {
+            String value = fields.get( name );
+            if( value == null || value.isEmpty() ) {
+                errors.add( "control: required field " + name + " is missing or empty" );
+            }
+        }
+        String packageName = fields.get( "Package" );
+        checkField( "Package", packageName, PACKAGE_NAME, "lower case letters, digits and + - . with at least 2 characters" );
+        checkField( "Version", fields.get( "Version" ), VERSION, "[epoch:]upstream_version[-debian_revision] starting with a digit" );
+        checkField( "Architecture", fields.get( "Architecture" ), ARCHITECTURE, "a Debian architecture like all or amd64" );
+        checkField( "Maintainer", fields.get( "Maintainer" ), MAINTAINER, "Full Name <email@address>" );
+        String installedSize = fields.get( "Installed-Size" );
+        if( installedSize != null && !installedSize.matches( "[0-9]+" ) ) {
+            errors.add( "control: Installed-Size must be a number of KiB: " + installedSize );
+        }
+        String description = fields.get( "Description" );
+        if( description != null && !description.isEmpty() ) {
+            String synopsis = description.split( "\n" )[0];
+            if( synopsis.isEmpty() ) {
+                errors.add( "control: Description has no synopsis in the first line" );
+            } else if( synopsis.length() > 80 ) {
+                warnings.add( "control: the synopsis of the Description is longer than 80 characters" );
+            }
+        }
+        return packageName;
+    }
+
+    /**
+     * Check the value of a single line field.
+     *
+     * @param name the name of the field
+     * @param value the value or null
+     * @param pattern the valid syntax
+     * @param syntax description of the syntax for the message
+     */
+    private void checkField( String name, String value, Pattern pattern, String syntax ) {
+        if( value != null && !value.isEmpty() && !pattern.matcher( value ).matches() ) {
+            errors.add( "control: invalid " + name + " '" + value + "', expected is " + syntax );
+        }
+    }
+
+    /**
+     * Check that the md5sums list exactly the files of the package.
+     *
+     * @throws IOException if the md5sums can't be read
+     */
+    private void checkMd5sums() throws IOException {
+        String content = read( "md5sums" );
+        if( content == null ) {
+            warnings.add( "md5sums: the control file md5sums is missing" );
+            return;
+        }
+        Set<String> listed = new HashSet<>();
+        for( String line : content.split( "\n" ) ) {
+            if( line.isEmpty() ) {
+                continue;
+            }
+            Matcher matcher = MD5SUMS_LINE.matcher( line );
+            if( !matcher.matches() ) {
+                errors.add( "md5sums: invalid line: " + line );
+                continue;
+            }
+            String path = matcher.group( 2 );
+            if( !listed.add( path ) ) {
+                errors.add( "md5sums: duplicate entry " + path );
+            } else if( !files.containsKey( path ) ) {
+                errors.add( "md5sums: listed file is not in the package: " + path );
+            }
+        }
+        for( String path : files.keySet() ) {
+            if( !listed.contains( path ) ) {
+                warnings.add( "md5sums: file is not listed: " + path );
+            }
+        }
+    }
+
+    /**
+     * Check that all configuration files exist in the package.
+     *
+     * @throws IOException if the conffiles can't be read
+     */
+    private void checkConffiles() throws IOException {
+        String content = read( "conffiles" );
+        if( content == null ) {
+            return;
+        }
+        Set<String> listed = new HashSet<>();
+        for( String line : content.split( "\n" ) ) {
+            if( line.isEmpty() ) {
+                continue;
+            }
+            if( !line.startsWith( "/" ) ) {
+                errors.add( "conffiles: path must be absolute: " + line );
+                continue;
+            }
+            String path = line.substring( 1 );
+            if( !listed.add( path ) ) {
+                errors.add( "conffiles: duplicate entry " + line );
+            } else if( !files.containsKey( path ) ) {
+                errors.add( "conffiles: configuration file is not in the package: " + line );
+            } else if( !path.startsWith( "etc/" ) ) {
+                warnings.add( "conffiles: configuration file is not in /etc: " + line );
+            }
+        }
+    }
+
+    /**
+     * Check the maintainer scripts and the permissions of all control files.
+     *
+     * @throws IOException if a control file can't be read
+     */
+    private void checkScripts() throws IOException {
+        File[] controlFiles = controlDir.listFiles();
+        if( controlFiles == null ) {
+            return;
+        }
+        for( File file : controlFiles ) {
+            String name = file.getName();
+            boolean executable = Files.getPosixFilePermissions( file.toPath() ).contains( PosixFilePermission.OWNER_EXECUTE );
+            if( SCRIPTS.contains( name ) ) {
+                if( !executable ) {
+                    errors.add( name + ": maintainer script is not executable" );
+                }
+                String content = read( name );
+                if( !content.startsWith( "#!" ) ) {
+                    errors.add( name + ": maintainer script has no #! line" );
+                } else {
+                    String interpreter = content.substring( 2, Math.max( 2, content.indexOf( '\n' ) ) ).trim();
+                    if( !interpreter.startsWith( "/" ) ) {
+                        errors.add( name + ": maintainer script has no absolute interpreter path: #!" + interpreter );
+                    }
+                }
+                if( content.indexOf( '\r' ) >= 0 ) {
+                    errors.add( name + ": maintainer script has Windows line breaks" );
+                }
+            } else if( !CONTROL_FILES.contains( name ) ) {
+                warnings.add( name + ": unknown control file" );
+            } else if( executable ) {
+                warnings.add( name + ": control file should not be executable" );
+            }
+        }
+    }
+
+    /**
+     * Check the permissions and the directory layout of the files of the package.
+     *
+     * @param packageName the name of the package or null
+     */
+    private void checkFiles( String packageName ) {
+        Set<String> topLevel = new HashSet<>();
+        for( Map.Entry<String, Integer> entry : files.entrySet() ) {
+            String path = entry.getKey();
+            int mode = entry.getValue();
+            int idx = path.indexOf( '/' );
+            if( idx < 0 ) {
+                errors.add( "layout: file in the root directory: /" + path );
+            } else {
+                String dir = path.substring( 0, idx );
+                if( !TOP_LEVEL_DIRS.contains( dir ) && topLevel.add( dir ) ) {
+                    warnings.add( "layout: non-standard directory in the root directory: /" + dir );
+                }
+            }
+            if( path.startsWith( "usr/local/" ) ) {
+                errors.add( "layout: file in /usr/local: /" + path );
+            }
+
+            if( (mode & 0002) != 0 ) {
+                errors.add( "permissions: file is world writable: /" + path + " " + Integer.toOctalString( mode ) );
+            }
+            if( (mode & 06000) != 0 ) {
+                warnings.add( "permissions: file is setuid or setgid: /" + path + " " + Integer.toOctalString( mode ) );
+            }
+            if( (mode & 0444) != 0444 ) {
+                warnings.add( "permissions: file is not readable for all: /" + path + " " + Integer.toOctalString( mode ) );
+            }
+            boolean executable = (mode & 0111) != 0;
+            if( !executable && startsWith( path, EXEC_DIRS ) ) {
+                errors.add( "permissions: file is not executable: /" + path + " " + Integer.toOctalString( mode ) );
+            }
+            if( executable && startsWith( path, NON_EXEC_DIRS ) ) {
+                warnings.add( "permissions: file should not be executable: /" + path + " " + Integer.toOctalString( mode ) );
+            }
+        }
+        if( packageName != null && !files.containsKey( "usr/share/doc/" + packageName + "/copyright" ) ) {
+            warnings.add( "layout: the copyright file /usr/share/doc/" + packageName + "/copyright is missing" );
+        }
+    }
+
+    /**
+     * If the path starts with one of the directories.
+     *
+     * @param path the path
+     * @param dirs the directories with trailing slash
+     * @return true, if the path is in one of the directories
+     */
+    private static boolean startsWith( String path, List<String> dirs ) {
+        for( String dir : dirs ) {
+            if( path.startsWith( dir ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read a control file.
+     *
+     * @param name the name of the control file
+     * @return the content or null if the file not exists
+     * @throws IOException if the file can't be read
+     */
+    private String read( String name ) throws IOException {
+        File file = new File( controlDir, name );
+        if( !file.isFile() ) {
+            return null;
+        }
+        return new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 );
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.deb;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.inet.gradle.setup.FileManifest;
+import com.inet.gradle.setup.FilePermissions;
+import com.inet.gradle.setup.util.ArWriter;
+import com.inet.gradle.setup.util.CompressionUtils;
+import com.inet.gradle.setup.util.CountingOutputStream;
+import com.inet.gradle.setup.util.DigestUtils;
+import com.inet.gradle.setup.util.TarWriter;
+
+/**
+ * Write a Debian package without dpkg-deb and fakeroot. The files of the setup are read directly from the manifest of
+ * the task and are not staged. The files that the builder has generated are read from the build directory. All files
+ * are owned by root, the permissions are set in the tar headers.
+ */
+class DebPackageWriter {
+
+    private static final int               AR_MODE   = 0100644;
+
+    private static final int               DIR_MODE  = 0755;
+
+    private static final int               EXEC_MODE = 0755;
+
+    private static final int               FILE_MODE = 0644;
+
+    private final Deb                      deb;
+
+    private final File                     buildDir;
+
+    private final long                     time      = System.currentTimeMillis();
+
+    private long                           bytesRead;
+
+    private final Map<String, String>      digests   = new HashMap<>();
+
+    private final TreeMap<String, Integer> files     = new TreeMap<>();
+
+    /**
+     * Create a new writer.
+     *
+     * @param deb the task
+     * @param buildDir the directory with the generated files and the control files in the sub directory DEBIAN
+     */
+    DebPackageWriter( Deb deb, File buildDir ) {
+        this.deb = deb;
+        this.buildDir = buildDir;
+    }
+
+    /**
+     * Write the package.
+     *
+     * @param target the package file
+     * @throws IOException if any I/O error occur
+     */
+    void write( File target ) throws IOException {
+        target.getParentFile().mkdirs();
+        // dpkg requires the control archive before the data archive, but the md5sums are known only after the data was
+        // written. That the files are not read twice the compressed data archive is written to a temporary file.
+        File dataFile = new File( target.getPath() + ".data" );
+        try {
+            String compression = deb.getCompression();
+            long start = System.currentTimeMillis();
+            CountingOutputStream data = new CountingOutputStream( compress( new BufferedOutputStream( new FileOutputStream( dataFile ), 65536 ) ) );
+            try( TarWriter tar = new TarWriter( data ) ) {
+                writeData( tar );
+            }
+            long millis = System.currentTimeMillis() - start;
+            long compressed = dataFile.length();
+            deb.getProject().getLogger().lifecycle( String.format( "\tPayload %s -%d: %,d bytes to %,d bytes (%.1f%%) in %,d ms", compression, deb.getCompressionLevel(), data.getCount(), compressed, 100.0 * compressed / Math.max( 1, data.getCount() ), millis ) );
+
+            // the md5sums are written to the DEBIAN directory like all other control files, so that they can be checked
+            File md5sums = new File( buildDir, "DEBIAN/md5sums" );
+            DebUtils.createDirectories( md5sums.getParentFile() );
+            Files.write( md5sums.toPath(), DebUtils.createMd5sums( digests ).getBytes( StandardCharsets.UTF_8 ) );
+
+            try( ArWriter ar = new ArWriter( target ) ) {
+                ar.addMember( "debian-binary", time, AR_MODE, "2.0\n".getBytes( StandardCharsets.US_ASCII ) );
+
+                ByteArrayOutputStream control = new ByteArrayOutputStream();
+                // the control archive is always gzip, the level of the payload codec can be out of the range of Deflater
+                try( TarWriter tar = new TarWriter( gzip( control, Deflater.BEST_COMPRESSION ) ) ) {
+                    writeControl( tar );
+                }
+                ar.addMember( "control.tar.gz", time, AR_MODE, control.toByteArray() );
+
+                try( OutputStream member = ar.addMember( "data.tar" + DebUtils.getExtension( compression ), time, AR_MODE ) ) {
+                    Files.copy( dataFile.toPath(), member );
+                }
+            }
+        } finally {
+            Files.deleteIfExists( dataFile.toPath() );
+        }
+    }
+
+    /**
+     * Create the stream that compress the payload with the codec of the task.
+     *
+     * @param out the target stream
+     * @return the compressing stream
+     * @throws IOException if any I/O error occur
+     */
+    private OutputStream compress( OutputStream out ) throws IOException {
+        String compression = deb.getCompression();
+        return CompressionUtils.compress( out, compression, deb.getCompressionLevel(), deb.getCompressionThreads(), new File( deb.getProcessLogDir(), compression + ".log" ) );
+    }
+
+    /**
+     * Get the count of bytes that was read from the files of the package.
+     *
+     * @return the bytes
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Get the regular files of the written package.
+     *
+     * @return map from the path relative to the root without leading slash to the mode
+     */
+    Map<String, Integer> getFiles() {
+        return files;
+    }
+
+    /**
+     * Write the control archive with the files of the DEBIAN directory.
+     *
+     * @param tar the archive
+     * @throws IOException if any I/O error occur
+     */
+    private void writeControl( TarWriter tar ) throws IOException {
+        tar.addDirectory( "./", DIR_MODE, time );
+        File[] files = new File( buildDir, "DEBIAN" ).listFiles();
+        if( files == null ) {
+            return;
+        }
+        TreeMap<String, File> sorted = new TreeMap<>();
+        for( File file : files ) {
+            if( file.isFile() ) {
+                sorted.put( file.getName(), file );
+            }
+        }
+        for( File file : sorted.values() ) {
+            addFile( tar, "./" + file.getName(), isExecutable( file ) ? EXEC_MODE : FILE_MODE, file );
+        }
+    }
+
+    /**
+     * Write the data archive. The entries are sorted by path so that every directory is written before its content.
+     *
+     * @param tar the archive
+     * @throws IOException if any I/O error occur
+     */
+    private void writeData( TarWriter tar ) throws IOException {
+        // value is a FileManifest.Entry, a File or null for a directory
+        TreeMap<String, Object> entries = new TreeMap<>();
+
+        FilePermissions permissions = deb.getSetupBuilder().getPermissions();
+        String root = "." + deb.getInstallationRoot();
+        addDirectories( entries, root );
+        for( FileManifest.Entry entry : deb.getManifest().getEntries() ) {
+            String path = root + '/' + entry.getPath();
+            if( entry.isDirectory() ) {
+                addDirectories( entries, path );
+            }
+        }
+        for( FileManifest.Entry entry : deb.getManifest().getFiles() ) {
+            String path = root + '/' + entry.getPath();
+            addDirectories( entries, path.substring( 0, path.lastIndexOf( '/' ) ) );
+            entries.put( path, entry );
+        }
+        File[] generated = buildDir.listFiles();
+        if( generated != null ) {
+            for( File file : generated ) {
+                if( !file.getName().equals( "DEBIAN" ) ) {
+                    addGenerated( entries, "./" + file.getName(), file );
+                }
+            }
+        }
+
+        tar.addDirectory( "./", DIR_MODE, time );
+        for( Map.Entry<String, Object> entry : entries.entrySet() ) {
+            String path = entry.getKey();
+            Object value = entry.getValue();
+            if( value == null ) {
+                tar.addDirectory( path, DIR_MODE, time );
+            } else if( value instanceof File ) {
+                File file = (File)value;
+                int mode = isExecutable( file ) ? EXEC_MODE : FILE_MODE;
+                files.put( path.substring( 2 ), mode );
+                digests.put( path.substring( 2 ), addFile( tar, path, mode, file ) );
+            } else {
+                FileManifest.Entry file = (FileManifest.Entry)value;
+                int mode = permissions.getMode( file.getPath() );
+                files.put( path.substring( 2 ), mode );
+                File source = file.getSource();
+                if( source != null ) {
+                    digests.put( path.substring( 2 ), addFile( tar, path, mode, source ) );
+                } else {
+                    // the filtered content was read in the copy walk and is served from memory
+                    digests.put( path.substring( 2 ), addFile( tar, path, mode, file.getLastModified(), file.getSize(), file.open() ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a directory and all its parent directories.
+     *
+     * @param entries the entries of the archive
+     * @param path the path of the directory, starting with "./"
+     */
+    private static void addDirectories( TreeMap<String, Object> entries, String path ) {
+        while( path.length() > 1 && !entries.containsKey( path ) ) {
+            entries.put( path, null );
+            path = path.substring( 0, path.lastIndexOf( '/' ) );
+        }
+    }
+
+    /**
+     * Add a file or directory that was generated by the builder.
+     *
+     * @param entries the entries of the archive
+     * @param path the path in the archive
+     * @param file the file or directory
+     */
+    private static void addGenerated( TreeMap<String, Object> entries, String path, File file ) {
+        if( file.isDirectory() ) {
+            entries.put( path, null );
+            for( File child : file.listFiles() ) {
+                addGenerated( entries, path + '/' + child.getName(), child );
+            }
+        } else {
+            entries.put( path, file );
+        }
+    }
+
+    /**
+     * Add a file from the file system. The MD5 digest is calculated while the file is read.
+     *
+     * @param tar the archive
+     * @param path the path in the archive
+     * @param mode the permissions
+     * @param file the file
+     * @return the hex MD5 digest of the file
+     * @throws IOException if any I/O error occur
+     */
+    private String addFile( TarWriter tar, String path, int mode, File file ) throws IOException {
+        return addFile( tar, path, mode, file.lastModified(), file.length(), new FileInputStream( file ) );
+    }
+
+    /**
+     * Add the content of a stream. The MD5 digest is calculated while the content is written, so that every file is
+     * read only once.
+     *
+     * @param tar the archive
+     * @param path the path in the archive
+     * @param mode the permissions
+     * @param lastModified the modification time in milliseconds
+     * @param size the size of the content
+     * @param content the content, it is closed
+     * @return the hex MD5 digest of the content
+     * @throws IOException if any I/O error occur
+     */
+    private String addFile( TarWriter tar, String path, int mode, long lastModified, long size, InputStream content ) throws IOException {
+        MessageDigest md = DigestUtils.newDigest( "MD5" );
+        try( InputStream input = new DigestInputStream( content, md ) ) {
+            tar.addFile( path, mode, lastModified, size, input );
+        }
+        bytesRead += size;
+        return DigestUtils.toHex( md );
+    }
+
+    /**
+     * If the executable flag of the owner is set on a generated file.
+     *
+     * @param file the file
+     * @return true, if executable
+     * @throws IOException if the permissions can't be read
+     */
+    private static boolean isExecutable( File file ) throws IOException {
+        return Files.getPosixFilePermissions( file.toPath() ).contains( PosixFilePermission.OWNER_EXECUTE );
+    }
+
+    /**
+     * Create a gzip stream with the given compression level.
+     *
+     * @param out the target stream
+     * @param level the compression level
+     * @return the compressing stream
+     * @throws IOException if any I/O error occur
+     */
+    private static OutputStream gzip( OutputStream out, int level ) throws IOException {
+        return new GZIPOutputStream( out, 65536 ) {
+            {
+                def.setLevel( level );
+            }
+        };
+    }
+}
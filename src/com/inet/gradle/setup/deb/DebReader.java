@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.deb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.inet.gradle.setup.util.ArReader;
+import com.inet.gradle.setup.util.TarReader;
+
+/**
+ * Read the control files and the payload of an existing Debian package. It does not require dpkg and read the
+ * packages of dpkg-deb and of the Java packager.
+ */
+class DebReader {
+
+    private final File file;
+
+    /**
+     * Create a reader for a package file.
+     *
+     * @param file the package
+     */
+    DebReader( File file ) {
+        this.file = file;
+    }
+
+    /**
+     * Read all control files. Only the control archive is read, the payload is skipped.
+     *
+     * @return map from the name of the control file, for example "control" or "md5sums", to the content
+     * @throws IOException if any I/O error occur or the file is not a Debian package
+     */
+    Map<String, byte[]> readControl() throws IOException {
+        Map<String, byte[]> control = new HashMap<>();
+        try( ArReader ar = new ArReader( file ) ) {
+            for( String name = ar.next(); name != null; name = ar.next() ) {
+                if( name.startsWith( "control.tar" ) ) {
+                    TarReader tar = new TarReader( DebUtils.decompress( name, ar.getInputStream() ) );
+                    try {
+                        while( tar.next() ) {
+                            if( tar.isFile() ) {
+                                ByteArrayOutputStream content = new ByteArrayOutputStream( (int)tar.getSize() );
+                                InputStream input = tar.getInputStream();
+                                byte[] buffer = new byte[8192];
+                                int count;
+                                while( (count = input.read( buffer )) > 0 ) {
+                                    content.write( buffer, 0, count );
+                                }
+                                control.put( toRelative( tar.getPath() ), content.toByteArray() );
+                            }
+                        }
+                    } finally {
+                        tar.close();
+                    }
+                    return control;
+                }
+            }
+        }
+        throw new IOException( "No control archive in the Debian package: " + file );
+    }
+
+    /**
+     * Read the digests of the control file md5sums.
+     *
+     * @return map from the path relative to the root without leading slash to the hex MD5 digest, empty if the package
+     *         has no md5sums
+     * @throws IOException if any I/O error occur or the file is not a Debian package
+     */
+    Map<String, String> readMd5sums() throws IOException {
+        return parseMd5sums( readControl().get( "md5sums" ) );
+    }
+
+    /**
+     * Parse the content of the control file md5sums.
+     *
+     * @param md5sums the content or null
+     * @return map from the path relative to the root without leading slash to the hex MD5 digest
+     */
+    static Map<String, String> parseMd5sums( byte[] md5sums ) {
+        Map<String, String> digests = new HashMap<>();
+        if( md5sums != null ) {
+            for( String line : new String( md5sums, StandardCharsets.UTF_8 ).split( "\n" ) ) {
+                int idx = line.indexOf( "  " );
+                if( idx > 0 ) {
+                    digests.put( toRelative( line.substring( idx + 2 ) ), line.substring( 0, idx ) );
+                }
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * Open the payload of the package. The returned reader must be closed.
+     *
+     * @return the reader for the decompressed data archive
+     * @throws IOException if any I/O error occur or the file is not a Debian package
+     */
+    TarReader openData() throws IOException {
+        ArReader ar = new ArReader( file );
+        try {
+            for( String name = ar.next(); name != null; name = ar.next() ) {
+                if( name.startsWith( "data.tar" ) ) {
+                    InputStream data = DebUtils.decompress( name, ar.getInputStream() );
+                    return new TarReader( new FilterInputStream( data ) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                ar.close();
+                            }
+                        }
+                    } );
+                }
+            }
+        } catch( IOException | RuntimeException ex ) {
+            ar.close();
+            throw ex;
+        }
+        ar.close();
+        throw new IOException( "No data archive in the Debian package: " + file );
+    }
+
+    /**
+     * Convert a path of an archive entry to a path relative to the root of the package.
+     *
+     * @param path the path, for example "./usr/share/" or "/usr/bin/foo"
+     * @return the path without leading "./" or slash and without trailing slash
+     */
+    static String toRelative( String path ) {
+        if( path.startsWith( "./" ) ) {
+            path = path.substring( 2 );
+        }
+        while( path.startsWith( "/" ) ) {
+            path = path.substring( 1 );
+        }
+        if( path.endsWith( "/" ) ) {
+            path = path.substring( 0, path.length() - 1 );
+        }
+        return path;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.deb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.TaskAction;
+
+import com.inet.gradle.setup.SetupBuilder;
+import com.inet.gradle.setup.SetupWorkers;
+import com.inet.gradle.setup.util.DigestUtils;
+import com.inet.gradle.setup.util.FileUtils;
+
+/**
+ * The debRepository Gradle task. It create the index of a flat APT repository, the files Packages, Packages.gz and
+ * Release, for all *.deb files in the repository directory. The repository can be used with a line like
+ * <tt>deb [trusted=yes] http://host/repository ./</tt> in the sources.list.
+ * <p>
+ * The index is updated incrementally. The stanzas of the packages are cached with the size and modification time of
+ * the package files. Only new or replaced packages are read and hashed.
+ */
+public class DebRepository extends DefaultTask {
+
+    private static final String CACHE_NAME = ".Packages.cache";
+
+    private Object              repositoryDir;
+
+    private String              origin;
+
+    private String              label;
+
+    private String              suite;
+
+    private String              codename;
+
+    private String              releaseDescription;
+
+    /**
+     * Create the task. It run after the deb task if both are executed.
+     */
+    public DebRepository() {
+        mustRunAfter( "deb" );
+    }
+
+    /**
+     * Update the index of the repository.
+     */
+    @TaskAction
+    public void action() {
+        try {
+            long start = System.currentTimeMillis();
+            File dir = getRepositoryDir();
+            if( !dir.isDirectory() ) {
+                throw new GradleException( "The repository directory does not exist: " + dir );
+            }
+            TreeMap<String, File> packages = new TreeMap<>();
+            collectPackages( dir, "", packages );
+
+            DebRepositoryCache cache = new DebRepositoryCache( new File( dir, CACHE_NAME ) );
+            TreeMap<String, DebRepositoryCache.Entry> entries = new TreeMap<>();
+            List<String> paths = new ArrayList<>();
+            List<Callable<DebRepositoryCache.Entry>> works = new ArrayList<>();
+            for( Map.Entry<String, File> pkg : packages.entrySet() ) {
+                String path = pkg.getKey();
+                File file = pkg.getValue();
+                DebRepositoryCache.Entry entry = cache.get( path );
+                if( entry != null && entry.isValid( file ) ) {
+                    entries.put( path, entry );
+                } else {
+                    paths.add( path );
+                    works.add( () -> new DebRepositoryCache.Entry( file.length(), file.lastModified(), createStanza( file, path ) ) );
+                }
+            }
+            List<DebRepositoryCache.Entry> results = getProject().getExtensions().getByType( SetupWorkers.class ).invokeAll( works );
+            for( int i = 0; i < paths.size(); i++ ) {
+                entries.put( paths.get( i ), results.get( i ) );
+            }
+
+            StringBuilder index = new StringBuilder();
+            TreeSet<String> architectures = new TreeSet<>();
+            for( DebRepositoryCache.Entry entry : entries.values() ) {
+                index.append( entry.stanza ).append( "\n\n" );
+                String architecture = getField( entry.stanza, "Architecture" );
+                if( architecture != null && !architecture.equals( "all" ) ) {
+                    architectures.add( architecture );
+                }
+            }
+            byte[] plain = index.toString().getBytes( StandardCharsets.UTF_8 );
+            ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+            try( GZIPOutputStream out = new GZIPOutputStream( gzip ) {
+                {
+                    def.setLevel( Deflater.BEST_COMPRESSION );
+                }
+            } ) {
+                out.write( plain );
+            }
+            FileUtils.writeAtomic( new File( dir, "Packages" ), plain );
+            FileUtils.writeAtomic( new File( dir, "Packages.gz" ), gzip.toByteArray() );
+            FileUtils.writeAtomic( new File( dir, "Release" ), createRelease( architectures, plain, gzip.toByteArray() ).getBytes( StandardCharsets.UTF_8 ) );
+
+            cache.save( entries );
+            getLogger().lifecycle( String.format( "\tRepository: %,d packages, %,d read new in %,d ms", entries.size(), works.size(), System.currentTimeMillis() - start ) );
+        } catch( RuntimeException ex ) {
+            throw ex;
+        } catch( Exception ex ) {
+            throw new RuntimeException( ex );
+        }
+    }
+
+    /**
+     * Collect all package files in the repository.
+     *
+     * @param dir the current directory
+     * @param prefix the relative path of the directory with a trailing slash or an empty string
+     * @param packages the found packages by its relative path
+     */
+    private static void collectPackages( File dir, String prefix, Map<String, File> packages ) {
+        File[] files = dir.listFiles();
+        if( files == null ) {
+            return;
+        }
+        for( File file : files ) {
+            String path = prefix + file.getName();
+            if( file.isDirectory() ) {
+                collectPackages( file, path + '/', packages );
+            } else if( path.endsWith( ".deb" ) ) {
+                packages.put( path, file );
+            }
+        }
+    }
+
+    /**
+     * Create the stanza of a package for the Packages index. It is the control file with the fields Filename, Size and
+     * the digests of the package file before the Description like dpkg-scanpackages it write.
+     *
+     * @param file the package file
+     * @param path the path relative to the repository
+     * @return the stanza without trailing line break
+     * @throws IOException if the package can't be read
+     */
+    private static String createStanza( File file, String path ) throws IOException {
+        byte[] control = new DebReader( file ).readControl().get( "control" );
+        if( control == null ) {
+            throw new IOException( "No control file in the package: " + file );
+        }
+        String stanza = new String( control, StandardCharsets.UTF_8 ).trim();
+
+        MessageDigest md5 = DigestUtils.newDigest( "MD5" );
+        MessageDigest sha1 = DigestUtils.newDigest( "SHA-1" );
+        MessageDigest sha256 = DigestUtils.newDigest( "SHA-256" );
+        try( InputStream input = new FileInputStream( file ) ) {
+            byte[] buffer = new byte[65536];
+            int count;
+            while( (count = input.read( buffer )) > 0 ) {
+                md5.update( buffer, 0, count );
+                sha1.update( buffer, 0, count );
+                sha256.update( buffer, 0, count );
+            }
+        }
+        String fields = "Filename: " + path + "\nSize: " + file.length() + "\nMD5sum: " + DigestUtils.toHex( md5 ) + "\nSHA1: " + DigestUtils.toHex( sha1 ) + "\nSHA256: " + DigestUtils.toHex( sha256 );
+
+        int idx = ('\n' + stanza).indexOf( "\nDescription:" );
+        if( idx < 0 ) {
+            return stanza + '\n' + fields;
+        }
+        return stanza.substring( 0, idx ) + fields + '\n' + stanza.substring( idx );
+    }
+
+    /**
+     * Create the content of the Release file.
+     *
+     * @param architectures the architectures of the packages
+     * @param packages the content of Packages
+     * @param packagesGz the content of Packages.gz
+     * @return the content
+     */
+    private String createRelease( TreeSet<String> architectures, byte[] packages, byte[] packagesGz ) {
+        StringBuilder release = new StringBuilder();
+        appendField( release, "Origin", getOrigin() );
+        appendField( release, "Label", getLabel() );
+        appendField( release, "Suite", getSuite() );
+        appendField( release, "Codename", getCodename() );
+        SimpleDateFormat format = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss 'UTC'", Locale.US );
+        format.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        appendField( release, "Date", format.format( new Date() ) );
+        if( !architectures.isEmpty() ) {
+            appendField( release, "Architectures", String.join( " ", architectures ) );
+        }
+        appendField( release, "Description", getReleaseDescription() );
+        String[][] digests = { { "MD5Sum", "MD5" }, { "SHA1", "SHA-1" }, { "SHA256", "SHA-256" } };
+        for( String[] digest : digests ) {
+            release.append( digest[0] ).append( ":\n" );
+            appendDigest( release, digest[1], packages, "Packages" );
+            appendDigest( release, digest[1], packagesGz, "Packages.gz" );
+        }
+        return release.toString();
+    }
+
+    /**
+     * Append a field if the value is set.
+     *
+     * @param release the target
+     * @param name the field name
+     * @param value the value or null
+     */
+    private static void appendField( StringBuilder release, String name, String value ) {
+        if( value != null && !value.isEmpty() ) {
+            release.append( name ).append( ": " ).append( value ).append( '\n' );
+        }
+    }
+
+    /**
+     * Append the digest line of an index file.
+     *
+     * @param release the target
+     * @param algorithm the digest algorithm
+     * @param content the content of the index file
+     * @param name the name of the index file
+     */
+    private static void appendDigest( StringBuilder release, String algorithm, byte[] content, String name ) {
+        MessageDigest digest = DigestUtils.newDigest( algorithm );
+        digest.update( content );
+        release.append( ' ' ).append( DigestUtils.toHex( digest ) ).append( ' ' ).append( content.length ).append( ' ' ).append( name ).append( '\n' );
+    }
+
+    /**
+     * Get the value of a single line field of a stanza.
+     *
+     * @param stanza the stanza
+     * @param name the field name
+     * @return the value or null
+     */
+    private static String getField( String stanza, String name ) {
+        for( String line : stanza.split( "\n" ) ) {
+            if( line.startsWith( name + ':' ) ) {
+                return line.substring( name.length() + 1 ).trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the directory of the repository.
+     *
+     * @return the directory
+     */
+    public File getRepositoryDir() {
+        if( repositoryDir != null ) {
+            return getProject().file( repositoryDir );
+        }
+        return getProject().getExtensions().getByType( SetupBuilder.class ).getDestinationDir();
+    }
+
+    /**
+     * Set the directory of the repository. All *.deb files in it and its sub directories are indexed. The default is
+     * the destination directory of the setupBuilder.
+     *
+     * @param repositoryDir the directory
+     */
+    public void setRepositoryDir( Object repositoryDir ) {
+        this.repositoryDir = repositoryDir;
+    }
+
+    /**
+     * Get the Origin field of the Release file.
+     *
+     * @return the origin or null
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Set the Origin field of the Release file.
+     *
+     * @param origin the origin
+     */
+    public void setOrigin( String origin ) {
+        this.origin = origin;
+    }
+
+    /**
+     * Get the Label field of the Release file.
+     *
+     * @return the label or null
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Set the Label field of the Release file.
+     *
+     * @param label the label
+     */
+    public void setLabel( String label ) {
+        this.label = label;
+    }
+
+    /**
+     * Get the Suite field of the Release file.
+     *
+     * @return the suite or null
+     */
+    public String getSuite() {
+        return suite;
+    }
+
+    /**
+     * Set the Suite field of the Release file, for example "stable".
+     *
+     * @param suite the suite
+     */
+    public void setSuite( String suite ) {
+        this.suite = suite;
+    }
+
+    /**
+     * Get the Codename field of the Release file.
+     *
+     * @return the codename or null
+     */
+    public String getCodename() {
+        return codename;
+    }
+
+    /**
+     * Set the Codename field of the Release file.
+     *
+     * @param codename the codename
+     */
+    public void setCodename( String codename ) {
+        this.codename = codename;
+    }
+
+    /**
+     * Get the Description field of the Release file.
+     *
+     * @return the description or null
+     */
+    public String getReleaseDescription() {
+        return releaseDescription;
+    }
+
+    /**
+     * Set the Description field of the Release file.
+     *
+     * @param releaseDescription the description
+     */
+    public void setReleaseDescription( String releaseDescription ) {
+        this.releaseDescription = releaseDescription;
+    }
+}
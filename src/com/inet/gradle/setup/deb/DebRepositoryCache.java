@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.deb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.inet.gradle.setup.util.FileUtils;
+
+/**
+ * A persistent cache of the index stanzas of the packages in a repository. A stanza is valid as long as the size and
+ * the modification time of the package file are unchanged, so that only new or replaced packages must be read.
+ * <p>
+ * The cache is a text file with a block per package. The first line of a block is tab separated
+ * <code>size lastModified path</code>, the following lines are the stanza and an empty line ends the block.
+ */
+class DebRepositoryCache {
+
+    private static final String      HEADER  = "SetupBuilder deb repository cache 1";
+
+    private final File               file;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * The cached stanza of a single package.
+     */
+    static class Entry {
+
+        final long   size, lastModified;
+
+        final String stanza;
+
+        /**
+         * Create a new entry.
+         *
+         * @param size the size of the package file
+         * @param lastModified the modification time of the package file
+         * @param stanza the stanza for the Packages index without trailing line break
+         */
+        Entry( long size, long lastModified, String stanza ) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.stanza = stanza;
+        }
+
+        /**
+         * Check if the package file was not changed since the stanza was created.
+         *
+         * @param pkg the package file
+         * @return true, if the stanza is valid
+         */
+        boolean isValid( File pkg ) {
+            return pkg.length() == size && pkg.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Load the cache. If the file does not exist or is broken then the cache is empty.
+     *
+     * @param file the cache file
+     */
+    DebRepositoryCache( File file ) {
+        this.file = file;
+        if( !file.isFile() ) {
+            return;
+        }
+        try( BufferedReader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ) ) {
+            if( !HEADER.equals( reader.readLine() ) ) {
+                return;
+            }
+            String line;
+            while( (line = reader.readLine()) != null ) {
+                String[] parts = line.split( "\t", 3 );
+                StringBuilder stanza = new StringBuilder();
+                while( (line = reader.readLine()) != null && !line.isEmpty() ) {
+                    if( stanza.length() > 0 ) {
+                        stanza.append( '\n' );
+                    }
+                    stanza.append( line );
+                }
+                entries.put( parts[2], new Entry( Long.parseLong( parts[0] ), Long.parseLong( parts[1] ), stanza.toString() ) );
+            }
+        } catch( IOException | RuntimeException ex ) {
+            entries.clear(); // a broken cache, read all packages new
+        }
+    }
+
+    /**
+     * Get the cached entry of a package.
+     *
+     * @param path the path relative to the repository
+     * @return the entry or null
+     */
+    Entry get( String path ) {
+        return entries.get( path );
+    }
+
+    /**
+     * Save the entries of the current packages. Entries of removed packages are dropped.
+     *
+     * @param current map from the path relative to the repository to the entry
+     * @throws IOException if any I/O error occur
+     */
+    void save( Map<String, Entry> current ) throws IOException {
+        FileUtils.writeAtomic( file, out -> {
+            BufferedWriter writer = new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ) );
+            writer.write( HEADER );
+            writer.write( '\n' );
+            for( Map.Entry<String, Entry> item : current.entrySet() ) {
+                Entry entry = item.getValue();
+                writer.write( Long.toString( entry.size ) );
+                writer.write( '\t' );
+                writer.write( Long.toString( entry.lastModified ) );
+                writer.write( '\t' );
+                writer.write( item.getKey() );
+                writer.write( '\n' );
+                writer.write( entry.stanza );
+                writer.write( "\n\n" );
+            }
+            writer.flush();
+        } );
+    }
+}
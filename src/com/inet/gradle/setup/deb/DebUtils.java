@@ -17,10 +17,16 @@ package com.inet.gradle.setup.deb;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+
+import com.inet.gradle.setup.util.CompressionUtils;
+import com.inet.gradle.setup.util.FileUtils;
 
 /**
  * Contains methods, that are used in different classes.
@@ -30,6 +36,13 @@ import java.util.Set;
  */
 public class DebUtils {
 
+    private static final Map<String, String> EXTENSIONS = new HashMap<>();
+    static {
+        EXTENSIONS.put( Deb.COMPRESSION_NONE, "" );
+        EXTENSIONS.put( Deb.COMPRESSION_GZIP, ".gz" );
+        EXTENSIONS.put( Deb.COMPRESSION_XZ, ".xz" );
+        EXTENSIONS.put( Deb.COMPRESSION_ZSTD, ".zst" );
+    }
 	
 	/**
      * Sets the permissions of the specified file, either to 644 (non-executable) or 755 (executable).
@@ -48,7 +61,75 @@ public class DebUtils {
             perms.add( PosixFilePermission.GROUP_EXECUTE );
             perms.add( PosixFilePermission.OTHERS_EXECUTE );
         }
-        Files.setPosixFilePermissions( file.toPath(), perms );
+        FileUtils.setPosixFilePermissions( file, perms );
+    }
+
+    /**
+     * Creates a directory and all missing parent directories with the permissions 755. Existing directories are not
+     * changed.
+     * @param dir the directory
+     * @throws IOException on errors when creating the directory or setting the permissions
+     */
+    static void createDirectories( File dir ) throws IOException {
+        if( dir.isDirectory() ) {
+            return;
+        }
+        createDirectories( dir.getParentFile() );
+        if( !dir.mkdir() && !dir.isDirectory() ) {
+            throw new IOException( "Can't create directory: " + dir );
+        }
+        setPermissions( dir, true );
+    }
+
+    /**
+     * Create the content of the control file md5sums.
+     * @param digests map from the path relative to the root of the package without leading slash to the hex MD5 digest
+     * @return the content
+     */
+    static String createMd5sums( Map<String, String> digests ) {
+        StringBuilder md5sums = new StringBuilder();
+        for( Map.Entry<String, String> entry : new TreeMap<>( digests ).entrySet() ) {
+            md5sums.append( entry.getValue() ).append( "  " ).append( entry.getKey() ).append( '\n' );
+        }
+        return md5sums.toString();
+    }
+
+    /**
+     * Get the file extension of an archive member for a compression.
+     * @param compression the compression like {@link Deb#COMPRESSION_GZIP}
+     * @return the extension with the dot or an empty string
+     */
+    static String getExtension( String compression ) {
+        return EXTENSIONS.get( compression );
+    }
+
+    /**
+     * Get the compression of an archive member from its name.
+     * @param memberName the name like "data.tar.xz"
+     * @return the compression like {@link Deb#COMPRESSION_XZ}
+     * @throws IOException if the compression is not supported
+     */
+    static String getCompression( String memberName ) throws IOException {
+        if( memberName.endsWith( ".tar" ) ) {
+            return Deb.COMPRESSION_NONE;
+        }
+        for( Map.Entry<String, String> entry : EXTENSIONS.entrySet() ) {
+            if( !entry.getValue().isEmpty() && memberName.endsWith( ".tar" + entry.getValue() ) ) {
+                return entry.getKey();
+            }
+        }
+        throw new IOException( "Unsupported compression of the member: " + memberName );
+    }
+
+    /**
+     * Create a stream that decompress an archive member.
+     * @param memberName the name of the member like "data.tar.gz"
+     * @param in the compressed content
+     * @return the decompressing stream
+     * @throws IOException if any I/O error occur or the compression is not supported
+     */
+    static InputStream decompress( String memberName, InputStream in ) throws IOException {
+        return CompressionUtils.decompress( getCompression( memberName ), in );
     }
 	
 }
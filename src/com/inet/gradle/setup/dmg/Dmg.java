@@ -52,7 +52,7 @@ public class Dmg extends AbstractSetupTask {
      */
     @Override
     protected void copyTo( File target ) {
-        super.copyTo( target );
+        super.copyTo( target, false ); // the application bundle is changed in place with chmod, that we can not use links
     }
 
 
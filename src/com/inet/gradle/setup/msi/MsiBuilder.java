@@ -24,11 +24,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 import org.gradle.api.GradleException;
 import org.gradle.api.internal.file.FileResolver;
 
 import com.inet.gradle.setup.AbstractBuilder;
+import com.inet.gradle.setup.BuildMetrics;
 import com.inet.gradle.setup.SetupBuilder;
 import com.inet.gradle.setup.util.ResourceUtils;
 
@@ -57,7 +59,9 @@ class MsiBuilder extends AbstractBuilder<Msi> {
         try {
             File wxsFile = getWxsFile();
             URL template = task.getWxsTemplate();
-            new WxsFileBuilder( task, setup, wxsFile, buildDir, template, false ).build();
+            try( BuildMetrics.Phase phase = phase( "wxs" ) ) {
+                new WxsFileBuilder( task, setup, wxsFile, buildDir, template, false ).build();
+            }
             template = wxsFile.toURI().toURL();
             candle();
 
@@ -65,21 +69,35 @@ class MsiBuilder extends AbstractBuilder<Msi> {
             ResourceUtils.extract( getClass(), "sdk/wilangid.vbs", buildDir );
             ResourceUtils.extract( getClass(), "sdk/wisubstg.vbs", buildDir );
 
+            // the languages are independent, that we can link and transform it parallel
             List<MsiLanguages> languages = task.getLanguages();
-            File mui = light( languages.get( 0 ) );
-            HashMap<MsiLanguages, File> translations = new HashMap<>();
+            List<Callable<File>> lights = new ArrayList<>();
+            for( MsiLanguages language : languages ) {
+                lights.add( () -> light( language ) );
+            }
+            List<File> files = task.getWorkers().invokeAll( lights );
+            File first = files.get( 0 );
+            List<Callable<File>> transforms = new ArrayList<>();
             for( int i = 1; i < languages.size(); i++ ) {
                 MsiLanguages language = languages.get( i );
-                File file = light( language );
-                patchLangID( file, language );
-                File mst = msitran( mui, file, language );
-                translations.put( language, mst );
+                File file = files.get( i );
+                transforms.add( () -> {
+                    patchLangID( file, language );
+                    return msitran( first, file, language );
+                } );
+            }
+            List<File> msts = task.getWorkers().invokeAll( transforms );
+            HashMap<MsiLanguages, File> translations = new HashMap<>();
+            for( int i = 1; i < languages.size(); i++ ) {
+                translations.put( languages.get( i ), msts.get( i - 1 ) );
             }
 
             // Now create a msi with all files
-            new WxsFileBuilder( task, setup, wxsFile, buildDir, template, true ).build();
+            try( BuildMetrics.Phase phase = phase( "wxs" ) ) {
+                new WxsFileBuilder( task, setup, wxsFile, buildDir, template, true ).build();
+            }
             candle();
-            mui = light( languages.get( 0 ) );
+            File mui = light( languages.get( 0 ) );
 
             // Add the translations to the msi with all files
             StringBuilder langIDs = new StringBuilder( languages.get( 0 ).getLangID() );
@@ -92,7 +110,10 @@ class MsiBuilder extends AbstractBuilder<Msi> {
             patchLangID( mui, langIDs.toString() );
 
             // signing and moving the final msi file
-            signTool( mui );
+            try( BuildMetrics.Phase phase = phase( "signing" ) ) {
+                signTool( mui );
+                phase.addBytesRead( mui.length() );
+            }
             Files.move( mui.toPath(), new File( setup.getDestinationDir(), setup.getArchiveName() + ".msi" ).toPath(), StandardCopyOption.REPLACE_EXISTING );
         } catch( RuntimeException ex ) {
             throw ex;
@@ -19,7 +19,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -35,12 +38,11 @@ import javax.swing.text.StyleConstants;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.gradle.api.GradleException;
-import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
-import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import com.inet.gradle.setup.DesktopStarter;
+import com.inet.gradle.setup.FileManifest;
 import com.inet.gradle.setup.Service;
 import com.inet.gradle.setup.SetupBuilder;
 import com.inet.gradle.setup.image.ImageFactory;
@@ -122,28 +124,25 @@ class WxsFileBuilder extends XmlFileBuilder<Msi> {
 
         //Files
         Element installDir = getOrCreateChildById( product, "DirectoryRef", "INSTALLDIR" );
-        task.processFiles( new CopyActionProcessingStreamAction() {
-            @Override
-            public void processFile( FileCopyDetailsInternal details ) {
-                try {
-                    if( !details.isDirectory() ) {
-                        String[] segments = details.getRelativePath().getSegments();
-                        File file;
-                        try {
-                            file = details.getFile();
-                        } catch( UnsupportedOperationException ex ) {
-                            // if there is set an filter then we need to copy it
-                            File buildDir = task.getTemporaryDir();
-                            file = new File( buildDir, details.getRelativePath().getPathString() );
-                            details.copyTo( file );
+        for( FileManifest.Entry entry : task.getManifest().getEntries() ) {
+            try {
+                if( !entry.isDirectory() ) {
+                    String[] segments = entry.getPath().split( "/" );
+                    File file = entry.getSource();
+                    if( file == null ) {
+                        // if there is set an filter then we need to copy it, the content was read in the copy walk
+                        file = new File( task.getTemporaryDir(), entry.getPath() );
+                        file.getParentFile().mkdirs();
+                        try( InputStream input = entry.open() ) {
+                            Files.copy( input, file.toPath(), StandardCopyOption.REPLACE_EXISTING );
                         }
-                        addFile( installDir, file, segments );
                     }
-                } catch( Exception ex ) {
-                    throw new GradleException( "Can't add file: " + details, ex );
+                    addFile( installDir, file, segments );
                 }
+            } catch( Exception ex ) {
+                throw new GradleException( "Can't add file: " + entry, ex );
             }
-        } );
+        }
 
         addBundleJre( installDir );
         addGUI( product );
@@ -18,6 +18,7 @@ package com.inet.gradle.setup.rpm;
 import java.io.File;
 import java.util.ArrayList;
 
+import org.gradle.api.GradleException;
 import org.gradle.api.internal.project.ProjectInternal;
 
 import com.inet.gradle.setup.AbstractSetupTask;
@@ -28,6 +29,34 @@ import com.inet.gradle.setup.AbstractSetupTask;
  * @author Volker Berlin
  */
 public class Rpm extends AbstractSetupTask {
+
+    /**
+     * Packager that write the package in Java without any external tool.
+     */
+    public static final String      PACKAGER_JAVA     = "java";
+
+    /**
+     * Packager that stage all files, write a SPEC file and call rpmbuild.
+     */
+    public static final String      PACKAGER_RPMBUILD = "rpmbuild";
+
+    /**
+     * The payload is compressed with gzip. This is the default because it can be installed with every RPM version and
+     * the typical payload of Java applications are jar files that are already compressed.
+     */
+    public static final String      COMPRESSION_GZIP  = "gzip";
+
+    /**
+     * The payload is compressed with xz. Needs the program xz with the Java packager and RPM 5.2 or higher on the
+     * target system.
+     */
+    public static final String      COMPRESSION_XZ    = "xz";
+
+    /**
+     * The payload is compressed with zstd. Needs the program zstd with the Java packager and RPM 4.14 or higher on the
+     * target system.
+     */
+    public static final String      COMPRESSION_ZSTD  = "zstd";
 	
     private String                  section;
 
@@ -61,6 +90,16 @@ public class Rpm extends AbstractSetupTask {
 	
 	private ArrayList<String> 		postun = new ArrayList<String>();
 
+    private String                  packager = PACKAGER_JAVA;
+
+    private String                  compression = COMPRESSION_GZIP;
+
+    private Integer                 compressionLevel;
+
+    private int                     compressionThreads = Runtime.getRuntime().availableProcessors();
+
+    private Object                  previousPackage;
+
 	
 
 	/**
@@ -84,7 +123,7 @@ public class Rpm extends AbstractSetupTask {
      */
     @Override
     protected void copyTo(File target) {
-    	super.copyTo(target);
+    	copySharedTo(target);
     }
       
     /**
@@ -355,5 +394,131 @@ public class Rpm extends AbstractSetupTask {
 	public void setInstallationRoot(String installationRoot) {		
 		this.installationRoot = installationRoot.endsWith("/") ? installationRoot.substring(0, installationRoot.length()-1) : installationRoot;
 	}
+
+    /**
+     * Get the tool that create the package file.
+     * 
+     * @return the packager
+     */
+    public String getPackager() {
+        return packager;
+    }
+
+    /**
+     * Set the tool that create the package file. Possible values are:
+     * <ul>
+     * <li>"java": the package is written directly from the files of the setup without staging and without a SPEC
+     * file. The prep, build, install and clean entries are not used. This is the default.
+     * <li>"rpmbuild": all files are staged into the temporary directory and packed with rpmbuild.
+     * </ul>
+     * 
+     * @param packager the packager
+     */
+    public void setPackager( String packager ) {
+        if( !PACKAGER_JAVA.equals( packager ) && !PACKAGER_RPMBUILD.equals( packager ) ) {
+            throw new GradleException( "Unknown packager '" + packager + "'. Possible values are '" + PACKAGER_JAVA + "' and '" + PACKAGER_RPMBUILD + "'." );
+        }
+        this.packager = packager;
+    }
+
+    /**
+     * Get the codec for the compression of the payload.
+     * 
+     * @return the codec
+     */
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the codec for the compression of the payload. Possible values are:
+     * <ul>
+     * <li>"gzip": the default, compressed parallel with the Java packager
+     * <li>"xz": the smallest package, needs the program xz with the Java packager
+     * <li>"zstd": fast decompression, needs the program zstd with the Java packager and RPM 4.14 or higher on the
+     * target system
+     * </ul>
+     * 
+     * @param compression the codec
+     */
+    public void setCompression( String compression ) {
+        if( !COMPRESSION_GZIP.equals( compression ) && !COMPRESSION_XZ.equals( compression ) && !COMPRESSION_ZSTD.equals( compression ) ) {
+            throw new GradleException( "Unknown compression '" + compression + "'. Possible values are '" + COMPRESSION_GZIP + "', '" + COMPRESSION_XZ + "' and '" + COMPRESSION_ZSTD + "'." );
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * Get the compression level of the payload. If not set then it is the default level of the codec: 6 for gzip and
+     * xz, 3 for zstd.
+     * 
+     * @return the level
+     */
+    public int getCompressionLevel() {
+        if( compressionLevel != null ) {
+            return compressionLevel;
+        }
+        return COMPRESSION_ZSTD.equals( compression ) ? 3 : 6;
+    }
+
+    /**
+     * Set the compression level of the payload. Possible values are 1 to 9 for gzip and xz and 1 to 19 for zstd.
+     * Higher values create smaller packages but need more time.
+     * 
+     * @param compressionLevel the level
+     */
+    public void setCompressionLevel( int compressionLevel ) {
+        if( compressionLevel < 1 || compressionLevel > 19 ) {
+            throw new GradleException( "compressionLevel must be between 1 and 19: " + compressionLevel );
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Get the count of threads that compress the payload.
+     * 
+     * @return the thread count
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * Set the count of threads that compress the payload. The default is the count of processors. With rpmbuild the
+     * thread count is only used for xz and zstd, gzip is compressed single threaded by rpmbuild.
+     * 
+     * @param compressionThreads the thread count
+     */
+    public void setCompressionThreads( int compressionThreads ) {
+        if( compressionThreads < 1 ) {
+            throw new GradleException( "compressionThreads must be at least 1: " + compressionThreads );
+        }
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * Get the package of the previous release for the delta.
+     * 
+     * @return the package file or null
+     */
+    public File getPreviousPackage() {
+        if( previousPackage != null ) {
+            return getProject().file( previousPackage );
+        }
+        return null;
+    }
+
+    /**
+     * Set the package of the previous release. If set then additionally a delta file with the extension ".delta" is
+     * created that contains only the changed files. It can be applied on the target system with
+     * <tt>java -cp SetupBuilder.jar com.inet.gradle.setup.rpm.RpmDelta apply old.rpm new.rpm.delta new.rpm</tt>. The
+     * delta requires the packager "java", because the result must be byte identical for the signature of the package.
+     * The target system must keep the file of the previous package, the installed files are not used.
+     * 
+     * @param previousPackage the package file
+     */
+    public void setPreviousPackage( Object previousPackage ) {
+        this.previousPackage = previousPackage;
+    }
     
 }
@@ -19,19 +19,22 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.gradle.api.GradleException;
 import org.gradle.api.internal.file.FileResolver;
 
 import com.inet.gradle.setup.AbstractBuilder;
+import com.inet.gradle.setup.BuildMetrics;
 import com.inet.gradle.setup.DesktopStarter;
 import com.inet.gradle.setup.Service;
 import com.inet.gradle.setup.SetupBuilder;
 import com.inet.gradle.setup.Template;
-import com.inet.gradle.setup.image.ImageFactory;
+import com.inet.gradle.setup.util.FileUtils;
 import com.inet.gradle.setup.rpm.RpmControlFileBuilder.Script;
 
 public class RpmBuilder extends AbstractBuilder<Rpm> {
@@ -50,35 +53,51 @@ public class RpmBuilder extends AbstractBuilder<Rpm> {
     }
 
     /**
-     * Build the RedHat package in different steps with the 'rpmbuild'.
+     * Build the RedHat package in different steps. With the packager 'java' the files are not copied, the package is
+     * written directly from the files of the setup and the generated files. The follow describe the packager 'rpmbuild'.
      * 
      *  <dl>
      * 		<dt>copy files</dt>
- 	 * 			<dd>copy the files specified in the gradle script to the BUILD/usr/share/archivesBaseName directory.</dd>
- 	 * 			<dd>The files must be in the BUILD directory because the 'prep' step will copy all the files from there to the BUILDROOT directory.</dd>
- 	 * 			<dd>The 'rpmbuild' deletes the BUILDROOT directory before building the package. Thats why we need to copy the files into it. </dd>
+ 	 * 			<dd>copy the files specified in the gradle script to the BUILDROOT/usr/share/archivesBaseName directory.</dd>
+ 	 * 			<dd>The BUILDROOT directory is the buildroot of 'rpmbuild'. It is not cleaned by 'rpmbuild' and the %install step is empty, so the files are not copied a second time.</dd>
+ 	 * 			<dd>The staging is incremental, only generated files outside of the installation root are removed before.</dd>
  	 * 		<dt>SPEC file creation</dt>
  	 * 			<dd>The 'rpmbuild' requires a configuration files ending with .spec.</dd>
  	 * 			<dd>This spec file contains all required informations (like name, version, dependencies) and scripts that are executed during the creation and installing of the package.</dd>
   	 * 		<dt>change file permissions</dt>
- 	 * 			<dd>Before the package is created the permissions of all files need to be set correctly.</dd>
- 	 * 			<dd>All directories and executables will be changed to 755 permission and other files to 644.</dd>
+ 	 * 			<dd>The permissions of the files are set while staging with the permission rules of the setupBuilder, *.sh files get 755 and other files 644.</dd>
+ 	 * 			<dd>The %files section of the spec file lists every directory and file with %attr, so the owner is root and the modes do not depend on the file system.</dd>
   	 * 		<dt>create the package</dt>
  	 * 			<dd>Creates the package with 'rpmbuild'</dd>
   	 * </dl>
      */
     public void build() {
     	try {
+            if( task.getCompressionLevel() > 9 && !Rpm.COMPRESSION_ZSTD.equals( task.getCompression() ) ) {
+                throw new GradleException( "compressionLevel " + task.getCompressionLevel() + " is not supported by " + task.getCompression() + ". Possible values are 1 to 9." );
+            }
+            File previous = task.getPreviousPackage();
+            if( previous != null && !Rpm.PACKAGER_JAVA.equals( task.getPackager() ) ) {
+                throw new GradleException( "previousPackage requires the packager '" + Rpm.PACKAGER_JAVA + "'. The payload of rpmbuild can not be restored byte identical from a delta." );
+            }
     		String release = task.getRelease();
     		if(release == null || release.length() == 0) {
     			release = "1";
     		}
-            File filesPath = new File( buildDir.getAbsolutePath() + "/BUILD" + task.getInstallationRoot() );
-            task.copyTo( filesPath );
-            changeFilePermissionsTo644( filesPath );
+            boolean javaPackager = Rpm.PACKAGER_JAVA.equals( task.getPackager() );
+            File buildRoot = new File( buildDir, "BUILDROOT" );
+            if( javaPackager ) {
+                // the files of the setup are read directly from the sources, only generated files are in the build directory
+                task.getProject().delete( buildDir );
+                buildDir.mkdirs();
+            } else {
+                // the files are staged directly into the buildroot of rpmbuild, there is no copy in the %install step
+                cleanBuildRoot( buildRoot, "" );
+                task.copyTo( new File( buildRoot, task.getInstallationRoot() ) );
+            }
 
 
-            controlBuilder = new RpmControlFileBuilder( super.task, setup, new File( buildDir, "SPECS" ) );
+            controlBuilder = new RpmControlFileBuilder( super.task, setup, new File( buildDir, "SPECS" ), buildRoot );
 
             for( Service service : setup.getServices() ) {
                 setupService( service );
@@ -88,11 +107,18 @@ public class RpmBuilder extends AbstractBuilder<Rpm> {
                 setupStarter( starter );
             }
             
-            controlBuilder.build();
-
-            changeDirectoryPermissionsTo755( buildDir );
+            if( javaPackager ) {
+                writeRpmPackage( buildRoot );
+                if( previous != null ) {
+                    createDelta( previous );
+                }
+            } else {
+                try( BuildMetrics.Phase phase = phase( "control files" ) ) {
+                    controlBuilder.build();
+                }
 
-            createRpmPackage();
+                createRpmPackage( buildRoot );
+            }
 
 
         } catch( RuntimeException ex ) {
@@ -139,7 +165,7 @@ public class RpmBuilder extends AbstractBuilder<Rpm> {
         
         initScript.setPlaceholder( "startArguments",
                                    "-cp "+ mainJarPath + " " + service.getMainClass() + " " + service.getStartArguments() );
-        String initScriptFile = "BUILD/etc/init.d/" + serviceUnixName;
+        String initScriptFile = "BUILDROOT/etc/init.d/" + serviceUnixName;
         initScript.writeTo( createFile( initScriptFile, true ) );
         controlBuilder.addConfFile( initScriptFile );
         
@@ -156,41 +182,6 @@ public class RpmBuilder extends AbstractBuilder<Rpm> {
         controlBuilder.addScriptFragment( Script.PRERM,    "if [ -f \"/etc/init.d/"+serviceUnixName+"\" ]; then\n  chkconfig --del "+serviceUnixName+ "\nfi");
     }
     
-    /**
-     * Changes the permissions of all directories recursively inside the specified path to 755.
-     * @param path the path
-     * @throws IOException on I/O failures
-     */
-    // share
-    private void changeDirectoryPermissionsTo755( File path ) throws IOException {
-     	setPermissions( path, true );
-        for( File file : path.listFiles() ) {
-            if( file.isDirectory() ) {
-                changeDirectoryPermissionsTo755( file );
-            }
-        }
-    }
-
-    /**
-     * Changes the permissions of all files recursively inside the specified path to 644.
-     * @param path the path
-     * @throws IOException on I/O failures
-     */
-    // share
-    private void changeFilePermissionsTo644( File path ) throws IOException {
-        for( File file : path.listFiles() ) {
-            if( file.isDirectory() ) {
-                changeFilePermissionsTo644( file );
-            } else {
-            	if( file.getName().endsWith(".sh")  ) {
-            		setPermissions( file, true );
-            	} else {
-            		setPermissions( file, false );
-            	}
-            }
-        }
-    }
-    
     /**
      * Sets the permissions of the specified file, either to 644 (non-executable) or 755 (executable).
      * @param file the file 
@@ -209,7 +200,7 @@ public class RpmBuilder extends AbstractBuilder<Rpm> {
             perms.add( PosixFilePermission.GROUP_EXECUTE );
             perms.add( PosixFilePermission.OTHERS_EXECUTE );
         }
-        Files.setPosixFilePermissions( file.toPath(), perms );
+        FileUtils.setPosixFilePermissions( file, perms );
     }
     
     
@@ -222,24 +213,26 @@ public class RpmBuilder extends AbstractBuilder<Rpm> {
     private void setupStarter( DesktopStarter starter ) throws IOException {
         String unixName = starter.getExecutable();
         String consoleStarterPath = "/usr/bin/" + unixName;
-        try (FileWriter fw = new FileWriter( createFile( "BUILD" + consoleStarterPath, true ) )) {
+        try (FileWriter fw = new FileWriter( createFile( "BUILDROOT" + consoleStarterPath, true ) )) {
             fw.write( "#!/bin/bash\n" );
             fw.write( "java -cp \"" + task.getInstallationRoot() + "/" + starter.getMainJar() + "\" " + starter.getMainClass() + " "
                 + starter.getStartArguments() + " \"$@\"" );
         }
         int[] iconSizes = { 16, 32, 48, 64, 128 };
+        File[] icons = task.getSharedStaging().getIcons( task, iconSizes ); // rendered only once for all tasks
 
-        for( int size : iconSizes ) {
-            File iconDir = new File( buildDir, "BUILD/usr/share/icons/hicolor/" + size + "x" + size + "/apps/" );
+        for( int i = 0; i < iconSizes.length; i++ ) {
+            int size = iconSizes[i];
+            File iconDir = new File( buildDir, "BUILDROOT/usr/share/icons/hicolor/" + size + "x" + size + "/apps/" );
             iconDir.mkdirs();
-            File scaledFile = ImageFactory.getImageFile( task.getProject(), setup.getIcons(), iconDir, "png" + size );
+            File scaledFile = icons[i];
             if( scaledFile != null ) {
                 File iconFile = new File( iconDir, unixName + ".png" );
-                scaledFile.renameTo( iconFile );
+                Files.copy( scaledFile.toPath(), iconFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
                 setPermissions( iconFile, false );
             }
         }
-        try (FileWriter fw = new FileWriter( createFile( "BUILD/usr/share/applications/" + unixName + ".desktop", false ) )) {
+        try (FileWriter fw = new FileWriter( createFile( "BUILDROOT/usr/share/applications/" + unixName + ".desktop", false ) )) {
             fw.write( "[Desktop Entry]\n" );
             fw.write( "Name=" + starter.getDisplayName() + "\n" );
             fw.write( "Comment=" + starter.getDescription().replace( '\n', ' ' ) + "\n" );
@@ -277,13 +270,76 @@ public class RpmBuilder extends AbstractBuilder<Rpm> {
         return file;
     }
     
+    /**
+     * Remove the files of the previous build from the buildroot that are not staged. These are the generated files
+     * outside of the installation root. 'rpmbuild' fails with unpackaged files if a service or starter was removed.
+     * 
+     * @param dir the directory in the buildroot
+     * @param path the path of the directory in the package
+     */
+    private void cleanBuildRoot( File dir, String path ) {
+        File[] children = dir.listFiles();
+        if( children == null ) {
+            return;
+        }
+        String root = task.getInstallationRoot();
+        for( File child : children ) {
+            String childPath = path + '/' + child.getName();
+            if( root.startsWith( childPath + '/' ) ) {
+                cleanBuildRoot( child, childPath );
+            } else if( !root.equals( childPath ) ) {
+                task.getProject().delete( child );
+            }
+        }
+    }
+
+    /**
+     * Write the RPM package in Java without rpmbuild.
+     * 
+     * @param buildRoot the directory with the generated files
+     * @throws IOException if any I/O error occur
+     */
+    private void writeRpmPackage( File buildRoot ) throws IOException {
+        File target = task.getSetupFile();
+        try( BuildMetrics.Phase phase = phase( "package" ) ) {
+            RpmPackageWriter writer = new RpmPackageWriter( task, controlBuilder, buildRoot );
+            writer.write( target );
+            phase.addBytesRead( writer.getBytesRead() );
+            phase.addBytesWritten( target.length() );
+        }
+    }
+
+    /**
+     * Create the delta from the previous release to the new package.
+     * @param previous the package of the previous release
+     * @throws IOException on errors during reading the packages or writing the delta
+     */
+    private void createDelta( File previous ) throws IOException {
+        File target = task.getSetupFile();
+        File deltaFile = new File( target.getPath() + ".delta" );
+        try( BuildMetrics.Phase phase = phase( "delta" ) ) {
+            RpmDelta delta = new RpmDelta();
+            delta.create( previous, target, deltaFile, task.getCompressionThreads() );
+            phase.addBytesRead( previous.length() + target.length() );
+            phase.addBytesWritten( deltaFile.length() );
+            int count = delta.getChangedFiles() + delta.getUnchangedFiles();
+            task.getProject().getLogger().lifecycle( String.format( "\tDelta to %s: %,d of %,d files changed, %,d bytes (%.1f%% of the package)", previous.getName(), delta.getChangedFiles(), count, deltaFile.length(), 100.0 * deltaFile.length() / Math.max( 1, target.length() ) ) );
+        }
+    }
+
     /**
      * execute the command to generate the RPM package
      * 
-     * rpmbuild -ba -clean "--define=_topdir buildDir(rpm)" SPECS/basename.spec
+     * rpmbuild -ba -clean "--define=_topdir buildDir(rpm)" --buildroot buildDir(rpm)/BUILDROOT SPECS/basename.spec
      * 
+     * The staged buildroot is used as it is. The macro __spec_install_pre is replaced without the removing of the
+     * buildroot and __os_install_post is empty, because the staged files can be hard links of the sources that must
+     * not be changed by the brp scripts. After the build the packages are moved to the destination directory.
+     * 
+     * @param buildRoot the staged buildroot
+     * @throws IOException if the packages can not be moved
      */
-    private void createRpmPackage() {
+    private void createRpmPackage( File buildRoot ) throws IOException {
     	
     	ArrayList<String> command = new ArrayList<>();
         command.add( "rpmbuild" );
@@ -291,8 +347,24 @@ public class RpmBuilder extends AbstractBuilder<Rpm> {
         command.add( "-v" );
         command.add( "--clean" );
         command.add( "--define=_topdir " + buildDir.getAbsolutePath() );
+        command.add( "--define=__spec_install_pre %{___build_pre}" );
+        command.add( "--define=__os_install_post %{nil}" );
+        command.add( "--define=_binary_filedigest_algorithm 8" ); // SHA-256 like the Java packager, older versions use MD5
+        command.add( "--buildroot=" + buildRoot.getAbsolutePath() );
         command.add( "SPECS/" + setup.getAppIdentifier() + ".spec" );
+        long start = System.currentTimeMillis();
         exec( command );
+        long millis = System.currentTimeMillis() - start;
+
+        String baseName = controlBuilder.getName() + "-" + controlBuilder.getVersion() + "-" + controlBuilder.getRelease();
+        String architecture = controlBuilder.getArchitecture();
+        File rpm = new File( buildDir, "RPMS/" + architecture + "/" + baseName + "." + architecture + ".rpm" );
+        Files.move( rpm.toPath(), task.getSetupFile().toPath(), StandardCopyOption.REPLACE_EXISTING );
+        long size = task.getManifest().getTotalSize();
+        long packageSize = task.getSetupFile().length();
+        task.getProject().getLogger().lifecycle( String.format( "\tPayload %s: %,d bytes of files to a package of %,d bytes (%.1f%%) in %,d ms", controlBuilder.getPayloadMode(), size, packageSize, 100.0 * packageSize / Math.max( 1, size ), millis ) );
+        File srpm = new File( buildDir, "SRPMS/" + baseName + ".src.rpm" );
+        Files.move( srpm.toPath(), new File( setup.getDestinationDir(), srpm.getName() ).toPath(), StandardCopyOption.REPLACE_EXISTING );
     }
 
 
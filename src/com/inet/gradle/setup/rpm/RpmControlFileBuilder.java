@@ -19,13 +19,19 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import com.inet.gradle.setup.DesktopStarter;
+import com.inet.gradle.setup.FileManifest;
+import com.inet.gradle.setup.FilePermissions;
 import com.inet.gradle.setup.SetupBuilder;
 
 /**
@@ -46,6 +52,8 @@ class RpmControlFileBuilder {
 
     private File               buildDir;
 
+    private File               buildRoot;
+
     private Collection<String> confFiles = new ArrayList<>();
     
     enum Script {
@@ -60,11 +68,13 @@ class RpmControlFileBuilder {
      * @param rpm the task for the redhat package
      * @param setup the generic task for all setups
      * @param buildDir the directory to build the package in
+     * @param buildRoot the buildroot with the staged and generated files
      */
-    RpmControlFileBuilder( Rpm rpm, SetupBuilder setup, File buildDir ) {
+    RpmControlFileBuilder( Rpm rpm, SetupBuilder setup, File buildDir, File buildRoot ) {
         this.rpm = rpm;
         this.setup = setup;
         this.buildDir = buildDir;
+        this.buildRoot = buildRoot;
     }
 
     /**
@@ -109,6 +119,7 @@ class RpmControlFileBuilder {
 			putPrefix(controlWriter);
 			putDepends(controlWriter);
 			putArchitecture(controlWriter);
+			putPayload(controlWriter);
 			
 			putDescription(controlWriter); 
 			
@@ -157,26 +168,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putPreun(OutputStreamWriter controlWriter)  throws IOException {
 		controlWriter.write(NEWLINE + "%preun" + NEWLINE);
-		ArrayList<String> preuns = rpm.getPreun();
-		for (String preun : preuns) {
-			controlWriter.write(preun + NEWLINE);	
-		}
-		StringBuilder prep_script = scriptMap.get( Script.PRERM );
-		if(prep_script != null) {
-			controlWriter.write(prep_script.toString() + NEWLINE);
-		}
-		
-		// removes only the files in the installation path
-		List<String> del_files = setup.getDeleteFiles();
-		for (String file : del_files) {
-			controlWriter.write("rm -f \"${RPM_INSTALL_PREFIX}/" + file + "\"" + NEWLINE);	
-		}
-		// removes only the dirs in the installation path
-		List<String> del_dirs = setup.getDeleteFolders();
-		for (String dirs : del_dirs) {
-			controlWriter.write("rm -R -f \"${RPM_INSTALL_PREFIX}/" + dirs + "\"" + NEWLINE);	
-		}
-		
+		controlWriter.write(getScript(Script.PRERM));
 	}
 
 	/**
@@ -186,27 +178,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putPre(OutputStreamWriter controlWriter) throws IOException {
 		controlWriter.write(NEWLINE + "%pre" + NEWLINE);
-		ArrayList<String> pres = rpm.getPre();
-		for (String pre : pres) {
-			controlWriter.write(pre + NEWLINE);	
-		}
-		
-		StringBuilder pre_script = scriptMap.get( Script.PREINST );
-		if(pre_script != null) {
-			controlWriter.write(pre_script.toString() + NEWLINE);
-		}
-		
-		// removes only the files in the installation path
-		List<String> del_files = setup.getDeleteFiles();
-		for (String file : del_files) {
-			controlWriter.write("rm -f \"${RPM_INSTALL_PREFIX}/" + file + "\"" + NEWLINE);	
-		}
-		// removes only the dirs in the installation path
-		List<String> del_dirs = setup.getDeleteFolders();
-		for (String dirs : del_dirs) {
-			controlWriter.write("rm -R -f \"${RPM_INSTALL_PREFIX}/" + dirs + "\"" + NEWLINE);	
-		}
-		
+		controlWriter.write(getScript(Script.PREINST));
 	}
 	
 	/**
@@ -216,94 +188,219 @@ class RpmControlFileBuilder {
 	 */
 	private void putPost(OutputStreamWriter controlWriter) throws IOException {
 		controlWriter.write(NEWLINE + "%post" + NEWLINE);
-		ArrayList<String> posts = rpm.getPost();
-		for (String post : posts) {
-			controlWriter.write(post + NEWLINE);	
-		}	
-		
-		StringBuilder post_script = scriptMap.get( Script.POSTINST );
-		if(post_script != null) {
-			controlWriter.write(post_script.toString() + NEWLINE);
+		controlWriter.write(getScript(Script.POSTINST));
+	}
+	
+	/**
+	 * This script is executed after the package has been removed.
+	 * @param controlWriter the writer for the file
+	 * @throws IOException if the was an error while writing to the file
+	 */
+	private void putPostun(OutputStreamWriter controlWriter) throws IOException {
+		controlWriter.write(NEWLINE + "%postun" + NEWLINE);
+		controlWriter.write(getScript(Script.POSTRM));
+	}
+
+	/**
+	 * Get the content of an install script. It is used for the sections of the SPEC file and for the scripts of the
+	 * package that is written in Java.
+	 * <dl>
+	 * <dt>PREINST</dt><dd>%pre: the pre entries of the task, the fragments and the removing of deleteFiles and deleteFolders</dd>
+	 * <dt>POSTINST</dt><dd>%post: the post entries of the task, the fragments and the start of runAfter</dd>
+	 * <dt>PRERM</dt><dd>%preun: the preun entries of the task, the fragments and the removing of deleteFiles and deleteFolders</dd>
+	 * <dt>POSTRM</dt><dd>%postun: the postun entries of the task and the fragments</dd>
+	 * </dl>
+	 * @param script the install script section
+	 * @return the script, every line is terminated with a line break, can be empty
+	 */
+	String getScript(Script script) {
+		StringBuilder builder = new StringBuilder();
+		ArrayList<String> lines;
+		switch( script ) {
+			case PREINST:
+				lines = rpm.getPre();
+				break;
+			case POSTINST:
+				lines = rpm.getPost();
+				break;
+			case PRERM:
+				lines = rpm.getPreun();
+				break;
+			default:
+				lines = rpm.getPostun();
 		}
-		
-		
+		for (String line : lines) {
+			builder.append(line).append(NEWLINE);
+		}
+		StringBuilder fragments = scriptMap.get( script );
+		if(fragments != null) {
+			builder.append(fragments).append(NEWLINE);
+		}
+
+		if( script == Script.PREINST || script == Script.PRERM ) {
+			// removes only the files in the installation path
+			List<String> del_files = setup.getDeleteFiles();
+			for (String file : del_files) {
+				builder.append("rm -f \"${RPM_INSTALL_PREFIX}/" + file + "\"").append(NEWLINE);
+			}
+			// removes only the dirs in the installation path
+			List<String> del_dirs = setup.getDeleteFolders();
+			for (String dirs : del_dirs) {
+				builder.append("rm -R -f \"${RPM_INSTALL_PREFIX}/" + dirs + "\"").append(NEWLINE);
+			}
+		}
+
 		DesktopStarter starter = setup.getRunAfter();
-		if(starter != null ) {
+		if( script == Script.POSTINST && starter != null ) {
 			String executable = starter.getExecutable();
 			String mainClass = starter.getMainClass();
 			String workingDir = starter.getWorkDir();
 			if( executable != null ) {
 				if( workingDir != null ) {
-					controlWriter.write("( cd \"${RPM_INSTALL_PREFIX}/" + workingDir + "\" && " + executable + " & )" + NEWLINE);
+					builder.append("( cd \"${RPM_INSTALL_PREFIX}/" + workingDir + "\" && " + executable + " & )").append(NEWLINE);
 				} else {
-					controlWriter.write("( cd \"${RPM_INSTALL_PREFIX}\" && " + executable + " & )" + NEWLINE);	
+					builder.append("( cd \"${RPM_INSTALL_PREFIX}\" && " + executable + " & )").append(NEWLINE);
 				}
 				
 			} else if( mainClass != null ) {
 				if( workingDir != null ) {
-					controlWriter.write("( cd \"${RPM_INSTALL_PREFIX}/" + workingDir + "\" && java -cp " + starter.getMainJar()  + " " +  mainClass + " & )" + NEWLINE);
+					builder.append("( cd \"${RPM_INSTALL_PREFIX}/" + workingDir + "\" && java -cp " + starter.getMainJar()  + " " +  mainClass + " & )").append(NEWLINE);
 				} else {
-					controlWriter.write("( cd \"${RPM_INSTALL_PREFIX}\" && java -cp " + starter.getMainJar()  + " " +  mainClass + " & )"  + NEWLINE);	
+					builder.append("( cd \"${RPM_INSTALL_PREFIX}\" && java -cp " + starter.getMainJar()  + " " +  mainClass + " & )").append(NEWLINE);
 				}
 			}
 		}
-		
+		return builder.toString();
 	}
 	
-	/**
-	 * This script is executed after the package has been removed.
-	 * @param controlWriter the writer for the file
-	 * @throws IOException if the was an error while writing to the file
-	 */
-	private void putPostun(OutputStreamWriter controlWriter) throws IOException {
-		controlWriter.write(NEWLINE + "%postun" + NEWLINE);
-		ArrayList<String> posts = rpm.getPostun();
-		for (String post : posts) {
-			controlWriter.write(post + NEWLINE);	
-		}	
-		StringBuilder postun_script = scriptMap.get( Script.POSTRM );
-		if(postun_script != null) {
-			controlWriter.write(postun_script.toString() + NEWLINE);
-		}
-	}
-	
-	/**
-	 * Specifies the files that should be installed. The files will be installed under the installationRoot in the system.
-	 * If files need to be installed somewhere else these files need to be copied via the post step. 
-	 * @param controlWriter the writer for the file
-	 * @throws IOException if the was an error while writing to the file
-	 */
-	private void putFiles(OutputStreamWriter controlWriter) throws IOException {
-		controlWriter.write(NEWLINE + "%files" + NEWLINE);
-		
-		controlWriter.write( "\"" + rpm.getInstallationRoot()+ "\"" + NEWLINE); // nimmt anscheinend nicht die Files in der Root
-		
-		if(setup.getDesktopStarters() != null && setup.getDesktopStarters().size() > 0) {
-			controlWriter.write( "/usr/share/applications/*" + NEWLINE);
-			controlWriter.write( "/usr/share/icons/**/*" + NEWLINE);
-			controlWriter.write( "/usr/bin/*" + NEWLINE);
-		}
-		
-		if(setup.getServices() != null && setup.getServices().size() > 0) {
-			controlWriter.write("%config /etc/init.d/*" + NEWLINE);	
-		}
-		
-	}
+    /**
+     * Specifies the files that should be installed. Every directory and file is listed explicitly with its permissions,
+     * so rpmbuild does not glob the buildroot. The files of the setup are listed from the file manifest with the
+     * permission rules of the setupBuilder. The files that was generated by the builder outside of the installation
+     * root are listed from the buildroot. Only the directories of the installation root are owned by the package, the
+     * system directories like /usr/bin are owned by other packages.
+     * @param controlWriter the writer for the file
+     * @throws IOException if the was an error while writing to the file
+     */
+    private void putFiles( OutputStreamWriter controlWriter ) throws IOException {
+        controlWriter.write( NEWLINE + "%files" + NEWLINE );
+        controlWriter.write( "%defattr(-,root,root,0755)" + NEWLINE );
+
+        // value is the mode of a file or null for a directory
+        TreeMap<String, Integer> entries = new TreeMap<>();
+        String root = rpm.getInstallationRoot();
+        FilePermissions permissions = setup.getPermissions();
+        entries.put( root, null );
+        for( FileManifest.Entry entry : rpm.getManifest().getEntries() ) {
+            String path = root + '/' + entry.getPath();
+            if( entry.isDirectory() ) {
+                addDirectories( entries, root, path );
+            } else {
+                addDirectories( entries, root, path.substring( 0, path.lastIndexOf( '/' ) ) );
+                entries.put( path, permissions.getMode( entry.getPath() ) );
+            }
+        }
+        addGenerated( entries, root, "", buildRoot );
+
+        Set<String> confPaths = new HashSet<>();
+        for( String confFile : confFiles ) {
+            confPaths.add( confFile.substring( confFile.indexOf( '/' ) ) ); // without the BUILDROOT directory
+        }
+        for( Map.Entry<String, Integer> entry : entries.entrySet() ) {
+            String path = entry.getKey();
+            Integer mode = entry.getValue();
+            if( mode == null ) {
+                controlWriter.write( "%dir " );
+            } else {
+                if( confPaths.contains( path ) ) {
+                    controlWriter.write( "%config(noreplace) " );
+                }
+                if( mode >= 0 ) {
+                    controlWriter.write( String.format( "%%attr(%04o,root,root) ", mode ) );
+                }
+            }
+            controlWriter.write( '"' + escapePath( path ) + '"' + NEWLINE );
+        }
+    }
+
+    /**
+     * Add a directory and all its parent directories up to the installation root.
+     * @param entries the entries of the file list
+     * @param root the installation root
+     * @param path the absolute path of the directory
+     */
+    private static void addDirectories( TreeMap<String, Integer> entries, String root, String path ) {
+        while( path.startsWith( root + '/' ) && !entries.containsKey( path ) ) {
+            entries.put( path, null );
+            path = path.substring( 0, path.lastIndexOf( '/' ) );
+        }
+    }
+
+    /**
+     * Add the files that was generated by the builder outside of the installation root. The installation root itself
+     * is staged from the file manifest and is skipped. Symbolic links get the mode -1, RPM ignores the mode of links.
+     * @param entries the entries of the file list
+     * @param root the installation root
+     * @param path the absolute path in the package
+     * @param file the file or directory in the buildroot
+     * @throws IOException if the attributes can not be read
+     */
+    private static void addGenerated( TreeMap<String, Integer> entries, String root, String path, File file ) throws IOException {
+        if( path.equals( root ) ) {
+            return;
+        }
+        if( Files.isSymbolicLink( file.toPath() ) ) {
+            entries.put( path, -1 );
+        } else if( file.isDirectory() ) {
+            File[] children = file.listFiles();
+            if( children != null ) {
+                for( File child : children ) {
+                    addGenerated( entries, root, path + '/' + child.getName(), child );
+                }
+            }
+        } else {
+            entries.put( path, Files.isExecutable( file.toPath() ) ? FilePermissions.EXEC_MODE : FilePermissions.FILE_MODE );
+        }
+    }
+
+    /**
+     * Escape a path for the %files section. Macros starts with a percent sign and glob characters are expanded by
+     * rpmbuild also in quoted paths.
+     * @param path the path
+     * @return the escaped path
+     */
+    private static String escapePath( String path ) {
+        StringBuilder builder = new StringBuilder( path.length() );
+        for( int i = 0; i < path.length(); i++ ) {
+            char ch = path.charAt( i );
+            switch( ch ) {
+                case '%':
+                    builder.append( "%%" );
+                    break;
+                case '*':
+                case '?':
+                case '[':
+                case ']':
+                case '{':
+                case '}':
+                case '\\':
+                    builder.append( '\\' ).append( ch );
+                    break;
+                default:
+                    builder.append( ch );
+            }
+        }
+        return builder.toString();
+    }
 
 	/**
-	 * This is used to clean up the build directory tree. Normally RPM does this for you.
-	 * During the clean step the created package will be copied to the distribution directory. 
+	 * This is used to clean up the build directory tree. The section is written always, so that RPM does not remove the
+	 * staged buildroot. The created packages are moved to the distribution directory by the RpmBuilder.
 	 * @param controlWriter the writer for the file
 	 * @throws IOException if the was an error while writing to the file
 	 */
 	private void putClean(OutputStreamWriter controlWriter) throws IOException {
 		controlWriter.write(NEWLINE + "%clean" + NEWLINE);
-		String release = rpm.getRelease();
-		if(release == null || release.length() == 0) {
-			release = "1";
-		}
-		controlWriter.write("cp ../SRPMS/" + setup.getAppIdentifier() + "-" + setup.getVersion() + "-" + release + ".src.rpm " + setup.getDestinationDir().getAbsolutePath() + NEWLINE);
-		controlWriter.write("mv -f ../RPMS/noarch/" + setup.getAppIdentifier() + "-" + setup.getVersion() + "-" + release + ".noarch.rpm " + setup.getDestinationDir().getAbsolutePath() + "/" + setup.getAppIdentifier() + "-" + setup.getVersion() + ".rpm" + NEWLINE);
 		ArrayList<String> cleans = rpm.getClean();
 		for (String clean : cleans) {
 			controlWriter.write(clean + NEWLINE);	
@@ -312,17 +409,13 @@ class RpmControlFileBuilder {
 
 	/**
 	 * Contains the necessary steps to install the build software
-	 * The files in the BUILD directory needs to be copied into the BUILDROOT directory so that the install step 
-	 * finds the files.
+	 * The files are staged directly into the BUILDROOT directory by the RpmBuilder, so there is nothing to copy.
+	 * Only the install entries of the task are executed.
 	 * @param controlWriter the writer for the file
 	 * @throws IOException if the was an error while writing to the file
 	 */
 	private void putInstall(OutputStreamWriter controlWriter) throws IOException {
 		controlWriter.write(NEWLINE + "%install" + NEWLINE);
-		controlWriter.write("cp -R . %{buildroot}" + NEWLINE);
-//		if(setup.getServices() != null && setup.getServices().size() > 0) {
-//			controlWriter.write("cp -R etc %{buildroot}" + NEWLINE);	
-//		}
 		ArrayList<String> installs = rpm.getInstall();
 		for (String install : installs) {
 			controlWriter.write(install + NEWLINE);	
@@ -368,6 +461,114 @@ class RpmControlFileBuilder {
 		
 	}
 
+	/**
+	 * Get the name of the package. The package is mandatory. If no package is declared a runtime exception will be thrown.
+	 * @return the name
+	 */
+	String getName() {
+		String packages = setup.getAppIdentifier();
+		if(packages == null || packages.length() == 0) {
+			throw new RuntimeException("No package declared in the setup configuration.");
+		}
+		return packages;
+	}
+
+	/**
+	 * Get the version. The version is mandatory. If no version is declared a runtime exception will be thrown.
+	 * @return the version
+	 */
+	String getVersion() {
+		String version = setup.getVersion();
+		if(version == null || version.length() == 0) {
+			throw new RuntimeException("No version declared in the setup configuration.");
+		}
+		return version;
+	}
+
+	/**
+	 * Get the release. If no release is specified '1' is used.
+	 * @return the release
+	 */
+	String getRelease() {
+		String release = rpm.getRelease();
+		if(release == null || release.length() == 0) {
+			release = "1";
+		}
+		return release;
+	}
+
+	/**
+	 * Get the summary. The summary is mandatory. If no summary is declared a runtime exception will be thrown.
+	 * @return the summary
+	 */
+	String getSummary() {
+		String summary = rpm.getSummary();
+		if(summary == null || summary.length() == 0) {
+			throw new RuntimeException("No summary declared in the setup configuration.");
+		}
+		return summary;
+	}
+
+	/**
+	 * Get the description. It is created from the application name and the description entry.
+	 * @return the description
+	 */
+	String getDescription() {
+		return setup.getApplication() + "\n " + rpm.getDescription();
+	}
+
+	/**
+	 * Get the vendor. The vendor is mandatory. If no vendor is declared a runtime exception will be thrown.
+	 * @return the vendor
+	 */
+	String getVendor() {
+		String vendor = setup.getVendor();
+		if(vendor == null || vendor.length() == 0) {
+			throw new RuntimeException("No vendor declared in the setup configuration.");
+		}
+		return vendor;
+	}
+
+	/**
+	 * Get the license. If no license is specified 'Restricted' is used.
+	 * @return the license
+	 */
+	String getLicense() {
+		String license = rpm.getLicense();
+		if(license == null || license.length() == 0) {
+			license = "Restricted";
+		}
+		return license;
+	}
+
+	/**
+	 * Get the dependencies. If no dependencies are specified, the 'java-devel >= 1.8' dependencies will be used.
+	 * If a service is specified the 'daemonize' dependency will also be added.
+	 * @return comma separated dependencies
+	 */
+	String getDepends() {
+	    String depends = rpm.getDepends();
+	    if(depends == null || depends.length() == 0 ) {
+	        depends = "java-devel >= 1.8";
+	    }
+	    if(setup.getServices() != null && setup.getServices().size() > 0) {
+	    	depends = depends + ", daemonize";
+	    }
+	    return depends;
+	}
+
+	/**
+	 * Get the architecture. If no architecture is specified then 'noarch' will be used.
+	 * @return the architecture
+	 */
+	String getArchitecture() {
+		String architecture = rpm.getArchitecture();
+		if(architecture == null || architecture.length() == 0) {
+			architecture = "noarch";
+		}
+		return architecture;
+	}
+
 	/**
 	 * Write the packager to the file. The packager is the same as the vendor.
 	 * @param controlWriter the writer for the file
@@ -375,12 +576,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putPackager(OutputStreamWriter controlWriter)
 			throws IOException {
-		String vendor = setup.getVendor();
-		if(vendor == null || vendor.length() == 0) {
-			throw new RuntimeException("No vendor declared in the setup configuration.");
-		} else {
-			controlWriter.write("Packager: " + vendor + NEWLINE);
-		}
+		controlWriter.write("Packager: " + getVendor() + NEWLINE);
 	}
 
 	/**
@@ -402,7 +598,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putBuildRoot(OutputStreamWriter controlWriter)
 			throws IOException {
-		controlWriter.write("BuildRoot: ${_builddir}/%{name}-root" + NEWLINE);
+		controlWriter.write("BuildRoot: %{_topdir}/BUILDROOT" + NEWLINE); // only for old RPM versions, newer use the command line
 	}
 
 	/**
@@ -412,11 +608,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putLicense(OutputStreamWriter controlWriter)
 			throws IOException {
-		String license = rpm.getLicense();
-		if(license == null || license.length() == 0) {
-			license = "Restricted";
-		}
-		controlWriter.write("License: " + license + NEWLINE);
+		controlWriter.write("License: " + getLicense() + NEWLINE);
 	}
 
 	/**
@@ -426,23 +618,45 @@ class RpmControlFileBuilder {
 	 */
 	private void putRelease(OutputStreamWriter controlWriter) 
 			throws IOException {
-		String release = rpm.getRelease();
-		if(release == null || release.length() == 0) {
-			release = "1";
-		}
-		controlWriter.write("Release: " + release + NEWLINE);
-		
+		controlWriter.write("Release: " + getRelease() + NEWLINE);
 	}
 
+    /**
+     * Write the compression of the binary payload to the file. Without it rpmbuild use the default of the distribution,
+     * which is often a single threaded xz with a high level.
+     * @param controlWriter the writer for the file
+     * @throws IOException if the was an error while writing to the file
+     */
+    private void putPayload( OutputStreamWriter controlWriter ) throws IOException {
+        controlWriter.write( "%define _binary_payload " + getPayloadMode() + NEWLINE );
+    }
+
+    /**
+     * Get the I/O mode of rpmbuild for the payload like "w6.gzdio" or "w19T8.zstdio". rpmbuild compress gzip always
+     * single threaded, the thread count is only set for xz and zstd.
+     * @return the mode
+     */
+    String getPayloadMode() {
+        String compression = rpm.getCompression();
+        StringBuilder mode = new StringBuilder( "w" ).append( rpm.getCompressionLevel() );
+        switch( compression ) {
+            case Rpm.COMPRESSION_XZ:
+                return mode.append( 'T' ).append( rpm.getCompressionThreads() ).append( ".xzdio" ).toString();
+            case Rpm.COMPRESSION_ZSTD:
+                return mode.append( 'T' ).append( rpm.getCompressionThreads() ).append( ".zstdio" ).toString();
+            default:
+                return mode.append( ".gzdio" ).toString();
+        }
+    }
+
 	/**
 	 * Write the description to the file. The description is created from the application name and the description entry.
 	 * @param controlWriter the writer for the file
 	 * @throws IOException if the was an error while writing to the file
 	 */
     private void putDescription( OutputStreamWriter controlWriter ) throws IOException {
-        String description = setup.getApplication() + "\n " + rpm.getDescription();
         controlWriter.write( NEWLINE + "%define __jar_repack %{nil}" + NEWLINE );
-        controlWriter.write( NEWLINE + "%description" + NEWLINE + description + NEWLINE );
+        controlWriter.write( NEWLINE + "%description" + NEWLINE + getDescription() + NEWLINE );
     }
 
 	/**
@@ -452,12 +666,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putVendor(OutputStreamWriter controlWriter)
 			throws IOException {
-		String vendor = setup.getVendor();
-		if(vendor == null || vendor.length() == 0) {
-			throw new RuntimeException("No vendor declared in the setup configuration.");
-		} else {
-			controlWriter.write("Vendor: " + vendor + NEWLINE);
-		}
+		controlWriter.write("Vendor: " + getVendor() + NEWLINE);
 	}
 	/**
 	 * Write the dependencies to the file. If no dependencies are specified, the 'java-devel >= 1.8' dependencies will be used.
@@ -467,14 +676,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putDepends(OutputStreamWriter controlWriter)
 	                throws IOException {
-	    String depends = rpm.getDepends();
-	    if(depends == null || depends.length() == 0 ) {
-	        depends = "java-devel >= 1.8";
-	    }
-	    if(setup.getServices() != null && setup.getServices().size() > 0) {
-	    	depends = depends + ", daemonize";
-	    }
-	    controlWriter.write("Requires: " + depends + NEWLINE);
+	    controlWriter.write("Requires: " + getDepends() + NEWLINE);
 	}
 
 	/**
@@ -484,11 +686,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putArchitecture(OutputStreamWriter controlWriter)
 			throws IOException {
-		String architecture = rpm.getArchitecture();
-		if(architecture == null || architecture.length() == 0) {
-			architecture = "noarch";
-		}
-		controlWriter.write("BuildArchitectures: " + architecture + NEWLINE);
+		controlWriter.write("BuildArchitectures: " + getArchitecture() + NEWLINE);
 	}
 
 	/**
@@ -511,12 +709,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putVersion(OutputStreamWriter controlWriter)
 			throws IOException {
-		String version = setup.getVersion();
-		if(version == null || version.length() == 0) {
-			throw new RuntimeException("No version declared in the setup configuration.");
-		} else {
-			controlWriter.write("Version: " + version + NEWLINE);
-		}
+		controlWriter.write("Version: " + getVersion() + NEWLINE);
 	}
 
 	/**
@@ -526,12 +719,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putSummary(OutputStreamWriter controlWriter)
 			throws IOException {
-		String summary = rpm.getSummary();
-		if(summary == null || summary.length() == 0) {
-			throw new RuntimeException("No summary declared in the setup configuration.");
-		} else {
-			controlWriter.write("Summary: " + summary + NEWLINE);
-		}
+		controlWriter.write("Summary: " + getSummary() + NEWLINE);
 	}
 	
 	/**
@@ -541,12 +729,7 @@ class RpmControlFileBuilder {
 	 */
 	private void putName(OutputStreamWriter controlWriter)
 			throws IOException {
-		String packages = setup.getAppIdentifier();
-		if(packages == null || packages.length() == 0) {
-			throw new RuntimeException("No package declared in the setup configuration.");
-		} else {
-			controlWriter.write("Name: " + packages + NEWLINE);
-		}
+		controlWriter.write("Name: " + getName() + NEWLINE);
 	}
 
 	/**
@@ -556,6 +739,14 @@ class RpmControlFileBuilder {
 	public void addConfFile(String file) {
 	    confFiles.add( file );
 	}
+
+	/**
+	 * Get the config files.
+	 * @return the paths relative to the build directory, for example "BUILDROOT/etc/init.d/foo"
+	 */
+	Collection<String> getConfFiles() {
+	    return confFiles;
+	}
 	
 	 
     /**
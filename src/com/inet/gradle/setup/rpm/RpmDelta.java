@@ -0,0 +1,568 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.inet.gradle.setup.util.ArReader;
+import com.inet.gradle.setup.util.ArWriter;
+import com.inet.gradle.setup.util.CompressionUtils;
+import com.inet.gradle.setup.util.CpioReader;
+import com.inet.gradle.setup.util.DigestUtils;
+
+/**
+ * Create and apply binary deltas between two releases of a RPM package. The delta is computed from the file digests
+ * in the headers of both packages. Files that are contained in the old package, also with another path, are not saved
+ * in the delta. The delta is applied to the old package file and not to the installed files, the target hosts must
+ * keep the file of the previous release. The tool requires only Java, and xz or zstd for packages with this
+ * compression. It can be executed on the target hosts with:
+ *
+ * <pre>
+ * java -cp SetupBuilder.jar com.inet.gradle.setup.rpm.RpmDelta apply old.rpm new.rpm.delta new.rpm
+ * java -cp SetupBuilder.jar com.inet.gradle.setup.rpm.RpmDelta create old.rpm new.rpm new.rpm.delta [compressionThreads]
+ * </pre>
+ *
+ * The signature of a RPM package contains the digest of the compressed payload. That the signature is valid, the new
+ * package must be restored byte identical. This is only possible if the payload can be compressed identical again
+ * like the payload of the Java packager. This is verified when the delta is created.
+ * <p>
+ * The delta is an ar archive with the members:
+ * <ol>
+ * <li><tt>delta-info</tt>: the lines "Format: 1", "Old-Size", "Old-SHA256", "New-Size", "New-SHA256",
+ * "Compression", "Compression-Level" and "Compression-Threads".</li>
+ * <li><tt>rpm-head</tt>: the lead, the signature and the header of the new package unchanged.</li>
+ * <li><tt>payload-index</tt>: the index of the cpio payload.</li>
+ * <li><tt>delta-data.gz</tt>: the gzip compressed content of all new entries in the order of the index.</li>
+ * </ol>
+ * The index has a line for every entry of the cpio payload in its order. The header is the ASCII header of the cpio
+ * entry with all values like mode, time and size:
+ * <ul>
+ * <li><tt>O header digest path</tt>: a file that is contained in the old package with this file digest</li>
+ * <li><tt>N header path</tt>: an entry with the next size bytes of delta-data.gz, also directories and links</li>
+ * <li><tt>T header size</tt>: the trailer of the archive and the next size bytes of delta-data.gz with the padding
+ * after the trailer</li>
+ * </ul>
+ */
+public class RpmDelta {
+
+    private static final String FORMAT  = "1";
+
+    private static final String INFO    = "delta-info";
+
+    private static final String HEAD    = "rpm-head";
+
+    private static final String INDEX   = "payload-index";
+
+    private static final String DATA    = "delta-data.gz";
+
+    private static final int    AR_MODE = 0100644;
+
+    private int                 unchangedFiles;
+
+    private int                 changedFiles;
+
+    /**
+     * Entry point for the command line.
+     *
+     * @param args "create old.rpm new.rpm delta [compressionThreads]" or "apply old.rpm delta new.rpm"
+     * @throws IOException if any I/O error occur
+     */
+    public static void main( String[] args ) throws IOException {
+        if( (args.length == 4 || args.length == 5) && args[0].equals( "create" ) ) {
+            RpmDelta delta = new RpmDelta();
+            delta.create( new File( args[1] ), new File( args[2] ), new File( args[3] ), args.length == 5 ? Integer.parseInt( args[4] ) : Runtime.getRuntime().availableProcessors() );
+            System.out.println( delta.getChangedFiles() + " changed files, " + delta.getUnchangedFiles() + " unchanged files" );
+        } else if( args.length == 4 && args[0].equals( "apply" ) ) {
+            new RpmDelta().apply( new File( args[1] ), new File( args[2] ), new File( args[3] ) );
+        } else {
+            System.err.println( "Usage: RpmDelta create <old.rpm> <new.rpm> <delta> [compressionThreads]" );
+            System.err.println( "       RpmDelta apply <old.rpm> <delta> <new.rpm>" );
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * Create a delta.
+     *
+     * @param oldRpm the previous release
+     * @param newRpm the new release
+     * @param delta the delta file that should be created
+     * @param compressionThreads the count of threads that has compressed the payload of the new package, xz and zstd
+     *            can create another result with another thread count
+     * @throws IOException if any I/O error occur or if the payload of the new package can not be compressed identical
+     */
+    public void create( File oldRpm, File newRpm, File delta, int compressionThreads ) throws IOException {
+        RpmReader oldReader = new RpmReader( oldRpm );
+        RpmReader newReader = new RpmReader( newRpm );
+        Set<String> oldDigests = new HashSet<>();
+        if( oldReader.getFileDigestAlgorithm() == newReader.getFileDigestAlgorithm() ) {
+            oldDigests.addAll( oldReader.getFileDigests().values() );
+        }
+        Map<String, String> newDigests = newReader.getFileDigests();
+        String compression = newReader.getPayloadCompressor();
+        int level = getLevel( newReader );
+        unchangedFiles = changedFiles = 0;
+
+        // the payload is compressed again while reading, to check that the apply can restore the package identical
+        MessageDigest payloadDigest = DigestUtils.newDigest( "SHA-256" );
+        File dataFile = new File( delta.getPath() + ".tmp" );
+        File log = new File( delta.getAbsolutePath() + ".log" );
+        byte[] index;
+        try {
+            try( OutputStream data = new GZIPOutputStream( new BufferedOutputStream( new FileOutputStream( dataFile ) ), 65536 ) ) {
+                OutputStream recompressed = CompressionUtils.compress( new DigestOutputStream( new NullOutputStream(), payloadDigest ), compression, level, compressionThreads, log );
+                try( CpioReader cpio = new CpioReader( new TeeInputStream( newReader.openPayload(), recompressed ) ) ) {
+                    index = createIndex( cpio, oldDigests, newDigests, data );
+                } finally {
+                    recompressed.close();
+                }
+            }
+            if( !DigestUtils.toHex( payloadDigest.digest() ).equals( sha256( newRpm, newReader.getHeadSize() ) ) ) {
+                throw new IOException( "The payload of the package can not be compressed identical again, a delta is only possible for packages of the Java packager: " + newRpm );
+            }
+
+            StringBuilder info = new StringBuilder();
+            info.append( "Format: " ).append( FORMAT ).append( '\n' );
+            info.append( "Old-Size: " ).append( oldRpm.length() ).append( '\n' );
+            info.append( "Old-SHA256: " ).append( sha256( oldRpm, 0 ) ).append( '\n' );
+            info.append( "New-Size: " ).append( newRpm.length() ).append( '\n' );
+            info.append( "New-SHA256: " ).append( sha256( newRpm, 0 ) ).append( '\n' );
+            info.append( "Compression: " ).append( compression ).append( '\n' );
+            info.append( "Compression-Level: " ).append( level ).append( '\n' );
+            info.append( "Compression-Threads: " ).append( compressionThreads ).append( '\n' );
+
+            long time = newRpm.lastModified();
+            try( ArWriter ar = new ArWriter( delta ) ) {
+                ar.addMember( INFO, time, AR_MODE, info.toString().getBytes( StandardCharsets.UTF_8 ) );
+                ar.addMember( HEAD, time, AR_MODE, newReader.getHead() );
+                ar.addMember( INDEX, time, AR_MODE, index );
+                try( OutputStream member = ar.addMember( DATA, time, AR_MODE ) ) {
+                    Files.copy( dataFile.toPath(), member );
+                }
+            }
+        } finally {
+            Files.deleteIfExists( dataFile.toPath() );
+            Files.deleteIfExists( log.toPath() );
+        }
+    }
+
+    /**
+     * Create the index of the payload and write the content of all new entries.
+     *
+     * @param cpio the payload of the new package
+     * @param oldDigests the digests of all files of the old package
+     * @param newDigests the digests of the new package from its header
+     * @param data the stream for the content of the new entries
+     * @return the index
+     * @throws IOException if any I/O error occur
+     */
+    private byte[] createIndex( CpioReader cpio, Set<String> oldDigests, Map<String, String> newDigests, OutputStream data ) throws IOException {
+        StringBuilder index = new StringBuilder();
+        byte[] buffer = new byte[65536];
+        while( cpio.next() ) {
+            String path = cpio.getPath();
+            String digest = newDigests.get( toAbsolute( path ) );
+            // hard links of rpmbuild have the content only at the last link
+            if( cpio.isFile() && cpio.getSize() > 0 && digest != null && oldDigests.contains( digest ) ) {
+                index.append( "O " ).append( cpio.getHeader() ).append( ' ' ).append( digest ).append( ' ' ).append( path ).append( '\n' );
+                unchangedFiles++;
+            } else {
+                try( InputStream input = cpio.getInputStream() ) {
+                    int count;
+                    while( (count = input.read( buffer )) > 0 ) {
+                        data.write( buffer, 0, count );
+                    }
+                }
+                index.append( "N " ).append( cpio.getHeader() ).append( ' ' ).append( path ).append( '\n' );
+                if( cpio.isFile() ) {
+                    changedFiles++;
+                }
+            }
+        }
+        long tail = 0;
+        InputStream input = cpio.getRawInputStream();
+        int count;
+        while( (count = input.read( buffer )) > 0 ) {
+            data.write( buffer, 0, count );
+            tail += count;
+        }
+        index.append( "T " ).append( cpio.getHeader() ).append( ' ' ).append( tail ).append( '\n' );
+        return index.toString().getBytes( StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Apply a delta and create the new package.
+     *
+     * @param oldRpm the previous release
+     * @param delta the delta file
+     * @param newRpm the package file that should be created
+     * @throws IOException if any I/O error occur, if the delta does not match the old package or if the result does
+     *             not match the original package
+     */
+    public void apply( File oldRpm, File delta, File newRpm ) throws IOException {
+        Map<String, String> info = new HashMap<>();
+        byte[] head = null;
+        List<String[]> index = null;
+        try( ArReader ar = new ArReader( delta ) ) {
+            for( String name = ar.next(); name != null; name = ar.next() ) {
+                if( name.equals( INFO ) ) {
+                    for( String line : new String( ar.readContent(), StandardCharsets.UTF_8 ).split( "\n" ) ) {
+                        int idx = line.indexOf( ": " );
+                        if( idx > 0 ) {
+                            info.put( line.substring( 0, idx ), line.substring( idx + 2 ) );
+                        }
+                    }
+                } else if( name.equals( HEAD ) ) {
+                    head = ar.readContent();
+                } else if( name.equals( INDEX ) ) {
+                    index = parseIndex( ar.readContent() );
+                }
+            }
+        }
+        if( !FORMAT.equals( info.get( "Format" ) ) ) {
+            throw new IOException( "Unsupported delta format: " + info.get( "Format" ) );
+        }
+        if( head == null || index == null ) {
+            throw new IOException( "Invalid delta: " + delta );
+        }
+        if( !Long.toString( oldRpm.length() ).equals( info.get( "Old-Size" ) ) || !sha256( oldRpm, 0 ).equals( info.get( "Old-SHA256" ) ) ) {
+            throw new IOException( "The delta was not created for the package: " + oldRpm );
+        }
+        String compression = info.get( "Compression" );
+        int level = Integer.parseInt( info.get( "Compression-Level" ) );
+        int threads = Integer.parseInt( info.get( "Compression-Threads" ) );
+
+        File tempDir = new File( newRpm.getPath() + ".tmp" );
+        boolean success = false;
+        try {
+            extractOldFiles( oldRpm, index, tempDir );
+
+            try( ArReader deltaData = new ArReader( delta ) ) {
+                while( !DATA.equals( deltaData.next() ) ) {
+                    if( deltaData.getName() == null ) {
+                        throw new IOException( "No " + DATA + " in the delta: " + delta );
+                    }
+                }
+                InputStream data = new GZIPInputStream( deltaData.getInputStream(), 65536 );
+                OutputStream out = new BufferedOutputStream( new FileOutputStream( newRpm ), 65536 );
+                out.write( head );
+                try( OutputStream payload = CompressionUtils.compress( out, compression, level, threads, new File( tempDir, compression + ".log" ) ) ) {
+                    writePayload( payload, index, tempDir, data );
+                }
+            }
+            if( !Long.toString( newRpm.length() ).equals( info.get( "New-Size" ) ) || !sha256( newRpm, 0 ).equals( info.get( "New-SHA256" ) ) ) {
+                throw new IOException( "The created package is not identical to the original package. Is " + compression + " on this host compatible?" );
+            }
+            success = true;
+        } finally {
+            File[] files = tempDir.listFiles();
+            if( files != null ) {
+                for( File file : files ) {
+                    Files.delete( file.toPath() );
+                }
+            }
+            Files.deleteIfExists( tempDir.toPath() );
+            if( !success ) {
+                Files.deleteIfExists( newRpm.toPath() );
+            }
+        }
+    }
+
+    /**
+     * Parse the index of the payload.
+     *
+     * @param content the content of the index
+     * @return the lines split into the fields
+     * @throws IOException if the index is invalid
+     */
+    private static List<String[]> parseIndex( byte[] content ) throws IOException {
+        List<String[]> index = new ArrayList<>();
+        for( String line : new String( content, StandardCharsets.UTF_8 ).split( "\n" ) ) {
+            if( line.isEmpty() ) {
+                continue;
+            }
+            int count = line.charAt( 0 ) == 'O' ? 4 : 3;
+            String[] fields = line.split( " ", count );
+            if( fields.length != count || fields[1].length() != CpioReader.HEADER_SIZE ) {
+                throw new IOException( "Invalid line in the delta index: " + line );
+            }
+            index.add( fields );
+        }
+        return index;
+    }
+
+    /**
+     * Extract the files of the old package that are referenced in the index. Every file is saved once with its digest
+     * as name.
+     *
+     * @param oldRpm the previous release
+     * @param index the index
+     * @param tempDir the directory for the files
+     * @throws IOException if any I/O error occur or a file is missing in the old package
+     */
+    private static void extractOldFiles( File oldRpm, List<String[]> index, File tempDir ) throws IOException {
+        Set<String> required = new HashSet<>();
+        for( String[] fields : index ) {
+            if( fields[0].equals( "O" ) ) {
+                required.add( fields[2] );
+            }
+        }
+        tempDir.mkdirs();
+        RpmReader reader = new RpmReader( oldRpm );
+        String algorithm = RpmUtils.getDigestAlgorithm( reader.getFileDigestAlgorithm() );
+        Map<String, String> oldDigests = reader.getFileDigests();
+        try( CpioReader cpio = new CpioReader( reader.openPayload() ) ) {
+            while( !required.isEmpty() && cpio.next() ) {
+                String digest = oldDigests.get( toAbsolute( cpio.getPath() ) );
+                if( cpio.isFile() && cpio.getSize() > 0 && digest != null && required.remove( digest ) ) {
+                    MessageDigest md = DigestUtils.newDigest( algorithm );
+                    try( InputStream input = new DigestInputStream( cpio.getInputStream(), md ) ) {
+                        Files.copy( input, new File( tempDir, digest ).toPath() );
+                    }
+                    if( !digest.equals( DigestUtils.toHex( md.digest() ) ) ) {
+                        throw new IOException( "The digest of the file in the old package does not match its header: " + cpio.getPath() );
+                    }
+                }
+            }
+        }
+        if( !required.isEmpty() ) {
+            throw new IOException( required.size() + " files are missing in the old package: " + oldRpm );
+        }
+    }
+
+    /**
+     * Write the cpio payload with the headers of the index.
+     *
+     * @param payload the stream for the uncompressed payload
+     * @param index the index
+     * @param tempDir the directory with the files of the old package
+     * @param data the content of the new entries
+     * @throws IOException if any I/O error occur
+     */
+    private static void writePayload( OutputStream payload, List<String[]> index, File tempDir, InputStream data ) throws IOException {
+        long count = 0;
+        for( String[] fields : index ) {
+            String header = fields[1];
+            payload.write( header.getBytes( StandardCharsets.US_ASCII ) );
+            count += header.length();
+            if( fields[0].equals( "T" ) ) {
+                byte[] name = "TRAILER!!!\0".getBytes( StandardCharsets.US_ASCII );
+                payload.write( name );
+                count += copy( data, payload, Long.parseLong( fields[2] ) );
+                break;
+            }
+            byte[] name = (fields[fields.length - 1] + '\0').getBytes( StandardCharsets.UTF_8 );
+            payload.write( name );
+            count += name.length;
+            count += pad( payload, count );
+            long size = Long.parseLong( header.substring( 54, 62 ), 16 );
+            if( fields[0].equals( "O" ) ) {
+                try( InputStream input = new FileInputStream( new File( tempDir, fields[2] ) ) ) {
+                    count += copy( input, payload, size );
+                }
+            } else {
+                count += copy( data, payload, size );
+            }
+            count += pad( payload, count );
+        }
+    }
+
+    /**
+     * Copy the next bytes of a stream.
+     *
+     * @param input the source
+     * @param output the target
+     * @param size the count of bytes
+     * @return the count of bytes
+     * @throws IOException if any I/O error occur or the source is too short
+     */
+    private static long copy( InputStream input, OutputStream output, long size ) throws IOException {
+        byte[] buffer = new byte[65536];
+        long remaining = size;
+        while( remaining > 0 ) {
+            int count = input.read( buffer, 0, (int)Math.min( buffer.length, remaining ) );
+            if( count < 0 ) {
+                throw new IOException( "The content in the delta is shorter as expected" );
+            }
+            output.write( buffer, 0, count );
+            remaining -= count;
+        }
+        return size;
+    }
+
+    /**
+     * Fill the payload with zeros to the next 4 byte boundary.
+     *
+     * @param payload the payload
+     * @param count the current size of the payload
+     * @return the count of written zeros
+     * @throws IOException if any I/O error occur
+     */
+    private static int pad( OutputStream payload, long count ) throws IOException {
+        int padding = (int)((4 - (count & 3)) & 3);
+        payload.write( new byte[padding] );
+        return padding;
+    }
+
+    /**
+     * Convert a path of the cpio payload like "./usr/bin/app" to the absolute path of the header.
+     *
+     * @param path the path in the payload
+     * @return the absolute path
+     */
+    private static String toAbsolute( String path ) {
+        return path.startsWith( "./" ) ? path.substring( 1 ) : path;
+    }
+
+    /**
+     * Calculate the SHA-256 of a file.
+     *
+     * @param file the file
+     * @param offset the count of bytes at the start of the file that are not included
+     * @return the hex digest
+     * @throws IOException if any I/O error occur
+     */
+    private static String sha256( File file, long offset ) throws IOException {
+        MessageDigest digest = DigestUtils.newDigest( "SHA-256" );
+        try( InputStream input = new FileInputStream( file ) ) {
+            byte[] buffer = new byte[65536];
+            long skip = offset;
+            int count;
+            while( (count = input.read( buffer, 0, (int)Math.min( buffer.length, skip > 0 ? skip : buffer.length ) )) > 0 ) {
+                if( skip > 0 ) {
+                    skip -= count;
+                } else {
+                    digest.update( buffer, 0, count );
+                }
+            }
+        }
+        return DigestUtils.toHex( digest.digest() );
+    }
+
+    /**
+     * Get the count of files of the last created delta that are taken from the old package.
+     *
+     * @return the count
+     */
+    public int getUnchangedFiles() {
+        return unchangedFiles;
+    }
+
+    /**
+     * Get the count of files of the last created delta that are saved in the delta.
+     *
+     * @return the count
+     */
+    public int getChangedFiles() {
+        return changedFiles;
+    }
+
+    /**
+     * Get the compression level from the header tag PAYLOADFLAGS.
+     *
+     * @param reader the package
+     * @return the level
+     * @throws IOException if the value is not a level
+     */
+    private static int getLevel( RpmReader reader ) throws IOException {
+        String flags = reader.getString( RpmTag.PAYLOADFLAGS );
+        try {
+            return flags == null ? 9 : Integer.parseInt( flags );
+        } catch( NumberFormatException ex ) {
+            throw new IOException( "Unsupported payload flags: " + flags );
+        }
+    }
+
+    /**
+     * A stream that write all read bytes additionally to an output stream.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream copy;
+
+        /**
+         * Create a new stream.
+         *
+         * @param in the source
+         * @param copy the target for the copy of the read bytes
+         */
+        private TeeInputStream( InputStream in, OutputStream copy ) {
+            super( in );
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if( b >= 0 ) {
+                copy.write( b );
+            }
+            return b;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            int count = in.read( b, off, len );
+            if( count > 0 ) {
+                copy.write( b, off, count );
+            }
+            return count;
+        }
+
+        @Override
+        public long skip( long n ) throws IOException {
+            byte[] buffer = new byte[(int)Math.min( 8192, Math.max( 1, n ) )];
+            int count = read( buffer, 0, (int)Math.min( buffer.length, n ) );
+            return Math.max( 0, count );
+        }
+    }
+
+    /**
+     * A stream that discard all data.
+     */
+    private static class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write( int b ) {
+            // discard
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) {
+            // discard
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A header structure of a RPM package. It is used for the signature and for the main header. The entries are written
+ * sorted by tag with an immutable region like rpmbuild it does, because newer RPM versions reject headers without a
+ * region.
+ */
+class RpmHeader {
+
+    static final int                    TYPE_INT16        = 3;
+
+    static final int                    TYPE_INT32        = 4;
+
+    static final int                    TYPE_INT64        = 5;
+
+    static final int                    TYPE_STRING       = 6;
+
+    static final int                    TYPE_BIN          = 7;
+
+    static final int                    TYPE_STRING_ARRAY = 8;
+
+    static final int                    TYPE_I18NSTRING   = 9;
+
+    private static final byte[]         MAGIC             = { (byte)0x8e, (byte)0xad, (byte)0xe8, 0x01, 0, 0, 0, 0 };
+
+    private final TreeMap<Integer, Entry> entries         = new TreeMap<>();
+
+    /**
+     * A single tag of the header.
+     */
+    private static class Entry {
+
+        private final int    type;
+
+        private final int    count;
+
+        private final byte[] data;
+
+        /**
+         * Create a new entry.
+         *
+         * @param type the data type
+         * @param count the count of values
+         * @param data the encoded values
+         */
+        private Entry( int type, int count, byte[] data ) {
+            this.type = type;
+            this.count = count;
+            this.data = data;
+        }
+
+        /**
+         * Get the alignment of the data in the store.
+         *
+         * @return the alignment in bytes
+         */
+        private int getAlignment() {
+            switch( type ) {
+                case TYPE_INT16:
+                    return 2;
+                case TYPE_INT32:
+                    return 4;
+                case TYPE_INT64:
+                    return 8;
+                default:
+                    return 1;
+            }
+        }
+    }
+
+    /**
+     * Add a single string.
+     *
+     * @param tag the tag
+     * @param value the value
+     */
+    void addString( int tag, String value ) {
+        entries.put( tag, new Entry( TYPE_STRING, 1, toBytes( value ) ) );
+    }
+
+    /**
+     * Add a translatable string. Only the default locale "C" is written.
+     *
+     * @param tag the tag
+     * @param value the value
+     */
+    void addI18nString( int tag, String value ) {
+        entries.put( tag, new Entry( TYPE_I18NSTRING, 1, toBytes( value ) ) );
+    }
+
+    /**
+     * Add an array of strings.
+     *
+     * @param tag the tag
+     * @param values the values
+     */
+    void addStringArray( int tag, List<String> values ) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for( String value : values ) {
+            byte[] bytes = toBytes( value );
+            data.write( bytes, 0, bytes.length );
+        }
+        entries.put( tag, new Entry( TYPE_STRING_ARRAY, values.size(), data.toByteArray() ) );
+    }
+
+    /**
+     * Add an array of 16 bit numbers.
+     *
+     * @param tag the tag
+     * @param values the values
+     */
+    void addInt16( int tag, int... values ) {
+        byte[] data = new byte[values.length * 2];
+        for( int i = 0; i < values.length; i++ ) {
+            data[i * 2] = (byte)(values[i] >> 8);
+            data[i * 2 + 1] = (byte)values[i];
+        }
+        entries.put( tag, new Entry( TYPE_INT16, values.length, data ) );
+    }
+
+    /**
+     * Add an array of 32 bit numbers.
+     *
+     * @param tag the tag
+     * @param values the values
+     */
+    void addInt32( int tag, int... values ) {
+        byte[] data = new byte[values.length * 4];
+        for( int i = 0; i < values.length; i++ ) {
+            putInt( data, i * 4, values[i] );
+        }
+        entries.put( tag, new Entry( TYPE_INT32, values.length, data ) );
+    }
+
+    /**
+     * Add an array of 64 bit numbers.
+     *
+     * @param tag the tag
+     * @param values the values
+     */
+    void addInt64( int tag, long... values ) {
+        byte[] data = new byte[values.length * 8];
+        for( int i = 0; i < values.length; i++ ) {
+            putInt( data, i * 8, (int)(values[i] >>> 32) );
+            putInt( data, i * 8 + 4, (int)values[i] );
+        }
+        entries.put( tag, new Entry( TYPE_INT64, values.length, data ) );
+    }
+
+    /**
+     * Add binary data.
+     *
+     * @param tag the tag
+     * @param value the data
+     */
+    void addBinary( int tag, byte[] value ) {
+        entries.put( tag, new Entry( TYPE_BIN, value.length, value.clone() ) );
+    }
+
+    /**
+     * Serialize the header. The region tag is the first entry of the index, its data is the trailer at the end of the
+     * store that cover all entries.
+     *
+     * @param regionTag the region tag, 62 for the signature and 63 for the main header
+     * @return the header structure
+     */
+    byte[] toBytes( int regionTag ) {
+        int count = entries.size() + 1;
+        ByteArrayOutputStream store = new ByteArrayOutputStream();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try {
+            DataOutputStream indexOut = new DataOutputStream( index );
+            for( Map.Entry<Integer, Entry> item : entries.entrySet() ) {
+                Entry entry = item.getValue();
+                int alignment = entry.getAlignment();
+                while( store.size() % alignment != 0 ) {
+                    store.write( 0 );
+                }
+                indexOut.writeInt( item.getKey() );
+                indexOut.writeInt( entry.type );
+                indexOut.writeInt( store.size() );
+                indexOut.writeInt( entry.count );
+                store.write( entry.data );
+            }
+
+            // the trailer is an index entry with a negative offset of the size of the region index
+            int trailerOffset = store.size();
+            DataOutputStream storeOut = new DataOutputStream( store );
+            storeOut.writeInt( regionTag );
+            storeOut.writeInt( TYPE_BIN );
+            storeOut.writeInt( -count * 16 );
+            storeOut.writeInt( 16 );
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream( 16 + count * 16 + store.size() );
+            DataOutputStream out = new DataOutputStream( header );
+            out.write( MAGIC );
+            out.writeInt( count );
+            out.writeInt( store.size() );
+            out.writeInt( regionTag );
+            out.writeInt( TYPE_BIN );
+            out.writeInt( trailerOffset );
+            out.writeInt( 16 );
+            index.writeTo( out );
+            store.writeTo( out );
+            return header.toByteArray();
+        } catch( IOException ex ) {
+            throw new IllegalStateException( ex ); // can not occur with a byte array
+        }
+    }
+
+    /**
+     * Encode a string as zero terminated UTF-8.
+     *
+     * @param value the string
+     * @return the bytes
+     */
+    private static byte[] toBytes( String value ) {
+        byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        byte[] data = new byte[bytes.length + 1];
+        System.arraycopy( bytes, 0, data, 0, bytes.length );
+        return data;
+    }
+
+    /**
+     * Write a big endian 32 bit number.
+     *
+     * @param data the target
+     * @param offset the offset in the target
+     * @param value the value
+     */
+    private static void putInt( byte[] data, int offset, int value ) {
+        data[offset] = (byte)(value >> 24);
+        data[offset + 1] = (byte)(value >> 16);
+        data[offset + 2] = (byte)(value >> 8);
+        data[offset + 3] = (byte)value;
+    }
+}
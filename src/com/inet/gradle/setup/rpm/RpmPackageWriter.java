@@ -0,0 +1,806 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.gradle.api.GradleException;
+
+import com.inet.gradle.setup.FileManifest;
+import com.inet.gradle.setup.FilePermissions;
+import com.inet.gradle.setup.rpm.RpmControlFileBuilder.Script;
+import com.inet.gradle.setup.util.CompressionUtils;
+import com.inet.gradle.setup.util.CountingOutputStream;
+import com.inet.gradle.setup.util.CpioWriter;
+import com.inet.gradle.setup.util.DigestUtils;
+
+/**
+ * Write a RPM package in the format version 3 with a version 4 header without rpmbuild. The files of the setup are
+ * read directly from the manifest of the task and are not staged. The files that the builder has generated are read
+ * from the sub directory BUILDROOT of the build directory. All files are owned by root, the permissions are set in the
+ * header and in the cpio payload.
+ * <p>
+ * The package contains the directories of the installation root and all files. Like with the %files section of the
+ * SPEC file the system directories like /usr/bin are not part of the package. The installation root is the prefix of
+ * the relocatable package.
+ */
+class RpmPackageWriter {
+
+    private static final int               DIR_MODE          = 0755;
+
+    private static final long              MAX_INT32         = 0xFFFFFFFFL;
+
+    private static final int               TYPE_MASK         = 0170000;
+
+    private static final int               TYPE_DIR          = 0040000;
+
+    private static final int               TYPE_FILE         = 0100000;
+
+    private static final int               TYPE_LINK         = 0120000;
+
+    private static final int               DIGEST_SHA256     = 8;
+
+    // the tokens of the Requires in a SPEC file, an operator or a name or version, separated by white space or commas
+    private static final Pattern           DEPENDENCY_TOKEN  = Pattern.compile( "[<>]=?|=|[^\\s,<>=]+" );
+
+    private static final Pattern           DEPENDENCY_NAME   = Pattern.compile( "[\\w/][^\\s,<>=]*" );
+
+    private final Rpm                      rpm;
+
+    private final RpmControlFileBuilder    control;
+
+    private final File                     buildRoot;
+
+    private final long                     time              = System.currentTimeMillis();
+
+    private final AtomicLong               bytesRead         = new AtomicLong();
+
+    private final List<FileInfo>           files             = new ArrayList<>();
+
+    /**
+     * A directory, file or symbolic link of the package with the values for the header.
+     */
+    private static class FileInfo {
+
+        private final String path;
+
+        private final Object source;
+
+        private int          mode;
+
+        private long         size;
+
+        private long         lastModified;
+
+        private String       digest = "";
+
+        private String       linkTo = "";
+
+        private byte[]       content;
+
+        /**
+         * Create a new entry.
+         *
+         * @param path the absolute path in the package
+         * @param source a FileManifest.Entry, a generated File or null for a directory
+         */
+        private FileInfo( String path, Object source ) {
+            this.path = path;
+            this.source = source;
+        }
+
+        /**
+         * Determine all values of the entry. Regular files are read completely for the SHA-256 digest.
+         *
+         * @param permissions the permissions of the setup files
+         * @param time the time for the directories
+         * @throws IOException if any I/O error occur
+         */
+        private void scan( FilePermissions permissions, long time ) throws IOException {
+            if( source == null ) {
+                mode = TYPE_DIR | DIR_MODE;
+                size = 4096;
+                lastModified = time;
+            } else if( source instanceof File ) {
+                File file = (File)source;
+                Path link = file.toPath();
+                if( Files.isSymbolicLink( link ) ) {
+                    linkTo = Files.readSymbolicLink( link ).toString();
+                    mode = TYPE_LINK | 0777;
+                    size = linkTo.getBytes( StandardCharsets.UTF_8 ).length;
+                    lastModified = Files.getLastModifiedTime( link, LinkOption.NOFOLLOW_LINKS ).toMillis();
+                } else {
+                    mode = TYPE_FILE | (isExecutable( file ) ? FilePermissions.EXEC_MODE : FilePermissions.FILE_MODE);
+                    size = file.length();
+                    lastModified = file.lastModified();
+                    digest = digest( new FileInputStream( file ) );
+                }
+            } else {
+                FileManifest.Entry entry = (FileManifest.Entry)source;
+                mode = TYPE_FILE | permissions.getMode( entry.getPath() );
+                lastModified = entry.getLastModified();
+                File file = entry.getSource();
+                if( file != null ) {
+                    size = file.length();
+                    digest = digest( new FileInputStream( file ) );
+                } else {
+                    // filtered content is read once, else the filter would run again for the payload
+                    ByteArrayOutputStream data = new ByteArrayOutputStream();
+                    try( InputStream input = entry.open() ) {
+                        byte[] buffer = new byte[8192];
+                        int count;
+                        while( (count = input.read( buffer )) > 0 ) {
+                            data.write( buffer, 0, count );
+                        }
+                    }
+                    content = data.toByteArray();
+                    size = content.length;
+                    digest = digest( new ByteArrayInputStream( content ) );
+                }
+            }
+        }
+
+        /**
+         * If this is a regular file.
+         *
+         * @return true, if a file
+         */
+        private boolean isFile() {
+            return (mode & TYPE_MASK) == TYPE_FILE;
+        }
+
+        /**
+         * Open the content of a regular file.
+         *
+         * @return the stream
+         * @throws IOException if any I/O error occur
+         */
+        private InputStream open() throws IOException {
+            if( content != null ) {
+                return new ByteArrayInputStream( content );
+            }
+            File file = source instanceof File ? (File)source : ((FileManifest.Entry)source).getSource();
+            return new FileInputStream( file );
+        }
+
+        /**
+         * Calculate the SHA-256 digest of a stream.
+         *
+         * @param input the stream, it is closed
+         * @return the hex digest
+         * @throws IOException if any I/O error occur
+         */
+        private static String digest( InputStream input ) throws IOException {
+            MessageDigest md = DigestUtils.newDigest( "SHA-256" );
+            try( InputStream in = input ) {
+                byte[] buffer = new byte[65536];
+                int count;
+                while( (count = in.read( buffer )) > 0 ) {
+                    md.update( buffer, 0, count );
+                }
+            }
+            return DigestUtils.toHex( md.digest() );
+        }
+    }
+
+    /**
+     * Create a new writer.
+     *
+     * @param rpm the task
+     * @param control the builder of the SPEC file with the values of the header and the scripts
+     * @param buildRoot the directory with the generated files
+     */
+    RpmPackageWriter( Rpm rpm, RpmControlFileBuilder control, File buildRoot ) {
+        this.rpm = rpm;
+        this.control = control;
+        this.buildRoot = buildRoot;
+    }
+
+    /**
+     * Write the package.
+     *
+     * @param target the package file
+     * @throws IOException if any I/O error occur
+     */
+    void write( File target ) throws IOException {
+        target.getParentFile().mkdirs();
+        collectEntries();
+        scanFiles();
+
+        // the header contains the digests of all files and the signature the digest of the header and the compressed
+        // payload. That the files are not read twice the compressed payload is written to a temporary file.
+        File payloadFile = new File( target.getPath() + ".payload" );
+        try {
+            long start = System.currentTimeMillis();
+            CountingOutputStream payload = new CountingOutputStream( compress( new BufferedOutputStream( new FileOutputStream( payloadFile ), 65536 ) ) );
+            try( CpioWriter cpio = new CpioWriter( payload ) ) {
+                writePayload( cpio );
+            }
+            long millis = System.currentTimeMillis() - start;
+            long compressed = payloadFile.length();
+            rpm.getProject().getLogger().lifecycle( String.format( "\tPayload %s -%d with %d threads: %,d bytes to %,d bytes (%.1f%%) in %,d ms", rpm.getCompression(), rpm.getCompressionLevel(), rpm.getCompressionThreads(), payload.getCount(), compressed, 100.0 * compressed / Math.max( 1, payload.getCount() ), millis ) );
+
+            byte[] header = createHeader().toBytes( RpmTag.IMMUTABLE );
+
+            MessageDigest md5 = DigestUtils.newDigest( "MD5" );
+            md5.update( header );
+            try( InputStream input = new DigestInputStream( new FileInputStream( payloadFile ), md5 ) ) {
+                byte[] buffer = new byte[65536];
+                while( input.read( buffer ) >= 0 ) {
+                    // only digest
+                }
+            }
+            byte[] signature = createSignature( header, md5.digest(), compressed, payload.getCount() ).toBytes( RpmTag.SIGNATURES );
+
+            try( OutputStream out = new BufferedOutputStream( new FileOutputStream( target ), 65536 ) ) {
+                out.write( createLead() );
+                out.write( signature );
+                out.write( new byte[(8 - signature.length % 8) % 8] ); // the signature is aligned to 8 bytes
+                out.write( header );
+                Files.copy( payloadFile.toPath(), out );
+            }
+        } finally {
+            Files.deleteIfExists( payloadFile.toPath() );
+        }
+    }
+
+    /**
+     * Create the stream that compress the payload with the codec of the task.
+     *
+     * @param out the target stream, it is closed with the returned stream
+     * @return the compressing stream
+     * @throws IOException if any I/O error occur
+     */
+    private OutputStream compress( OutputStream out ) throws IOException {
+        String compression = rpm.getCompression();
+        return CompressionUtils.compress( out, compression, rpm.getCompressionLevel(), rpm.getCompressionThreads(), new File( rpm.getProcessLogDir(), compression + ".log" ) );
+    }
+
+    /**
+     * Get the count of bytes that was read from the files of the package. The files are read for the digests and for
+     * the payload.
+     *
+     * @return the bytes
+     */
+    long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Collect the directories and files of the package sorted by the path, like RPM it expected.
+     */
+    private void collectEntries() {
+        // value is a FileManifest.Entry, a File or null for a directory
+        TreeMap<String, Object> entries = new TreeMap<>();
+        String root = rpm.getInstallationRoot();
+        entries.put( root, null );
+        for( FileManifest.Entry entry : rpm.getManifest().getEntries() ) {
+            String path = root + '/' + entry.getPath();
+            if( entry.isDirectory() ) {
+                addDirectories( entries, root, path );
+            }
+        }
+        for( FileManifest.Entry entry : rpm.getManifest().getFiles() ) {
+            String path = root + '/' + entry.getPath();
+            addDirectories( entries, root, path.substring( 0, path.lastIndexOf( '/' ) ) );
+            entries.put( path, entry );
+        }
+        File[] generated = buildRoot.listFiles();
+        if( generated != null ) {
+            for( File file : generated ) {
+                addGenerated( entries, root, '/' + file.getName(), file );
+            }
+        }
+        for( Map.Entry<String, Object> entry : entries.entrySet() ) {
+            checkSize( entry.getKey(), entry.getValue() );
+            files.add( new FileInfo( entry.getKey(), entry.getValue() ) );
+        }
+    }
+
+    /**
+     * Check that a file is not larger as 4 GB, before any file is read. The cpio payload of this writer has 32 bit
+     * sizes, the format for large files is only written by rpmbuild.
+     *
+     * @param path the absolute path in the package
+     * @param source a FileManifest.Entry, a File or null for a directory
+     */
+    private static void checkSize( String path, Object source ) {
+        long size;
+        if( source instanceof FileManifest.Entry ) {
+            size = ((FileManifest.Entry)source).getSize();
+        } else if( source instanceof File && !Files.isSymbolicLink( ((File)source).toPath() ) ) {
+            size = ((File)source).length();
+        } else {
+            return;
+        }
+        if( size > MAX_INT32 ) {
+            throw new GradleException( "File is larger as 4 GB, this is not supported by the packager '" + Rpm.PACKAGER_JAVA + "': " + path + ". Use the packager '" + Rpm.PACKAGER_RPMBUILD + "' for large files." );
+        }
+    }
+
+    /**
+     * Add a directory and all its parent directories up to the installation root.
+     *
+     * @param entries the entries of the package
+     * @param root the installation root
+     * @param path the absolute path of the directory
+     */
+    private static void addDirectories( TreeMap<String, Object> entries, String root, String path ) {
+        while( path.startsWith( root + '/' ) && !entries.containsKey( path ) ) {
+            entries.put( path, null );
+            path = path.substring( 0, path.lastIndexOf( '/' ) );
+        }
+    }
+
+    /**
+     * Add a file or directory that was generated by the builder. Directories are only added inside of the installation
+     * root, the system directories are owned by other packages. Symbolic links are added as links.
+     *
+     * @param entries the entries of the package
+     * @param root the installation root
+     * @param path the absolute path in the package
+     * @param file the file or directory
+     */
+    private static void addGenerated( TreeMap<String, Object> entries, String root, String path, File file ) {
+        if( file.isDirectory() && !Files.isSymbolicLink( file.toPath() ) ) {
+            if( path.equals( root ) || path.startsWith( root + '/' ) ) {
+                entries.put( path, null );
+            }
+            for( File child : file.listFiles() ) {
+                addGenerated( entries, root, path + '/' + child.getName(), child );
+            }
+        } else {
+            entries.put( path, file );
+        }
+    }
+
+    /**
+     * Determine the mode, size, modification time, link target and digest of all entries. The files are read parallel
+     * on the worker threads of the setup. The payload is written afterwards by a single thread that does not need to
+     * calculate any digest.
+     */
+    private void scanFiles() {
+        FilePermissions permissions = rpm.getSetupBuilder().getPermissions();
+        List<Callable<FileInfo>> works = new ArrayList<>();
+        for( FileInfo info : files ) {
+            works.add( () -> {
+                info.scan( permissions, time );
+                if( info.isFile() ) {
+                    bytesRead.addAndGet( info.size );
+                }
+                return info;
+            } );
+        }
+        rpm.getWorkers().invokeAll( works );
+    }
+
+    /**
+     * Write the cpio payload with the values of the scan.
+     *
+     * @param cpio the archive
+     * @throws IOException if any I/O error occur
+     */
+    private void writePayload( CpioWriter cpio ) throws IOException {
+        int inode = 0;
+        for( FileInfo info : files ) {
+            inode++;
+            String path = '.' + info.path;
+            switch( info.mode & TYPE_MASK ) {
+                case TYPE_DIR:
+                    cpio.addDirectory( path, info.mode & ~TYPE_MASK, info.lastModified, inode );
+                    break;
+                case TYPE_LINK:
+                    cpio.addSymbolicLink( path, info.linkTo, info.lastModified, inode );
+                    break;
+                default:
+                    try( InputStream input = info.open() ) {
+                        cpio.addFile( path, info.mode & ~TYPE_MASK, info.lastModified, info.size, input, inode );
+                    }
+                    bytesRead.addAndGet( info.size );
+            }
+        }
+    }
+
+    /**
+     * Create the main header with the description of the package, the scripts, the dependencies and the file list.
+     *
+     * @return the header
+     */
+    private RpmHeader createHeader() {
+        String name = control.getName();
+        String version = control.getVersion();
+        String release = control.getRelease();
+
+        RpmHeader header = new RpmHeader();
+        header.addStringArray( RpmTag.I18NTABLE, Arrays.asList( "C" ) );
+        header.addString( RpmTag.NAME, name );
+        header.addString( RpmTag.VERSION, version );
+        header.addString( RpmTag.RELEASE, release );
+        header.addI18nString( RpmTag.SUMMARY, control.getSummary() );
+        header.addI18nString( RpmTag.DESCRIPTION, control.getDescription() );
+        header.addInt32( RpmTag.BUILDTIME, (int)(time / 1000) );
+        header.addString( RpmTag.BUILDHOST, getHostName() );
+        header.addString( RpmTag.VENDOR, control.getVendor() );
+        header.addString( RpmTag.LICENSE, control.getLicense() );
+        header.addString( RpmTag.PACKAGER, control.getVendor() );
+        header.addI18nString( RpmTag.GROUP, rpm.getSection() );
+        String url = rpm.getUrl();
+        if( url != null && url.length() > 0 ) {
+            header.addString( RpmTag.URL, url );
+        }
+        header.addString( RpmTag.OS, "linux" );
+        header.addString( RpmTag.ARCH, control.getArchitecture() );
+        header.addString( RpmTag.SOURCERPM, name + '-' + version + '-' + release + ".src.rpm" );
+        header.addString( RpmTag.ENCODING, "utf-8" );
+        header.addStringArray( RpmTag.PREFIXES, Arrays.asList( rpm.getInstallationRoot() ) );
+        header.addString( RpmTag.PAYLOADFORMAT, "cpio" );
+        header.addString( RpmTag.PAYLOADCOMPRESSOR, rpm.getCompression() );
+        header.addString( RpmTag.PAYLOADFLAGS, Integer.toString( rpm.getCompressionLevel() ) );
+
+        List<String> requireNames = new ArrayList<>();
+        List<String> requireVersions = new ArrayList<>();
+        List<Integer> requireFlags = new ArrayList<>();
+        addScript( header, Script.PREINST, RpmTag.PREIN, RpmTag.PREINPROG, RpmTag.SENSE_SCRIPT_PRE, requireNames, requireVersions, requireFlags );
+        addScript( header, Script.POSTINST, RpmTag.POSTIN, RpmTag.POSTINPROG, RpmTag.SENSE_SCRIPT_POST, requireNames, requireVersions, requireFlags );
+        addScript( header, Script.PRERM, RpmTag.PREUN, RpmTag.PREUNPROG, RpmTag.SENSE_SCRIPT_PREUN, requireNames, requireVersions, requireFlags );
+        addScript( header, Script.POSTRM, RpmTag.POSTUN, RpmTag.POSTUNPROG, RpmTag.SENSE_SCRIPT_POSTUN, requireNames, requireVersions, requireFlags );
+        addDepends( control.getDepends(), requireNames, requireVersions, requireFlags );
+        addRequire( "rpmlib(CompressedFileNames)", "3.0.4-1", requireNames, requireVersions, requireFlags );
+        addRequire( "rpmlib(PayloadFilesHavePrefix)", "4.0-1", requireNames, requireVersions, requireFlags );
+        addRequire( "rpmlib(FileDigests)", "4.6.0-1", requireNames, requireVersions, requireFlags );
+        if( Rpm.COMPRESSION_XZ.equals( rpm.getCompression() ) ) {
+            addRequire( "rpmlib(PayloadIsXz)", "5.2-1", requireNames, requireVersions, requireFlags );
+        } else if( Rpm.COMPRESSION_ZSTD.equals( rpm.getCompression() ) ) {
+            addRequire( "rpmlib(PayloadIsZstd)", "5.4.18-1", requireNames, requireVersions, requireFlags );
+        }
+
+        header.addStringArray( RpmTag.PROVIDENAME, Arrays.asList( name ) );
+        header.addInt32( RpmTag.PROVIDEFLAGS, RpmTag.SENSE_EQUAL );
+        header.addStringArray( RpmTag.PROVIDEVERSION, Arrays.asList( version + '-' + release ) );
+
+        addFileList( header, requireNames, requireVersions, requireFlags );
+
+        header.addStringArray( RpmTag.REQUIRENAME, requireNames );
+        header.addStringArray( RpmTag.REQUIREVERSION, requireVersions );
+        header.addInt32( RpmTag.REQUIREFLAGS, toArray( requireFlags ) );
+        return header;
+    }
+
+    /**
+     * Add the file list to the header. The paths are split in directory names and base names.
+     *
+     * @param header the header
+     * @param requireNames the names of the dependencies
+     * @param requireVersions the versions of the dependencies
+     * @param requireFlags the flags of the dependencies
+     */
+    private void addFileList( RpmHeader header, List<String> requireNames, List<String> requireVersions, List<Integer> requireFlags ) {
+        Set<String> confFiles = new HashSet<>();
+        for( String confFile : control.getConfFiles() ) {
+            confFiles.add( confFile.substring( confFile.indexOf( '/' ) ) ); // without the BUILDROOT directory
+        }
+
+        int count = files.size();
+        long[] sizes = new long[count];
+        int[] modes = new int[count];
+        int[] mtimes = new int[count];
+        int[] flags = new int[count];
+        int[] inodes = new int[count];
+        int[] devices = new int[count];
+        int[] rdevs = new int[count];
+        int[] verifyFlags = new int[count];
+        int[] dirIndexes = new int[count];
+        List<String> fileDigests = new ArrayList<>();
+        List<String> linkTos = new ArrayList<>();
+        List<String> users = new ArrayList<>();
+        List<String> langs = new ArrayList<>();
+        List<String> baseNames = new ArrayList<>();
+        LinkedHashMap<String, Integer> dirNames = new LinkedHashMap<>();
+        long totalSize = 0;
+
+        int i = 0;
+        for( FileInfo info : files ) {
+            String path = info.path;
+            modes[i] = info.mode;
+            sizes[i] = info.size;
+            mtimes[i] = (int)(info.lastModified / 1000);
+            fileDigests.add( info.digest );
+            linkTos.add( info.linkTo );
+            if( (info.mode & TYPE_MASK) != TYPE_DIR ) {
+                totalSize += info.size;
+            }
+            if( confFiles.contains( path ) ) {
+                flags[i] = RpmTag.FILE_CONFIG | RpmTag.FILE_NOREPLACE;
+            }
+            inodes[i] = i + 1;
+            devices[i] = 1;
+            verifyFlags[i] = -1;
+            users.add( "root" );
+            langs.add( "" );
+
+            int idx = path.lastIndexOf( '/' );
+            String dirName = path.substring( 0, idx + 1 );
+            Integer dirIndex = dirNames.get( dirName );
+            if( dirIndex == null ) {
+                dirIndex = dirNames.size();
+                dirNames.put( dirName, dirIndex );
+            }
+            dirIndexes[i] = dirIndex;
+            baseNames.add( path.substring( idx + 1 ) );
+            i++;
+        }
+
+        // every file is smaller as 4 GB, see checkSize(), only the sum can be larger
+        if( totalSize > MAX_INT32 ) {
+            header.addInt64( RpmTag.LONGSIZE, totalSize );
+        } else {
+            header.addInt32( RpmTag.SIZE, (int)totalSize );
+        }
+        int[] intSizes = new int[count];
+        for( int k = 0; k < count; k++ ) {
+            intSizes[k] = (int)sizes[k];
+        }
+        header.addInt32( RpmTag.FILESIZES, intSizes );
+        header.addInt16( RpmTag.FILEMODES, modes );
+        header.addInt16( RpmTag.FILERDEVS, rdevs );
+        header.addInt32( RpmTag.FILEMTIMES, mtimes );
+        header.addStringArray( RpmTag.FILEDIGESTS, fileDigests );
+        header.addInt32( RpmTag.FILEDIGESTALGO, DIGEST_SHA256 );
+        header.addStringArray( RpmTag.FILELINKTOS, linkTos );
+        header.addInt32( RpmTag.FILEFLAGS, flags );
+        header.addStringArray( RpmTag.FILEUSERNAME, users );
+        header.addStringArray( RpmTag.FILEGROUPNAME, users );
+        header.addInt32( RpmTag.FILEVERIFYFLAGS, verifyFlags );
+        header.addInt32( RpmTag.FILEDEVICES, devices );
+        header.addInt32( RpmTag.FILEINODES, inodes );
+        header.addStringArray( RpmTag.FILELANGS, langs );
+        header.addInt32( RpmTag.DIRINDEXES, dirIndexes );
+        header.addStringArray( RpmTag.BASENAMES, baseNames );
+        header.addStringArray( RpmTag.DIRNAMES, new ArrayList<>( dirNames.keySet() ) );
+    }
+
+    /**
+     * Add an install script to the header if it is not empty.
+     *
+     * @param header the header
+     * @param script the script
+     * @param tag the tag of the script
+     * @param progTag the tag of the interpreter
+     * @param sense the dependency flag of the script
+     * @param requireNames the names of the dependencies
+     * @param requireVersions the versions of the dependencies
+     * @param requireFlags the flags of the dependencies
+     */
+    private void addScript( RpmHeader header, Script script, int tag, int progTag, int sense, List<String> requireNames, List<String> requireVersions, List<Integer> requireFlags ) {
+        String content = control.getScript( script );
+        if( content.trim().isEmpty() ) {
+            return;
+        }
+        header.addString( tag, content );
+        header.addString( progTag, "/bin/sh" );
+        requireNames.add( "/bin/sh" );
+        requireVersions.add( "" );
+        requireFlags.add( RpmTag.SENSE_INTERP | sense );
+    }
+
+    /**
+     * Add a dependency to a feature of RPM.
+     *
+     * @param name the name of the feature
+     * @param version the version of RPM that has added the feature
+     * @param requireNames the names of the dependencies
+     * @param requireVersions the versions of the dependencies
+     * @param requireFlags the flags of the dependencies
+     */
+    private static void addRequire( String name, String version, List<String> requireNames, List<String> requireVersions, List<Integer> requireFlags ) {
+        requireNames.add( name );
+        requireVersions.add( version );
+        requireFlags.add( RpmTag.SENSE_RPMLIB | RpmTag.SENSE_LESS | RpmTag.SENSE_EQUAL );
+    }
+
+    /**
+     * Create the signature header with the sizes and the digests of the package.
+     *
+     * @param header the serialized main header
+     * @param md5 the MD5 digest of the main header and the compressed payload
+     * @param compressed the size of the compressed payload
+     * @param uncompressed the size of the uncompressed payload
+     * @return the signature header
+     */
+    static RpmHeader createSignature( byte[] header, byte[] md5, long compressed, long uncompressed ) {
+        RpmHeader signature = new RpmHeader();
+        long size = header.length + compressed;
+        if( size > MAX_INT32 || uncompressed > MAX_INT32 ) {
+            signature.addInt64( RpmTag.SIG_LONGSIZE, size );
+            signature.addInt64( RpmTag.SIG_LONGARCHIVE, uncompressed );
+        } else {
+            signature.addInt32( RpmTag.SIG_SIZE, (int)size );
+            signature.addInt32( RpmTag.SIG_PAYLOADSIZE, (int)uncompressed );
+        }
+        signature.addBinary( RpmTag.SIG_MD5, md5 );
+        signature.addString( RpmTag.SIG_SHA1, digest( "SHA-1", header ) );
+        signature.addString( RpmTag.SIG_SHA256, digest( "SHA-256", header ) );
+        return signature;
+    }
+
+    /**
+     * Create the lead, the first 96 bytes of the package. It is only used from the file command, RPM itself read the
+     * values from the header.
+     *
+     * @return the lead
+     * @throws IOException if any I/O error occur
+     */
+    private byte[] createLead() throws IOException {
+        ByteArrayOutputStream lead = new ByteArrayOutputStream( 96 );
+        DataOutputStream out = new DataOutputStream( lead );
+        out.write( new byte[] { (byte)0xed, (byte)0xab, (byte)0xee, (byte)0xdb, 3, 0 } );
+        out.writeShort( 0 ); // binary package
+        out.writeShort( 1 ); // architecture
+        byte[] name = (control.getName() + '-' + control.getVersion() + '-' + control.getRelease()).getBytes( StandardCharsets.UTF_8 );
+        out.write( Arrays.copyOf( name, 66 ) );
+        out.writeShort( 1 ); // Linux
+        out.writeShort( 5 ); // signature in a header structure
+        out.write( new byte[16] );
+        return lead.toByteArray();
+    }
+
+    /**
+     * Parse the dependencies like rpmbuild parse the Requires of a SPEC file. The dependencies are separated by white
+     * space or commas, a name can be followed by an operator and a version.
+     *
+     * @param depends the dependencies like "java-devel &gt;= 1.8, daemonize"
+     * @param requireNames the names of the dependencies
+     * @param requireVersions the versions of the dependencies
+     * @param requireFlags the flags of the dependencies
+     */
+    static void addDepends( String depends, List<String> requireNames, List<String> requireVersions, List<Integer> requireFlags ) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = DEPENDENCY_TOKEN.matcher( depends );
+        while( matcher.find() ) {
+            tokens.add( matcher.group() );
+        }
+        for( int i = 0; i < tokens.size(); i++ ) {
+            String name = tokens.get( i );
+            if( !DEPENDENCY_NAME.matcher( name ).matches() ) {
+                throw new GradleException( "Invalid dependency '" + name + "' in: " + depends + ". Rich dependencies are not supported by the packager '" + Rpm.PACKAGER_JAVA + "', use the packager '" + Rpm.PACKAGER_RPMBUILD + "'." );
+            }
+            String operator = null;
+            String version = "";
+            if( i + 1 < tokens.size() && isOperator( tokens.get( i + 1 ) ) ) {
+                if( i + 2 >= tokens.size() || isOperator( tokens.get( i + 2 ) ) ) {
+                    throw new GradleException( "Missing version after '" + name + " " + tokens.get( i + 1 ) + "' in: " + depends );
+                }
+                operator = tokens.get( i + 1 );
+                version = tokens.get( i + 2 );
+                i += 2;
+            }
+            requireNames.add( name );
+            requireVersions.add( version );
+            requireFlags.add( toSense( operator ) );
+        }
+    }
+
+    /**
+     * If the token of a dependency is a comparison operator.
+     *
+     * @param token the token
+     * @return true, if an operator
+     */
+    private static boolean isOperator( String token ) {
+        char ch = token.charAt( 0 );
+        return ch == '<' || ch == '>' || ch == '=';
+    }
+
+    /**
+     * Convert a comparison operator of a dependency to the flags of RPM.
+     *
+     * @param operator the operator like "&gt;=" or null
+     * @return the flags
+     */
+    private static int toSense( String operator ) {
+        int sense = 0;
+        if( operator != null ) {
+            if( operator.indexOf( '<' ) >= 0 ) {
+                sense |= RpmTag.SENSE_LESS;
+            }
+            if( operator.indexOf( '>' ) >= 0 ) {
+                sense |= RpmTag.SENSE_GREATER;
+            }
+            if( operator.indexOf( '=' ) >= 0 ) {
+                sense |= RpmTag.SENSE_EQUAL;
+            }
+        }
+        return sense;
+    }
+
+    /**
+     * Get the name of this host for the header.
+     *
+     * @return the name
+     */
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch( IOException ex ) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * If the executable flag of the owner is set on a generated file.
+     *
+     * @param file the file
+     * @return true, if executable
+     * @throws IOException if the permissions can't be read
+     */
+    private static boolean isExecutable( File file ) throws IOException {
+        return Files.getPosixFilePermissions( file.toPath() ).contains( PosixFilePermission.OWNER_EXECUTE );
+    }
+
+    /**
+     * Convert a list of numbers to an array.
+     *
+     * @param values the list
+     * @return the array
+     */
+    private static int[] toArray( List<Integer> values ) {
+        int[] array = new int[values.size()];
+        for( int i = 0; i < array.length; i++ ) {
+            array[i] = values.get( i );
+        }
+        return array;
+    }
+
+    /**
+     * Calculate the hex digest of data.
+     *
+     * @param algorithm the algorithm
+     * @param data the data
+     * @return the hex string
+     */
+    private static String digest( String algorithm, byte[] data ) {
+        return DigestUtils.toHex( DigestUtils.newDigest( algorithm ).digest( data ) );
+    }
+}
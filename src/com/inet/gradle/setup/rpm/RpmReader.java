@@ -0,0 +1,349 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.inet.gradle.setup.util.CompressionUtils;
+
+/**
+ * Read the header and the payload of an existing RPM package. It does not require rpm and read the packages of
+ * rpmbuild and of the Java packager. Only the values that are needed for a delta and for the metadata of a
+ * repository are parsed.
+ */
+class RpmReader {
+
+    private static final int          LEAD_SIZE    = 96;
+
+    private static final int          LEAD_MAGIC   = 0xedabeedb;
+
+    private static final int          HEADER_MAGIC = 0x8eade801;
+
+    private final File                file;
+
+    private final byte[]              head;
+
+    private final int                 headerStart;
+
+    private final Structure           signature;
+
+    private final Structure           header;
+
+    /**
+     * The parsed index and the data store of a header structure.
+     */
+    private static class Structure {
+
+        // value is type, offset and count of the tag
+        private final Map<Integer, int[]> index = new HashMap<>();
+
+        private final byte[]              store;
+
+        /**
+         * Parse a header structure.
+         *
+         * @param data the complete header with magic, index and store
+         */
+        private Structure( byte[] data ) {
+            int count = getInt( data, 8 );
+            for( int i = 0; i < count; i++ ) {
+                int offset = 16 + i * 16;
+                index.put( getInt( data, offset ), new int[] { getInt( data, offset + 4 ), getInt( data, offset + 8 ), getInt( data, offset + 12 ) } );
+            }
+            store = Arrays.copyOfRange( data, 16 + count * 16, data.length );
+        }
+
+        /**
+         * Get the values of a string tag.
+         *
+         * @param tag the tag
+         * @return the values, empty if the tag is not set
+         */
+        private List<String> getStrings( int tag ) {
+            List<String> values = new ArrayList<>();
+            int[] entry = index.get( tag );
+            if( entry != null && (entry[0] == RpmHeader.TYPE_STRING || entry[0] == RpmHeader.TYPE_STRING_ARRAY || entry[0] == RpmHeader.TYPE_I18NSTRING) ) {
+                int offset = entry[1];
+                for( int i = 0; i < entry[2] && offset < store.length; i++ ) {
+                    int end = offset;
+                    while( end < store.length && store[end] != 0 ) {
+                        end++;
+                    }
+                    values.add( new String( store, offset, end - offset, StandardCharsets.UTF_8 ) );
+                    offset = end + 1;
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Get the values of a number tag with 16, 32 or 64 bit.
+         *
+         * @param tag the tag
+         * @return the values, empty if the tag is not set
+         */
+        private long[] getNumbers( int tag ) {
+            int[] entry = index.get( tag );
+            if( entry == null ) {
+                return new long[0];
+            }
+            long[] values = new long[entry[2]];
+            for( int i = 0; i < values.length; i++ ) {
+                switch( entry[0] ) {
+                    case RpmHeader.TYPE_INT16:
+                        values[i] = ((store[entry[1] + i * 2] & 0xFF) << 8) | (store[entry[1] + i * 2 + 1] & 0xFF);
+                        break;
+                    case RpmHeader.TYPE_INT32:
+                        values[i] = getInt( store, entry[1] + i * 4 ) & 0xFFFFFFFFL;
+                        break;
+                    case RpmHeader.TYPE_INT64:
+                        values[i] = ((long)getInt( store, entry[1] + i * 8 ) << 32) | (getInt( store, entry[1] + i * 8 + 4 ) & 0xFFFFFFFFL);
+                        break;
+                    default:
+                        return new long[0];
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Create a reader for a package file and read the lead, the signature and the header.
+     *
+     * @param file the package
+     * @throws IOException if any I/O error occur or the file is not a RPM package
+     */
+    RpmReader( File file ) throws IOException {
+        this.file = file;
+        try( DataInputStream input = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) ) {
+            byte[] lead = new byte[LEAD_SIZE];
+            input.readFully( lead );
+            if( getInt( lead, 0 ) != LEAD_MAGIC ) {
+                throw new IOException( "Not a RPM package: " + file );
+            }
+            byte[] sigData = readHeader( input, file );
+            byte[] padding = new byte[(8 - sigData.length % 8) % 8]; // the signature is aligned to 8 bytes
+            input.readFully( padding );
+            byte[] headerData = readHeader( input, file );
+
+            headerStart = lead.length + sigData.length + padding.length;
+            head = new byte[headerStart + headerData.length];
+            System.arraycopy( lead, 0, head, 0, lead.length );
+            System.arraycopy( sigData, 0, head, lead.length, sigData.length );
+            System.arraycopy( headerData, 0, head, headerStart, headerData.length );
+            signature = new Structure( sigData );
+            header = new Structure( headerData );
+        } catch( EOFException ex ) {
+            throw new IOException( "Truncated RPM package: " + file, ex );
+        }
+    }
+
+    /**
+     * Read a header structure with the magic, the index and the data store.
+     *
+     * @param input the package
+     * @param file the file for error messages
+     * @return the complete header
+     * @throws IOException if any I/O error occur or the header is invalid
+     */
+    private static byte[] readHeader( DataInputStream input, File file ) throws IOException {
+        byte[] intro = new byte[16];
+        input.readFully( intro );
+        if( getInt( intro, 0 ) != HEADER_MAGIC ) {
+            throw new IOException( "Invalid header in RPM package: " + file );
+        }
+        int count = getInt( intro, 8 );
+        int size = getInt( intro, 12 );
+        if( count < 0 || size < 0 || count > 0xFFFF || size > 0x10000000 ) {
+            throw new IOException( "Invalid header size in RPM package: " + file );
+        }
+        byte[] data = Arrays.copyOf( intro, 16 + count * 16 + size );
+        input.readFully( data, 16, data.length - 16 );
+        return data;
+    }
+
+    /**
+     * Get the lead, the signature with its padding and the header like it is saved in the package.
+     *
+     * @return the bytes before the payload
+     */
+    byte[] getHead() {
+        return head.clone();
+    }
+
+    /**
+     * Get the size of the lead, the signature and the header. The compressed payload starts at this offset.
+     *
+     * @return the size in bytes
+     */
+    int getHeadSize() {
+        return head.length;
+    }
+
+    /**
+     * Get the offset of the main header in the package file, after the lead and the signature.
+     *
+     * @return the offset in bytes
+     */
+    int getHeaderStart() {
+        return headerStart;
+    }
+
+    /**
+     * Get the value of a string tag of the header.
+     *
+     * @param tag the tag
+     * @return the value or null if the tag is not set
+     */
+    String getString( int tag ) {
+        List<String> values = header.getStrings( tag );
+        return values.isEmpty() ? null : values.get( 0 );
+    }
+
+    /**
+     * Get the values of a string array tag of the header.
+     *
+     * @param tag the tag
+     * @return the values, empty if the tag is not set
+     */
+    List<String> getStringArray( int tag ) {
+        return header.getStrings( tag );
+    }
+
+    /**
+     * Get the values of a 16 or 32 bit number tag of the header.
+     *
+     * @param tag the tag
+     * @return the values, empty if the tag is not set
+     */
+    int[] getInt32( int tag ) {
+        long[] numbers = header.getNumbers( tag );
+        int[] values = new int[numbers.length];
+        for( int i = 0; i < values.length; i++ ) {
+            values[i] = (int)numbers[i];
+        }
+        return values;
+    }
+
+    /**
+     * Get the first value of a number tag of the header, for example the size with 32 or 64 bit.
+     *
+     * @param tag the tag
+     * @return the value or -1 if the tag is not set
+     */
+    long getNumber( int tag ) {
+        long[] values = header.getNumbers( tag );
+        return values.length == 0 ? -1 : values[0];
+    }
+
+    /**
+     * Get the first value of a number tag of the signature.
+     *
+     * @param tag the tag, for example {@link RpmTag#SIG_PAYLOADSIZE}
+     * @return the value or -1 if the tag is not set
+     */
+    long getSignatureNumber( int tag ) {
+        long[] values = signature.getNumbers( tag );
+        return values.length == 0 ? -1 : values[0];
+    }
+
+    /**
+     * Get the compression of the payload.
+     *
+     * @return the compression like "gzip", gzip if not set in the header
+     */
+    String getPayloadCompressor() {
+        String compressor = getString( RpmTag.PAYLOADCOMPRESSOR );
+        return compressor == null ? Rpm.COMPRESSION_GZIP : compressor;
+    }
+
+    /**
+     * Get the algorithm of the file digests.
+     *
+     * @return the number of the algorithm, 1 for MD5 if not set in the header
+     */
+    int getFileDigestAlgorithm() {
+        int[] algorithm = getInt32( RpmTag.FILEDIGESTALGO );
+        return algorithm.length == 0 ? 1 : algorithm[0];
+    }
+
+    /**
+     * Get the digests of all files. Directories and symbolic links have no digest.
+     *
+     * @return map from the absolute path like "/usr/share/app/app.jar" to the hex digest
+     */
+    Map<String, String> getFileDigests() {
+        List<String> digests = getStringArray( RpmTag.FILEDIGESTS );
+        List<String> baseNames = getStringArray( RpmTag.BASENAMES );
+        List<String> dirNames = getStringArray( RpmTag.DIRNAMES );
+        int[] dirIndexes = getInt32( RpmTag.DIRINDEXES );
+        Map<String, String> files = new HashMap<>();
+        for( int i = 0; i < digests.size() && i < baseNames.size() && i < dirIndexes.length; i++ ) {
+            String digest = digests.get( i );
+            if( !digest.isEmpty() && dirIndexes[i] < dirNames.size() ) {
+                files.put( dirNames.get( dirIndexes[i] ) + baseNames.get( i ), digest );
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Open the decompressed payload.
+     *
+     * @return the cpio archive
+     * @throws IOException if any I/O error occur or the compression is not supported
+     */
+    InputStream openPayload() throws IOException {
+        InputStream input = new FileInputStream( file );
+        try {
+            long skip = head.length;
+            while( skip > 0 ) {
+                long skipped = input.skip( skip );
+                if( skipped <= 0 ) {
+                    throw new EOFException( "Truncated RPM package: " + file );
+                }
+                skip -= skipped;
+            }
+            return CompressionUtils.decompress( getPayloadCompressor(), new BufferedInputStream( input, 65536 ) );
+        } catch( IOException ex ) {
+            input.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Read a big endian 32 bit number.
+     *
+     * @param data the data
+     * @param offset the offset in the data
+     * @return the value
+     */
+    private static int getInt( byte[] data, int offset ) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.TaskAction;
+
+import com.inet.gradle.setup.SetupBuilder;
+import com.inet.gradle.setup.SetupWorkers;
+import com.inet.gradle.setup.util.DigestUtils;
+import com.inet.gradle.setup.util.FileUtils;
+
+/**
+ * The rpmRepository Gradle task. It create the metadata of a YUM/DNF repository, the directory repodata with
+ * repomd.xml, primary.xml.gz, filelists.xml.gz and other.xml.gz, for all *.rpm files in the repository directory. Source
+ * packages (*.src.rpm) are not indexed. The repository can be used with a baseurl in a *.repo file like with the
+ * output of createrepo.
+ * <p>
+ * The metadata is updated incrementally. The package elements are cached with the size and modification time of the
+ * package files. Only new or replaced packages are read and hashed, the existing packages are not scanned again.
+ */
+public class RpmRepository extends DefaultTask {
+
+    private static final String  CACHE_NAME    = ".repodata.cache";
+
+    private static final String  REPODATA      = "repodata";
+
+    // the files in primary.xml like createrepo, all other files are only in filelists.xml
+    private static final Pattern PRIMARY_FILES = Pattern.compile( "^(.*bin/.*|/etc/.*|/usr/lib/sendmail)$" );
+
+    private Object               repositoryDir;
+
+    /**
+     * Create the task. It run after the rpm task if both are executed.
+     */
+    public RpmRepository() {
+        mustRunAfter( "rpm" );
+    }
+
+    /**
+     * Update the metadata of the repository.
+     */
+    @TaskAction
+    public void action() {
+        try {
+            long start = System.currentTimeMillis();
+            File dir = getRepositoryDir();
+            if( !dir.isDirectory() ) {
+                throw new GradleException( "The repository directory does not exist: " + dir );
+            }
+            TreeMap<String, File> packages = new TreeMap<>();
+            collectPackages( dir, "", packages );
+
+            RpmRepositoryCache cache = new RpmRepositoryCache( new File( dir, CACHE_NAME ) );
+            TreeMap<String, RpmRepositoryCache.Entry> entries = new TreeMap<>();
+            List<String> paths = new ArrayList<>();
+            List<Callable<RpmRepositoryCache.Entry>> works = new ArrayList<>();
+            for( Map.Entry<String, File> pkg : packages.entrySet() ) {
+                String path = pkg.getKey();
+                File file = pkg.getValue();
+                RpmRepositoryCache.Entry entry = cache.get( path );
+                if( entry != null && entry.isValid( file ) ) {
+                    entries.put( path, entry );
+                } else {
+                    paths.add( path );
+                    works.add( () -> createEntry( file, path ) );
+                }
+            }
+            List<RpmRepositoryCache.Entry> results = getProject().getExtensions().getByType( SetupWorkers.class ).invokeAll( works );
+            for( int i = 0; i < paths.size(); i++ ) {
+                entries.put( paths.get( i ), results.get( i ) );
+            }
+
+            StringBuilder primary = new StringBuilder();
+            StringBuilder filelists = new StringBuilder();
+            StringBuilder other = new StringBuilder();
+            primary.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<metadata xmlns=\"http://linux.duke.edu/metadata/common\" xmlns:rpm=\"http://linux.duke.edu/metadata/rpm\" packages=\"" ).append( entries.size() ).append( "\">\n" );
+            filelists.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<filelists xmlns=\"http://linux.duke.edu/metadata/filelists\" packages=\"" ).append( entries.size() ).append( "\">\n" );
+            other.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<otherdata xmlns=\"http://linux.duke.edu/metadata/other\" packages=\"" ).append( entries.size() ).append( "\">\n" );
+            for( RpmRepositoryCache.Entry entry : entries.values() ) {
+                primary.append( entry.primary );
+                filelists.append( entry.filelists );
+                other.append( entry.other );
+            }
+            primary.append( "</metadata>\n" );
+            filelists.append( "</filelists>\n" );
+            other.append( "</otherdata>\n" );
+
+            File repodata = new File( dir, REPODATA );
+            Files.createDirectories( repodata.toPath() );
+            long timestamp = System.currentTimeMillis() / 1000;
+            Set<String> current = new HashSet<>();
+            StringBuilder repomd = new StringBuilder();
+            repomd.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<repomd xmlns=\"http://linux.duke.edu/metadata/repo\" xmlns:rpm=\"http://linux.duke.edu/metadata/rpm\">\n" );
+            repomd.append( "  <revision>" ).append( timestamp ).append( "</revision>\n" );
+            current.add( writeData( repodata, "primary", primary, timestamp, repomd ) );
+            current.add( writeData( repodata, "filelists", filelists, timestamp, repomd ) );
+            current.add( writeData( repodata, "other", other, timestamp, repomd ) );
+            repomd.append( "</repomd>\n" );
+            FileUtils.writeAtomic( new File( repodata, "repomd.xml" ), repomd.toString().getBytes( StandardCharsets.UTF_8 ) );
+
+            // remove the outdated metadata after the new repomd.xml is visible
+            File[] files = repodata.listFiles();
+            if( files != null ) {
+                for( File file : files ) {
+                    String name = file.getName();
+                    if( name.endsWith( ".xml.gz" ) && !current.contains( name ) ) {
+                        Files.deleteIfExists( file.toPath() );
+                    }
+                }
+            }
+
+            cache.save( entries );
+            getLogger().lifecycle( String.format( "\tRepository: %,d packages, %,d read new in %,d ms", entries.size(), works.size(), System.currentTimeMillis() - start ) );
+        } catch( RuntimeException ex ) {
+            throw ex;
+        } catch( Exception ex ) {
+            throw new RuntimeException( ex );
+        }
+    }
+
+    /**
+     * Collect all binary package files in the repository.
+     *
+     * @param dir the current directory
+     * @param prefix the relative path of the directory with a trailing slash or an empty string
+     * @param packages the found packages by its relative path
+     */
+    private static void collectPackages( File dir, String prefix, Map<String, File> packages ) {
+        File[] files = dir.listFiles();
+        if( files == null ) {
+            return;
+        }
+        for( File file : files ) {
+            String path = prefix + file.getName();
+            if( file.isDirectory() ) {
+                if( !path.equals( REPODATA ) ) {
+                    collectPackages( file, path + '/', packages );
+                }
+            } else if( path.endsWith( ".rpm" ) && !path.endsWith( ".src.rpm" ) ) {
+                packages.put( path, file );
+            }
+        }
+    }
+
+    /**
+     * Read the header of a package and create its elements for the metadata files.
+     *
+     * @param file the package file
+     * @param path the path relative to the repository
+     * @return the entry for the cache
+     * @throws IOException if the package can't be read
+     */
+    private static RpmRepositoryCache.Entry createEntry( File file, String path ) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        RpmReader reader = new RpmReader( file );
+
+        MessageDigest sha256 = DigestUtils.newDigest( "SHA-256" );
+        try( InputStream input = new FileInputStream( file ) ) {
+            byte[] buffer = new byte[65536];
+            int count;
+            while( (count = input.read( buffer )) > 0 ) {
+                sha256.update( buffer, 0, count );
+            }
+        }
+        String checksum = DigestUtils.toHex( sha256.digest() );
+
+        String name = escape( reader.getString( RpmTag.NAME ) );
+        String arch = escape( reader.getString( RpmTag.ARCH ) );
+        long epoch = Math.max( 0, reader.getNumber( RpmTag.EPOCH ) );
+        String version = "<version epoch=\"" + epoch + "\" ver=\"" + escape( reader.getString( RpmTag.VERSION ) ) + "\" rel=\"" + escape( reader.getString( RpmTag.RELEASE ) ) + "\"/>\n";
+        long installed = reader.getNumber( RpmTag.LONGSIZE );
+        if( installed < 0 ) {
+            installed = Math.max( 0, reader.getNumber( RpmTag.SIZE ) );
+        }
+        long archive = reader.getSignatureNumber( RpmTag.SIG_LONGARCHIVE );
+        if( archive < 0 ) {
+            archive = Math.max( 0, reader.getSignatureNumber( RpmTag.SIG_PAYLOADSIZE ) );
+        }
+
+        StringBuilder primary = new StringBuilder();
+        primary.append( "<package type=\"rpm\">\n" );
+        primary.append( "  <name>" ).append( name ).append( "</name>\n" );
+        primary.append( "  <arch>" ).append( arch ).append( "</arch>\n" );
+        primary.append( "  " ).append( version );
+        primary.append( "  <checksum type=\"sha256\" pkgid=\"YES\">" ).append( checksum ).append( "</checksum>\n" );
+        appendElement( primary, "summary", reader.getString( RpmTag.SUMMARY ) );
+        appendElement( primary, "description", reader.getString( RpmTag.DESCRIPTION ) );
+        appendElement( primary, "packager", reader.getString( RpmTag.PACKAGER ) );
+        appendElement( primary, "url", reader.getString( RpmTag.URL ) );
+        primary.append( "  <time file=\"" ).append( lastModified / 1000 ).append( "\" build=\"" ).append( Math.max( 0, reader.getNumber( RpmTag.BUILDTIME ) ) ).append( "\"/>\n" );
+        primary.append( "  <size package=\"" ).append( size ).append( "\" installed=\"" ).append( installed ).append( "\" archive=\"" ).append( archive ).append( "\"/>\n" );
+        primary.append( "  <location href=\"" ).append( escape( path ) ).append( "\"/>\n" );
+        primary.append( "  <format>\n" );
+        appendElement( primary, "rpm:license", reader.getString( RpmTag.LICENSE ) );
+        appendElement( primary, "rpm:vendor", reader.getString( RpmTag.VENDOR ) );
+        appendElement( primary, "rpm:group", reader.getString( RpmTag.GROUP ) );
+        appendElement( primary, "rpm:buildhost", reader.getString( RpmTag.BUILDHOST ) );
+        appendElement( primary, "rpm:sourcerpm", reader.getString( RpmTag.SOURCERPM ) );
+        primary.append( "    <rpm:header-range start=\"" ).append( reader.getHeaderStart() ).append( "\" end=\"" ).append( reader.getHeadSize() ).append( "\"/>\n" );
+        appendDependencies( primary, "provides", reader, RpmTag.PROVIDENAME, RpmTag.PROVIDEFLAGS, RpmTag.PROVIDEVERSION );
+        appendDependencies( primary, "requires", reader, RpmTag.REQUIRENAME, RpmTag.REQUIREFLAGS, RpmTag.REQUIREVERSION );
+        appendDependencies( primary, "conflicts", reader, RpmTag.CONFLICTNAME, RpmTag.CONFLICTFLAGS, RpmTag.CONFLICTVERSION );
+        appendDependencies( primary, "obsoletes", reader, RpmTag.OBSOLETENAME, RpmTag.OBSOLETEFLAGS, RpmTag.OBSOLETEVERSION );
+
+        StringBuilder filelists = new StringBuilder();
+        filelists.append( "<package pkgid=\"" ).append( checksum ).append( "\" name=\"" ).append( name ).append( "\" arch=\"" ).append( arch ).append( "\">\n" );
+        filelists.append( "  " ).append( version );
+        List<String> baseNames = reader.getStringArray( RpmTag.BASENAMES );
+        List<String> dirNames = reader.getStringArray( RpmTag.DIRNAMES );
+        int[] dirIndexes = reader.getInt32( RpmTag.DIRINDEXES );
+        int[] modes = reader.getInt32( RpmTag.FILEMODES );
+        int[] flags = reader.getInt32( RpmTag.FILEFLAGS );
+        for( int i = 0; i < baseNames.size() && i < dirIndexes.length && dirIndexes[i] < dirNames.size(); i++ ) {
+            String filePath = dirNames.get( dirIndexes[i] ) + baseNames.get( i );
+            String type = "";
+            if( i < flags.length && (flags[i] & RpmTag.FILE_GHOST) != 0 ) {
+                type = " type=\"ghost\"";
+            } else if( i < modes.length && (modes[i] & 0170000) == 040000 ) {
+                type = " type=\"dir\"";
+            }
+            String element = "<file" + type + '>' + escape( filePath ) + "</file>\n";
+            filelists.append( "  " ).append( element );
+            if( PRIMARY_FILES.matcher( filePath ).matches() ) {
+                primary.append( "    " ).append( element );
+            }
+        }
+        filelists.append( "</package>\n" );
+        primary.append( "  </format>\n" );
+        primary.append( "</package>\n" );
+
+        String other = "<package pkgid=\"" + checksum + "\" name=\"" + name + "\" arch=\"" + arch + "\">\n  " + version + "</package>\n";
+        return new RpmRepositoryCache.Entry( size, lastModified, checksum, primary.toString(), filelists.toString(), other );
+    }
+
+    /**
+     * Append an element with text content if the value is set.
+     *
+     * @param xml the target
+     * @param name the element name
+     * @param value the value or null
+     */
+    private static void appendElement( StringBuilder xml, String name, String value ) {
+        String indent = name.startsWith( "rpm:" ) ? "    " : "  ";
+        if( value == null || value.isEmpty() ) {
+            xml.append( indent ).append( '<' ).append( name ).append( "/>\n" );
+        } else {
+            xml.append( indent ).append( '<' ).append( name ).append( '>' ).append( escape( value ) ).append( "</" ).append( name ).append( ">\n" );
+        }
+    }
+
+    /**
+     * Append a list of dependencies like provides or requires. Requirements of rpmlib are internal to rpm and are not
+     * listed, like createrepo does.
+     *
+     * @param xml the target
+     * @param name the element name without namespace
+     * @param reader the package
+     * @param nameTag the tag with the names
+     * @param flagsTag the tag with the sense flags
+     * @param versionTag the tag with the versions
+     */
+    private static void appendDependencies( StringBuilder xml, String name, RpmReader reader, int nameTag, int flagsTag, int versionTag ) {
+        List<String> names = reader.getStringArray( nameTag );
+        int[] flags = reader.getInt32( flagsTag );
+        List<String> versions = reader.getStringArray( versionTag );
+        Set<String> entries = new LinkedHashSet<>();
+        for( int i = 0; i < names.size(); i++ ) {
+            String dependency = names.get( i );
+            if( dependency.startsWith( "rpmlib(" ) ) {
+                continue;
+            }
+            int flag = i < flags.length ? flags[i] : 0;
+            StringBuilder entry = new StringBuilder();
+            entry.append( "      <rpm:entry name=\"" ).append( escape( dependency ) ).append( '"' );
+            String version = i < versions.size() ? versions.get( i ) : "";
+            String sense = getSense( flag );
+            if( sense != null && !version.isEmpty() ) {
+                String epoch = "0";
+                int idx = version.indexOf( ':' );
+                if( idx > 0 ) {
+                    epoch = version.substring( 0, idx );
+                    version = version.substring( idx + 1 );
+                }
+                String release = null;
+                idx = version.lastIndexOf( '-' );
+                if( idx > 0 ) {
+                    release = version.substring( idx + 1 );
+                    version = version.substring( 0, idx );
+                }
+                entry.append( " flags=\"" ).append( sense ).append( "\" epoch=\"" ).append( escape( epoch ) ).append( "\" ver=\"" ).append( escape( version ) ).append( '"' );
+                if( release != null ) {
+                    entry.append( " rel=\"" ).append( escape( release ) ).append( '"' );
+                }
+            }
+            if( (flag & (RpmTag.SENSE_SCRIPT_PRE | RpmTag.SENSE_SCRIPT_POST)) != 0 ) {
+                entry.append( " pre=\"1\"" );
+            }
+            entry.append( "/>\n" );
+            entries.add( entry.toString() );
+        }
+        if( !entries.isEmpty() ) {
+            xml.append( "    <rpm:" ).append( name ).append( ">\n" );
+            for( String entry : entries ) {
+                xml.append( entry );
+            }
+            xml.append( "    </rpm:" ).append( name ).append( ">\n" );
+        }
+    }
+
+    /**
+     * Get the comparison of a dependency for the metadata.
+     *
+     * @param flags the sense flags of the dependency
+     * @return the comparison like "GE" or null if the dependency has no version
+     */
+    private static String getSense( int flags ) {
+        switch( flags & (RpmTag.SENSE_LESS | RpmTag.SENSE_GREATER | RpmTag.SENSE_EQUAL) ) {
+            case RpmTag.SENSE_EQUAL:
+                return "EQ";
+            case RpmTag.SENSE_LESS:
+                return "LT";
+            case RpmTag.SENSE_GREATER:
+                return "GT";
+            case RpmTag.SENSE_LESS | RpmTag.SENSE_EQUAL:
+                return "LE";
+            case RpmTag.SENSE_GREATER | RpmTag.SENSE_EQUAL:
+                return "GE";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Escape a text for XML content and attributes. Control characters that are not allowed in XML are dropped.
+     *
+     * @param text the text or null
+     * @return the escaped text
+     */
+    private static String escape( String text ) {
+        if( text == null ) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder( text.length() );
+        for( int i = 0; i < text.length(); i++ ) {
+            char ch = text.charAt( i );
+            switch( ch ) {
+                case '&':
+                    escaped.append( "&amp;" );
+                    break;
+                case '<':
+                    escaped.append( "&lt;" );
+                    break;
+                case '>':
+                    escaped.append( "&gt;" );
+                    break;
+                case '"':
+                    escaped.append( "&quot;" );
+                    break;
+                default:
+                    if( ch >= ' ' || ch == '\n' || ch == '\t' ) {
+                        escaped.append( ch );
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Compress a metadata file, write it with its checksum in the name and append its data element to repomd.xml.
+     *
+     * @param repodata the directory of the metadata
+     * @param type the type like "primary"
+     * @param xml the uncompressed content
+     * @param timestamp the timestamp of the metadata in seconds
+     * @param repomd the content of repomd.xml
+     * @return the file name
+     * @throws IOException if any I/O error occur
+     */
+    private static String writeData( File repodata, String type, StringBuilder xml, long timestamp, StringBuilder repomd ) throws IOException {
+        byte[] plain = xml.toString().getBytes( StandardCharsets.UTF_8 );
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try( GZIPOutputStream out = new GZIPOutputStream( gzip ) {
+            {
+                def.setLevel( Deflater.BEST_COMPRESSION );
+            }
+        } ) {
+            out.write( plain );
+        }
+        byte[] compressed = gzip.toByteArray();
+        String checksum = sha256( compressed );
+        String name = checksum + '-' + type + ".xml.gz";
+        FileUtils.writeAtomic( new File( repodata, name ), compressed );
+
+        repomd.append( "  <data type=\"" ).append( type ).append( "\">\n" );
+        repomd.append( "    <checksum type=\"sha256\">" ).append( checksum ).append( "</checksum>\n" );
+        repomd.append( "    <open-checksum type=\"sha256\">" ).append( sha256( plain ) ).append( "</open-checksum>\n" );
+        repomd.append( "    <location href=\"" ).append( REPODATA ).append( '/' ).append( name ).append( "\"/>\n" );
+        repomd.append( "    <timestamp>" ).append( timestamp ).append( "</timestamp>\n" );
+        repomd.append( "    <size>" ).append( compressed.length ).append( "</size>\n" );
+        repomd.append( "    <open-size>" ).append( plain.length ).append( "</open-size>\n" );
+        repomd.append( "  </data>\n" );
+        return name;
+    }
+
+    /**
+     * Calculate the SHA-256 of a content.
+     *
+     * @param content the content
+     * @return the hex digest
+     */
+    private static String sha256( byte[] content ) {
+        return DigestUtils.toHex( DigestUtils.newDigest( "SHA-256" ).digest( content ) );
+    }
+
+    /**
+     * Get the directory of the repository.
+     *
+     * @return the directory
+     */
+    public File getRepositoryDir() {
+        if( repositoryDir != null ) {
+            return getProject().file( repositoryDir );
+        }
+        return getProject().getExtensions().getByType( SetupBuilder.class ).getDestinationDir();
+    }
+
+    /**
+     * Set the directory of the repository. All *.rpm files in it and its sub directories are indexed. The default is
+     * the destination directory of the setupBuilder.
+     *
+     * @param repositoryDir the directory
+     */
+    public void setRepositoryDir( Object repositoryDir ) {
+        this.repositoryDir = repositoryDir;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.inet.gradle.setup.util.FileUtils;
+
+/**
+ * A persistent cache of the metadata fragments of the packages in a repository. The fragments are valid as long as the
+ * size and the modification time of the package file are unchanged, so that only new or replaced packages must be read.
+ * <p>
+ * The cache is a text file with a block per package. The first line of a block is tab separated
+ * <code>size lastModified checksum path</code>, the following three lines are the fragments for primary.xml,
+ * filelists.xml and other.xml with escaped line breaks and an empty line ends the block.
+ */
+class RpmRepositoryCache {
+
+    private static final String      HEADER  = "SetupBuilder rpm repository cache 1";
+
+    private final File               file;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * The cached metadata of a single package.
+     */
+    static class Entry {
+
+        final long   size, lastModified;
+
+        final String checksum;
+
+        final String primary, filelists, other;
+
+        /**
+         * Create a new entry.
+         *
+         * @param size the size of the package file
+         * @param lastModified the modification time of the package file
+         * @param checksum the SHA-256 of the package file, the pkgid in the metadata
+         * @param primary the package element of primary.xml
+         * @param filelists the package element of filelists.xml
+         * @param other the package element of other.xml
+         */
+        Entry( long size, long lastModified, String checksum, String primary, String filelists, String other ) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.primary = primary;
+            this.filelists = filelists;
+            this.other = other;
+        }
+
+        /**
+         * Check if the package file was not changed since the metadata was created.
+         *
+         * @param pkg the package file
+         * @return true, if the metadata is valid
+         */
+        boolean isValid( File pkg ) {
+            return pkg.length() == size && pkg.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Load the cache. If the file does not exist or is broken then the cache is empty.
+     *
+     * @param file the cache file
+     */
+    RpmRepositoryCache( File file ) {
+        this.file = file;
+        if( !file.isFile() ) {
+            return;
+        }
+        try( BufferedReader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ) ) {
+            if( !HEADER.equals( reader.readLine() ) ) {
+                return;
+            }
+            String line;
+            while( (line = reader.readLine()) != null ) {
+                String[] parts = line.split( "\t", 4 );
+                String primary = decode( reader.readLine() );
+                String filelists = decode( reader.readLine() );
+                String other = decode( reader.readLine() );
+                if( !reader.readLine().isEmpty() ) {
+                    throw new IOException( "Invalid block in the cache" );
+                }
+                entries.put( parts[3], new Entry( Long.parseLong( parts[0] ), Long.parseLong( parts[1] ), parts[2], primary, filelists, other ) );
+            }
+        } catch( IOException | RuntimeException ex ) {
+            entries.clear(); // a broken cache, read all packages new
+        }
+    }
+
+    /**
+     * Get the cached entry of a package.
+     *
+     * @param path the path relative to the repository
+     * @return the entry or null
+     */
+    Entry get( String path ) {
+        return entries.get( path );
+    }
+
+    /**
+     * Save the entries of the current packages. Entries of removed packages are dropped.
+     *
+     * @param current map from the path relative to the repository to the entry
+     * @throws IOException if any I/O error occur
+     */
+    void save( Map<String, Entry> current ) throws IOException {
+        FileUtils.writeAtomic( file, out -> {
+            BufferedWriter writer = new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ) );
+            writer.write( HEADER );
+            writer.write( '\n' );
+            for( Map.Entry<String, Entry> item : current.entrySet() ) {
+                Entry entry = item.getValue();
+                writer.write( Long.toString( entry.size ) );
+                writer.write( '\t' );
+                writer.write( Long.toString( entry.lastModified ) );
+                writer.write( '\t' );
+                writer.write( entry.checksum );
+                writer.write( '\t' );
+                writer.write( item.getKey() );
+                writer.write( '\n' );
+                writer.write( encode( entry.primary ) );
+                writer.write( '\n' );
+                writer.write( encode( entry.filelists ) );
+                writer.write( '\n' );
+                writer.write( encode( entry.other ) );
+                writer.write( "\n\n" );
+            }
+            writer.flush();
+        } );
+    }
+
+    /**
+     * Escape the line breaks of a fragment so that it can be saved as a single line.
+     *
+     * @param fragment the fragment
+     * @return the single line
+     */
+    private static String encode( String fragment ) {
+        return fragment.replace( "\\", "\\\\" ).replace( "\r", "\\r" ).replace( "\n", "\\n" );
+    }
+
+    /**
+     * Restore a fragment that was saved with {@link #encode(String)}.
+     *
+     * @param line the single line
+     * @return the fragment
+     * @throws IOException if the line is missing
+     */
+    private static String decode( String line ) throws IOException {
+        if( line == null ) {
+            throw new IOException( "Truncated cache" );
+        }
+        StringBuilder fragment = new StringBuilder( line.length() );
+        for( int i = 0; i < line.length(); i++ ) {
+            char ch = line.charAt( i );
+            if( ch == '\\' && i + 1 < line.length() ) {
+                ch = line.charAt( ++i );
+                switch( ch ) {
+                    case 'n':
+                        ch = '\n';
+                        break;
+                    case 'r':
+                        ch = '\r';
+                        break;
+                }
+            }
+            fragment.append( ch );
+        }
+        return fragment.toString();
+    }
+}
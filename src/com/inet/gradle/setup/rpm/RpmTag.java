@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+/**
+ * The tags of the RPM headers that are used by the SetupBuilder. The values are defined in rpmtag.h of RPM.
+ */
+final class RpmTag {
+
+    // region tags
+    static final int SIGNATURES          = 62;
+
+    static final int IMMUTABLE           = 63;
+
+    static final int I18NTABLE           = 100;
+
+    // signature header
+    static final int SIG_SIZE            = 1000;
+
+    static final int SIG_MD5             = 1004;
+
+    static final int SIG_PAYLOADSIZE     = 1007;
+
+    static final int SIG_SHA1            = 269;
+
+    static final int SIG_LONGSIZE        = 270;
+
+    static final int SIG_LONGARCHIVE     = 271;
+
+    static final int SIG_SHA256          = 273;
+
+    // main header
+    static final int NAME                = 1000;
+
+    static final int VERSION             = 1001;
+
+    static final int RELEASE             = 1002;
+
+    static final int EPOCH               = 1003;
+
+    static final int SUMMARY             = 1004;
+
+    static final int DESCRIPTION         = 1005;
+
+    static final int BUILDTIME           = 1006;
+
+    static final int BUILDHOST           = 1007;
+
+    static final int SIZE                = 1009;
+
+    static final int VENDOR              = 1011;
+
+    static final int LICENSE             = 1014;
+
+    static final int PACKAGER            = 1015;
+
+    static final int GROUP               = 1016;
+
+    static final int URL                 = 1020;
+
+    static final int OS                  = 1021;
+
+    static final int ARCH                = 1022;
+
+    static final int PREIN               = 1023;
+
+    static final int POSTIN              = 1024;
+
+    static final int PREUN               = 1025;
+
+    static final int POSTUN              = 1026;
+
+    static final int FILESIZES           = 1028;
+
+    static final int FILEMODES           = 1030;
+
+    static final int FILERDEVS           = 1033;
+
+    static final int FILEMTIMES          = 1034;
+
+    static final int FILEDIGESTS         = 1035;
+
+    static final int FILELINKTOS         = 1036;
+
+    static final int FILEFLAGS           = 1037;
+
+    static final int FILEUSERNAME        = 1039;
+
+    static final int FILEGROUPNAME       = 1040;
+
+    static final int SOURCERPM           = 1044;
+
+    static final int FILEVERIFYFLAGS     = 1045;
+
+    static final int PROVIDENAME         = 1047;
+
+    static final int REQUIREFLAGS        = 1048;
+
+    static final int REQUIRENAME         = 1049;
+
+    static final int REQUIREVERSION      = 1050;
+
+    static final int CONFLICTFLAGS       = 1053;
+
+    static final int CONFLICTNAME        = 1054;
+
+    static final int CONFLICTVERSION     = 1055;
+
+    static final int PREINPROG           = 1085;
+
+    static final int POSTINPROG          = 1086;
+
+    static final int PREUNPROG           = 1087;
+
+    static final int POSTUNPROG          = 1088;
+
+    static final int OBSOLETENAME        = 1090;
+
+    static final int FILEDEVICES         = 1095;
+
+    static final int FILEINODES          = 1096;
+
+    static final int FILELANGS           = 1097;
+
+    static final int PREFIXES            = 1098;
+
+    static final int PROVIDEFLAGS        = 1112;
+
+    static final int PROVIDEVERSION      = 1113;
+
+    static final int OBSOLETEFLAGS       = 1114;
+
+    static final int OBSOLETEVERSION     = 1115;
+
+    static final int DIRINDEXES          = 1116;
+
+    static final int BASENAMES           = 1117;
+
+    static final int DIRNAMES            = 1118;
+
+    static final int PAYLOADFORMAT       = 1124;
+
+    static final int PAYLOADCOMPRESSOR   = 1125;
+
+    static final int PAYLOADFLAGS        = 1126;
+
+    static final int LONGSIZE            = 5009;
+
+    static final int FILEDIGESTALGO      = 5011;
+
+    static final int ENCODING            = 5062;
+
+    // flags of the dependencies
+    static final int SENSE_LESS          = 1 << 1;
+
+    static final int SENSE_GREATER       = 1 << 2;
+
+    static final int SENSE_EQUAL         = 1 << 3;
+
+    static final int SENSE_INTERP        = 1 << 8;
+
+    static final int SENSE_SCRIPT_PRE    = 1 << 9;
+
+    static final int SENSE_SCRIPT_POST   = 1 << 10;
+
+    static final int SENSE_SCRIPT_PREUN  = 1 << 11;
+
+    static final int SENSE_SCRIPT_POSTUN = 1 << 12;
+
+    static final int SENSE_RPMLIB        = 1 << 24;
+
+    // flags of the files
+    static final int FILE_CONFIG         = 1 << 0;
+
+    static final int FILE_NOREPLACE      = 1 << 4;
+
+    static final int FILE_GHOST          = 1 << 6;
+
+    /**
+     * Only constants.
+     */
+    private RpmTag() {
+    }
+}
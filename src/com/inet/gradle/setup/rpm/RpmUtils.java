@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import java.io.IOException;
+
+/**
+ * Contains methods for the digests of RPM packages, that are used in different classes.
+ */
+class RpmUtils {
+
+    /**
+     * Get the Java name of a digest algorithm of the header tag FILEDIGESTALGO.
+     *
+     * @param algorithm the number of the algorithm, 1 for MD5 and 8 for SHA-256
+     * @return the name of the algorithm
+     * @throws IOException if the algorithm is not supported
+     */
+    static String getDigestAlgorithm( int algorithm ) throws IOException {
+        switch( algorithm ) {
+            case 1:
+                return "MD5";
+            case 2:
+                return "SHA-1";
+            case 8:
+                return "SHA-256";
+            case 9:
+                return "SHA-384";
+            case 10:
+                return "SHA-512";
+            default:
+                throw new IOException( "Unsupported file digest algorithm: " + algorithm );
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A streaming reader for ar archives in the common format that is used for Debian packages. It is the counterpart of
+ * {@link ArWriter}.
+ */
+public class ArReader implements Closeable {
+
+    private static final int  HEADER_SIZE = 60;
+
+    private final InputStream input;
+
+    private final byte[]      header      = new byte[HEADER_SIZE];
+
+    private String            name;
+
+    private long              lastModified;
+
+    private int               mode;
+
+    private long              size;
+
+    private long              remaining;
+
+    /**
+     * Open an archive file and check the signature.
+     *
+     * @param file the file
+     * @throws IOException if the file can not be read or is not an ar archive
+     */
+    public ArReader( File file ) throws IOException {
+        input = new BufferedInputStream( new FileInputStream( file ), 65536 );
+        byte[] magic = new byte[8];
+        try {
+            readFully( magic, magic.length );
+        } catch( EOFException ex ) {
+            magic[0] = 0;
+        }
+        if( !"!<arch>\n".equals( new String( magic, StandardCharsets.US_ASCII ) ) ) {
+            input.close();
+            throw new IOException( "Not an ar archive: " + file );
+        }
+    }
+
+    /**
+     * Move to the next member. The rest of the current member is skipped.
+     *
+     * @return the name of the member or null at the end of the archive
+     * @throws IOException if any I/O error occur
+     */
+    public String next() throws IOException {
+        skip( remaining + (size & 1) );
+        remaining = 0;
+        size = 0;
+        int first = input.read();
+        if( first < 0 ) {
+            return name = null;
+        }
+        header[0] = (byte)first;
+        readFully( header, 1, HEADER_SIZE - 1 );
+        if( header[58] != '`' || header[59] != '\n' ) {
+            throw new IOException( "Invalid ar member header" );
+        }
+        name = field( 0, 16 );
+        if( name.endsWith( "/" ) ) {
+            name = name.substring( 0, name.length() - 1 ); // GNU style
+        }
+        lastModified = Long.parseLong( field( 16, 12 ) ) * 1000;
+        mode = Integer.parseInt( field( 40, 8 ), 8 );
+        size = remaining = Long.parseLong( field( 48, 10 ) );
+        return name;
+    }
+
+    /**
+     * Get the name of the current member.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the modification time of the current member.
+     *
+     * @return the time in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get the Unix permissions of the current member.
+     *
+     * @return the mode, for example 0100644
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Get the size of the current member.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get a stream for the content of the current member. The stream end with the member and closing it does not close
+     * the archive.
+     *
+     * @return the stream
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if( remaining <= 0 ) {
+                    return -1;
+                }
+                int b = input.read();
+                if( b < 0 ) {
+                    throw new EOFException( "Truncated ar member: " + name );
+                }
+                remaining--;
+                return b;
+            }
+
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                if( remaining <= 0 ) {
+                    return -1;
+                }
+                int count = input.read( b, off, (int)Math.min( len, remaining ) );
+                if( count < 0 ) {
+                    throw new EOFException( "Truncated ar member: " + name );
+                }
+                remaining -= count;
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Read the complete content of the current member.
+     *
+     * @return the content
+     * @throws IOException if any I/O error occur
+     */
+    public byte[] readContent() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream( (int)size );
+        InputStream member = getInputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while( (count = member.read( buffer )) > 0 ) {
+            content.write( buffer, 0, count );
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Close the archive file.
+     */
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Get a header field without the trailing spaces.
+     *
+     * @param offset the offset in the header
+     * @param length the length of the field
+     * @return the value
+     */
+    private String field( int offset, int length ) {
+        return new String( header, offset, length, StandardCharsets.US_ASCII ).trim();
+    }
+
+    /**
+     * Skip bytes of the archive.
+     *
+     * @param count the count of bytes
+     * @throws IOException if any I/O error occur
+     */
+    private void skip( long count ) throws IOException {
+        while( count > 0 ) {
+            long skipped = input.skip( count );
+            if( skipped <= 0 ) {
+                if( input.read() < 0 ) {
+                    return; // the padding of the last member can be missing
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Read exactly the requested count of bytes.
+     *
+     * @param b the buffer
+     * @param length the count of bytes
+     * @throws IOException if any I/O error occur
+     */
+    private void readFully( byte[] b, int length ) throws IOException {
+        readFully( b, 0, length );
+    }
+
+    /**
+     * Read exactly the requested count of bytes.
+     *
+     * @param b the buffer
+     * @param off the offset in the buffer
+     * @param length the count of bytes
+     * @throws IOException if any I/O error occur
+     */
+    private void readFully( byte[] b, int off, int length ) throws IOException {
+        while( length > 0 ) {
+            int count = input.read( b, off, length );
+            if( count < 0 ) {
+                throw new EOFException( "Truncated ar archive" );
+            }
+            off += count;
+            length -= count;
+        }
+    }
+}
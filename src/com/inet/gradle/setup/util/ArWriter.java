@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A writer for ar archives in the common format that is used for Debian packages. The size of a streamed member must
+ * not be known before, the header is patched after the member was written.
+ */
+public class ArWriter implements Closeable {
+
+    private static final int   HEADER_SIZE = 60;
+
+    private final FileChannel  channel;
+
+    private final OutputStream out;
+
+    private boolean            memberOpen;
+
+    /**
+     * Create a new archive file.
+     *
+     * @param file the file
+     * @throws IOException if the file can not be created
+     */
+    public ArWriter( File file ) throws IOException {
+        channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE );
+        out = new BufferedOutputStream( Channels.newOutputStream( channel ), 65536 );
+        out.write( "!<arch>\n".getBytes( StandardCharsets.US_ASCII ) );
+    }
+
+    /**
+     * Add a member with known content.
+     *
+     * @param name the name, maximum 16 characters
+     * @param lastModified the modification time in milliseconds
+     * @param mode the Unix permissions, for example 0100644
+     * @param content the content
+     * @throws IOException if any I/O error occur
+     */
+    public void addMember( String name, long lastModified, int mode, byte[] content ) throws IOException {
+        try( OutputStream member = addMember( name, lastModified, mode ) ) {
+            member.write( content );
+        }
+    }
+
+    /**
+     * Add a member that is streamed. The member is finished if the returned stream is closed. Only one member can be
+     * written at the same time.
+     *
+     * @param name the name, maximum 16 characters
+     * @param lastModified the modification time in milliseconds
+     * @param mode the Unix permissions, for example 0100644
+     * @return the stream for the content
+     * @throws IOException if any I/O error occur
+     */
+    public OutputStream addMember( String name, long lastModified, int mode ) throws IOException {
+        if( memberOpen ) {
+            throw new IllegalStateException( "The previous member was not closed" );
+        }
+        memberOpen = true;
+        out.flush();
+        long headerPos = channel.position();
+        out.write( createHeader( name, lastModified, mode, 0 ) );
+        return new FilterOutputStream( out ) {
+            private long    size;
+
+            private boolean closed;
+
+            @Override
+            public void write( int b ) throws IOException {
+                out.write( b );
+                size++;
+            }
+
+            @Override
+            public void write( byte[] b, int off, int len ) throws IOException {
+                out.write( b, off, len );
+                size += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if( closed ) {
+                    return;
+                }
+                closed = true;
+                if( (size & 1) != 0 ) {
+                    out.write( '\n' ); // members are aligned to an even offset
+                }
+                out.flush();
+                ByteBuffer header = ByteBuffer.wrap( createHeader( name, lastModified, mode, size ) );
+                for( long pos = headerPos; header.hasRemaining(); ) {
+                    pos += channel.write( header, pos );
+                }
+                memberOpen = false;
+            }
+        };
+    }
+
+    /**
+     * Create the header of a member.
+     *
+     * @param name the name
+     * @param lastModified the modification time in milliseconds
+     * @param mode the permissions
+     * @param size the size of the content
+     * @return the header
+     */
+    private static byte[] createHeader( String name, long lastModified, int mode, long size ) {
+        StringBuilder header = new StringBuilder( HEADER_SIZE );
+        append( header, name, 16 );
+        append( header, Long.toString( lastModified / 1000 ), 12 );
+        append( header, "0", 6 ); // uid
+        append( header, "0", 6 ); // gid
+        append( header, Integer.toOctalString( mode ), 8 );
+        append( header, Long.toString( size ), 10 );
+        header.append( "`\n" );
+        return header.toString().getBytes( StandardCharsets.US_ASCII );
+    }
+
+    /**
+     * Append a field that is filled with spaces.
+     *
+     * @param header the header
+     * @param value the value
+     * @param length the length of the field
+     */
+    private static void append( StringBuilder header, String value, int length ) {
+        if( value.length() > length ) {
+            throw new IllegalArgumentException( "Value to large for ar header: " + value );
+        }
+        header.append( value );
+        for( int i = value.length(); i < length; i++ ) {
+            header.append( ' ' );
+        }
+    }
+
+    /**
+     * Close the archive file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
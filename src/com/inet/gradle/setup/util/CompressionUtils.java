@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Some Utils for the compression of package payloads and archive members. The codec names are the names of the
+ * compression options of the deb and rpm tasks: "none", "gzip", "xz" and "zstd".
+ */
+public class CompressionUtils {
+
+    /**
+     * Create a stream that compress with the given codec. gzip is compressed parallel in blocks, xz and zstd use the
+     * multi threaded mode of the external programs because there is no encoder in the JDK.
+     *
+     * @param out the target stream, it is closed with the returned stream
+     * @param compression the name of the codec
+     * @param level the compression level
+     * @param threads the count of threads that compress
+     * @param log the file for the error output of an external program
+     * @return the compressing stream
+     * @throws IOException if any I/O error occur
+     */
+    public static OutputStream compress( OutputStream out, String compression, int level, int threads, File log ) throws IOException {
+        switch( compression ) {
+            case "none":
+                return out;
+            case "gzip":
+                return new ParallelGzipOutputStream( out, level, threads );
+            default:
+                List<String> command = Arrays.asList( compression, "-q", "-c", "-" + level, "-T" + threads );
+                return new ProcessPipeOutputStream( command, out, log );
+        }
+    }
+
+    /**
+     * Create a stream that decompress with the given codec.
+     *
+     * @param compression the name of the codec
+     * @param in the compressed data, it is closed with the returned stream
+     * @return the decompressing stream
+     * @throws IOException if any I/O error occur or the codec is not supported
+     */
+    public static InputStream decompress( String compression, InputStream in ) throws IOException {
+        switch( compression ) {
+            case "none":
+                return in;
+            case "gzip":
+                return new GZIPInputStream( in, 65536 );
+            case "xz":
+            case "zstd":
+                return new ProcessPipeInputStream( Arrays.asList( compression, "-q", "-d", "-c" ), in, null );
+            default:
+                throw new IOException( "Unsupported compression: " + compression );
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A stream that count the bytes that are written through it.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    /**
+     * Create a new stream.
+     *
+     * @param out the target stream
+     */
+    public CountingOutputStream( OutputStream out ) {
+        super( out );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( int b ) throws IOException {
+        out.write( b );
+        count++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( byte[] b, int off, int len ) throws IOException {
+        out.write( b, off, len );
+        count += len;
+    }
+
+    /**
+     * Get the count of written bytes.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A streaming reader for cpio archives in the "new ASCII" format (070701) and the format with checksum (070702) like
+ * they are used for the payload of RPM packages of {@link CpioWriter} and of rpmbuild.
+ */
+public class CpioReader implements Closeable {
+
+    /**
+     * The length of the ASCII header of an entry.
+     */
+    public static final int     HEADER_SIZE = 110;
+
+    private static final String TRAILER     = "TRAILER!!!";
+
+    private static final int    TYPE_MASK   = 0170000;
+
+    private static final int    DIR_TYPE    = 040000;
+
+    private static final int    REG_TYPE    = 0100000;
+
+    private static final int    LNK_TYPE    = 0120000;
+
+    private final InputStream   input;
+
+    private final byte[]        header      = new byte[HEADER_SIZE];
+
+    private String              path;
+
+    private int                 mode;
+
+    private long                size;
+
+    private long                lastModified;
+
+    private long                remaining;
+
+    private long                count;
+
+    /**
+     * Create a new reader.
+     *
+     * @param input the uncompressed archive
+     */
+    public CpioReader( InputStream input ) {
+        this.input = input;
+    }
+
+    /**
+     * Move to the next entry. The rest of the current entry is skipped. At the trailer entry the padding after its
+     * name is not read, so that the rest of the stream can be read by the caller.
+     *
+     * @return false at the trailer of the archive
+     * @throws IOException if any I/O error occur or the format is not supported
+     */
+    public boolean next() throws IOException {
+        skip( remaining );
+        remaining = 0;
+        skip( padding() );
+        readFully( header, header.length );
+        String magic = new String( header, 0, 6, StandardCharsets.US_ASCII );
+        if( !magic.equals( "070701" ) && !magic.equals( "070702" ) ) {
+            throw new IOException( "Unsupported cpio format: " + magic );
+        }
+        mode = (int)parseHex( 1 );
+        lastModified = parseHex( 5 ) * 1000;
+        size = parseHex( 6 );
+        byte[] name = new byte[(int)parseHex( 11 )];
+        readFully( name, name.length );
+        path = new String( name, 0, Math.max( 0, name.length - 1 ), StandardCharsets.UTF_8 );
+        if( path.equals( TRAILER ) ) {
+            size = 0;
+            return false;
+        }
+        skip( padding() );
+        remaining = size;
+        return true;
+    }
+
+    /**
+     * Get the ASCII header of the current entry like it is saved in the archive. It contains all values of the entry
+     * and can be used to write the entry byte identical again.
+     *
+     * @return the header with {@link #HEADER_SIZE} characters
+     */
+    public String getHeader() {
+        return new String( header, StandardCharsets.US_ASCII );
+    }
+
+    /**
+     * Get the path of the current entry like it is saved in the archive, for example "./usr/share/app".
+     *
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get the file type and the Unix permissions of the current entry.
+     *
+     * @return the mode, for example 0100644
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * If the current entry is a directory.
+     *
+     * @return true, if directory
+     */
+    public boolean isDirectory() {
+        return (mode & TYPE_MASK) == DIR_TYPE;
+    }
+
+    /**
+     * If the current entry is a regular file.
+     *
+     * @return true, if file
+     */
+    public boolean isFile() {
+        return (mode & TYPE_MASK) == REG_TYPE;
+    }
+
+    /**
+     * If the current entry is a symbolic link. The target of the link is the content of the entry.
+     *
+     * @return true, if symbolic link
+     */
+    public boolean isSymbolicLink() {
+        return (mode & TYPE_MASK) == LNK_TYPE;
+    }
+
+    /**
+     * Get the size of the content of the current entry. Hard linked files of rpmbuild have the content only at the last
+     * link, the other links have the size 0.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the modification time of the current entry.
+     *
+     * @return the time in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get a stream for the content of the current entry. The stream end with the entry and closing it does not close
+     * the archive.
+     *
+     * @return the stream
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                if( remaining <= 0 ) {
+                    return -1;
+                }
+                int read = input.read( b, off, (int)Math.min( len, remaining ) );
+                if( read < 0 ) {
+                    throw new EOFException( "Truncated cpio entry: " + path );
+                }
+                remaining -= read;
+                count += read;
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Get the underlying stream. After the trailer it contains the padding of the archive.
+     *
+     * @return the stream
+     */
+    public InputStream getRawInputStream() {
+        return input;
+    }
+
+    /**
+     * Close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Parse a number of the header.
+     *
+     * @param field the index of the field, the magic is not counted
+     * @return the value
+     * @throws IOException if the field is not a hex number
+     */
+    private long parseHex( int field ) throws IOException {
+        String value = new String( header, 6 + field * 8, 8, StandardCharsets.US_ASCII );
+        try {
+            return Long.parseLong( value, 16 );
+        } catch( NumberFormatException ex ) {
+            throw new IOException( "Invalid number in cpio header: " + value );
+        }
+    }
+
+    /**
+     * Get the count of zero bytes to the next 4 byte boundary.
+     *
+     * @return the count
+     */
+    private int padding() {
+        return (int)((4 - (count & 3)) & 3);
+    }
+
+    /**
+     * Read the data completely.
+     *
+     * @param data the buffer
+     * @param length the count of bytes
+     * @throws IOException if any I/O error occur or the archive is truncated
+     */
+    private void readFully( byte[] data, int length ) throws IOException {
+        int offset = 0;
+        while( offset < length ) {
+            int read = input.read( data, offset, length - offset );
+            if( read < 0 ) {
+                throw new EOFException( "Truncated cpio archive" );
+            }
+            offset += read;
+        }
+        count += length;
+    }
+
+    /**
+     * Skip bytes of the archive.
+     *
+     * @param length the count of bytes
+     * @throws IOException if any I/O error occur or the archive is truncated
+     */
+    private void skip( long length ) throws IOException {
+        byte[] buffer = new byte[8192];
+        while( length > 0 ) {
+            int read = input.read( buffer, 0, (int)Math.min( buffer.length, length ) );
+            if( read < 0 ) {
+                throw new EOFException( "Truncated cpio archive" );
+            }
+            length -= read;
+            count += read;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A streaming writer for cpio archives in the "new ASCII" format (070701) like it is used for the payload of RPM
+ * packages. All entries are owned by root, RPM take the owner from the header of the package.
+ */
+public class CpioWriter implements Closeable {
+
+    private static final String  MAGIC    = "070701";
+
+    private static final String  TRAILER  = "TRAILER!!!";
+
+    private static final int     DIR_TYPE = 040000;
+
+    private static final int     REG_TYPE = 0100000;
+
+    private static final int     LNK_TYPE = 0120000;
+
+    private static final long    MAX_SIZE = 0xFFFFFFFFL;
+
+    private final OutputStream   out;
+
+    private final byte[]         buffer   = new byte[65536];
+
+    private long                 count;
+
+    private boolean              finished;
+
+    /**
+     * Create a new writer.
+     *
+     * @param out the target stream
+     */
+    public CpioWriter( OutputStream out ) {
+        this.out = out;
+    }
+
+    /**
+     * Add a directory entry.
+     *
+     * @param path the path with slash as separator, for example "./usr/share"
+     * @param mode the Unix permissions, for example 0755
+     * @param lastModified the modification time in milliseconds
+     * @param inode the inode number, must be unique in the archive
+     * @throws IOException if any I/O error occur
+     */
+    public void addDirectory( String path, int mode, long lastModified, int inode ) throws IOException {
+        writeHeader( path, DIR_TYPE | mode, 0, lastModified, inode, 2 );
+    }
+
+    /**
+     * Add a symbolic link entry. The target of the link is the content of the entry.
+     *
+     * @param path the path with slash as separator
+     * @param target the target of the link
+     * @param lastModified the modification time in milliseconds
+     * @param inode the inode number, must be unique in the archive
+     * @throws IOException if any I/O error occur
+     */
+    public void addSymbolicLink( String path, String target, long lastModified, int inode ) throws IOException {
+        byte[] content = target.getBytes( StandardCharsets.UTF_8 );
+        writeHeader( path, LNK_TYPE | 0777, content.length, lastModified, inode, 1 );
+        write( content, content.length );
+        pad();
+    }
+
+    /**
+     * Add a file entry. The content is streamed.
+     *
+     * @param path the path with slash as separator
+     * @param mode the Unix permissions, for example 0644
+     * @param lastModified the modification time in milliseconds
+     * @param size the size of the content in bytes
+     * @param content the content, the stream is not closed
+     * @param inode the inode number, must be unique in the archive
+     * @throws IOException if any I/O error occur or if the stream has not the declared size
+     */
+    public void addFile( String path, int mode, long lastModified, long size, InputStream content, int inode ) throws IOException {
+        if( size > MAX_SIZE ) {
+            throw new IOException( "File is larger as 4 GB, this is not supported by the cpio format: " + path );
+        }
+        writeHeader( path, REG_TYPE | mode, size, lastModified, inode, 1 );
+        long remaining = size;
+        while( remaining > 0 ) {
+            int read = content.read( buffer, 0, (int)Math.min( buffer.length, remaining ) );
+            if( read < 0 ) {
+                throw new IOException( "File is shorter as declared: " + path );
+            }
+            write( buffer, read );
+            remaining -= read;
+        }
+        if( content.read() >= 0 ) {
+            throw new IOException( "File is larger as declared: " + path );
+        }
+        pad();
+    }
+
+    /**
+     * Get the count of bytes that was written to the archive.
+     *
+     * @return the size of the uncompressed archive
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Write the trailer entry. The underlying stream is not closed.
+     *
+     * @throws IOException if any I/O error occur
+     */
+    public void finish() throws IOException {
+        if( !finished ) {
+            finished = true;
+            writeHeader( TRAILER, 0, 0, 0, 0, 1 );
+        }
+    }
+
+    /**
+     * Write the trailer entry and close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Write the header and the name of an entry.
+     *
+     * @param path the path
+     * @param mode the file type and the permissions
+     * @param size the size of the content
+     * @param lastModified the modification time in milliseconds
+     * @param inode the inode number
+     * @param links the count of links
+     * @throws IOException if any I/O error occur
+     */
+    private void writeHeader( String path, int mode, long size, long lastModified, int inode, int links ) throws IOException {
+        byte[] name = path.getBytes( StandardCharsets.UTF_8 );
+        StringBuilder header = new StringBuilder( 110 );
+        header.append( MAGIC );
+        appendHex( header, inode );
+        appendHex( header, mode );
+        appendHex( header, 0 ); // uid
+        appendHex( header, 0 ); // gid
+        appendHex( header, links );
+        appendHex( header, Math.max( 0, lastModified / 1000 ) );
+        appendHex( header, size );
+        appendHex( header, 0 ); // dev major
+        appendHex( header, 0 ); // dev minor
+        appendHex( header, 0 ); // rdev major
+        appendHex( header, 0 ); // rdev minor
+        appendHex( header, name.length + 1 );
+        appendHex( header, 0 ); // check
+        write( header.toString().getBytes( StandardCharsets.US_ASCII ), header.length() );
+        write( name, name.length );
+        write( new byte[1], 1 );
+        pad();
+    }
+
+    /**
+     * Append a number as 8 hex digits.
+     *
+     * @param header the header
+     * @param value the value, maximum 32 bit
+     */
+    private static void appendHex( StringBuilder header, long value ) {
+        String hex = Long.toHexString( value & MAX_SIZE );
+        for( int i = hex.length(); i < 8; i++ ) {
+            header.append( '0' );
+        }
+        header.append( hex );
+    }
+
+    /**
+     * Write bytes and count it.
+     *
+     * @param bytes the data
+     * @param length the count of bytes
+     * @throws IOException if any I/O error occur
+     */
+    private void write( byte[] bytes, int length ) throws IOException {
+        out.write( bytes, 0, length );
+        count += length;
+    }
+
+    /**
+     * Fill the archive with zeros to the next 4 byte boundary.
+     *
+     * @throws IOException if any I/O error occur
+     */
+    private void pad() throws IOException {
+        int rest = (int)(count & 3);
+        if( rest != 0 ) {
+            write( new byte[4 - rest], 4 - rest );
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Some Utils for the message digests of packages, files and repository indexes.
+ */
+public class DigestUtils {
+
+    /**
+     * Create a new message digest.
+     *
+     * @param algorithm the algorithm like "MD5" or "SHA-256"
+     * @return the digest
+     */
+    public static MessageDigest newDigest( String algorithm ) {
+        try {
+            return MessageDigest.getInstance( algorithm );
+        } catch( NoSuchAlgorithmException ex ) {
+            throw new IllegalStateException( ex ); // every Java platform must support MD5, SHA-1 and SHA-256
+        }
+    }
+
+    /**
+     * Calculate the digest of the data of a stream.
+     *
+     * @param input the data, it is read to the end but not closed
+     * @param algorithm the algorithm like "MD5" or "SHA-256"
+     * @return the hex digest
+     * @throws IOException if any I/O error occur
+     */
+    public static String digest( InputStream input, String algorithm ) throws IOException {
+        MessageDigest digest = newDigest( algorithm );
+        byte[] buffer = new byte[65536];
+        int count;
+        while( (count = input.read( buffer )) >= 0 ) {
+            digest.update( buffer, 0, count );
+        }
+        return toHex( digest );
+    }
+
+    /**
+     * Calculate the digest of a file.
+     *
+     * @param file the file
+     * @param algorithm the algorithm like "MD5" or "SHA-256"
+     * @return the hex digest
+     * @throws IOException if the file can not be read
+     */
+    public static String digest( File file, String algorithm ) throws IOException {
+        try( InputStream input = new FileInputStream( file ) ) {
+            return digest( input, algorithm );
+        }
+    }
+
+    /**
+     * Convert the result of a digest to a hex string. The digest is reset.
+     *
+     * @param digest the digest
+     * @return the hex string in lower case
+     */
+    public static String toHex( MessageDigest digest ) {
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * Convert the bytes of a digest to a hex string.
+     *
+     * @param digest the bytes of the digest
+     * @return the hex string in lower case
+     */
+    public static String toHex( byte[] digest ) {
+        StringBuilder hex = new StringBuilder( digest.length * 2 );
+        for( byte b : digest ) {
+            hex.append( Character.forDigit( (b >> 4) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+}
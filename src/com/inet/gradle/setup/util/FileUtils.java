@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * Some Utils for working with staged files.
+ */
+public class FileUtils {
+
+    /**
+     * Set the permissions of a file. If the file has already the permissions then nothing is changed. If the file is a
+     * hard link to another file then the link is replaced with a copy before, so that the source of the link is not
+     * changed.
+     * 
+     * @param file the file
+     * @param perms the new permissions
+     * @throws IOException on errors when setting the permissions
+     */
+    public static void setPosixFilePermissions( File file, Set<PosixFilePermission> perms ) throws IOException {
+        Path path = file.toPath();
+        if( perms.equals( Files.getPosixFilePermissions( path ) ) ) {
+            return;
+        }
+        if( !file.isDirectory() && isHardLink( path ) ) {
+            Path copy = path.resolveSibling( path.getFileName() + ".unlink" );
+            Files.copy( path, copy, StandardCopyOption.REPLACE_EXISTING );
+            Files.move( copy, path, StandardCopyOption.REPLACE_EXISTING );
+        }
+        Files.setPosixFilePermissions( path, perms );
+    }
+
+    /**
+     * Create a hard link to a source file. An existing target file is replaced.
+     * 
+     * @param source the existing file
+     * @param target the link that should be created
+     * @return true, if the link was created; false if the file system does not support it, for example if the files are
+     *         on different volumes
+     */
+    public static boolean createLink( File source, File target ) {
+        try {
+            Path path = target.toPath();
+            Files.deleteIfExists( path );
+            Files.createLink( path, source.toPath() );
+            return true;
+        } catch( IOException | UnsupportedOperationException ex ) {
+            return false;
+        }
+    }
+
+    /**
+     * Replace the content of a file atomic, so that a reader never see a half written file.
+     * 
+     * @param file the file
+     * @param content the new content
+     * @throws IOException if any I/O error occur
+     */
+    public static void writeAtomic( File file, byte[] content ) throws IOException {
+        writeAtomic( file, out -> out.write( content ) );
+    }
+
+    /**
+     * Replace the content of a file atomic like {@link #writeAtomic(File, byte[])}. The content is streamed to a
+     * temporary file in the same directory, that is moved over the file if the writer was successful.
+     * 
+     * @param file the file
+     * @param writer the writer of the new content
+     * @throws IOException if any I/O error occur
+     */
+    public static void writeAtomic( File file, ContentWriter writer ) throws IOException {
+        Path temp = new File( file.getPath() + ".tmp" ).toPath();
+        try {
+            try( OutputStream out = new BufferedOutputStream( Files.newOutputStream( temp ), 65536 ) ) {
+                writer.write( out );
+            }
+            Files.move( temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } finally {
+            Files.deleteIfExists( temp ); // only if the writer or the move has failed
+        }
+    }
+
+    /**
+     * Write the content of a file.
+     */
+    public interface ContentWriter {
+
+        /**
+         * Write the content.
+         * 
+         * @param out the target stream, it is closed by the caller
+         * @throws IOException if any I/O error occur
+         */
+        void write( OutputStream out ) throws IOException;
+    }
+
+    /**
+     * Check if there are more as one directory entries for the file.
+     * 
+     * @param path the file
+     * @return true, if it is a hard link
+     */
+    private static boolean isHardLink( Path path ) {
+        try {
+            Object count = Files.getAttribute( path, "unix:nlink" );
+            return count instanceof Integer && (Integer)count > 1;
+        } catch( IOException | UnsupportedOperationException | IllegalArgumentException ex ) {
+            return false; // no unix file system
+        }
+    }
+}
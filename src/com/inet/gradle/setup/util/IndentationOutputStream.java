@@ -25,7 +25,9 @@ import java.io.OutputStream;
  * @author Volker Berlin
  */
 public class IndentationOutputStream extends FilterOutputStream {
-    private boolean needIndentation = true;
+    private static final byte[] INDENTATION     = { '\t', '\t' };
+
+    private boolean             needIndentation = true;
 
     /**
      * Create a instance.
@@ -41,20 +43,39 @@ public class IndentationOutputStream extends FilterOutputStream {
     @Override
     public void write( int b ) throws IOException {
         if( needIndentation ) {
-            super.write( '\t' );
-            super.write( '\t' );
+            out.write( INDENTATION );
         }
-        super.write( b );
+        out.write( b );
         needIndentation = b == '\n';
     }
 
+    /**
+     * Write the data line by line to the underlying stream and not byte by byte like the super class.
+     */
+    @Override
+    public void write( byte[] b, int off, int len ) throws IOException {
+        int end = off + len;
+        while( off < end ) {
+            if( needIndentation ) {
+                out.write( INDENTATION );
+                needIndentation = false;
+            }
+            int start = off;
+            while( off < end && b[off++] != '\n' ) {
+                // search the line end
+            }
+            out.write( b, start, off - start );
+            needIndentation = b[off - 1] == '\n';
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void flush() throws IOException {
         if( !needIndentation ) {
-            super.write( '\n' );
+            out.write( '\n' );
             needIndentation = true;
         }
         super.flush();
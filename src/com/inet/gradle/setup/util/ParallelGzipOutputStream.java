@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip stream that compress blocks of the data parallel like pigz. Every block is compressed with its own Deflater
+ * and the last 32 KB of the previous block as dictionary. The blocks are terminated with a sync flush so that the
+ * result is a single standard deflate stream that every gzip decoder can read.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    private static final int                 BLOCK_SIZE = 128 * 1024;
+
+    private static final int                 DICT_SIZE  = 32 * 1024;
+
+    private final OutputStream               out;
+
+    private final int                        level;
+
+    private final int                        threads;
+
+    private final ExecutorService            executor;
+
+    private final ArrayDeque<Future<byte[]>> pending    = new ArrayDeque<>();
+
+    private final CRC32                      crc        = new CRC32();
+
+    private long                             size;
+
+    private byte[]                           block      = new byte[BLOCK_SIZE];
+
+    private int                              blockLength;
+
+    private byte[]                           previous;
+
+    private boolean                          closed;
+
+    /**
+     * Create a new stream and write the gzip header.
+     *
+     * @param out the target stream
+     * @param level the compression level 0 - 9
+     * @param threads the count of threads that compress
+     * @throws IOException if any I/O error occur
+     */
+    public ParallelGzipOutputStream( OutputStream out, int level, int threads ) throws IOException {
+        this.out = out;
+        this.level = level;
+        this.threads = Math.max( 1, threads );
+        executor = Executors.newFixedThreadPool( this.threads, runnable -> {
+            Thread thread = new Thread( runnable, "gzip" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        // magic, deflate, no flags, no time, no extra flags, OS Unix
+        out.write( new byte[] { 0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, 3 } );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( int b ) throws IOException {
+        write( new byte[] { (byte)b }, 0, 1 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( byte[] b, int off, int len ) throws IOException {
+        while( len > 0 ) {
+            int count = Math.min( len, BLOCK_SIZE - blockLength );
+            System.arraycopy( b, off, block, blockLength, count );
+            blockLength += count;
+            off += count;
+            len -= count;
+            if( blockLength == BLOCK_SIZE ) {
+                submitBlock( false );
+            }
+        }
+    }
+
+    /**
+     * Compress all pending data, write the gzip trailer and close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if( closed ) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock( true );
+            while( !pending.isEmpty() ) {
+                writeNext();
+            }
+            writeInt( (int)crc.getValue() );
+            writeInt( (int)size );
+            out.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submit the current block to the compressing threads. If there are too many pending blocks then it wait for the
+     * oldest block.
+     *
+     * @param last true, if this is the last block of the stream
+     * @throws IOException if any I/O error occur
+     */
+    private void submitBlock( boolean last ) throws IOException {
+        byte[] data = block;
+        int length = blockLength;
+        byte[] dictionary = previous;
+        crc.update( data, 0, length );
+        size += length;
+        pending.add( executor.submit( () -> compress( data, length, dictionary, last ) ) );
+        previous = data;
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+        while( pending.size() > 2 * threads ) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Wait for the oldest pending block and write it.
+     *
+     * @throws IOException if any I/O error occur
+     */
+    private void writeNext() throws IOException {
+        try {
+            out.write( pending.poll().get() );
+        } catch( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( ex );
+        } catch( ExecutionException ex ) {
+            throw new IOException( ex.getCause() );
+        }
+    }
+
+    /**
+     * Compress a single block.
+     *
+     * @param data the data of the block
+     * @param length the length of the data
+     * @param dictionary the previous full block or null for the first block
+     * @param last true, if this is the last block of the stream
+     * @return the raw deflate data
+     */
+    private byte[] compress( byte[] data, int length, byte[] dictionary, boolean last ) {
+        Deflater deflater = new Deflater( level, true );
+        try {
+            if( dictionary != null ) {
+                deflater.setDictionary( dictionary, BLOCK_SIZE - DICT_SIZE, DICT_SIZE );
+            }
+            deflater.setInput( data, 0, length );
+            ByteArrayOutputStream result = new ByteArrayOutputStream( length / 2 + 64 );
+            byte[] buffer = new byte[65536];
+            if( last ) {
+                deflater.finish();
+                while( !deflater.finished() ) {
+                    result.write( buffer, 0, deflater.deflate( buffer ) );
+                }
+            } else {
+                // a sync flush end the block on a byte boundary so that the next block can be appended
+                int count;
+                do {
+                    count = deflater.deflate( buffer, 0, buffer.length, Deflater.SYNC_FLUSH );
+                    result.write( buffer, 0, count );
+                } while( count == buffer.length );
+            }
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write an int in little endian order like gzip requires it.
+     *
+     * @param value the value
+     * @throws IOException if any I/O error occur
+     */
+    private void writeInt( int value ) throws IOException {
+        out.write( new byte[] { (byte)value, (byte)(value >> 8), (byte)(value >> 16), (byte)(value >> 24) } );
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * A OutputStream for the output of an external process. The complete output is written to a log file. Only the last
+ * lines are written to the console when the stream is closed. Lines are batched, the console get a single write call.
+ * If all lines should be written to the console then the lines are written in batches while the process is running,
+ * so that the memory is bounded. Lines that are longer as the line buffer are split.
+ */
+public class ProcessLog extends OutputStream {
+
+    private static final int            MAX_LINE_LENGTH = 8192;
+
+    private static final int            BATCH_SIZE      = 16384;
+
+    private static final long           BATCH_NANOS     = 500_000_000L;
+
+    private final File                  file;
+
+    private final OutputStream          log;
+
+    private final OutputStream          console;
+
+    private final int                   tailLines;
+
+    private final ArrayDeque<byte[]>    tail            = new ArrayDeque<>();
+
+    private final ByteArrayOutputStream line            = new ByteArrayOutputStream();
+
+    private final ByteArrayOutputStream batch           = new ByteArrayOutputStream();
+
+    private long                        lastWrite       = System.nanoTime() - BATCH_NANOS;
+
+    private int                         lineCount;
+
+    private boolean                     closed;
+
+    /**
+     * Create a new instance.
+     *
+     * @param file the log file
+     * @param console the stream for the summary, typical System.out
+     * @param tailLines the count of the last lines that are written to the console or a negative value to write all
+     *            lines in batches while the process is running
+     * @throws IOException if the log file can not be created
+     */
+    public ProcessLog( File file, OutputStream console, int tailLines ) throws IOException {
+        file.getParentFile().mkdirs();
+        this.file = file;
+        this.log = new BufferedOutputStream( new FileOutputStream( file ), 65536 );
+        this.console = console;
+        this.tailLines = tailLines;
+    }
+
+    /**
+     * Get the log file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void write( int b ) throws IOException {
+        log.write( b );
+        if( b == '\n' ) {
+            endLine();
+        } else {
+            line.write( b );
+            if( line.size() >= MAX_LINE_LENGTH ) {
+                endLine();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void write( byte[] b, int off, int len ) throws IOException {
+        log.write( b, off, len );
+        int end = off + len;
+        int start = off;
+        for( int i = off; i < end; i++ ) {
+            if( b[i] == '\n' ) {
+                line.write( b, start, i - start );
+                endLine();
+                start = i + 1;
+            } else if( line.size() + i - start >= MAX_LINE_LENGTH ) {
+                line.write( b, start, i - start );
+                endLine();
+                start = i;
+            }
+        }
+        line.write( b, start, end - start );
+    }
+
+    /**
+     * Finish the current line and add it to the tail or to the batch for the console.
+     *
+     * @throws IOException if any I/O error occur
+     */
+    private void endLine() throws IOException {
+        lineCount++;
+        if( tailLines > 0 ) {
+            if( tail.size() >= tailLines ) {
+                tail.removeFirst();
+            }
+            tail.addLast( line.toByteArray() );
+        } else if( tailLines < 0 ) {
+            batch.write( '\t' );
+            batch.write( '\t' );
+            line.writeTo( batch );
+            batch.write( '\n' );
+            // sparse output is written immediately, dense output is batched
+            if( batch.size() >= BATCH_SIZE || System.nanoTime() - lastWrite >= BATCH_NANOS ) {
+                writeBatch();
+            }
+        }
+        line.reset();
+    }
+
+    /**
+     * Write the batched lines to the console.
+     *
+     * @throws IOException if any I/O error occur
+     */
+    private void writeBatch() throws IOException {
+        if( batch.size() > 0 ) {
+            console.write( batch.toByteArray() );
+            console.flush();
+            batch.reset();
+            lastWrite = System.nanoTime();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        log.flush();
+        writeBatch();
+    }
+
+    /**
+     * Close the log file and write the last lines to the console.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if( closed ) {
+            return;
+        }
+        closed = true;
+        if( line.size() > 0 ) {
+            endLine();
+        }
+        log.close();
+        writeBatch();
+
+        ByteArrayOutputStream summary = new ByteArrayOutputStream();
+        int skipped = lineCount - tail.size();
+        if( tailLines > 0 && skipped > 0 ) {
+            summary.write( ("\t\t... " + skipped + " lines, full log: " + file + '\n').getBytes() );
+        }
+        for( byte[] bytes : tail ) {
+            summary.write( '\t' );
+            summary.write( '\t' );
+            summary.write( bytes );
+            summary.write( '\n' );
+        }
+        if( summary.size() > 0 ) {
+            console.write( summary.toByteArray() );
+            console.flush();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measure the resources of the external processes that are started while the monitor is running. The values are read
+ * from the /proc file system and are only available on Linux.
+ * <ul>
+ * <li>The CPU time is the difference of the CPU time of the terminated child processes of this JVM. If other tools run
+ * parallel then their time is also included.
+ * <li>The peak RSS and the I/O bytes are sampled from all new descendant processes of this JVM.
+ * </ul>
+ */
+public class ProcessMonitor {
+
+    private static final File         PROC          = new File( "/proc" );
+
+    private static final int          SAMPLE_MILLIS = 100;
+
+    /**
+     * The clock ticks per second of the values in /proc/&lt;pid&gt;/stat, USER_HZ is 100 on all Linux platforms.
+     */
+    private static final int          CLOCK_TICKS   = 100;
+
+    private final String              self;
+
+    private final long                startCpuTicks;
+
+    private final Set<String>         existing;
+
+    private final Map<String, Long>   peakRss       = new HashMap<>();
+
+    private final Map<String, long[]> io            = new HashMap<>();
+
+    private final Thread              sampler;
+
+    private long                      cpuMillis     = -1;
+
+    /**
+     * Start monitoring.
+     *
+     * @throws IOException if the /proc file system is not available
+     */
+    public ProcessMonitor() throws IOException {
+        self = new File( PROC, "self" ).getCanonicalFile().getName();
+        startCpuTicks = readChildrenCpuTicks();
+        existing = descendants();
+        sampler = new Thread( () -> {
+            try {
+                while( !Thread.currentThread().isInterrupted() ) {
+                    sample();
+                    Thread.sleep( SAMPLE_MILLIS );
+                }
+            } catch( InterruptedException ex ) {
+                // stopped
+            }
+        }, "SetupBuilder process monitor" );
+        sampler.setDaemon( true );
+        sampler.start();
+    }
+
+    /**
+     * If the monitor is supported on the current platform.
+     *
+     * @return true, if supported
+     */
+    public static boolean isSupported() {
+        return new File( PROC, "self/stat" ).isFile();
+    }
+
+    /**
+     * Stop monitoring.
+     */
+    public void stop() {
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            cpuMillis = (readChildrenCpuTicks() - startCpuTicks) * 1000 / CLOCK_TICKS;
+        } catch( IOException ex ) {
+            cpuMillis = -1;
+        }
+    }
+
+    /**
+     * Get the CPU time of the processes.
+     *
+     * @return the user and system time in milliseconds or -1 if unknown
+     */
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    /**
+     * Get the largest peak resident set size of a single process.
+     *
+     * @return the size in bytes or -1 if no process was sampled
+     */
+    public synchronized long getPeakRss() {
+        long max = -1;
+        for( long value : peakRss.values() ) {
+            max = Math.max( max, value );
+        }
+        return max;
+    }
+
+    /**
+     * Get the sum of the bytes that the processes has read.
+     *
+     * @return the bytes
+     */
+    public synchronized long getBytesRead() {
+        long sum = 0;
+        for( long[] values : io.values() ) {
+            sum += values[0];
+        }
+        return sum;
+    }
+
+    /**
+     * Get the sum of the bytes that the processes has written.
+     *
+     * @return the bytes
+     */
+    public synchronized long getBytesWritten() {
+        long sum = 0;
+        for( long[] values : io.values() ) {
+            sum += values[1];
+        }
+        return sum;
+    }
+
+    /**
+     * Read the values of all new descendant processes.
+     */
+    private synchronized void sample() {
+        for( String pid : descendants() ) {
+            if( existing.contains( pid ) ) {
+                continue;
+            }
+            try {
+                for( String line : Files.readAllLines( new File( PROC, pid + "/status" ).toPath(), StandardCharsets.UTF_8 ) ) {
+                    if( line.startsWith( "VmHWM:" ) ) {
+                        long kb = Long.parseLong( line.substring( 6 ).replace( "kB", "" ).trim() );
+                        peakRss.merge( pid, kb * 1024, Math::max );
+                    }
+                }
+                long[] values = new long[2];
+                for( String line : Files.readAllLines( new File( PROC, pid + "/io" ).toPath(), StandardCharsets.UTF_8 ) ) {
+                    if( line.startsWith( "rchar:" ) ) {
+                        values[0] = Long.parseLong( line.substring( 6 ).trim() );
+                    } else if( line.startsWith( "wchar:" ) ) {
+                        values[1] = Long.parseLong( line.substring( 6 ).trim() );
+                    }
+                }
+                io.put( pid, values );
+            } catch( IOException | RuntimeException ex ) {
+                // the process has terminated in the meantime
+            }
+        }
+    }
+
+    /**
+     * Get the IDs of all descendant processes of this JVM.
+     *
+     * @return the process IDs
+     */
+    private Set<String> descendants() {
+        Map<String, List<String>> children = new HashMap<>();
+        String[] pids = PROC.list( ( dir, name ) -> !name.isEmpty() && Character.isDigit( name.charAt( 0 ) ) );
+        if( pids != null ) {
+            for( String pid : pids ) {
+                try {
+                    String[] fields = readStat( pid );
+                    children.computeIfAbsent( fields[1], key -> new ArrayList<>() ).add( pid );
+                } catch( IOException | RuntimeException ex ) {
+                    // the process has terminated in the meantime
+                }
+            }
+        }
+        Set<String> result = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add( self );
+        while( !queue.isEmpty() ) {
+            List<String> list = children.get( queue.poll() );
+            if( list != null ) {
+                for( String pid : list ) {
+                    if( result.add( pid ) ) {
+                        queue.add( pid );
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read the CPU time of the terminated and waited-for child processes of this JVM.
+     *
+     * @return the time in clock ticks
+     * @throws IOException if the value can not be read
+     */
+    private long readChildrenCpuTicks() throws IOException {
+        String[] fields = readStat( self );
+        return Long.parseLong( fields[13] ) + Long.parseLong( fields[14] );
+    }
+
+    /**
+     * Read the fields of /proc/&lt;pid&gt;/stat after the command name. Index 0 is the state, index 1 the parent ID.
+     *
+     * @param pid the process ID
+     * @return the fields
+     * @throws IOException if the process does not exist anymore
+     */
+    private static String[] readStat( String pid ) throws IOException {
+        String stat = new String( Files.readAllBytes( new File( PROC, pid + "/stat" ).toPath() ), StandardCharsets.UTF_8 );
+        return stat.substring( stat.lastIndexOf( ')' ) + 2 ).trim().split( " " );
+    }
+}
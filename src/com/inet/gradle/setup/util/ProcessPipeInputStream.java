@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A stream that read data through an external filter program like "xz -d". The source stream is the standard input of
+ * the process and the standard output of the process can be read from this stream. It is the counterpart of
+ * {@link ProcessPipeOutputStream}.
+ */
+public class ProcessPipeInputStream extends FilterInputStream {
+
+    private final Process     process;
+
+    private final InputStream source;
+
+    private final Thread      pump;
+
+    private final String      program;
+
+    private IOException       pumpError;
+
+    private boolean           closed;
+
+    /**
+     * Start the process.
+     *
+     * @param command the command line of the filter, it must read from stdin and write to stdout
+     * @param source the input for the process, it is closed with this stream
+     * @param log the file for the error output of the process or null to inherit the error output
+     * @throws IOException if the process can not be started
+     */
+    public ProcessPipeInputStream( List<String> command, InputStream source, File log ) throws IOException {
+        super( null );
+        ProcessBuilder builder = new ProcessBuilder( command );
+        if( log != null ) {
+            log.getParentFile().mkdirs();
+            builder.redirectError( log );
+        } else {
+            builder.redirectError( ProcessBuilder.Redirect.INHERIT );
+        }
+        this.process = builder.start();
+        this.in = process.getInputStream();
+        this.source = source;
+        this.program = command.get( 0 );
+        this.pump = new Thread( this::pump, program );
+        pump.setDaemon( true );
+        pump.start();
+    }
+
+    /**
+     * Copy the source to the input of the process.
+     */
+    private void pump() {
+        byte[] buffer = new byte[65536];
+        try( OutputStream output = process.getOutputStream() ) {
+            int count;
+            while( (count = source.read( buffer )) >= 0 ) {
+                output.write( buffer, 0, count );
+            }
+        } catch( IOException ex ) {
+            if( !closed ) {
+                pumpError = ex;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if( b < 0 ) {
+            checkProcess();
+        }
+        return b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        int count = in.read( b, off, len );
+        if( count < 0 ) {
+            checkProcess();
+        }
+        return count;
+    }
+
+    /**
+     * Check at the end of the output that the process was successful. A truncated or corrupt input is reported by
+     * the exit value.
+     *
+     * @throws IOException if the process failed
+     */
+    private void checkProcess() throws IOException {
+        try {
+            pump.join();
+            int exitValue = process.waitFor();
+            if( pumpError != null ) {
+                throw pumpError;
+            }
+            if( exitValue != 0 ) {
+                throw new IOException( program + " finished with exit value " + exitValue );
+            }
+        } catch( InterruptedException ex ) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException( ex );
+        }
+    }
+
+    /**
+     * Stop the process if it is running and close the source.
+     */
+    @Override
+    public void close() throws IOException {
+        if( closed ) {
+            return;
+        }
+        closed = true;
+        try {
+            in.close();
+            process.destroy();
+        } finally {
+            source.close();
+        }
+    }
+}
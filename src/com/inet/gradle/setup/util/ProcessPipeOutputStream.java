@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A stream that pipe the data through an external filter program like xz or zstd. The data that is written to this
+ * stream is the standard input of the process and the standard output of the process is written to the target stream.
+ */
+public class ProcessPipeOutputStream extends FilterOutputStream {
+
+    private final Process      process;
+
+    private final OutputStream target;
+
+    private final Thread       pump;
+
+    private final String       program;
+
+    private IOException        pumpError;
+
+    private boolean            closed;
+
+    /**
+     * Start the process.
+     *
+     * @param command the command line of the filter, it must read from stdin and write to stdout
+     * @param target the target for the output of the process, it is closed with this stream
+     * @param log the file for the error output of the process
+     * @throws IOException if the process can not be started
+     */
+    public ProcessPipeOutputStream( List<String> command, OutputStream target, File log ) throws IOException {
+        super( null );
+        log.getParentFile().mkdirs();
+        this.process = new ProcessBuilder( command ).redirectError( log ).start();
+        this.out = process.getOutputStream();
+        this.target = target;
+        this.program = command.get( 0 );
+        this.pump = new Thread( this::pump, program );
+        pump.setDaemon( true );
+        pump.start();
+    }
+
+    /**
+     * Copy the output of the process to the target.
+     */
+    private void pump() {
+        byte[] buffer = new byte[65536];
+        try( InputStream input = process.getInputStream() ) {
+            int count;
+            while( (count = input.read( buffer )) >= 0 ) {
+                target.write( buffer, 0, count );
+            }
+        } catch( IOException ex ) {
+            pumpError = ex;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( byte[] b, int off, int len ) throws IOException {
+        out.write( b, off, len );
+    }
+
+    /**
+     * Close the input of the process, wait until all output is written and close the target.
+     */
+    @Override
+    public void close() throws IOException {
+        if( closed ) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+            pump.join();
+            int exitValue = process.waitFor();
+            if( pumpError != null ) {
+                throw pumpError;
+            }
+            if( exitValue != 0 ) {
+                throw new IOException( program + " finished with exit value " + exitValue );
+            }
+        } catch( InterruptedException ex ) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException( ex );
+        } finally {
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A streaming reader for tar archives. It read the ustar format of {@link TarWriter} and the GNU and pax extensions
+ * for long names and large files that dpkg-deb and GNU tar write.
+ */
+public class TarReader implements Closeable {
+
+    /**
+     * Type flag of a regular file.
+     */
+    public static final char  TYPE_FILE     = '0';
+
+    /**
+     * Type flag of a hard link.
+     */
+    public static final char  TYPE_LINK     = '1';
+
+    /**
+     * Type flag of a symbolic link.
+     */
+    public static final char  TYPE_SYMLINK  = '2';
+
+    /**
+     * Type flag of a directory.
+     */
+    public static final char  TYPE_DIR      = '5';
+
+    private static final int  BLOCK_SIZE    = 512;
+
+    private static final char TYPE_LONGNAME = 'L';
+
+    private static final char TYPE_LONGLINK = 'K';
+
+    private static final char TYPE_PAX      = 'x';
+
+    private static final char TYPE_GLOBAL   = 'g';
+
+    private final InputStream input;
+
+    private final byte[]      header        = new byte[BLOCK_SIZE];
+
+    private String            path;
+
+    private String            linkName;
+
+    private int               mode;
+
+    private long              size;
+
+    private long              lastModified;
+
+    private char              type;
+
+    private long              remaining;
+
+    /**
+     * Create a new reader.
+     *
+     * @param input the uncompressed archive
+     */
+    public TarReader( InputStream input ) {
+        this.input = input;
+    }
+
+    /**
+     * Move to the next entry. The rest of the current entry is skipped.
+     *
+     * @return false at the end of the archive
+     * @throws IOException if any I/O error occur
+     */
+    public boolean next() throws IOException {
+        String longName = null;
+        String longLink = null;
+        String paxPath = null;
+        String paxLink = null;
+        long paxSize = -1;
+        while( true ) {
+            skipEntry();
+            if( !readBlock( header ) || isZero( header ) ) {
+                return false;
+            }
+            if( !checkChecksum() ) {
+                throw new IOException( "Invalid checksum in tar header" );
+            }
+            type = header[156] == 0 ? TYPE_FILE : (char)header[156];
+            size = remaining = parseNumber( 124, 12 );
+            switch( type ) {
+                case TYPE_LONGNAME:
+                    longName = readString();
+                    continue;
+                case TYPE_LONGLINK:
+                    longLink = readString();
+                    continue;
+                case TYPE_GLOBAL:
+                    continue;
+                case TYPE_PAX:
+                    for( String record : readString().split( "\n" ) ) {
+                        // format of a record is "length key=value"
+                        int space = record.indexOf( ' ' );
+                        int equal = record.indexOf( '=' );
+                        if( space < 0 || equal < space ) {
+                            continue;
+                        }
+                        String key = record.substring( space + 1, equal );
+                        String value = record.substring( equal + 1 );
+                        if( key.equals( "path" ) ) {
+                            paxPath = value;
+                        } else if( key.equals( "linkpath" ) ) {
+                            paxLink = value;
+                        } else if( key.equals( "size" ) ) {
+                            paxSize = Long.parseLong( value );
+                        }
+                    }
+                    continue;
+                default:
+            }
+            path = string( 0, 100 );
+            String magic = string( 257, 6 );
+            if( magic.equals( "ustar" ) ) {
+                String prefix = string( 345, 155 );
+                if( !prefix.isEmpty() ) {
+                    path = prefix + '/' + path;
+                }
+            }
+            linkName = string( 157, 100 );
+            if( longName != null ) {
+                path = longName;
+            }
+            if( longLink != null ) {
+                linkName = longLink;
+            }
+            if( paxPath != null ) {
+                path = paxPath;
+            }
+            if( paxLink != null ) {
+                linkName = paxLink;
+            }
+            if( paxSize >= 0 ) {
+                size = remaining = paxSize;
+            }
+            mode = (int)parseNumber( 100, 8 ) & 07777;
+            lastModified = parseNumber( 136, 12 ) * 1000;
+            if( type == TYPE_DIR || type == TYPE_LINK || type == TYPE_SYMLINK ) {
+                size = remaining = 0; // there is no content also if the header has a size
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Get the path of the current entry like it is saved in the archive, for example "./usr/share/".
+     *
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get the target of a link entry.
+     *
+     * @return the target
+     */
+    public String getLinkName() {
+        return linkName;
+    }
+
+    /**
+     * Get the type flag of the current entry.
+     *
+     * @return the type, for example {@link #TYPE_FILE}
+     */
+    public char getType() {
+        return type;
+    }
+
+    /**
+     * If the current entry is a directory.
+     *
+     * @return true, if directory
+     */
+    public boolean isDirectory() {
+        return type == TYPE_DIR;
+    }
+
+    /**
+     * If the current entry is a regular file.
+     *
+     * @return true, if file
+     */
+    public boolean isFile() {
+        return type == TYPE_FILE;
+    }
+
+    /**
+     * Get the Unix permissions of the current entry.
+     *
+     * @return the mode, for example 0644
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Get the size of the current entry.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the modification time of the current entry.
+     *
+     * @return the time in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get a stream for the content of the current entry. The stream end with the entry and closing it does not close
+     * the archive.
+     *
+     * @return the stream
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                if( remaining <= 0 ) {
+                    return -1;
+                }
+                int count = input.read( b, off, (int)Math.min( len, remaining ) );
+                if( count < 0 ) {
+                    throw new EOFException( "Truncated tar entry: " + path );
+                }
+                remaining -= count;
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Skip the rest of the current entry and the padding.
+     *
+     * @throws IOException if any I/O error occur
+     */
+    private void skipEntry() throws IOException {
+        long count = remaining + (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+        remaining = 0;
+        size = 0;
+        byte[] buffer = new byte[8192];
+        while( count > 0 ) {
+            int read = input.read( buffer, 0, (int)Math.min( buffer.length, count ) );
+            if( read < 0 ) {
+                throw new EOFException( "Truncated tar archive" );
+            }
+            count -= read;
+        }
+    }
+
+    /**
+     * Read the content of the current entry as string, used for the extension entries.
+     *
+     * @return the string
+     * @throws IOException if any I/O error occur
+     */
+    private String readString() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        InputStream entry = getInputStream();
+        byte[] buffer = new byte[512];
+        int count;
+        while( (count = entry.read( buffer )) > 0 ) {
+            content.write( buffer, 0, count );
+        }
+        String str = new String( content.toByteArray(), StandardCharsets.UTF_8 );
+        int end = str.indexOf( 0 );
+        return end >= 0 ? str.substring( 0, end ) : str;
+    }
+
+    /**
+     * Read a full block.
+     *
+     * @param block the block
+     * @return false, if the stream ends before the block
+     * @throws IOException if any I/O error occur
+     */
+    private boolean readBlock( byte[] block ) throws IOException {
+        int off = 0;
+        while( off < block.length ) {
+            int count = input.read( block, off, block.length - off );
+            if( count < 0 ) {
+                if( off == 0 ) {
+                    return false;
+                }
+                throw new EOFException( "Truncated tar header" );
+            }
+            off += count;
+        }
+        return true;
+    }
+
+    /**
+     * If all bytes of the block are zero, the end of archive marker.
+     *
+     * @param block the block
+     * @return true, if zero
+     */
+    private static boolean isZero( byte[] block ) {
+        for( byte b : block ) {
+            if( b != 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verify the checksum of the header.
+     *
+     * @return true, if valid
+     */
+    private boolean checkChecksum() {
+        long checksum = 0;
+        for( int i = 0; i < BLOCK_SIZE; i++ ) {
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        return checksum == parseNumber( 148, 8 );
+    }
+
+    /**
+     * Parse an octal number or a base-256 number of the header.
+     *
+     * @param offset the offset of the field
+     * @param length the length of the field
+     * @return the value
+     */
+    private long parseNumber( int offset, int length ) {
+        long value = 0;
+        if( (header[offset] & 0x80) != 0 ) {
+            for( int i = offset + 1; i < offset + length; i++ ) {
+                value = (value << 8) | (header[i] & 0xFF);
+            }
+            return value;
+        }
+        for( int i = offset; i < offset + length; i++ ) {
+            byte b = header[i];
+            if( b >= '0' && b <= '7' ) {
+                value = (value << 3) | (b - '0');
+            } else if( b != ' ' || value != 0 ) {
+                break; // leading spaces are skipped, a space or zero after the digits terminate
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get a zero terminated string of the header.
+     *
+     * @param offset the offset of the field
+     * @param length the length of the field
+     * @return the string
+     */
+    private String string( int offset, int length ) {
+        int end = offset;
+        while( end < offset + length && header[end] != 0 ) {
+            end++;
+        }
+        return new String( header, offset, end - offset, StandardCharsets.UTF_8 );
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A streaming writer for tar archives in the ustar format. All entries are owned by root. Names that does not fit in
+ * the ustar header are written as GNU long name entries like GNU tar and dpkg-deb do it.
+ */
+public class TarWriter implements Closeable {
+
+    private static final int   BLOCK_SIZE    = 512;
+
+    private static final char  TYPE_FILE     = '0';
+
+    private static final char  TYPE_DIR      = '5';
+
+    private static final char  TYPE_LONGNAME = 'L';
+
+    private final OutputStream out;
+
+    private final byte[]       buffer        = new byte[65536];
+
+    private boolean            finished;
+
+    /**
+     * Create a new writer.
+     *
+     * @param out the target stream
+     */
+    public TarWriter( OutputStream out ) {
+        this.out = out;
+    }
+
+    /**
+     * Add a directory entry.
+     *
+     * @param path the path with slash as separator, for example "./usr/share"
+     * @param mode the Unix permissions, for example 0755
+     * @param lastModified the modification time in milliseconds
+     * @throws IOException if any I/O error occur
+     */
+    public void addDirectory( String path, int mode, long lastModified ) throws IOException {
+        writeHeader( path.endsWith( "/" ) ? path : path + '/', mode, 0, lastModified, TYPE_DIR );
+    }
+
+    /**
+     * Add a file entry.
+     *
+     * @param path the path with slash as separator
+     * @param mode the Unix permissions, for example 0644
+     * @param lastModified the modification time in milliseconds
+     * @param content the content
+     * @throws IOException if any I/O error occur
+     */
+    public void addFile( String path, int mode, long lastModified, byte[] content ) throws IOException {
+        addFile( path, mode, lastModified, content.length, new ByteArrayInputStream( content ) );
+    }
+
+    /**
+     * Add a file entry. The content is streamed.
+     *
+     * @param path the path with slash as separator
+     * @param mode the Unix permissions, for example 0644
+     * @param lastModified the modification time in milliseconds
+     * @param size the size of the content in bytes
+     * @param content the content, the stream is not closed
+     * @throws IOException if any I/O error occur or if the stream has not the declared size
+     */
+    public void addFile( String path, int mode, long lastModified, long size, InputStream content ) throws IOException {
+        writeHeader( path, mode, size, lastModified, TYPE_FILE );
+        long remaining = size;
+        while( remaining > 0 ) {
+            int count = content.read( buffer, 0, (int)Math.min( buffer.length, remaining ) );
+            if( count < 0 ) {
+                throw new IOException( "File is shorter as declared: " + path );
+            }
+            out.write( buffer, 0, count );
+            remaining -= count;
+        }
+        if( content.read() >= 0 ) {
+            throw new IOException( "File is larger as declared: " + path );
+        }
+        pad( size );
+    }
+
+    /**
+     * Write the end of archive marker. The underlying stream is not closed.
+     *
+     * @throws IOException if any I/O error occur
+     */
+    public void finish() throws IOException {
+        if( !finished ) {
+            finished = true;
+            out.write( new byte[2 * BLOCK_SIZE] );
+        }
+    }
+
+    /**
+     * Write the end of archive marker and close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Write the header of an entry.
+     *
+     * @param path the path
+     * @param mode the permissions
+     * @param size the size of the content
+     * @param lastModified the modification time in milliseconds
+     * @param type the type flag
+     * @throws IOException if any I/O error occur
+     */
+    private void writeHeader( String path, int mode, long size, long lastModified, char type ) throws IOException {
+        byte[] name = path.getBytes( StandardCharsets.UTF_8 );
+        byte[] prefix = null;
+        if( name.length > 100 ) {
+            // try to split the path in prefix and name like ustar define it
+            int idx = path.lastIndexOf( '/', path.length() - 2 );
+            while( idx > 0 ) {
+                byte[] first = path.substring( 0, idx ).getBytes( StandardCharsets.UTF_8 );
+                byte[] second = path.substring( idx + 1 ).getBytes( StandardCharsets.UTF_8 );
+                if( first.length <= 155 && second.length <= 100 ) {
+                    prefix = first;
+                    name = second;
+                    break;
+                }
+                idx = path.lastIndexOf( '/', idx - 1 );
+            }
+            if( prefix == null ) {
+                byte[] longName = new byte[name.length + 1];
+                System.arraycopy( name, 0, longName, 0, name.length );
+                out.write( createHeader( "././@LongLink".getBytes( StandardCharsets.US_ASCII ), null, 0, longName.length, 0, TYPE_LONGNAME ) );
+                out.write( longName );
+                pad( longName.length );
+                name = Arrays.copyOf( name, 100 );
+            }
+        }
+        out.write( createHeader( name, prefix, mode, size, lastModified / 1000, type ) );
+    }
+
+    /**
+     * Create a header block.
+     *
+     * @param name the name, maximum 100 bytes
+     * @param prefix the prefix or null, maximum 155 bytes
+     * @param mode the permissions
+     * @param size the size of the content
+     * @param mtime the modification time in seconds
+     * @param type the type flag
+     * @return the block
+     */
+    private static byte[] createHeader( byte[] name, byte[] prefix, int mode, long size, long mtime, char type ) {
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy( name, 0, header, 0, Math.min( name.length, 100 ) );
+        putOctal( header, 100, 8, mode );
+        putOctal( header, 108, 8, 0 ); // uid
+        putOctal( header, 116, 8, 0 ); // gid
+        if( size > 077777777777L ) {
+            // base-256 encoding for large files, supported by GNU tar and dpkg
+            header[124] = (byte)0x80;
+            for( int i = 135; i > 124; i-- ) {
+                header[i] = (byte)size;
+                size >>>= 8;
+            }
+        } else {
+            putOctal( header, 124, 12, size );
+        }
+        putOctal( header, 136, 12, Math.max( 0, mtime ) );
+        header[156] = (byte)type;
+        System.arraycopy( "ustar\u000000".getBytes( StandardCharsets.US_ASCII ), 0, header, 257, 8 );
+        System.arraycopy( "root".getBytes( StandardCharsets.US_ASCII ), 0, header, 265, 4 ); // uname
+        System.arraycopy( "root".getBytes( StandardCharsets.US_ASCII ), 0, header, 297, 4 ); // gname
+        if( prefix != null ) {
+            System.arraycopy( prefix, 0, header, 345, prefix.length );
+        }
+
+        // the checksum is calculated with spaces in the checksum field
+        for( int i = 148; i < 156; i++ ) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for( byte b : header ) {
+            checksum += b & 0xFF;
+        }
+        putOctal( header, 148, 7, checksum );
+        return header;
+    }
+
+    /**
+     * Write a zero terminated octal number into the header.
+     *
+     * @param header the header
+     * @param offset the offset of the field
+     * @param length the length of the field including the terminating zero
+     * @param value the value
+     */
+    private static void putOctal( byte[] header, int offset, int length, long value ) {
+        int idx = offset + length - 1;
+        header[idx--] = 0;
+        while( idx >= offset ) {
+            header[idx--] = (byte)('0' + (value & 7));
+            value >>>= 3;
+        }
+    }
+
+    /**
+     * Fill the last block of an entry with zeros.
+     *
+     * @param size the size of the content
+     * @throws IOException if any I/O error occur
+     */
+    private void pad( long size ) throws IOException {
+        int rest = (int)(size % BLOCK_SIZE);
+        if( rest != 0 ) {
+            out.write( new byte[BLOCK_SIZE - rest] );
+        }
+    }
+}
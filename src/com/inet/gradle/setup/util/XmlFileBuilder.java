@@ -17,6 +17,10 @@ package com.inet.gradle.setup.util;
 
 import java.io.File;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -45,6 +49,9 @@ public class XmlFileBuilder<T extends AbstractSetupTask> {
 
     public final Document     doc;
 
+    // the indexed children of a parent, by "name" or "name key" and then by the value of the key attribute
+    private final Map<Element, Map<String, Map<String, Element>>> childIndex = new IdentityHashMap<>();
+
     public XmlFileBuilder( T task, SetupBuilder setup, File xmlFile, File buildDir, URL template ) throws Exception {
         this.task = task;
         this.setup = setup;
@@ -91,19 +98,13 @@ public class XmlFileBuilder<T extends AbstractSetupTask> {
     }
 
     public Element getOrCreateChild( Element parent, String name, boolean append ) {
-        Node first = parent.getFirstChild();
-        for( Node child = first; child != null; child = child.getNextSibling() ) {
-            if( name.equals( child.getNodeName() ) ) {
-                return (Element)child;
-            }
+        Element child = findChild( parent, name, null, "" );
+        if( child != null ) {
+            return child;
         }
         Document doc = parent.getOwnerDocument();
-        Element child = doc.createElement( name );
-        if( append || first == null ) {
-            parent.appendChild( child );
-        } else {
-            parent.insertBefore( child, first );
-        }
+        child = doc.createElement( name );
+        addChild( parent, child, null, append );
         return child;
     }
 
@@ -120,21 +121,95 @@ public class XmlFileBuilder<T extends AbstractSetupTask> {
     }
 
     public Element getOrCreateChildByKeyValue( Element parent, String name, String key, String value, boolean append ) {
-        Node first = parent.getFirstChild();
-        for( Node child = first; child != null; child = child.getNextSibling() ) {
-            if( name.equals( child.getNodeName() ) && value.equals( ((Element)child).getAttribute( key ) ) ) {
-                return (Element)child;
-            }
+        Element child = findChild( parent, name, key, value );
+        if( child != null ) {
+            return child;
         }
         Document doc = parent.getOwnerDocument();
-        Element child = doc.createElement( name );
+        child = doc.createElement( name );
         child.setAttribute( key, value );
+        addChild( parent, child, key, append );
+        return child;
+    }
+
+    /**
+     * Find the first child with the given name and attribute value. The children of a parent are indexed on the first
+     * lookup of a name and key, so that the lookups in large directories are not linear. A hit is verified against the
+     * DOM, if the DOM was changed outside of this builder then the children are indexed again. The key attribute of a
+     * child should not be changed after it was created, else a lookup of the new value can miss the child.
+     * 
+     * @param parent the parent element
+     * @param name the element name of the child
+     * @param key the attribute name or null for the first child with the name
+     * @param value the attribute value, empty if key is null
+     * @return the child or null
+     */
+    private Element findChild( Element parent, String name, String key, String value ) {
+        Element child = getChildIndex( parent, name, key ).get( value );
+        if( child == null || (child.getParentNode() == parent && (key == null || value.equals( child.getAttribute( key ) ))) ) {
+            return child;
+        }
+        childIndex.get( parent ).remove( key == null ? name : name + ' ' + key );
+        return getChildIndex( parent, name, key ).get( value );
+    }
+
+    /**
+     * Get the index of the children of a parent for a name and key. It is created with a single scan of the children.
+     * 
+     * @param parent the parent element
+     * @param name the element name of the children
+     * @param key the attribute name or null
+     * @return map from the attribute value to the first child with this value
+     */
+    private Map<String, Element> getChildIndex( Element parent, String name, String key ) {
+        Map<String, Map<String, Element>> types = childIndex.computeIfAbsent( parent, p -> new HashMap<>() );
+        String type = key == null ? name : name + ' ' + key;
+        Map<String, Element> children = types.get( type );
+        if( children == null ) {
+            children = new HashMap<>();
+            for( Node child = parent.getFirstChild(); child != null; child = child.getNextSibling() ) {
+                if( name.equals( child.getNodeName() ) ) {
+                    children.putIfAbsent( key == null ? "" : ((Element)child).getAttribute( key ), (Element)child );
+                }
+            }
+            types.put( type, children );
+        }
+        return children;
+    }
+
+    /**
+     * Insert a new child and update the index of the parent. The indexes of the same element name with other keys are
+     * dropped and created again on the next lookup, because the caller can set further attributes.
+     * 
+     * @param parent the parent element
+     * @param child the new child
+     * @param key the attribute name of the lookup or null
+     * @param append true, append as last child; false, insert as first child
+     */
+    private void addChild( Element parent, Element child, String key, boolean append ) {
+        Node first = parent.getFirstChild();
         if( append || first == null ) {
             parent.appendChild( child );
         } else {
             parent.insertBefore( child, first );
         }
-        return child;
+        String name = child.getNodeName();
+        String own = key == null ? name : name + ' ' + key;
+        Iterator<Map.Entry<String, Map<String, Element>>> types = childIndex.get( parent ).entrySet().iterator();
+        while( types.hasNext() ) {
+            Map.Entry<String, Map<String, Element>> entry = types.next();
+            String type = entry.getKey();
+            if( type.equals( own ) || type.equals( name ) ) {
+                String value = type.equals( name ) ? "" : child.getAttribute( key );
+                if( append ) {
+                    entry.getValue().putIfAbsent( value, child );
+                } else {
+                    entry.getValue().put( value, child );
+                }
+            } else if( type.startsWith( name + ' ' ) ) {
+                types.remove();
+            }
+        }
     }
 
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.deb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.inet.gradle.setup.util.TarReader;
+
+/**
+ * Create and apply tests of the {@link DebDelta}.
+ */
+public class DebDeltaTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Create random content that does not compress.
+     *
+     * @param size the size
+     * @param seed the seed of the random generator
+     * @return the content
+     */
+    private static byte[] random( int size, long seed ) {
+        byte[] content = new byte[size];
+        new Random( seed ).nextBytes( content );
+        return content;
+    }
+
+    /**
+     * Read the files of the data archive.
+     *
+     * @param deb the package
+     * @return map from the path to the content
+     * @throws IOException if any I/O error occur
+     */
+    private static Map<String, byte[]> readData( File deb ) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        try( TarReader tar = new DebReader( deb ).openData() ) {
+            while( tar.next() ) {
+                if( tar.isFile() ) {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    InputStream input = tar.getInputStream();
+                    byte[] buffer = new byte[8192];
+                    int count;
+                    while( (count = input.read( buffer )) > 0 ) {
+                        content.write( buffer, 0, count );
+                    }
+                    files.put( tar.getPath(), content.toByteArray() );
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Create the old and the new release. The jar is unchanged, the readme is changed, the library is new but
+     * contained in the old release with another name.
+     *
+     * @param oldDeb the old package
+     * @param newDeb the new package
+     * @param level the compression level of the new package
+     * @throws IOException if any I/O error occur
+     */
+    private static void createReleases( File oldDeb, File newDeb, int level ) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put( "app.jar", random( 300000, 1 ) );
+        files.put( "readme.txt", "release 1".getBytes( StandardCharsets.UTF_8 ) );
+        files.put( "lib-1.0.jar", random( 50000, 2 ) );
+        DebTestPackage.create( oldDeb, "1.0", files, 6 );
+
+        files.put( "readme.txt", "release 2".getBytes( StandardCharsets.UTF_8 ) );
+        files.put( "lib-1.1.jar", files.remove( "lib-1.0.jar" ) );
+        DebTestPackage.create( newDeb, "2.0", files, level );
+    }
+
+    @Test
+    public void createAndApply() throws IOException {
+        File oldDeb = new File( temp.getRoot(), "test_1.0_all.deb" );
+        File newDeb = new File( temp.getRoot(), "test_2.0_all.deb" );
+        createReleases( oldDeb, newDeb, 6 );
+
+        File delta = new File( temp.getRoot(), "test_2.0_all.deb.delta" );
+        DebDelta creator = new DebDelta();
+        creator.create( oldDeb, newDeb, delta, 6 );
+        assertEquals( 2, creator.getUnchangedFiles() );
+        assertEquals( 1, creator.getChangedFiles() );
+        assertTrue( "delta is not smaller: " + delta.length(), delta.length() < newDeb.length() / 4 );
+
+        File result = new File( temp.getRoot(), "result.deb" );
+        assertTrue( new DebDelta().apply( oldDeb, delta, result ) );
+        assertArrayEquals( Files.readAllBytes( newDeb.toPath() ), Files.readAllBytes( result.toPath() ) );
+        assertFalse( new File( result.getPath() + ".tmp" ).exists() );
+    }
+
+    @Test
+    public void otherCompressionLevel() throws IOException {
+        // the delta is created with another level as the package, the content is identical but not the bytes
+        File oldDeb = new File( temp.getRoot(), "test_1.0_all.deb" );
+        File newDeb = new File( temp.getRoot(), "test_2.0_all.deb" );
+        createReleases( oldDeb, newDeb, 9 );
+
+        File delta = new File( temp.getRoot(), "test_2.0_all.deb.delta" );
+        new DebDelta().create( oldDeb, newDeb, delta, 1 );
+        File result = new File( temp.getRoot(), "result.deb" );
+        assertFalse( new DebDelta().apply( oldDeb, delta, result ) );
+
+        Map<String, byte[]> expected = readData( newDeb );
+        Map<String, byte[]> actual = readData( result );
+        assertEquals( expected.keySet(), actual.keySet() );
+        for( String path : expected.keySet() ) {
+            assertArrayEquals( path, expected.get( path ), actual.get( path ) );
+        }
+        assertEquals( new DebReader( newDeb ).readMd5sums(), new DebReader( result ).readMd5sums() );
+    }
+
+    @Test( expected = IOException.class )
+    public void wrongOldPackage() throws IOException {
+        File oldDeb = new File( temp.getRoot(), "test_1.0_all.deb" );
+        File newDeb = new File( temp.getRoot(), "test_2.0_all.deb" );
+        createReleases( oldDeb, newDeb, 6 );
+        File delta = new File( temp.getRoot(), "test_2.0_all.deb.delta" );
+        new DebDelta().create( oldDeb, newDeb, delta, 6 );
+        new DebDelta().apply( newDeb, delta, new File( temp.getRoot(), "result.deb" ) );
+    }
+}
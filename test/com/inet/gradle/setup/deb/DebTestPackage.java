@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.deb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.inet.gradle.setup.util.ArWriter;
+import com.inet.gradle.setup.util.CompressionUtils;
+import com.inet.gradle.setup.util.DigestUtils;
+import com.inet.gradle.setup.util.TarWriter;
+
+/**
+ * Create small Debian packages for the tests in the layout of the Java packager without a Gradle project.
+ */
+class DebTestPackage {
+
+    static final long   TIME      = 1451606400000L;
+
+    static final String DIRECTORY = "./usr/share/test/";
+
+    /**
+     * Create a package with a gzip compressed control and data archive. All files are saved in the
+     * {@link #DIRECTORY}.
+     *
+     * @param file the package file
+     * @param version the version of the package
+     * @param files the names and the content of the files
+     * @param level the compression level of the data archive
+     * @throws IOException if any I/O error occur
+     */
+    static void create( File file, String version, Map<String, byte[]> files, int level ) throws IOException {
+        StringBuilder md5sums = new StringBuilder();
+        for( Map.Entry<String, byte[]> entry : files.entrySet() ) {
+            md5sums.append( DigestUtils.toHex( DigestUtils.newDigest( "MD5" ).digest( entry.getValue() ) ) );
+            md5sums.append( "  " ).append( DIRECTORY.substring( 2 ) ).append( entry.getKey() ).append( '\n' );
+        }
+        String control = "Package: test\nVersion: " + version + "\nArchitecture: all\nMaintainer: test\nDescription: test\n";
+
+        ByteArrayOutputStream controlTar = new ByteArrayOutputStream();
+        try( TarWriter tar = new TarWriter( CompressionUtils.compress( controlTar, Deb.COMPRESSION_GZIP, 9, 1, null ) ) ) {
+            tar.addDirectory( "./", 0755, TIME );
+            tar.addFile( "./control", 0644, TIME, control.getBytes( StandardCharsets.UTF_8 ) );
+            tar.addFile( "./md5sums", 0644, TIME, md5sums.toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        try( ArWriter ar = new ArWriter( file ) ) {
+            ar.addMember( "debian-binary", TIME, 0100644, "2.0\n".getBytes( StandardCharsets.US_ASCII ) );
+            ar.addMember( "control.tar.gz", TIME, 0100644, controlTar.toByteArray() );
+            OutputStream data = CompressionUtils.compress( ar.addMember( "data.tar.gz", TIME, 0100644 ), Deb.COMPRESSION_GZIP, level, 2, null );
+            try( TarWriter tar = new TarWriter( data ) ) {
+                tar.addDirectory( "./", 0755, TIME );
+                tar.addDirectory( "./usr/", 0755, TIME );
+                tar.addDirectory( "./usr/share/", 0755, TIME );
+                tar.addDirectory( DIRECTORY, 0755, TIME );
+                for( Map.Entry<String, byte[]> entry : files.entrySet() ) {
+                    tar.addFile( DIRECTORY + entry.getKey(), 0644, TIME, entry.getValue() );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Create and apply tests of the {@link RpmDelta}.
+ */
+public class RpmDeltaTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Create random content that does not compress.
+     *
+     * @param size the size
+     * @param seed the seed of the random generator
+     * @return the content
+     */
+    private static byte[] random( int size, long seed ) {
+        byte[] content = new byte[size];
+        new Random( seed ).nextBytes( content );
+        return content;
+    }
+
+    /**
+     * Create the files of the new release. The jar is unchanged, the readme is changed, the library is contained in
+     * the old release with another name.
+     *
+     * @return the names and the content of the files
+     */
+    private static Map<String, byte[]> newFiles() {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put( "app.jar", random( 300000, 1 ) );
+        files.put( "readme.txt", "release 2".getBytes( StandardCharsets.UTF_8 ) );
+        files.put( "lib-1.1.jar", random( 50000, 2 ) );
+        return files;
+    }
+
+    /**
+     * Create the old release.
+     *
+     * @param oldRpm the package file
+     * @throws IOException if any I/O error occur
+     */
+    private static void createOldRelease( File oldRpm ) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put( "app.jar", random( 300000, 1 ) );
+        files.put( "readme.txt", "release 1".getBytes( StandardCharsets.UTF_8 ) );
+        files.put( "lib-1.0.jar", random( 50000, 2 ) );
+        RpmTestPackage.create( oldRpm, "1.0", files );
+    }
+
+    @Test
+    public void createAndApply() throws IOException {
+        File oldRpm = new File( temp.getRoot(), "test-1.0-1.noarch.rpm" );
+        File newRpm = new File( temp.getRoot(), "test-2.0-1.noarch.rpm" );
+        createOldRelease( oldRpm );
+        RpmTestPackage.create( newRpm, "2.0", newFiles() );
+
+        File delta = new File( temp.getRoot(), "test-2.0-1.noarch.rpm.delta" );
+        RpmDelta creator = new RpmDelta();
+        creator.create( oldRpm, newRpm, delta, 2 );
+        assertEquals( 2, creator.getUnchangedFiles() );
+        assertEquals( 1, creator.getChangedFiles() );
+        assertTrue( "delta is not smaller: " + delta.length(), delta.length() < newRpm.length() / 4 );
+
+        File result = new File( temp.getRoot(), "result.rpm" );
+        new RpmDelta().apply( oldRpm, delta, result );
+        assertArrayEquals( Files.readAllBytes( newRpm.toPath() ), Files.readAllBytes( result.toPath() ) );
+        assertFalse( new File( result.getPath() + ".tmp" ).exists() );
+    }
+
+    @Test
+    public void noCommonFiles() throws IOException {
+        File oldRpm = new File( temp.getRoot(), "test-1.0-1.noarch.rpm" );
+        File newRpm = new File( temp.getRoot(), "test-2.0-1.noarch.rpm" );
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put( "other.jar", random( 1000, 3 ) );
+        RpmTestPackage.create( oldRpm, "1.0", files );
+        RpmTestPackage.create( newRpm, "2.0", newFiles() );
+
+        File delta = new File( temp.getRoot(), "test-2.0-1.noarch.rpm.delta" );
+        RpmDelta creator = new RpmDelta();
+        creator.create( oldRpm, newRpm, delta, 2 );
+        assertEquals( 0, creator.getUnchangedFiles() );
+        assertEquals( 3, creator.getChangedFiles() );
+
+        File result = new File( temp.getRoot(), "result.rpm" );
+        new RpmDelta().apply( oldRpm, delta, result );
+        assertArrayEquals( Files.readAllBytes( newRpm.toPath() ), Files.readAllBytes( result.toPath() ) );
+    }
+
+    @Test
+    public void wrongOldPackage() throws IOException {
+        File oldRpm = new File( temp.getRoot(), "test-1.0-1.noarch.rpm" );
+        File newRpm = new File( temp.getRoot(), "test-2.0-1.noarch.rpm" );
+        createOldRelease( oldRpm );
+        RpmTestPackage.create( newRpm, "2.0", newFiles() );
+        File delta = new File( temp.getRoot(), "test-2.0-1.noarch.rpm.delta" );
+        new RpmDelta().create( oldRpm, newRpm, delta, 2 );
+
+        File result = new File( temp.getRoot(), "result.rpm" );
+        try {
+            new RpmDelta().apply( newRpm, delta, result );
+            fail( "apply with the wrong package" );
+        } catch( IOException ex ) {
+            assertFalse( result.exists() );
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.inet.gradle.setup.util.CpioReader;
+import com.inet.gradle.setup.util.DigestUtils;
+
+/**
+ * Round trip tests of the {@link RpmHeader} and the signature of the {@link RpmPackageWriter} with the
+ * {@link RpmReader}.
+ */
+public class RpmHeaderTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Read all bytes of a stream.
+     *
+     * @param input the stream
+     * @return the content
+     * @throws IOException if any I/O error occur
+     */
+    private static byte[] readAll( InputStream input ) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while( (count = input.read( buffer )) > 0 ) {
+            content.write( buffer, 0, count );
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Check if the data contains the bytes.
+     *
+     * @param data the data
+     * @param part the searched bytes
+     * @return true, if found
+     */
+    private static boolean contains( byte[] data, byte[] part ) {
+        for( int i = 0; i <= data.length - part.length; i++ ) {
+            if( Arrays.equals( Arrays.copyOfRange( data, i, i + part.length ), part ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void headerValues() throws IOException {
+        // the odd string lengths force the alignment of the following numbers
+        RpmHeader header = new RpmHeader();
+        header.addString( RpmTag.NAME, "test" );
+        header.addString( RpmTag.VERSION, "1.2.3" );
+        header.addI18nString( RpmTag.SUMMARY, "Test package \u00e4\u00f6\u00fc" );
+        header.addInt32( RpmTag.BUILDTIME, 1451606400 );
+        header.addInt32( RpmTag.SIZE, 0xF0000000 );
+        header.addInt16( RpmTag.FILEMODES, 040755, 0100644 );
+        header.addStringArray( RpmTag.BASENAMES, Arrays.asList( "test", "app.jar" ) );
+        header.addInt64( RpmTag.LONGSIZE, 5L << 32 );
+        byte[] headerData = header.toBytes( RpmTag.IMMUTABLE );
+        byte[] payload = "payload".getBytes( StandardCharsets.US_ASCII );
+
+        File file = new File( temp.getRoot(), "test.rpm" );
+        RpmTestPackage.write( file, headerData, payload, 1000 );
+        RpmReader reader = new RpmReader( file );
+
+        assertEquals( "test", reader.getString( RpmTag.NAME ) );
+        assertEquals( "1.2.3", reader.getString( RpmTag.VERSION ) );
+        assertEquals( "Test package \u00e4\u00f6\u00fc", reader.getString( RpmTag.SUMMARY ) );
+        assertNull( reader.getString( RpmTag.RELEASE ) );
+        assertEquals( 1451606400, reader.getNumber( RpmTag.BUILDTIME ) );
+        assertEquals( 0xF0000000L, reader.getNumber( RpmTag.SIZE ) );
+        assertArrayEquals( new int[] { 040755, 0100644 }, reader.getInt32( RpmTag.FILEMODES ) );
+        assertEquals( Arrays.asList( "test", "app.jar" ), reader.getStringArray( RpmTag.BASENAMES ) );
+        assertEquals( Collections.emptyList(), reader.getStringArray( RpmTag.DIRNAMES ) );
+        assertEquals( 5L << 32, reader.getNumber( RpmTag.LONGSIZE ) );
+        assertEquals( -1, reader.getNumber( RpmTag.EPOCH ) );
+
+        // the header is saved unchanged after the lead and the aligned signature
+        assertEquals( 0, reader.getHeaderStart() % 8 );
+        assertEquals( file.length() - payload.length, reader.getHeadSize() );
+        byte[] head = reader.getHead();
+        assertArrayEquals( headerData, Arrays.copyOfRange( head, reader.getHeaderStart(), head.length ) );
+
+        // the signature has the sizes and the digests of the header and the payload
+        assertEquals( headerData.length + payload.length, reader.getSignatureNumber( RpmTag.SIG_SIZE ) );
+        assertEquals( 1000, reader.getSignatureNumber( RpmTag.SIG_PAYLOADSIZE ) );
+        assertEquals( -1, reader.getSignatureNumber( RpmTag.SIG_LONGSIZE ) );
+        byte[] signature = Arrays.copyOfRange( head, 96, reader.getHeaderStart() );
+        assertTrue( contains( signature, DigestUtils.toHex( DigestUtils.newDigest( "SHA-256" ).digest( headerData ) ).getBytes( StandardCharsets.US_ASCII ) ) );
+        assertTrue( contains( signature, DigestUtils.toHex( DigestUtils.newDigest( "SHA-1" ).digest( headerData ) ).getBytes( StandardCharsets.US_ASCII ) ) );
+        byte[] md5 = DigestUtils.newDigest( "MD5" ).digest( Arrays.copyOfRange( Files.readAllBytes( file.toPath() ), reader.getHeaderStart(), (int)file.length() ) );
+        assertTrue( contains( signature, md5 ) );
+    }
+
+    @Test
+    public void largeSizes() throws IOException {
+        byte[] headerData = new RpmHeader().toBytes( RpmTag.IMMUTABLE );
+        File file = new File( temp.getRoot(), "large.rpm" );
+        RpmTestPackage.write( file, RpmPackageWriter.createSignature( headerData, new byte[16], 5L << 30, 6L << 30 ), headerData, new byte[0] );
+        RpmReader reader = new RpmReader( file );
+        assertEquals( headerData.length + (5L << 30), reader.getSignatureNumber( RpmTag.SIG_LONGSIZE ) );
+        assertEquals( 6L << 30, reader.getSignatureNumber( RpmTag.SIG_LONGARCHIVE ) );
+        assertEquals( -1, reader.getSignatureNumber( RpmTag.SIG_SIZE ) );
+    }
+
+    @Test
+    public void payload() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put( "readme.txt", "hello".getBytes( StandardCharsets.UTF_8 ) );
+        files.put( "empty", new byte[0] );
+        File file = new File( temp.getRoot(), "test.rpm" );
+        RpmTestPackage.create( file, "1.0", files );
+
+        RpmReader reader = new RpmReader( file );
+        assertEquals( Rpm.COMPRESSION_GZIP, reader.getPayloadCompressor() );
+        assertEquals( 8, reader.getFileDigestAlgorithm() );
+        Map<String, String> digests = reader.getFileDigests();
+        assertEquals( 2, digests.size() ); // the directory has no digest
+        assertEquals( DigestUtils.toHex( DigestUtils.newDigest( "SHA-256" ).digest( files.get( "readme.txt" ) ) ), digests.get( RpmTestPackage.DIRECTORY + "readme.txt" ) );
+
+        try( CpioReader cpio = new CpioReader( reader.openPayload() ) ) {
+            assertTrue( cpio.next() );
+            assertTrue( cpio.isDirectory() );
+            for( Map.Entry<String, byte[]> entry : files.entrySet() ) {
+                assertTrue( cpio.next() );
+                assertEquals( '.' + RpmTestPackage.DIRECTORY + entry.getKey(), cpio.getPath() );
+                assertArrayEquals( entry.getValue(), readAll( cpio.getInputStream() ) );
+            }
+            assertFalse( cpio.next() );
+        }
+    }
+
+    @Test( expected = IOException.class )
+    public void noPackage() throws IOException {
+        File file = temp.newFile( "test.rpm" );
+        Files.write( file.toPath(), new byte[200] );
+        new RpmReader( file );
+    }
+}
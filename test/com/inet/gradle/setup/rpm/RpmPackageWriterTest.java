@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gradle.api.GradleException;
+import org.junit.Test;
+
+/**
+ * Tests of the parsing of the dependencies in the {@link RpmPackageWriter}.
+ */
+public class RpmPackageWriterTest {
+
+    private final List<String>  names    = new ArrayList<>();
+
+    private final List<String>  versions = new ArrayList<>();
+
+    private final List<Integer> flags    = new ArrayList<>();
+
+    @Test
+    public void depends() {
+        RpmPackageWriter.addDepends( "java-devel >= 1.8, daemonize /bin/sh libc.so.6()(64bit) foo<2.0 bar = 1:3-2", names, versions, flags );
+        assertEquals( Arrays.asList( "java-devel", "daemonize", "/bin/sh", "libc.so.6()(64bit)", "foo", "bar" ), names );
+        assertEquals( Arrays.asList( "1.8", "", "", "", "2.0", "1:3-2" ), versions );
+        assertEquals( Arrays.asList( RpmTag.SENSE_GREATER | RpmTag.SENSE_EQUAL, 0, 0, 0, RpmTag.SENSE_LESS, RpmTag.SENSE_EQUAL ), flags );
+    }
+
+    @Test
+    public void emptyDepends() {
+        RpmPackageWriter.addDepends( " , ", names, versions, flags );
+        assertEquals( 0, names.size() );
+    }
+
+    @Test( expected = GradleException.class )
+    public void richDependency() {
+        RpmPackageWriter.addDepends( "(foo or bar)", names, versions, flags );
+    }
+
+    @Test( expected = GradleException.class )
+    public void missingVersion() {
+        RpmPackageWriter.addDepends( "bar, foo >=", names, versions, flags );
+    }
+
+    @Test( expected = GradleException.class )
+    public void missingName() {
+        RpmPackageWriter.addDepends( ">= 1.0", names, versions, flags );
+    }
+}
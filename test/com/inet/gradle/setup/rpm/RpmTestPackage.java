@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.rpm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.inet.gradle.setup.util.CompressionUtils;
+import com.inet.gradle.setup.util.CpioWriter;
+import com.inet.gradle.setup.util.DigestUtils;
+
+/**
+ * Create small RPM packages for the tests in the layout of the Java packager without a Gradle project.
+ */
+class RpmTestPackage {
+
+    static final long   TIME      = 1451606400000L;
+
+    static final String DIRECTORY = "/usr/share/test/";
+
+    /**
+     * Create a package with a gzip compressed payload. All files are saved in the {@link #DIRECTORY}.
+     *
+     * @param file the package file
+     * @param version the version of the package
+     * @param files the names and the content of the files
+     * @throws IOException if any I/O error occur
+     */
+    static void create( File file, String version, Map<String, byte[]> files ) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        long uncompressed;
+        try( CpioWriter cpio = new CpioWriter( CompressionUtils.compress( payload, Rpm.COMPRESSION_GZIP, 6, 2, null ) ) ) {
+            int inode = 1;
+            cpio.addDirectory( '.' + DIRECTORY.substring( 0, DIRECTORY.length() - 1 ), 0755, TIME, inode );
+            for( Map.Entry<String, byte[]> entry : files.entrySet() ) {
+                byte[] content = entry.getValue();
+                cpio.addFile( '.' + DIRECTORY + entry.getKey(), 0644, TIME, content.length, new ByteArrayInputStream( content ), ++inode );
+            }
+            cpio.finish();
+            uncompressed = cpio.getCount();
+        }
+
+        List<String> baseNames = new ArrayList<>();
+        List<String> digests = new ArrayList<>();
+        int[] dirIndexes = new int[files.size() + 1];
+        baseNames.add( "test" );
+        digests.add( "" );
+        for( Map.Entry<String, byte[]> entry : files.entrySet() ) {
+            dirIndexes[baseNames.size()] = 1;
+            baseNames.add( entry.getKey() );
+            digests.add( DigestUtils.toHex( DigestUtils.newDigest( "SHA-256" ).digest( entry.getValue() ) ) );
+        }
+
+        RpmHeader header = new RpmHeader();
+        header.addString( RpmTag.NAME, "test" );
+        header.addString( RpmTag.VERSION, version );
+        header.addString( RpmTag.RELEASE, "1" );
+        header.addStringArray( RpmTag.FILEDIGESTS, digests );
+        header.addInt32( RpmTag.DIRINDEXES, dirIndexes );
+        header.addStringArray( RpmTag.BASENAMES, baseNames );
+        header.addStringArray( RpmTag.DIRNAMES, Arrays.asList( "/usr/share/", DIRECTORY ) );
+        header.addString( RpmTag.PAYLOADFORMAT, "cpio" );
+        header.addString( RpmTag.PAYLOADCOMPRESSOR, Rpm.COMPRESSION_GZIP );
+        header.addString( RpmTag.PAYLOADFLAGS, "6" );
+        header.addInt32( RpmTag.FILEDIGESTALGO, 8 );
+        write( file, header.toBytes( RpmTag.IMMUTABLE ), payload.toByteArray(), uncompressed );
+    }
+
+    /**
+     * Write a package with the signature of the Java packager.
+     *
+     * @param file the package file
+     * @param header the serialized main header
+     * @param payload the compressed payload
+     * @param uncompressed the size of the uncompressed payload
+     * @throws IOException if any I/O error occur
+     */
+    static void write( File file, byte[] header, byte[] payload, long uncompressed ) throws IOException {
+        MessageDigest md5 = DigestUtils.newDigest( "MD5" );
+        md5.update( header );
+        md5.update( payload );
+        write( file, RpmPackageWriter.createSignature( header, md5.digest(), payload.length, uncompressed ), header, payload );
+    }
+
+    /**
+     * Write a package with the given signature.
+     *
+     * @param file the package file
+     * @param signature the signature
+     * @param header the serialized main header
+     * @param payload the compressed payload
+     * @throws IOException if any I/O error occur
+     */
+    static void write( File file, RpmHeader signature, byte[] header, byte[] payload ) throws IOException {
+        byte[] sigData = signature.toBytes( RpmTag.SIGNATURES );
+        try( DataOutputStream out = new DataOutputStream( new FileOutputStream( file ) ) ) {
+            out.write( new byte[] { (byte)0xed, (byte)0xab, (byte)0xee, (byte)0xdb, 3, 0 } );
+            out.writeShort( 0 ); // binary package
+            out.writeShort( 1 ); // architecture
+            out.write( Arrays.copyOf( "test".getBytes( StandardCharsets.UTF_8 ), 66 ) );
+            out.writeShort( 1 ); // Linux
+            out.writeShort( 5 ); // signature in a header structure
+            out.write( new byte[16] );
+            out.write( sigData );
+            out.write( new byte[(8 - sigData.length % 8) % 8] );
+            out.write( header );
+            out.write( payload );
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trip tests of the {@link ArWriter} with the {@link ArReader}.
+ */
+public class ArWriterTest {
+
+    private static final long TIME = 1451606400000L;
+
+    @Rule
+    public TemporaryFolder    temp = new TemporaryFolder();
+
+    @Test
+    public void members() throws IOException {
+        File file = new File( temp.getRoot(), "test.deb" );
+        byte[] streamed = new byte[70001]; // odd size, the next member is padded
+        for( int i = 0; i < streamed.length; i++ ) {
+            streamed[i] = (byte)(i * 31);
+        }
+        try( ArWriter ar = new ArWriter( file ) ) {
+            ar.addMember( "debian-binary", TIME, 0100644, "2.0\n".getBytes( StandardCharsets.US_ASCII ) );
+            try( OutputStream member = ar.addMember( "data.tar.gz", TIME, 0100644 ) ) {
+                member.write( streamed, 0, 1000 );
+                member.write( streamed, 1000, streamed.length - 1000 );
+            }
+            ar.addMember( "odd", TIME, 0100600, new byte[] { 7 } );
+        }
+
+        try( ArReader reader = new ArReader( file ) ) {
+            assertEquals( "debian-binary", reader.next() );
+            assertEquals( TIME, reader.getLastModified() );
+            assertEquals( 0100644, reader.getMode() );
+            assertArrayEquals( "2.0\n".getBytes( StandardCharsets.US_ASCII ), reader.readContent() );
+
+            assertEquals( "data.tar.gz", reader.next() );
+            assertEquals( streamed.length, reader.getSize() );
+            assertArrayEquals( streamed, reader.readContent() );
+
+            assertEquals( "odd", reader.next() );
+            assertEquals( 0100600, reader.getMode() );
+            assertArrayEquals( new byte[] { 7 }, reader.readContent() );
+
+            assertNull( reader.next() );
+        }
+    }
+
+    @Test
+    public void skipUnreadMembers() throws IOException {
+        File file = new File( temp.getRoot(), "test.ar" );
+        try( ArWriter ar = new ArWriter( file ) ) {
+            ar.addMember( "first", TIME, 0100644, new byte[999] );
+            ar.addMember( "second", TIME, 0100644, new byte[] { 1, 2, 3 } );
+        }
+        try( ArReader reader = new ArReader( file ) ) {
+            assertEquals( "first", reader.next() );
+            assertEquals( "second", reader.next() );
+            assertArrayEquals( new byte[] { 1, 2, 3 }, reader.readContent() );
+            assertNull( reader.next() );
+        }
+    }
+}
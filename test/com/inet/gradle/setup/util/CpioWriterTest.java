@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Round trip tests of the {@link CpioWriter} with the {@link CpioReader}.
+ */
+public class CpioWriterTest {
+
+    private static final long TIME = 1451606400000L;
+
+    /**
+     * Read all bytes of a stream.
+     *
+     * @param input the stream
+     * @return the content
+     * @throws IOException if any I/O error occur
+     */
+    private static byte[] readAll( InputStream input ) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while( (count = input.read( buffer )) > 0 ) {
+            content.write( buffer, 0, count );
+        }
+        return content.toByteArray();
+    }
+
+    @Test
+    public void entries() throws IOException {
+        byte[] large = new byte[70003]; // not aligned to 4 bytes, the next header is padded
+        for( int i = 0; i < large.length; i++ ) {
+            large[i] = (byte)(i * 17);
+        }
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        long count;
+        try( CpioWriter cpio = new CpioWriter( archive ) ) {
+            cpio.addDirectory( "./usr/share/app", 0755, TIME, 1 );
+            cpio.addFile( "./usr/share/app/app.jar", 0644, TIME, large.length, new ByteArrayInputStream( large ), 2 );
+            cpio.addSymbolicLink( "./usr/bin/app", "/usr/share/app/start.sh", TIME, 3 );
+            cpio.addFile( "./usr/share/app/empty", 0600, TIME, 0, new ByteArrayInputStream( new byte[0] ), 4 );
+            cpio.finish();
+            count = cpio.getCount();
+        }
+        assertEquals( archive.size(), count );
+
+        try( CpioReader reader = new CpioReader( new ByteArrayInputStream( archive.toByteArray() ) ) ) {
+            assertTrue( reader.next() );
+            assertEquals( "./usr/share/app", reader.getPath() );
+            assertTrue( reader.isDirectory() );
+            assertEquals( 040755, reader.getMode() );
+            assertEquals( TIME, reader.getLastModified() );
+            assertEquals( CpioReader.HEADER_SIZE, reader.getHeader().length() );
+
+            assertTrue( reader.next() );
+            assertEquals( "./usr/share/app/app.jar", reader.getPath() );
+            assertTrue( reader.isFile() );
+            assertEquals( 0100644, reader.getMode() );
+            assertEquals( large.length, reader.getSize() );
+            assertArrayEquals( large, readAll( reader.getInputStream() ) );
+
+            assertTrue( reader.next() );
+            assertEquals( "./usr/bin/app", reader.getPath() );
+            assertTrue( reader.isSymbolicLink() );
+            assertArrayEquals( "/usr/share/app/start.sh".getBytes( StandardCharsets.UTF_8 ), readAll( reader.getInputStream() ) );
+
+            // the content of the empty file is not read, next() must skip the padding
+            assertTrue( reader.next() );
+            assertEquals( "./usr/share/app/empty", reader.getPath() );
+            assertEquals( 0, reader.getSize() );
+
+            assertFalse( reader.next() );
+            // after the trailer only the padding of its name is left
+            assertTrue( readAll( reader.getRawInputStream() ).length < 4 );
+        }
+    }
+
+    @Test( expected = IOException.class )
+    public void largerAsDeclared() throws IOException {
+        try( CpioWriter cpio = new CpioWriter( new ByteArrayOutputStream() ) ) {
+            cpio.addFile( "./file", 0644, TIME, 2, new ByteArrayInputStream( new byte[3] ), 1 );
+        }
+    }
+}
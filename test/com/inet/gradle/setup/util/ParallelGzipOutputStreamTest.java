@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link ParallelGzipOutputStream}.
+ */
+public class ParallelGzipOutputStreamTest {
+
+    /**
+     * Compress the data in chunks of different size.
+     *
+     * @param data the data
+     * @param level the compression level
+     * @param threads the count of threads
+     * @return the gzip stream
+     * @throws IOException if any I/O error occur
+     */
+    private static byte[] compress( byte[] data, int level, int threads ) throws IOException {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try( ParallelGzipOutputStream out = new ParallelGzipOutputStream( gzip, level, threads ) ) {
+            int offset = 0;
+            for( int chunk = 1; offset < data.length; chunk = chunk * 3 + 1 ) {
+                int count = Math.min( chunk, data.length - offset );
+                if( count == 1 ) {
+                    out.write( data[offset] );
+                } else {
+                    out.write( data, offset, count );
+                }
+                offset += count;
+            }
+        }
+        return gzip.toByteArray();
+    }
+
+    /**
+     * Decompress with the gzip implementation of the JDK.
+     *
+     * @param gzip the compressed data
+     * @return the data
+     * @throws IOException if any I/O error occur
+     */
+    private static byte[] decompress( byte[] gzip ) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try( InputStream in = new GZIPInputStream( new ByteArrayInputStream( gzip ) ) ) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while( (count = in.read( buffer )) > 0 ) {
+                data.write( buffer, 0, count );
+            }
+        }
+        return data.toByteArray();
+    }
+
+    /**
+     * Create test data with text like and random parts over multiple blocks of the stream.
+     *
+     * @return the data
+     */
+    private static byte[] createData() {
+        byte[] data = new byte[600000];
+        Random random = new Random( 7 );
+        for( int i = 0; i < data.length; i++ ) {
+            data[i] = (byte)(i % 50000 < 25000 ? 'a' + random.nextInt( 4 ) : random.nextInt());
+        }
+        return data;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        byte[] data = createData();
+        for( int level = 0; level <= 9; level += 3 ) {
+            assertArrayEquals( "level " + level, data, decompress( compress( data, level, 3 ) ) );
+        }
+        assertArrayEquals( new byte[0], decompress( compress( new byte[0], 6, 2 ) ) );
+    }
+
+    @Test
+    public void sameResultWithAnyThreadCount() throws IOException {
+        // the delta of a RPM package compress the payload again and requires an identical result
+        byte[] data = createData();
+        byte[] expected = compress( data, 6, 1 );
+        assertArrayEquals( expected, compress( data, 6, 2 ) );
+        assertArrayEquals( expected, compress( data, 6, 8 ) );
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 i-net software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.inet.gradle.setup.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Round trip tests of the {@link TarWriter} with the {@link TarReader}.
+ */
+public class TarWriterTest {
+
+    private static final long TIME = 1451606400000L;
+
+    /**
+     * Read all bytes of the current entry.
+     *
+     * @param reader the reader
+     * @return the content
+     * @throws IOException if any I/O error occur
+     */
+    private static byte[] readEntry( TarReader reader ) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while( (count = reader.getInputStream().read( buffer )) > 0 ) {
+            content.write( buffer, 0, count );
+        }
+        return content.toByteArray();
+    }
+
+    @Test
+    public void directoryAndFiles() throws IOException {
+        byte[] large = new byte[100000];
+        new Random( 42 ).nextBytes( large );
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try( TarWriter tar = new TarWriter( archive ) ) {
+            tar.addDirectory( "./usr/share/app", 0755, TIME );
+            tar.addFile( "./usr/share/app/readme.txt", 0644, TIME, "hello".getBytes( StandardCharsets.UTF_8 ) );
+            tar.addFile( "./usr/share/app/empty", 0600, TIME, new byte[0] );
+            tar.addFile( "./usr/share/app/app.jar", 0755, TIME, large.length, new ByteArrayInputStream( large ) );
+        }
+        assertEquals( 0, archive.size() % 512 );
+
+        try( TarReader reader = new TarReader( new ByteArrayInputStream( archive.toByteArray() ) ) ) {
+            assertTrue( reader.next() );
+            assertEquals( "./usr/share/app/", reader.getPath() );
+            assertTrue( reader.isDirectory() );
+            assertEquals( 0755, reader.getMode() );
+            assertEquals( TIME, reader.getLastModified() );
+
+            assertTrue( reader.next() );
+            assertEquals( "./usr/share/app/readme.txt", reader.getPath() );
+            assertTrue( reader.isFile() );
+            assertEquals( 0644, reader.getMode() );
+            assertEquals( 5, reader.getSize() );
+            assertArrayEquals( "hello".getBytes( StandardCharsets.UTF_8 ), readEntry( reader ) );
+
+            // the content of this entry is not read, next() must skip it
+            assertTrue( reader.next() );
+            assertEquals( "./usr/share/app/empty", reader.getPath() );
+            assertEquals( 0, reader.getSize() );
+
+            assertTrue( reader.next() );
+            assertEquals( "./usr/share/app/app.jar", reader.getPath() );
+            assertEquals( large.length, reader.getSize() );
+            assertArrayEquals( large, readEntry( reader ) );
+
+            assertFalse( reader.next() );
+        }
+    }
+
+    @Test
+    public void longPaths() throws IOException {
+        StringBuilder dirs = new StringBuilder( "." );
+        for( int i = 0; i < 12; i++ ) {
+            dirs.append( "/directory" ).append( i );
+        }
+        String prefixed = dirs + "/file.txt"; // longer as 100 bytes, but fit in the ustar prefix
+        StringBuilder name = new StringBuilder( "./" );
+        for( int i = 0; i < 30; i++ ) {
+            name.append( "long-name" );
+        }
+        String gnu = name.toString(); // the name alone is longer as 100 bytes
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try( TarWriter tar = new TarWriter( archive ) ) {
+            tar.addFile( prefixed, 0644, TIME, new byte[] { 1 } );
+            tar.addFile( gnu, 0644, TIME, new byte[] { 2 } );
+        }
+
+        try( TarReader reader = new TarReader( new ByteArrayInputStream( archive.toByteArray() ) ) ) {
+            assertTrue( reader.next() );
+            assertEquals( prefixed, reader.getPath() );
+            assertArrayEquals( new byte[] { 1 }, readEntry( reader ) );
+            assertTrue( reader.next() );
+            assertEquals( gnu, reader.getPath() );
+            assertArrayEquals( new byte[] { 2 }, readEntry( reader ) );
+            assertFalse( reader.next() );
+        }
+    }
+
+    @Test( expected = IOException.class )
+    public void shorterAsDeclared() throws IOException {
+        try( TarWriter tar = new TarWriter( new ByteArrayOutputStream() ) ) {
+            tar.addFile( "./file", 0644, TIME, 10, new ByteArrayInputStream( new byte[5] ) );
+        }
+    }
+}